@@ -0,0 +1,372 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.woonoz.proxy.servlet;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A response from the upstream server, held so that it can be stored in
+ * a {@link TileResponseCache} and replayed to later clients.  The body is
+ * either in memory or, for responses read back from a
+ * {@link DiskTileStore}, left on disk until it is written out.
+ *
+ * <p>The headers are the ones sent to the client, after the
+ * {@link ServerHeadersHandler} has rewritten them.  The freshness of the
+ * response is worked out from its <code>Cache-Control</code> header when
+ * it is created: <code>s-maxage</code> or <code>max-age</code> give the
+ * lifetime, <code>no-cache</code> means the response must be revalidated
+ * with its <code>ETag</code> before every use, and <code>no-store</code>
+ * means it must not be cached at all.  The time the response was received
+ * or last revalidated is kept too, for the <code>Age</code> header sent
+ * with it.</p>
+ */
+public class CachedResponse {
+
+	public static final int STATUS_OK = 200;
+	public static final int STATUS_NOT_MODIFIED = 304;
+
+	// Rough number of bytes taken by the objects around the body and headers
+	private static final int ENTRY_OVERHEAD_BYTES = 128;
+
+	private final int status;
+	private final List<HeaderField> headers;
+	private final byte[] body;
+	private final DiskTileStore diskStore;
+	private final DiskTileStore.Location diskLocation;
+	private final String etag;
+	private final long freshUntil;
+	private final long receivedAt;
+	private final boolean storable;
+
+	/**
+	 * Creates a response received at time now
+	 *
+	 * @param status
+	 * 	The HTTP status code
+	 * @param headers
+	 * 	The headers to send to the client, which are copied
+	 * @param body
+	 * 	The body, which is used directly, not copied
+	 * @param now
+	 * 	The time the response was received, in milliseconds since the epoch
+	 * @throws NullPointerException
+	 * 	If headers or body is <code>null</code>
+	 */
+	public CachedResponse(final int status, final List<HeaderField> headers, final byte[] body, final long now) {
+		if (headers == null || body == null) {
+			throw new NullPointerException("Null headers or body");
+		}
+		this.status = status;
+		this.headers = Collections.unmodifiableList(new ArrayList<HeaderField>(headers));
+		this.body = body;
+		this.diskStore = null;
+		this.diskLocation = null;
+		this.etag = ResponseCompression.toUpstreamEtag(findHeader(headers, "etag"));
+		this.freshUntil = now + 1000L * getMaxAgeSeconds(findHeader(headers, "cache-control"));
+		this.receivedAt = now;
+		this.storable = isStorable(status, headers, etag, freshUntil > now);
+	}
+
+	// Creates a response whose body is in store at location, and which
+	// was stored because it was storable.  The store keeps only the end
+	// of the freshness, so the time received is worked back from it.
+	CachedResponse(final int status, final List<HeaderField> headers, final long freshUntil, final DiskTileStore store, final DiskTileStore.Location location) {
+		this.status = status;
+		this.headers = Collections.unmodifiableList(new ArrayList<HeaderField>(headers));
+		this.body = null;
+		this.diskStore = store;
+		this.diskLocation = location;
+		this.etag = ResponseCompression.toUpstreamEtag(findHeader(headers, "etag"));
+		this.freshUntil = freshUntil;
+		this.receivedAt = freshUntil - 1000L * getMaxAgeSeconds(findHeader(headers, "cache-control"));
+		this.storable = true;
+	}
+
+	// Copies response with the freshness given by the headers of a later
+	// 304 response, or by its own headers if the 304 has no Cache-Control
+	private CachedResponse(final CachedResponse response, final CachedResponse notModified, final long now) {
+		this.status = response.status;
+		this.headers = response.headers;
+		this.body = response.body;
+		this.diskStore = response.diskStore;
+		this.diskLocation = response.diskLocation;
+		this.etag = response.etag;
+		final String cacheControl = notModified.getHeader("cache-control");
+		this.freshUntil = now + 1000L * getMaxAgeSeconds(cacheControl != null ? cacheControl : response.getHeader("cache-control"));
+		this.receivedAt = now;
+		this.storable = response.storable;
+	}
+
+	// Copies response with different headers and body, keeping its ETag,
+	// freshness, age, and storability
+	private CachedResponse(final CachedResponse response, final List<HeaderField> headers, final byte[] body) {
+		this.status = response.status;
+		this.headers = Collections.unmodifiableList(new ArrayList<HeaderField>(headers));
+		this.body = body;
+		this.diskStore = null;
+		this.diskLocation = null;
+		this.etag = response.etag;
+		this.freshUntil = response.freshUntil;
+		this.receivedAt = response.receivedAt;
+		this.storable = response.storable;
+	}
+
+	/**
+	 * Returns this response with the body in another encoding, given by
+	 * headers.  {@link #getEtag} stays that of this response, so that the
+	 * upstream server still recognizes it on revalidation.
+	 */
+	CachedResponse withEncodedBody(final List<HeaderField> headers, final byte[] body) {
+		return new CachedResponse(this, headers, body);
+	}
+
+	/**
+	 * Returns this response as confirmed by the upstream server at time
+	 * now with notModified, a 304 response to a conditional request
+	 */
+	public CachedResponse revalidate(final CachedResponse notModified, final long now) {
+		return new CachedResponse(this, notModified, now);
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	public List<HeaderField> getHeaders() {
+		return headers;
+	}
+
+	/**
+	 * Returns the value of the first header called name, ignoring case,
+	 * or <code>null</code> if there is none
+	 */
+	public String getHeader(final String name) {
+		return findHeader(headers, name);
+	}
+
+	/**
+	 * Returns the body.  For a response in memory the array is shared, and
+	 * must not be changed; for a response on disk the body is read into a
+	 * new array, so {@link #writeBody} is preferable.
+	 */
+	public byte[] getBody() throws IOException {
+		if (diskLocation != null) {
+			return diskStore.readBody(diskLocation);
+		}
+		return body;
+	}
+
+	public long getBodyLength() {
+		if (diskLocation != null) {
+			return diskLocation.getBodyLength();
+		}
+		return body.length;
+	}
+
+	/**
+	 * Writes the whole body to target.  A body on disk is sent with
+	 * {@link java.nio.channels.FileChannel#transferTo}, without being
+	 * copied onto the heap.
+	 */
+	public void writeBody(final WritableByteChannel target) throws IOException {
+		if (diskLocation != null) {
+			diskStore.transferBody(diskLocation, target);
+			return;
+		}
+		final ByteBuffer buffer = ByteBuffer.wrap(body);
+		while (buffer.hasRemaining()) {
+			target.write(buffer);
+		}
+	}
+
+	/**
+	 * Tells whether the body of this response was read back from a
+	 * {@link DiskTileStore} and is still on disk
+	 */
+	public boolean isOnDisk() {
+		return diskLocation != null;
+	}
+
+	/**
+	 * Returns the ETag to revalidate this response with upstream, which
+	 * leaves out the mark {@link ResponseCompression} adds to the
+	 * <code>ETag</code> header of a body it gzipped, or <code>null</code>
+	 * if there is none
+	 */
+	public String getEtag() {
+		return etag;
+	}
+
+	/**
+	 * Tells whether this response may be sent at time now without asking
+	 * the upstream server
+	 */
+	public boolean isFresh(final long now) {
+		return now < freshUntil;
+	}
+
+	/**
+	 * Returns the time, in milliseconds since the epoch, at which this
+	 * response stops being fresh
+	 */
+	long getFreshUntil() {
+		return freshUntil;
+	}
+
+	/**
+	 * Returns the value of the <code>Age</code> header to send with this
+	 * response at time now: the whole seconds since it was received from,
+	 * or last revalidated with, the upstream server
+	 */
+	public long getAgeSeconds(final long now) {
+		return Math.max(0, (now - receivedAt) / 1000);
+	}
+
+	/**
+	 * Tells whether this response may be stored in a cache at all
+	 */
+	public boolean isStorable() {
+		return storable;
+	}
+
+	/**
+	 * Returns the approximate number of bytes of memory this response
+	 * takes, which leaves out a body on disk
+	 */
+	public long getSize() {
+		long size = ENTRY_OVERHEAD_BYTES + (body != null ? body.length : 0);
+		for (final HeaderField header: headers) {
+			size += 2 * (header.getName().length() + header.getValue().length());
+		}
+		return size;
+	}
+
+	private static boolean isStorable(final int status, final List<HeaderField> headers, final String etag, final boolean fresh) {
+		if (status != STATUS_OK) {
+			return false;
+		}
+		// A response that sets a cookie belongs to one client only
+		if (findHeader(headers, "set-cookie") != null) {
+			return false;
+		}
+		final String cacheControl = findHeader(headers, "cache-control");
+		if (cacheControl != null && hasDirective(cacheControl, "no-store")) {
+			return false;
+		}
+		// Only the session cookie is part of the cache key
+		final String vary = findHeader(headers, "vary");
+		if (vary != null) {
+			for (final String field: vary.split(",")) {
+				final String name = toLower(field.trim());
+				if (!name.equals("cookie") && !name.equals("accept-encoding")) {
+					return false;
+				}
+			}
+		}
+		// Otherwise the response could never be used again
+		return fresh || etag != null;
+	}
+
+	// Returns the lifetime given by cacheControl, which may be null, in seconds
+	private static long getMaxAgeSeconds(final String cacheControl) {
+		if (cacheControl == null || hasDirective(cacheControl, "no-cache")) {
+			return 0;
+		}
+		long maxAge = 0;
+		for (final String directive: cacheControl.split(",")) {
+			final String[] parts = directive.trim().split("=", 2);
+			if (parts.length != 2) {
+				continue;
+			}
+			final String name = toLower(parts[0].trim());
+			try {
+				if (name.equals("s-maxage")) {
+					// s-maxage overrides max-age for a shared cache
+					return Math.max(0, Long.parseLong(unquote(parts[1].trim())));
+				} else if (name.equals("max-age")) {
+					maxAge = Math.max(0, Long.parseLong(unquote(parts[1].trim())));
+				}
+			} catch (NumberFormatException e) {
+				return 0;
+			}
+		}
+		return maxAge;
+	}
+
+	private static boolean hasDirective(final String cacheControl, final String directive) {
+		for (final String part: cacheControl.split(",")) {
+			final String name = part.trim().split("=", 2)[0].trim();
+			if (toLower(name).equals(directive)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String unquote(final String value) {
+		if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+			return value.substring(1, value.length() - 1);
+		}
+		return value;
+	}
+
+	private static String findHeader(final List<HeaderField> headers, final String name) {
+		for (final HeaderField header: headers) {
+			if (header.getName().equalsIgnoreCase(name)) {
+				return header.getValue();
+			}
+		}
+		return null;
+	}
+
+	private static String toLower(final String input) {
+		return input.toLowerCase(Locale.ENGLISH);
+	}
+
+	/**
+	 * One header of a {@link CachedResponse}
+	 */
+	public static class HeaderField {
+
+		private final String name;
+		private final String value;
+
+		public HeaderField(final String name, final String value) {
+			if (name == null || value == null) {
+				throw new NullPointerException("Null header name or value");
+			}
+			this.name = name;
+			this.value = value;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getValue() {
+			return value;
+		}
+	}
+}
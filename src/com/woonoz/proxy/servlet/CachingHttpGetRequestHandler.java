@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.woonoz.proxy.servlet;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * Handles a GET request by way of a {@link TileResponseCache}, asking the
+ * upstream server only when the cache has no usable response.
+ *
+ * <p>Textual responses are gzipped once, before they are cached, and
+ * responses the upstream server gzipped are cached as they are.  Clients
+ * that do not accept gzip get such responses decompressed, with an
+ * <code>ETag</code> that differs from that of the gzipped body.</p>
+ */
+public class CachingHttpGetRequestHandler extends HttpGetRequestHandler {
+
+	private final TileResponseCache cache;
+
+	public CachingHttpGetRequestHandler(HttpServletRequest request, HttpServletResponse response, URL targetServer, HttpClient client, TileResponseCache cache) {
+		super(request, response, targetServer, client);
+		this.cache = cache;
+	}
+
+	@Override
+	protected ClientHeadersHandler createClientHeadersHandler(final UrlRewriter urlRewriter) {
+		return new CachingClientHeadersHandler(urlRewriter);
+	}
+
+	@Override
+	protected void performHttpRequest(final HttpRequestBase requestToServer, final HttpServletResponse responseToClient, final ServerHeadersHandler serverHeadersHandler) throws IOException, URISyntaxException {
+		final String cookieHeader = getRequest().getHeader("Cookie");
+		final CachedResponse cached = cache.get(requestToServer.getURI().toString(), cookieHeader, new TileResponseCache.Upstream() {
+			public CachedResponse fetch(final String etag) throws IOException {
+				if (etag != null) {
+					requestToServer.setHeader("If-None-Match", etag);
+				}
+				requestToServer.setHeader("Accept-Encoding", ResponseCompression.GZIP);
+				return fetchFromServer(requestToServer, serverHeadersHandler);
+			}
+		});
+
+		final boolean decompress = ResponseCompression.isGzipped(cached)
+			&& !ResponseCompression.acceptsGzip(getRequest().getHeader("Accept-Encoding"));
+		final String etag = decompress ? ResponseCompression.toIdentityEtag(cached.getHeader("ETag")) : cached.getHeader("ETag");
+		if (cached.getStatus() == CachedResponse.STATUS_OK && matchesEtag(getRequest().getHeader("If-None-Match"), etag)) {
+			responseToClient.setStatus(CachedResponse.STATUS_NOT_MODIFIED);
+			copyHeaders(cached, responseToClient, decompress, etag);
+			return;
+		}
+		responseToClient.setStatus(cached.getStatus());
+		copyHeaders(cached, responseToClient, decompress, etag);
+		if (decompress) {
+			writeDecompressed(cached, responseToClient.getOutputStream());
+		} else {
+			responseToClient.setContentLength((int) cached.getBodyLength());
+			cached.writeBody(Channels.newChannel(responseToClient.getOutputStream()));
+		}
+	}
+
+	// Few clients refuse gzip, so the body is decompressed on the heap
+	// rather than streamed from the disk tier
+	private static void writeDecompressed(final CachedResponse cached, final OutputStream out) throws IOException {
+		final InputStream in = new GZIPInputStream(new ByteArrayInputStream(cached.getBody()));
+		try {
+			final byte[] buffer = new byte[8192];
+			int count;
+			while ((count = in.read(buffer)) >= 0) {
+				out.write(buffer, 0, count);
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	private CachedResponse fetchFromServer(final HttpRequestBase requestToServer, final ServerHeadersHandler serverHeadersHandler) throws IOException {
+		final HttpResponse responseFromServer = executeUpstream(requestToServer);
+		final List<CachedResponse.HeaderField> headers = new ArrayList<CachedResponse.HeaderField>();
+		try {
+			for (final Header header: responseFromServer.getAllHeaders()) {
+				final String modifiedValue = serverHeadersHandler.handleHeader(header.getName(), header.getValue());
+				if (modifiedValue != null) {
+					headers.add(new CachedResponse.HeaderField(header.getName(), modifiedValue));
+				}
+			}
+		} catch (URISyntaxException e) {
+			throw new IOException(e);
+		}
+
+		final HttpEntity entity = responseFromServer.getEntity();
+		byte[] body = new byte[0];
+		if (entity != null) {
+			try {
+				body = EntityUtils.toByteArray(entity);
+			} finally {
+				entity.consumeContent();
+			}
+		}
+		return ResponseCompression.compress(new CachedResponse(responseFromServer.getStatusLine().getStatusCode(), headers, body, System.currentTimeMillis()));
+	}
+
+	// Copies the headers of from, sending etag, the ETag of the body being
+	// sent, in place of the ETag of the cached body, and an Age header for
+	// the time from has spent in the cache, so that clients do not keep it
+	// for the whole of its max-age again
+	private static void copyHeaders(final CachedResponse from, final HttpServletResponse to, final boolean decompress, final String etag) {
+		for (final CachedResponse.HeaderField header: from.getHeaders()) {
+			if (decompress && header.getName().equalsIgnoreCase("content-encoding")) {
+				continue;
+			}
+			if (header.getName().equalsIgnoreCase("age")) {
+				continue;
+			}
+			if (header.getName().equalsIgnoreCase("etag")) {
+				to.addHeader(header.getName(), etag);
+				continue;
+			}
+			to.addHeader(header.getName(), header.getValue());
+		}
+		to.setHeader("Age", Long.toString(from.getAgeSeconds(System.currentTimeMillis())));
+	}
+
+	// Tells whether the If-None-Match header sent by the client, which may
+	// be null, matches etag, which may also be null, by the weak
+	// comparison that If-None-Match calls for
+	private static boolean matchesEtag(final String ifNoneMatch, final String etag) {
+		if (ifNoneMatch == null || etag == null) {
+			return false;
+		}
+		for (final String candidate: ifNoneMatch.split(",")) {
+			final String trimmed = candidate.trim();
+			if (trimmed.equals("*") || stripWeakness(trimmed).equals(stripWeakness(etag))) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static String stripWeakness(final String etag) {
+		return etag.startsWith("W/") ? etag.substring(2) : etag;
+	}
+
+	/**
+	 * Drops the conditional headers of the client, so that the upstream
+	 * server always sends a full response that can be cached for every
+	 * client, and drops Accept-Encoding, so that the cached body is never
+	 * in an encoding other than gzip, which the proxy can always decode
+	 */
+	private static class CachingClientHeadersHandler extends ClientHeadersHandler {
+
+		public CachingClientHeadersHandler(UrlRewriter urlRewriter) {
+			super(urlRewriter, HeaderToSubstitute.values());
+		}
+
+		private enum HeaderToSubstitute implements HeadersToSubstitute {
+			IfNoneMatch {
+				public String handleValue(String headerValue, UrlRewriter urlRewriter) throws URISyntaxException, MalformedURLException {
+					return null;
+				}
+
+				public String getHeader() {
+					return "if-none-match";
+				}
+			},
+			IfModifiedSince {
+				public String handleValue(String headerValue, UrlRewriter urlRewriter) throws URISyntaxException, MalformedURLException {
+					return null;
+				}
+
+				public String getHeader() {
+					return "if-modified-since";
+				}
+			},
+			AcceptEncoding {
+				public String handleValue(String headerValue, UrlRewriter urlRewriter) throws URISyntaxException, MalformedURLException {
+					return null;
+				}
+
+				public String getHeader() {
+					return "accept-encoding";
+				}
+			};
+		}
+	}
+}
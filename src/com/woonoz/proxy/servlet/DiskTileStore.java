@@ -0,0 +1,842 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.woonoz.proxy.servlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * The disk tier of a {@link TileResponseCache}, which keeps responses
+ * across restarts and can hold far more of them than the heap.
+ *
+ * <p>Responses are appended to segment files in a directory, and an index
+ * in memory maps each key to the segment, offset, and length of its
+ * latest record.  A removed key gets a small removal record, so that the
+ * index can be rebuilt by reading the segments in order when the store is
+ * opened again; a partly written record at the end of the last segment,
+ * left by a crash, is cut off.  A segment is mapped into memory once it
+ * is full and will not grow again, and headers are read through that
+ * mapping; the segment still being written is read with positional
+ * reads.  Bodies are sent with {@link FileChannel#transferTo}, so that
+ * they never have to be copied onto the heap.</p>
+ *
+ * <p>Space is reclaimed in two ways.  When the segments take more than
+ * the maximum number of bytes, the oldest segment is deleted with
+ * everything in it.  Compaction, which may be run in the background with
+ * {@link #startCompaction}, copies the live records out of segments that
+ * are mostly dead, then deletes them.  A body is sent without holding
+ * the lock of the store, so a segment being read from is pinned, and is
+ * only closed and deleted once the last read from it finishes.</p>
+ *
+ * <p>All methods are thread safe.</p>
+ */
+public class DiskTileStore {
+
+	private static final Log logger = LogFactory.getLog("com.woonoz.proxy.servlet");
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final int MAGIC = 0x54494c45;
+	private static final byte TYPE_PUT = 0;
+	private static final byte TYPE_REMOVE = 1;
+
+	// Each record starts with the magic number, the length of the whole
+	// record, the type, the time it is fresh until, and its serial number
+	private static final int FRESH_UNTIL_OFFSET = 4 + 4 + 1;
+	private static final int SERIAL_OFFSET = FRESH_UNTIL_OFFSET + 8;
+	private static final int FIXED_BYTES = SERIAL_OFFSET + 8;
+
+	// The bytes first read for the headers of a record in the segment
+	// being written, which is enough for those of a typical tile
+	private static final int HEAD_READ_BYTES = 4096;
+
+	private static final String SEGMENT_PREFIX = "tiles-";
+	private static final String SEGMENT_SUFFIX = ".seg";
+
+	// Segments with less than this fraction of live bytes are compacted
+	private static final double COMPACT_LIVE_FRACTION = 0.5;
+
+	private final File directory;
+	private final long segmentBytes;
+	private final long maxBytes;
+
+	// Readers hold the read lock while they look up a record; anything
+	// that changes the index or the segments holds the write lock
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	private final TreeMap<Integer, Segment> segments = new TreeMap<Integer, Segment>();
+	private final Map<String, Location> index = new HashMap<String, Location>();
+	private Segment active;
+	private long totalBytes = 0;
+	private long nextSerial = 0;
+
+	private ScheduledExecutorService compactor;
+
+	/**
+	 * Opens the store in directory, creating the directory if necessary,
+	 * and reads the index back from any segments already there
+	 *
+	 * @param directory
+	 * 	The directory holding the segment files, which nothing else may use
+	 * @param segmentBytes
+	 * 	The size at which a segment is closed and a new one started
+	 * @param maxBytes
+	 * 	The most bytes that all the segments may take together
+	 * @throws IllegalArgumentException
+	 * 	If segmentBytes is not positive or does not fit in an int, or if
+	 * 	maxBytes is less than segmentBytes
+	 */
+	public DiskTileStore(final File directory, final long segmentBytes, final long maxBytes) throws IOException {
+		if (segmentBytes <= 0 || segmentBytes > Integer.MAX_VALUE) {
+			throw new IllegalArgumentException("Invalid segment size");
+		}
+		if (maxBytes < segmentBytes) {
+			throw new IllegalArgumentException("Maximum size smaller than one segment");
+		}
+		if (!directory.isDirectory() && !directory.mkdirs()) {
+			throw new IOException("Cannot create directory " + directory);
+		}
+		this.directory = directory;
+		this.segmentBytes = segmentBytes;
+		this.maxBytes = maxBytes;
+
+		final TreeMap<Integer, File> files = new TreeMap<Integer, File>();
+		final File[] listed = directory.listFiles();
+		if (listed != null) {
+			for (final File file: listed) {
+				final int id = parseSegmentId(file.getName());
+				if (id >= 0) {
+					files.put(id, file);
+				}
+			}
+		}
+		for (final Map.Entry<Integer, File> file: files.entrySet()) {
+			final Segment segment = new Segment(file.getKey(), file.getValue());
+			segments.put(segment.id, segment);
+			totalBytes += segment.size;
+			recover(segment);
+		}
+		if (segments.isEmpty()) {
+			active = createSegment(0);
+		} else {
+			active = segments.lastEntry().getValue();
+		}
+		for (final Segment segment: segments.values()) {
+			if (segment != active) {
+				segment.seal();
+			}
+		}
+		evictOldSegments();
+	}
+
+	// Returns the ID in the name of a segment file, or -1 if name is not
+	// the name of a segment file
+	private static int parseSegmentId(final String name) {
+		if (!name.startsWith(SEGMENT_PREFIX) || !name.endsWith(SEGMENT_SUFFIX)) {
+			return -1;
+		}
+		try {
+			return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	// Adds the records in segment to the index, cutting off the segment
+	// at the first record that is not whole
+	private void recover(final Segment segment) throws IOException {
+		long offset = 0;
+		while (offset < segment.size) {
+			final Record record = readRecord(segment, offset);
+			if (record == null) {
+				logger.warn("Truncating " + segment.file + " at incomplete record at " + offset);
+				segment.channel.truncate(offset);
+				totalBytes -= segment.size - offset;
+				segment.size = offset;
+				break;
+			}
+			if (record.type == TYPE_PUT) {
+				replace(record.key, new Location(record.key, segment, offset, record.length, record.serial, record.bodyLength));
+			} else {
+				replace(record.key, null);
+			}
+			nextSerial = Math.max(nextSerial, record.serial + 1);
+			offset += record.length;
+		}
+	}
+
+	/**
+	 * Returns the response stored under key, with its body left on disk,
+	 * or <code>null</code> if there is none
+	 */
+	public CachedResponse get(final String key) throws IOException {
+		lock.readLock().lock();
+		try {
+			final Location location = index.get(key);
+			if (location == null) {
+				return null;
+			}
+			final Record record = readRecord(location.segment, location.offset);
+			if (record == null) {
+				throw new IOException("Corrupt record for " + key + " in " + location.segment.file);
+			}
+			return new CachedResponse(record.status, record.headers, record.freshUntil, this, location);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Stores response under key, replacing anything already stored there
+	 */
+	public void put(final String key, final CachedResponse response) throws IOException {
+		final byte[] head = encodePutHead(key, response);
+		final long length = head.length + response.getBodyLength();
+		if (length > Integer.MAX_VALUE) {
+			throw new IOException("Response for " + key + " too large to store");
+		}
+		ByteBuffer.wrap(head).putInt(4, (int) length);
+		lock.writeLock().lock();
+		try {
+			final long serial = nextSerial++;
+			ByteBuffer.wrap(head).putLong(SERIAL_OFFSET, serial);
+			final Segment segment = reserve(length);
+			final long offset = segment.size;
+			// The body goes straight from its array, or from the file it
+			// is stored in, to the end of the segment
+			writeFully(segment.channel, ByteBuffer.wrap(head), offset);
+			segment.channel.position(offset + head.length);
+			response.writeBody(segment.channel);
+			if (segment.channel.position() != offset + length) {
+				throw new IOException("Body of " + key + " changed length while being stored");
+			}
+			grow(segment, length);
+			replace(key, new Location(key, segment, offset, (int) length, serial, (int) response.getBodyLength()));
+			evictOldSegments();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes whatever is stored under key
+	 */
+	public void remove(final String key) throws IOException {
+		lock.writeLock().lock();
+		try {
+			if (!index.containsKey(key)) {
+				return;
+			}
+			final byte[] record = encodeRemove(key);
+			ByteBuffer.wrap(record).putLong(SERIAL_OFFSET, nextSerial++);
+			append(record);
+			replace(key, null);
+			evictOldSegments();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Changes the time until which the response stored under key is
+	 * fresh, in place, after the upstream server has revalidated it
+	 */
+	public void updateFreshness(final String key, final long freshUntil) throws IOException {
+		lock.writeLock().lock();
+		try {
+			final Location location = index.get(key);
+			if (location == null) {
+				return;
+			}
+			final ByteBuffer buffer = ByteBuffer.allocate(8);
+			buffer.putLong(0, freshUntil);
+			writeFully(location.segment.channel, buffer, location.offset + FRESH_UNTIL_OFFSET);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Reads the body at location onto the heap
+	 */
+	byte[] readBody(final Location location) throws IOException {
+		final Location current = pin(location);
+		try {
+			final byte[] body = new byte[current.bodyLength];
+			current.segment.read(current.bodyOffset, ByteBuffer.wrap(body));
+			return body;
+		} finally {
+			current.segment.unpin();
+		}
+	}
+
+	/**
+	 * Writes the body at location to target with
+	 * {@link FileChannel#transferTo}, which lets the operating system send
+	 * it straight from the page cache when target is a socket or file
+	 */
+	void transferBody(final Location location, final WritableByteChannel target) throws IOException {
+		final Location current = pin(location);
+		try {
+			long position = current.bodyOffset;
+			long remaining = current.bodyLength;
+			while (remaining > 0) {
+				final long transferred = current.segment.channel.transferTo(position, remaining, target);
+				if (transferred <= 0) {
+					throw new IOException("Cannot transfer body of " + current.key);
+				}
+				position += transferred;
+				remaining -= transferred;
+			}
+		} finally {
+			current.segment.unpin();
+		}
+	}
+
+	// Finds where the record at location is now and pins its segment, so
+	// that the body can be read without holding the lock.  The caller
+	// must unpin the segment of the returned location.
+	private Location pin(final Location location) throws IOException {
+		lock.readLock().lock();
+		try {
+			final Location current = resolve(location);
+			current.segment.pin();
+			return current;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	// Returns where the record at location is now, which differs only if
+	// compaction has moved it
+	private Location resolve(final Location location) throws IOException {
+		if (!location.segment.deleted) {
+			return location;
+		}
+		final Location current = index.get(location.key);
+		if (current == null || current.serial != location.serial) {
+			throw new IOException("Record for " + location.key + " no longer stored");
+		}
+		return current;
+	}
+
+	/**
+	 * Compacts every segment, other than the one being written, whose
+	 * live records take less than half of it
+	 */
+	public void compact() throws IOException {
+		final List<Segment> candidates = new ArrayList<Segment>();
+		lock.readLock().lock();
+		try {
+			for (final Segment segment: segments.values()) {
+				if (segment != active && segment.liveBytes < COMPACT_LIVE_FRACTION * segment.size) {
+					candidates.add(segment);
+				}
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		for (final Segment segment: candidates) {
+			compact(segment);
+		}
+	}
+
+	// Copies the live records of segment to the active segment and deletes
+	// it.  The write lock is taken for one record at a time, so that
+	// readers are not held up for the whole segment.
+	private void compact(final Segment segment) throws IOException {
+		long offset = 0;
+		while (true) {
+			lock.writeLock().lock();
+			try {
+				if (segment.deleted) {
+					return;
+				}
+				if (offset >= segment.size) {
+					deleteSegment(segment);
+					return;
+				}
+				final Record record = readRecord(segment, offset);
+				if (record == null) {
+					throw new IOException("Corrupt record in " + segment.file + " at " + offset);
+				}
+				if (isLive(record, segment, offset)) {
+					final byte[] bytes = new byte[record.length];
+					segment.view(offset, record.length).get(bytes);
+					final Segment target = append(bytes);
+					if (record.type == TYPE_PUT) {
+						replace(record.key, new Location(record.key, target, target.size - bytes.length, record.length, record.serial, record.bodyLength));
+					}
+				}
+				offset += record.length;
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+	}
+
+	// Tells whether the record at offset in segment must be kept
+	private boolean isLive(final Record record, final Segment segment, final long offset) {
+		final Location location = index.get(record.key);
+		if (record.type == TYPE_PUT) {
+			return location != null && location.segment == segment && location.offset == offset;
+		}
+		// A removal record still hides any older record for the same key
+		// in an older segment, unless the key has been stored again since
+		return location == null && segments.firstKey() < segment.id;
+	}
+
+	/**
+	 * Runs {@link #compact} in a background thread every periodMillis
+	 * milliseconds, until {@link #close} is called
+	 */
+	public synchronized void startCompaction(final long periodMillis) {
+		if (compactor != null) {
+			return;
+		}
+		compactor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(final Runnable r) {
+				final Thread thread = new Thread(r, "DiskTileStore compaction");
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		compactor.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				try {
+					compact();
+				} catch (IOException e) {
+					logger.error(e);
+				}
+			}
+		}, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stops compaction and closes the segment files.  The store may not be
+	 * used afterwards.
+	 */
+	public void close() throws IOException {
+		synchronized (this) {
+			if (compactor != null) {
+				compactor.shutdownNow();
+				compactor = null;
+			}
+		}
+		lock.writeLock().lock();
+		try {
+			for (final Segment segment: segments.values()) {
+				segment.close();
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	public int getEntryCount() {
+		lock.readLock().lock();
+		try {
+			return index.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the number of bytes taken by all the segments, including
+	 * dead records not yet compacted
+	 */
+	public long getByteCount() {
+		lock.readLock().lock();
+		try {
+			return totalBytes;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	public int getSegmentCount() {
+		lock.readLock().lock();
+		try {
+			return segments.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	// Points key at location, or removes it if location is null, keeping
+	// the live byte counts of the segments up to date
+	private void replace(final String key, final Location location) {
+		final Location old = location != null ? index.put(key, location) : index.remove(key);
+		if (old != null) {
+			old.segment.liveBytes -= old.length;
+		}
+		if (location != null) {
+			location.segment.liveBytes += location.length;
+		}
+	}
+
+	// Appends record to the active segment, starting a new one first if
+	// it would not fit, and returns the segment written to
+	private Segment append(final byte[] record) throws IOException {
+		final Segment segment = reserve(record.length);
+		writeFully(segment.channel, ByteBuffer.wrap(record), segment.size);
+		grow(segment, record.length);
+		return segment;
+	}
+
+	// Returns the segment to write a record of length bytes at the end
+	// of, sealing the active segment and starting a new one if the
+	// record would not fit
+	private Segment reserve(final long length) throws IOException {
+		if (active.size > 0 && active.size + length > segmentBytes) {
+			active.seal();
+			active = createSegment(active.id + 1);
+		}
+		return active;
+	}
+
+	// Counts length bytes just written at the end of segment
+	private void grow(final Segment segment, final long length) {
+		segment.size += length;
+		totalBytes += length;
+	}
+
+	private static void writeFully(final FileChannel channel, final ByteBuffer buffer, final long position) throws IOException {
+		long offset = position;
+		while (buffer.hasRemaining()) {
+			offset += channel.write(buffer, offset);
+		}
+	}
+
+	// Deletes the oldest segments until the store fits in maxBytes
+	private void evictOldSegments() throws IOException {
+		while (totalBytes > maxBytes && segments.size() > 1) {
+			final Segment oldest = segments.firstEntry().getValue();
+			final Iterator<Location> it = index.values().iterator();
+			while (it.hasNext()) {
+				if (it.next().segment == oldest) {
+					it.remove();
+				}
+			}
+			deleteSegment(oldest);
+		}
+	}
+
+	private Segment createSegment(final int id) throws IOException {
+		final Segment segment = new Segment(id, new File(directory, String.format("%s%08d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX)));
+		segments.put(id, segment);
+		return segment;
+	}
+
+	// Removes segment from the store.  The file is deleted once no read
+	// has it pinned, but stops counting against maxBytes at once.
+	private void deleteSegment(final Segment segment) throws IOException {
+		segments.remove(segment.id);
+		totalBytes -= segment.size;
+		segment.retire();
+	}
+
+	// Encodes everything in a put record up to the body, leaving the
+	// length and serial number to be filled in later
+	private static byte[] encodePutHead(final String key, final CachedResponse response) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(bytes);
+		writeFixed(out, TYPE_PUT, response.getFreshUntil());
+		writeString(out, key);
+		out.writeInt(response.getStatus());
+		out.writeInt(response.getHeaders().size());
+		for (final CachedResponse.HeaderField header: response.getHeaders()) {
+			writeString(out, header.getName());
+			writeString(out, header.getValue());
+		}
+		out.writeInt((int) response.getBodyLength());
+		return bytes.toByteArray();
+	}
+
+	private static byte[] encodeRemove(final String key) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		final DataOutputStream out = new DataOutputStream(bytes);
+		writeFixed(out, TYPE_REMOVE, 0);
+		writeString(out, key);
+		return finish(bytes);
+	}
+
+	// Writes the fixed fields, leaving the length and serial number to be
+	// filled in later
+	private static void writeFixed(final DataOutputStream out, final byte type, final long freshUntil) throws IOException {
+		out.writeInt(MAGIC);
+		out.writeInt(0);
+		out.writeByte(type);
+		out.writeLong(freshUntil);
+		out.writeLong(0);
+	}
+
+	private static void writeString(final DataOutputStream out, final String value) throws IOException {
+		final byte[] bytes = value.getBytes(UTF8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	private static byte[] finish(final ByteArrayOutputStream bytes) {
+		final byte[] record = bytes.toByteArray();
+		ByteBuffer.wrap(record).putInt(4, record.length);
+		return record;
+	}
+
+	// Reads the record at offset in segment, or returns null if there is
+	// no whole, well formed record there
+	private static Record readRecord(final Segment segment, final long offset) throws IOException {
+		if (segment.size - offset < FIXED_BYTES) {
+			return null;
+		}
+		final ByteBuffer fixed = segment.view(offset, FIXED_BYTES);
+		final int length = fixed.getInt(4);
+		if (fixed.getInt(0) != MAGIC || length < FIXED_BYTES || length > segment.size - offset) {
+			return null;
+		}
+		// Only the headers are needed, so try reading no further than they
+		// usually reach before reading the whole record
+		if (length > HEAD_READ_BYTES) {
+			try {
+				return parseRecord(segment.view(offset, HEAD_READ_BYTES), length);
+			} catch (BufferUnderflowException e) {
+				// The headers are longer than usual
+			}
+		}
+		try {
+			return parseRecord(segment.view(offset, length), length);
+		} catch (BufferUnderflowException e) {
+			return null;
+		}
+	}
+
+	// Parses the record of length bytes that buffer starts with, which
+	// need not hold the body, or returns null if it is not well formed.
+	// Throws BufferUnderflowException if buffer ends before the body.
+	private static Record parseRecord(final ByteBuffer buffer, final int length) {
+		final Record record = new Record();
+		buffer.position(8);
+		record.length = length;
+		record.type = buffer.get();
+		record.freshUntil = buffer.getLong();
+		record.serial = buffer.getLong();
+		record.key = readString(buffer);
+		if (record.type == TYPE_PUT) {
+			record.status = buffer.getInt();
+			final int headerCount = buffer.getInt();
+			record.headers = new ArrayList<CachedResponse.HeaderField>();
+			for (int i = 0; i < headerCount; i++) {
+				record.headers.add(new CachedResponse.HeaderField(readString(buffer), readString(buffer)));
+			}
+			record.bodyLength = buffer.getInt();
+			record.bodyOffset = buffer.position();
+			if (record.bodyLength < 0 || record.bodyOffset + record.bodyLength != length) {
+				return null;
+			}
+		} else if (record.type != TYPE_REMOVE) {
+			return null;
+		}
+		return record;
+	}
+
+	private static String readString(final ByteBuffer buffer) {
+		final int length = buffer.getInt();
+		if (length < 0 || length > buffer.remaining()) {
+			throw new BufferUnderflowException();
+		}
+		final byte[] bytes = new byte[length];
+		buffer.get(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	/**
+	 * Where the latest record for a key is stored
+	 */
+	static final class Location {
+
+		private final String key;
+		private final Segment segment;
+		private final long offset;
+		private final int length;
+		private final long serial;
+		private final long bodyOffset;
+		private final int bodyLength;
+
+		// The body is always at the end of the record
+		private Location(final String key, final Segment segment, final long offset, final int length, final long serial, final int bodyLength) {
+			this.key = key;
+			this.segment = segment;
+			this.offset = offset;
+			this.length = length;
+			this.serial = serial;
+			this.bodyOffset = offset + length - bodyLength;
+			this.bodyLength = bodyLength;
+		}
+
+		int getBodyLength() {
+			return bodyLength;
+		}
+	}
+
+	private static final class Record {
+		private int length;
+		private byte type;
+		private long freshUntil;
+		private long serial;
+		private String key;
+		private int status;
+		private List<CachedResponse.HeaderField> headers;
+		private int bodyOffset;
+		private int bodyLength;
+	}
+
+	private static final class Segment {
+
+		private final int id;
+		private final File file;
+		private final FileChannel channel;
+		private long size;
+		private long liveBytes = 0;
+
+		// Set under the write lock of the store, when the segment is
+		// removed from it
+		private boolean deleted = false;
+
+		// The rest is guarded by the segment itself.  A sealed segment no
+		// longer grows, so it is mapped once, on its first read.
+		private boolean sealed = false;
+		private MappedByteBuffer map;
+		private int pins = 0;
+		private boolean closed = false;
+
+		private Segment(final int id, final File file) throws IOException {
+			this.id = id;
+			this.file = file;
+			this.channel = new RandomAccessFile(file, "rw").getChannel();
+			this.size = channel.size();
+		}
+
+		private synchronized void seal() {
+			sealed = true;
+		}
+
+		private synchronized void pin() {
+			pins++;
+		}
+
+		private synchronized void unpin() throws IOException {
+			pins--;
+			if (pins == 0 && deleted) {
+				destroy();
+			}
+		}
+
+		// Marks the segment deleted, and deletes it now unless it is pinned
+		private synchronized void retire() throws IOException {
+			deleted = true;
+			if (pins == 0) {
+				destroy();
+			}
+		}
+
+		private synchronized void close() throws IOException {
+			closed = true;
+			map = null;
+			channel.close();
+		}
+
+		private void destroy() throws IOException {
+			close();
+			if (!file.delete()) {
+				logger.warn("Cannot delete " + file);
+			}
+		}
+
+		// Returns the mapping of the segment, or null if it is not sealed
+		private synchronized MappedByteBuffer mapping() throws IOException {
+			if (closed) {
+				throw new IOException(file + " is closed");
+			}
+			if (sealed && map == null) {
+				map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+			}
+			return map;
+		}
+
+		// Returns a buffer over length bytes at offset, which is a slice of
+		// the mapping if the segment is sealed, and a copy otherwise
+		private ByteBuffer view(final long offset, final int length) throws IOException {
+			final MappedByteBuffer mapped = mapping();
+			if (mapped == null) {
+				final ByteBuffer buffer = ByteBuffer.allocate(length);
+				read(offset, buffer);
+				buffer.flip();
+				return buffer;
+			}
+			final ByteBuffer buffer = mapped.duplicate();
+			buffer.limit((int) (offset + length));
+			buffer.position((int) offset);
+			return buffer.slice();
+		}
+
+		// Fills target with the bytes at offset
+		private void read(final long offset, final ByteBuffer target) throws IOException {
+			final MappedByteBuffer mapped = mapping();
+			if (mapped != null) {
+				final ByteBuffer source = mapped.duplicate();
+				source.limit((int) (offset + target.remaining()));
+				source.position((int) offset);
+				target.put(source);
+				return;
+			}
+			long position = offset;
+			while (target.hasRemaining()) {
+				final int read = channel.read(target, position);
+				if (read < 0) {
+					throw new EOFException("Unexpected end of " + file);
+				}
+				position += read;
+			}
+		}
+	}
+}
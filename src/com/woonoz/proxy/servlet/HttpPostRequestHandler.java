@@ -21,7 +21,6 @@
 package com.woonoz.proxy.servlet;
 
 import java.io.IOException;
-import java.io.UnsupportedEncodingException;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
@@ -29,32 +28,26 @@ import java.net.URL;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 
-import org.apache.commons.fileupload.FileItemIterator;
-import org.apache.commons.fileupload.FileItemStream;
-import org.apache.commons.fileupload.FileUploadException;
-import org.apache.commons.fileupload.disk.DiskFileItemFactory;
-import org.apache.commons.fileupload.servlet.ServletFileUpload;
-import org.apache.commons.io.IOUtils;
-import org.apache.http.HttpEntity;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpRequestBase;
-import org.apache.http.entity.BufferedHttpEntity;
 import org.apache.http.entity.InputStreamEntity;
-import org.apache.http.entity.mime.MultipartEntity;
-import org.apache.http.entity.mime.content.ContentBody;
-import org.apache.http.entity.mime.content.InputStreamBody;
-import org.apache.http.entity.mime.content.StringBody;
 
+/**
+ * Relays a POST request, streaming its body to the upstream server as
+ * it arrives.  Multipart bodies are passed through as they are, with
+ * their original <code>Content-Type</code> and boundary.
+ */
 public class HttpPostRequestHandler extends HttpRequestHandler {
 
+	private StreamingRequestBody body;
+
 	public HttpPostRequestHandler(HttpServletRequest request, HttpServletResponse response, URL targetServer, HttpClient client) {
 		super(request, response, targetServer, client);
-		System.out.print("yoyoyo");
 	}
 
 	@Override
-	protected HttpRequestBase createHttpCommand(URI targetUri, ClientHeadersHandler clientHeadersHandler) throws InvalidCookieException, URISyntaxException, FileUploadException, IOException {
+	protected HttpRequestBase createHttpCommand(URI targetUri, ClientHeadersHandler clientHeadersHandler) throws InvalidCookieException, URISyntaxException, IOException {
 		HttpPost httpPost = new HttpPost(targetUri);
 		copyHeaders(getRequest(), httpPost, clientHeadersHandler);
 		copyData(getRequest(), httpPost);
@@ -66,56 +59,18 @@ public class HttpPostRequestHandler extends HttpRequestHandler {
 		return new PostClientHeadersHandler(urlRewriter);
 	}
 	
-	private void copyData(HttpServletRequest request, HttpPost httpPost) throws FileUploadException, IOException {
-		HttpEntity entity = createHttpEntity(request, httpPost);
-		httpPost.setEntity(entity);
-	}
-
-	private HttpEntity createHttpEntity(HttpServletRequest request, HttpPost httpPost) throws FileUploadException, IOException {
-		if (ServletFileUpload.isMultipartContent(request)) {
-			return createMultipartEntity(request, httpPost);
-		} else {
-			return new BufferedHttpEntity(new InputStreamEntity(request.getInputStream(), request.getContentLength()));
-		}
-	}
-
-	private HttpEntity createMultipartEntity(HttpServletRequest request, HttpPost httpPost) throws FileUploadException, IOException {
-		DiskFileItemFactory diskFileItemFactory = new DiskFileItemFactory();
-		ServletFileUpload servletFileUpload = new ServletFileUpload(diskFileItemFactory);
-		MultipartEntity multipartEntity = new MultipartEntity();
-		FileItemIterator iterator = servletFileUpload.getItemIterator(request);
-		while (iterator.hasNext()) {
-			FileItemStream fileItem = iterator.next();
-			final String partName = fileItem.getFieldName();
-			if (fileItem.isFormField()) {
-				multipartEntity.addPart(partName, buildStringBody(fileItem));
-			} else {
-				multipartEntity.addPart(partName, buildContentBodyFromFileItem(fileItem));
-			}
+	private void copyData(HttpServletRequest request, HttpPost httpPost) throws IOException {
+		body = StreamingRequestBody.open(request.getInputStream(), request.getContentLength(), null);
+		httpPost.setEntity(new InputStreamEntity(body.getStream(), body.getLength()));
+		if (getRouteMetrics() != null) {
+			getRouteMetrics().recordBytesIn(body.getLength());
 		}
-		return multipartEntity;
-	}
-
-	private StringBody buildStringBody(FileItemStream fileItem)	throws UnsupportedEncodingException, IOException {
-		return new StringBody(IOUtils.toString(fileItem.openStream()));
-	}
-	
-	private ContentBody buildContentBodyFromFileItem(FileItemStream fileItem) throws IOException {
-		final String partName = fileItem.getFieldName();
-		final String contentType = getContentTypeForFileItem(fileItem);
-		return new InputStreamBody(BufferOnCreateInputStream.create(fileItem.openStream()), contentType, partName);
 	}
 
-	private String getContentTypeForFileItem(FileItemStream fileItem) {
-		final String contentType = fileItem.getContentType();
-		if (contentType != null) {
-			return contentType;
-		} else {
-			if (fileItem.isFormField()) {
-				return "text/plain";
-			} else {
-				return "application/octet-stream";
-			}
+	@Override
+	protected void cleanUp() {
+		if (body != null) {
+			body.release();
 		}
 	}
 }
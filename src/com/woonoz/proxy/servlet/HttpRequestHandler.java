@@ -26,6 +26,7 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
 import java.util.Enumeration;
+import java.util.zip.GZIPOutputStream;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -39,6 +40,12 @@ import org.apache.http.HttpResponse;
 import org.apache.http.client.HttpClient;
 import org.apache.http.client.methods.HttpRequestBase;
 
+/**
+ * Relays one client request to the upstream server and its response back
+ * to the client, in three stages: {@link #buildUpstreamRequest},
+ * {@link #executeUpstream}, and {@link #relayResponse}.  Subclasses may
+ * replace any stage; {@link #performHttpRequest} runs the last two.
+ */
 public abstract class HttpRequestHandler {
 
 	private static final Log logger = LogFactory.getLog("com.woonoz.proxy.servlet");
@@ -46,14 +53,29 @@ public abstract class HttpRequestHandler {
 	private final HttpServletResponse response;
 	private final URL targetServer;
 	private final HttpClient client;
+	private RouteMetrics routeMetrics;
 	
 	public HttpRequestHandler(HttpServletRequest request, HttpServletResponse response, URL targetServer, HttpClient client) {
-		System.out.print("HttpRequestHandler enter\n");
 		this.request = request;
 		this.response = response;
 		this.targetServer = targetServer;
 		this.client = client;
-		System.out.print("HttpRequestHandler exit\n");
+	}
+	
+	/**
+	 * Sets the metrics that record the upstream request and the body of
+	 * the client request
+	 */
+	public void setRouteMetrics(final RouteMetrics routeMetrics) {
+		this.routeMetrics = routeMetrics;
+	}
+	
+	/**
+	 * Returns the metrics given to {@link #setRouteMetrics}, or
+	 * <code>null</code> if there are none
+	 */
+	protected RouteMetrics getRouteMetrics() {
+		return routeMetrics;
 	}
 	
 	protected abstract HttpRequestBase createHttpCommand(URI targetUri, ClientHeadersHandler clientHeadersHandler)
@@ -64,16 +86,12 @@ public abstract class HttpRequestHandler {
 	}
 	
 	public void execute() {
-		System.out.print("execute enter\n");
 		UrlRewriter urlRewriter = new UrlRewriterImpl(request, targetServer);
 		ClientHeadersHandler clientHeadersHandler = createClientHeadersHandler(urlRewriter);
 		ServerHeadersHandler serverHeadersHandler = new ServerHeadersHandler(urlRewriter);
 		HttpRequestBase httpCommand = null;
 		try {
-			System.out.print("about to rewrite uri " + request.getRequestURL().toString() + "\n");
-			final URI targetUri = urlRewriter.rewriteUri(new URI(request.getRequestURL().toString()));
-			System.out.print("rewrote uri\n");
-			httpCommand = createHttpCommand(targetUri, clientHeadersHandler);
+			httpCommand = buildUpstreamRequest(urlRewriter, clientHeadersHandler);
 			performHttpRequest(httpCommand, response, serverHeadersHandler);
 		} catch (URISyntaxException e) {
 			handleException(httpCommand, e);
@@ -86,14 +104,30 @@ public abstract class HttpRequestHandler {
 		} catch (RuntimeException e ) {
 			handleException(httpCommand, e);
 		} finally {
-			
+			cleanUp();
 			try {
 				response.getOutputStream().flush();
 			} catch (IOException e) {
 				logger.error(e);
 			}
 		}
-		System.out.print("execute exit\n");
+	}
+
+	/**
+	 * Builds the request to send to the upstream server from the request
+	 * of the client
+	 */
+	protected HttpRequestBase buildUpstreamRequest(final UrlRewriter urlRewriter, final ClientHeadersHandler clientHeadersHandler)
+		throws InvalidCookieException, URISyntaxException, FileUploadException, IOException {
+		final URI targetUri = urlRewriter.rewriteUri(new URI(request.getRequestURL().toString()));
+		return createHttpCommand(targetUri, clientHeadersHandler);
+	}
+
+	/**
+	 * Releases anything held for the upstream request, once it is done
+	 * or has failed
+	 */
+	protected void cleanUp() {
 	}
 
 	private void handleException(HttpRequestBase httpCommand, Exception e) {
@@ -135,17 +169,68 @@ public abstract class HttpRequestHandler {
         }
 	}
 
-	private void performHttpRequest(HttpRequestBase requestToServer, HttpServletResponse responseToClient, ServerHeadersHandler serverHeadersHandler) throws IOException, URISyntaxException {
-		HttpResponse responseFromServer = client.execute(requestToServer);
+	protected void performHttpRequest(HttpRequestBase requestToServer, HttpServletResponse responseToClient, ServerHeadersHandler serverHeadersHandler) throws IOException, URISyntaxException {
+		relayResponse(executeUpstream(requestToServer), responseToClient, serverHeadersHandler);
+	}
+
+	/**
+	 * Sends requestToServer to the upstream server and waits for the
+	 * headers of its response
+	 */
+	protected HttpResponse executeUpstream(final HttpRequestBase requestToServer) throws IOException {
+		if (routeMetrics == null) {
+			return client.execute(requestToServer);
+		}
+		final long start = System.nanoTime();
+		try {
+			return client.execute(requestToServer);
+		} catch (IOException e) {
+			routeMetrics.recordUpstreamError();
+			throw e;
+		} finally {
+			routeMetrics.recordUpstreamLatency(System.nanoTime() - start);
+		}
+	}
+
+	/**
+	 * Copies the status, headers, and body of responseFromServer to the
+	 * client, gzipping the body if the client accepts gzip and the
+	 * upstream server sent a textual body without encoding it, in which
+	 * case the ETag is marked as that of a gzipped body
+	 */
+	protected void relayResponse(final HttpResponse responseFromServer, final HttpServletResponse responseToClient, final ServerHeadersHandler serverHeadersHandler) throws IOException, URISyntaxException {
 		responseToClient.setStatus(responseFromServer.getStatusLine().getStatusCode());
 		copyHeaders(responseFromServer, responseToClient, serverHeadersHandler);
 		HttpEntity entity = responseFromServer.getEntity();
 		if (entity != null) {
+			final boolean compress = ResponseCompression.shouldCompress(request.getHeader("Accept-Encoding"),
+				getHeaderValue(responseFromServer, "Content-Type"),
+				getHeaderValue(responseFromServer, "Content-Encoding"),
+				entity.getContentLength());
 			try {
-				entity.writeTo(responseToClient.getOutputStream());
+				if (compress) {
+					responseToClient.addHeader("Content-Encoding", ResponseCompression.GZIP);
+					responseToClient.addHeader("Vary", "Accept-Encoding");
+					final String etag = getHeaderValue(responseFromServer, "ETag");
+					if (etag != null) {
+						// The gzipped body must not share a strong ETag
+						// with the identity body
+						responseToClient.setHeader("ETag", ResponseCompression.toGzipEtag(etag));
+					}
+					final GZIPOutputStream out = new GZIPOutputStream(responseToClient.getOutputStream(), 8192);
+					entity.writeTo(out);
+					out.finish();
+				} else {
+					entity.writeTo(responseToClient.getOutputStream());
+				}
 			} finally {
 				entity.consumeContent();
 			}
 		}
 	}
+
+	private static String getHeaderValue(final HttpResponse response, final String name) {
+		final Header header = response.getFirstHeader(name);
+		return header == null ? null : header.getValue();
+	}
 }
@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.woonoz.proxy.servlet;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of durations with fixed bucket bounds, which can be
+ * updated from many threads without locking
+ */
+public class LatencyHistogram {
+
+	/**
+	 * Bucket upper bounds, in seconds, from a millisecond to a minute
+	 */
+	public static final double[] DEFAULT_BOUNDS_SECONDS = {
+		0.001, 0.0025, 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60
+	};
+
+	private final double[] boundsSeconds;
+	private final long[] boundsNanos;
+
+	// counts[i] holds the durations in bucket i, not cumulatively; the
+	// last holds the durations above every bound
+	private final AtomicLongArray counts;
+	private final AtomicLong sumNanos = new AtomicLong();
+
+	public LatencyHistogram() {
+		this(DEFAULT_BOUNDS_SECONDS);
+	}
+
+	/**
+	 * @param boundsSeconds
+	 * 	The upper bounds of the buckets, in seconds, in increasing order
+	 * @throws IllegalArgumentException
+	 * 	If the bounds are not in increasing order
+	 */
+	public LatencyHistogram(final double[] boundsSeconds) {
+		this.boundsSeconds = boundsSeconds.clone();
+		this.boundsNanos = new long[boundsSeconds.length];
+		for (int i = 0; i < boundsSeconds.length; i++) {
+			if (i > 0 && boundsSeconds[i] <= boundsSeconds[i - 1]) {
+				throw new IllegalArgumentException("Bounds not in increasing order");
+			}
+			boundsNanos[i] = (long) (boundsSeconds[i] * 1e9);
+		}
+		this.counts = new AtomicLongArray(boundsSeconds.length + 1);
+	}
+
+	public void record(final long nanos) {
+		int bucket = 0;
+		while (bucket < boundsNanos.length && nanos > boundsNanos[bucket]) {
+			bucket++;
+		}
+		counts.incrementAndGet(bucket);
+		sumNanos.addAndGet(nanos);
+	}
+
+	public int getBucketCount() {
+		return boundsSeconds.length;
+	}
+
+	public double getBoundSeconds(final int bucket) {
+		return boundsSeconds[bucket];
+	}
+
+	/**
+	 * Returns the number of durations no longer than the bound of bucket
+	 */
+	public long getCumulativeCount(final int bucket) {
+		long count = 0;
+		for (int i = 0; i <= bucket; i++) {
+			count += counts.get(i);
+		}
+		return count;
+	}
+
+	public long getCount() {
+		return getCumulativeCount(boundsSeconds.length);
+	}
+
+	public double getSumSeconds() {
+		return sumNanos.get() / 1e9;
+	}
+}
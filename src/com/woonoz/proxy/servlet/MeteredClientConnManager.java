@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.woonoz.proxy.servlet;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.conn.ClientConnectionRequest;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.ManagedClientConnection;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.HttpParams;
+
+/**
+ * A connection pool that records how long each request waits to lease a
+ * connection to the upstream server
+ */
+class MeteredClientConnManager extends ThreadSafeClientConnManager {
+
+	private final LatencyHistogram leaseWait;
+
+	public MeteredClientConnManager(final HttpParams params, final SchemeRegistry schemeRegistry, final LatencyHistogram leaseWait) {
+		super(params, schemeRegistry);
+		this.leaseWait = leaseWait;
+	}
+
+	@Override
+	public ClientConnectionRequest requestConnection(final HttpRoute route, final Object state) {
+		final ClientConnectionRequest request = super.requestConnection(route, state);
+		return new ClientConnectionRequest() {
+			public ManagedClientConnection getConnection(final long timeout, final TimeUnit tunit) throws InterruptedException, ConnectionPoolTimeoutException {
+				final long start = System.nanoTime();
+				try {
+					return request.getConnection(timeout, tunit);
+				} finally {
+					leaseWait.record(System.nanoTime() - start);
+				}
+			}
+
+			public void abortRequest() {
+				request.abortRequest();
+			}
+		};
+	}
+}
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.woonoz.proxy.servlet;
+
+import java.io.IOException;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+/**
+ * Wraps the response to a client to record its status and the number of
+ * body bytes written to it, for {@link RouteMetrics}
+ */
+class MeteredResponse extends HttpServletResponseWrapper {
+
+	private int status = SC_OK;
+	private CountingOutputStream outputStream;
+
+	public MeteredResponse(final HttpServletResponse response) {
+		super(response);
+	}
+
+	@Override
+	public void setStatus(final int sc) {
+		status = sc;
+		super.setStatus(sc);
+	}
+
+	@Override
+	@SuppressWarnings("deprecation")
+	public void setStatus(final int sc, final String sm) {
+		status = sc;
+		super.setStatus(sc, sm);
+	}
+
+	@Override
+	public void sendError(final int sc) throws IOException {
+		status = sc;
+		super.sendError(sc);
+	}
+
+	@Override
+	public void sendError(final int sc, final String msg) throws IOException {
+		status = sc;
+		super.sendError(sc, msg);
+	}
+
+	@Override
+	public void sendRedirect(final String location) throws IOException {
+		status = SC_MOVED_TEMPORARILY;
+		super.sendRedirect(location);
+	}
+
+	@Override
+	public synchronized ServletOutputStream getOutputStream() throws IOException {
+		if (outputStream == null) {
+			outputStream = new CountingOutputStream(super.getOutputStream());
+		}
+		return outputStream;
+	}
+
+	public int getStatus() {
+		return status;
+	}
+
+	public synchronized long getByteCount() {
+		return outputStream != null ? outputStream.count : 0;
+	}
+
+	private static class CountingOutputStream extends ServletOutputStream {
+
+		private final ServletOutputStream out;
+		private volatile long count = 0;
+
+		public CountingOutputStream(final ServletOutputStream out) {
+			this.out = out;
+		}
+
+		@Override
+		public void write(final int b) throws IOException {
+			out.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(final byte[] b, final int off, final int len) throws IOException {
+			out.write(b, off, len);
+			count += len;
+		}
+
+		@Override
+		public void flush() throws IOException {
+			out.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			out.close();
+		}
+	}
+}
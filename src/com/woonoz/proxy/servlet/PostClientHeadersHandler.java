@@ -30,18 +30,14 @@ class PostClientHeadersHandler extends ClientHeadersHandler {
 	}
 	
 	private enum HeaderToSubstitute implements HeadersToSubstitute {
-		ContentType {
+		TransferEncoding {
 			public String handleValue(String headerValue, UrlRewriter urlRewriter) throws URISyntaxException {
-				if (headerValue.startsWith("multipart")) {
-					return null;
-				} else {
-					return headerValue;
-				}
-				
+				// The entity sent upstream sets its own length or encoding
+				return null;
 			}
 			
 			public String getHeader() {
-				return "content-type";
+				return "transfer-encoding";
 			}
 		};
 	}
@@ -0,0 +1,220 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.woonoz.proxy.servlet;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The metrics of a {@link ProxyServlet}: counters, upstream latencies, and
+ * byte counts for each route, the time requests wait to lease an upstream
+ * connection, and the statistics of the response cache and of the
+ * upstream dispatcher, if there are any.
+ *
+ * <p>Requests are assigned to routes by the prefix of their path.
+ * {@link #writeText} writes everything in the Prometheus text exposition
+ * format, which {@link ProxyMetricsServlet} serves to scrapers.</p>
+ */
+public class ProxyMetrics {
+
+	/**
+	 * The servlet context attribute under which a {@link ProxyServlet}
+	 * publishes its metrics
+	 */
+	public static final String CONTEXT_ATTRIBUTE = ProxyMetrics.class.getName();
+
+	/**
+	 * The route of requests matching no other route
+	 */
+	public static final String OTHER_ROUTE = "other";
+
+	private final Map<String, RouteMetrics> routes = new LinkedHashMap<String, RouteMetrics>();
+	private final List<Prefix> prefixes = new CopyOnWriteArrayList<Prefix>();
+	private final RouteMetrics otherRoute = new RouteMetrics(OTHER_ROUTE);
+
+	private final LatencyHistogram connectionLeaseWait = new LatencyHistogram();
+
+	private volatile TileResponseCache responseCache;
+	private volatile UpstreamDispatcher dispatcher;
+
+	/**
+	 * Sends requests whose path, relative to the context path, starts with
+	 * any of pathPrefixes to the route called name.  Routes should all be
+	 * added before requests are handled.
+	 */
+	public synchronized void addRoute(final String name, final String... pathPrefixes) {
+		RouteMetrics route = routes.get(name);
+		if (route == null) {
+			route = new RouteMetrics(name);
+			routes.put(name, route);
+		}
+		for (final String prefix: pathPrefixes) {
+			prefixes.add(new Prefix(prefix, route));
+		}
+	}
+
+	/**
+	 * Returns the route for path, relative to the context path
+	 */
+	public RouteMetrics getRoute(final String path) {
+		for (final Prefix prefix: prefixes) {
+			if (path.startsWith(prefix.prefix)) {
+				return prefix.route;
+			}
+		}
+		return otherRoute;
+	}
+
+	/**
+	 * Returns the histogram of the time spent waiting for a connection to
+	 * the upstream server from the pool
+	 */
+	public LatencyHistogram getConnectionLeaseWait() {
+		return connectionLeaseWait;
+	}
+
+	public void setResponseCache(final TileResponseCache responseCache) {
+		this.responseCache = responseCache;
+	}
+
+	public void setDispatcher(final UpstreamDispatcher dispatcher) {
+		this.dispatcher = dispatcher;
+	}
+
+	/**
+	 * Writes every metric to out in the Prometheus text format, version
+	 * 0.0.4
+	 */
+	public void writeText(final Writer out) throws IOException {
+		final List<RouteMetrics> allRoutes;
+		synchronized (this) {
+			allRoutes = new ArrayList<RouteMetrics>(routes.values());
+		}
+		allRoutes.add(otherRoute);
+
+		writeHeader(out, "proxy_requests_total", "counter", "Requests handled, by route");
+		for (final RouteMetrics route: allRoutes) {
+			writeSample(out, "proxy_requests_total", routeLabel(route), route.getRequestCount());
+		}
+		writeHeader(out, "proxy_responses_total", "counter", "Responses sent, by route and status");
+		for (final RouteMetrics route: allRoutes) {
+			for (final Map.Entry<Integer, Long> status: route.getStatusCounts().entrySet()) {
+				writeSample(out, "proxy_responses_total", routeLabel(route) + ",status=\"" + status.getKey() + "\"", status.getValue());
+			}
+		}
+		writeHeader(out, "proxy_upstream_errors_total", "counter", "Upstream requests that failed without a response");
+		for (final RouteMetrics route: allRoutes) {
+			writeSample(out, "proxy_upstream_errors_total", routeLabel(route), route.getUpstreamErrorCount());
+		}
+		writeHeader(out, "proxy_request_bytes_total", "counter", "Request body bytes received from clients");
+		for (final RouteMetrics route: allRoutes) {
+			writeSample(out, "proxy_request_bytes_total", routeLabel(route), route.getBytesIn());
+		}
+		writeHeader(out, "proxy_response_bytes_total", "counter", "Response body bytes sent to clients");
+		for (final RouteMetrics route: allRoutes) {
+			writeSample(out, "proxy_response_bytes_total", routeLabel(route), route.getBytesOut());
+		}
+		writeHeader(out, "proxy_upstream_latency_seconds", "histogram", "Time from sending an upstream request to receiving its headers");
+		for (final RouteMetrics route: allRoutes) {
+			writeHistogram(out, "proxy_upstream_latency_seconds", routeLabel(route), route.getUpstreamLatency());
+		}
+		writeHeader(out, "proxy_connection_lease_wait_seconds", "histogram", "Time waiting for an upstream connection from the pool");
+		writeHistogram(out, "proxy_connection_lease_wait_seconds", null, connectionLeaseWait);
+
+		final TileResponseCache cache = responseCache;
+		if (cache != null) {
+			writeCounter(out, "proxy_cache_hits_total", "Responses sent from the memory cache", cache.getHitCount());
+			writeCounter(out, "proxy_cache_disk_hits_total", "Responses sent from the disk cache", cache.getDiskHitCount());
+			writeCounter(out, "proxy_cache_misses_total", "Responses fetched in full from upstream", cache.getMissCount());
+			writeCounter(out, "proxy_cache_revalidations_total", "Cached responses revalidated by upstream", cache.getRevalidationCount());
+			writeCounter(out, "proxy_cache_evictions_total", "Responses evicted from the memory cache", cache.getEvictionCount());
+			writeCounter(out, "proxy_cache_coalesced_total", "Upstream requests saved by sharing a request in flight", cache.getCoalescedCount());
+			writeGauge(out, "proxy_cache_entries", "Responses in the memory cache", cache.getEntryCount());
+			writeGauge(out, "proxy_cache_bytes", "Bytes taken by the memory cache", cache.getByteCount());
+			writeGauge(out, "proxy_cache_in_flight", "Upstream requests being made by the cache", cache.getInFlightCount());
+			final DiskTileStore diskTier = cache.getDiskTier();
+			if (diskTier != null) {
+				writeGauge(out, "proxy_cache_disk_entries", "Responses in the disk cache", diskTier.getEntryCount());
+				writeGauge(out, "proxy_cache_disk_bytes", "Bytes taken by the disk cache segments", diskTier.getByteCount());
+				writeGauge(out, "proxy_cache_disk_segments", "Segment files of the disk cache", diskTier.getSegmentCount());
+			}
+		}
+
+		final UpstreamDispatcher upstreamDispatcher = dispatcher;
+		if (upstreamDispatcher != null) {
+			writeGauge(out, "proxy_dispatcher_active", "Requests running on the upstream dispatcher", upstreamDispatcher.getActiveCount());
+			writeGauge(out, "proxy_dispatcher_queued", "Requests waiting for an upstream dispatcher thread", upstreamDispatcher.getQueuedCount());
+			writeCounter(out, "proxy_dispatcher_completed_total", "Requests finished by the upstream dispatcher", upstreamDispatcher.getCompletedCount());
+		}
+	}
+
+	private static String routeLabel(final RouteMetrics route) {
+		return "route=\"" + route.getName() + "\"";
+	}
+
+	private static void writeHeader(final Writer out, final String name, final String type, final String help) throws IOException {
+		out.write("# HELP " + name + " " + help + "\n");
+		out.write("# TYPE " + name + " " + type + "\n");
+	}
+
+	private static void writeSample(final Writer out, final String name, final String labels, final Object value) throws IOException {
+		out.write(name);
+		if (labels != null) {
+			out.write("{" + labels + "}");
+		}
+		out.write(" " + value + "\n");
+	}
+
+	private static void writeCounter(final Writer out, final String name, final String help, final long value) throws IOException {
+		writeHeader(out, name, "counter", help);
+		writeSample(out, name, null, value);
+	}
+
+	private static void writeGauge(final Writer out, final String name, final String help, final long value) throws IOException {
+		writeHeader(out, name, "gauge", help);
+		writeSample(out, name, null, value);
+	}
+
+	private static void writeHistogram(final Writer out, final String name, final String labels, final LatencyHistogram histogram) throws IOException {
+		final String prefix = labels != null ? labels + "," : "";
+		for (int i = 0; i < histogram.getBucketCount(); i++) {
+			writeSample(out, name + "_bucket", prefix + "le=\"" + histogram.getBoundSeconds(i) + "\"", histogram.getCumulativeCount(i));
+		}
+		final long count = histogram.getCount();
+		writeSample(out, name + "_bucket", prefix + "le=\"+Inf\"", count);
+		writeSample(out, name + "_sum", labels, histogram.getSumSeconds());
+		writeSample(out, name + "_count", labels, count);
+	}
+
+	private static final class Prefix {
+
+		private final String prefix;
+		private final RouteMetrics route;
+
+		private Prefix(final String prefix, final RouteMetrics route) {
+			this.prefix = prefix;
+			this.route = route;
+		}
+	}
+}
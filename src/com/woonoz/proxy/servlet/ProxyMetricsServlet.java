@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.woonoz.proxy.servlet;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * Serves the {@link ProxyMetrics} published by the {@link ProxyServlet}
+ * of the same web application, in the Prometheus text format.
+ *
+ * <p>Only clients on the same host are answered, unless the
+ * <code>allowRemote</code> init parameter is <code>true</code>.</p>
+ */
+public class ProxyMetricsServlet extends HttpServlet {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=UTF-8";
+
+	private boolean allowRemote;
+
+	@Override
+	public void init() throws ServletException {
+		allowRemote = Boolean.parseBoolean(getInitParameter("allowRemote"));
+	}
+
+	@Override
+	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
+		if (!allowRemote && !InetAddress.getByName(request.getRemoteAddr()).isLoopbackAddress()) {
+			response.sendError(HttpServletResponse.SC_FORBIDDEN);
+			return;
+		}
+		final ProxyMetrics metrics = (ProxyMetrics) getServletContext().getAttribute(ProxyMetrics.CONTEXT_ATTRIBUTE);
+		if (metrics == null) {
+			response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Proxy not started");
+			return;
+		}
+		response.setContentType(CONTENT_TYPE);
+		response.setHeader("Cache-Control", "no-cache");
+		final Writer out = new OutputStreamWriter(response.getOutputStream(), "UTF-8");
+		metrics.writeText(out);
+		out.flush();
+	}
+}
@@ -45,6 +45,10 @@ public class ProxyServlet extends HttpServlet {
 	private static final int HTTP_DEFAULT_PORT = 80;
 	private URL targetServer;
 	private DefaultHttpClient client;
+	private String cachedPathPrefix;
+	private TileResponseCache responseCache;
+	private UpstreamDispatcher dispatcher;
+	private final ProxyMetrics metrics = new ProxyMetrics();
 	
 	public ProxyServlet() {
 		super();
@@ -58,20 +62,103 @@ public class ProxyServlet extends HttpServlet {
 		HttpParams connManagerParams = new BasicHttpParams();
 		connManagerParams.setParameter(ConnManagerPNames.MAX_CONNECTIONS_PER_ROUTE, new ConnPerRouteBean(maxCnx));
 		connManagerParams.setParameter(ConnManagerPNames.MAX_TOTAL_CONNECTIONS, maxCnx);
-		ThreadSafeClientConnManager cm = new ThreadSafeClientConnManager(connManagerParams, schemeRegistry);
+		ThreadSafeClientConnManager cm = new MeteredClientConnManager(connManagerParams, schemeRegistry, metrics.getConnectionLeaseWait());
 		client = new DefaultHttpClient(cm, httpParams);
 		client.removeResponseInterceptorByClass(ResponseProcessCookies.class);
 		client.removeRequestInterceptorByClass(RequestAddCookies.class);
+		getServletContext().setAttribute(ProxyMetrics.CONTEXT_ATTRIBUTE, metrics);
+	}
+	
+	/**
+	 * Returns the metrics of this servlet, which are also published as the
+	 * servlet context attribute {@link ProxyMetrics#CONTEXT_ATTRIBUTE}
+	 */
+	public ProxyMetrics getMetrics() {
+		return metrics;
+	}
+	
+	/**
+	 * Sends GET requests for paths under pathPrefix, relative to the
+	 * context path, through cache
+	 */
+	public void enableResponseCache(final String pathPrefix, final TileResponseCache cache) {
+		this.cachedPathPrefix = pathPrefix;
+		this.responseCache = cache;
+		metrics.setResponseCache(cache);
+	}
+	
+	/**
+	 * Returns the cache given to {@link #enableResponseCache}, or
+	 * <code>null</code> if there is none
+	 */
+	public TileResponseCache getResponseCache() {
+		return responseCache;
+	}
+	
+	/**
+	 * Runs requests on a pool of maxThreads threads of their own, releasing
+	 * the container's thread while the upstream server works.  This needs
+	 * a Servlet 3.0 container and the servlet mapped with
+	 * <code>async-supported</code>; otherwise requests keep running on the
+	 * container's thread as before.
+	 */
+	public void enableAsync(final int maxThreads) {
+		dispatcher = new UpstreamDispatcher(maxThreads);
+		metrics.setDispatcher(dispatcher);
+	}
+	
+	/**
+	 * Returns the dispatcher created by {@link #enableAsync}, or
+	 * <code>null</code> if there is none
+	 */
+	public UpstreamDispatcher getDispatcher() {
+		return dispatcher;
 	}
 	
 	@Override
 	protected void doGet(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
-		new HttpGetRequestHandler(request, response, targetServer, client).execute();
+		final MeteredResponse meteredResponse = new MeteredResponse(response);
+		if (responseCache != null && getPath(request).startsWith(cachedPathPrefix)) {
+			dispatch(request, meteredResponse, new CachingHttpGetRequestHandler(request, meteredResponse, targetServer, client, responseCache));
+		} else {
+			dispatch(request, meteredResponse, new HttpGetRequestHandler(request, meteredResponse, targetServer, client));
+		}
 	}
 
 	@Override
 	protected void doPost(HttpServletRequest request, HttpServletResponse response)	throws ServletException, IOException {
-		new HttpPostRequestHandler(request, response, targetServer, client).execute();
+		final MeteredResponse meteredResponse = new MeteredResponse(response);
+		dispatch(request, meteredResponse, new HttpPostRequestHandler(request, meteredResponse, targetServer, client));
+	}
+	
+	// Returns the path of request relative to the context path
+	private static String getPath(final HttpServletRequest request) {
+		return request.getRequestURI().substring(request.getContextPath().length());
+	}
+	
+	private void dispatch(final HttpServletRequest request, final MeteredResponse response, final HttpRequestHandler handler) {
+		final RouteMetrics route = metrics.getRoute(getPath(request));
+		handler.setRouteMetrics(route);
+		final Runnable work = new Runnable() {
+			public void run() {
+				handler.execute();
+				route.recordResponse(response.getStatus(), response.getByteCount());
+			}
+		};
+		final UpstreamDispatcher.Completion completion = dispatcher != null ? ServletAsyncSupport.startAsync(request) : null;
+		if (completion == null) {
+			work.run();
+			return;
+		}
+		dispatcher.dispatch(work, completion);
+	}
+	
+	@Override
+	public void destroy() {
+		if (dispatcher != null) {
+			dispatcher.shutdown();
+		}
+		super.destroy();
 	}
 
 	private int getPortOrDefault(int port) {
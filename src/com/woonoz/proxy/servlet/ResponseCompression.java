@@ -0,0 +1,241 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.woonoz.proxy.servlet;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Decides when the proxy gzips a response for a client, and gzips the
+ * responses stored in a {@link TileResponseCache}.
+ *
+ * <p>Only textual bodies, such as JSON tiles, are compressed, and only
+ * when they are large enough to gain from it.  Bodies the upstream
+ * server has already encoded are never compressed again.</p>
+ */
+public final class ResponseCompression {
+
+	public static final String GZIP = "gzip";
+
+	// Smaller bodies barely shrink, or even grow
+	static final int MIN_COMPRESS_BYTES = 256;
+
+	// Added to the ETag of a body the proxy gzips, so that the gzipped
+	// and the identity bodies never share a strong ETag
+	static final String GZIP_ETAG_SUFFIX = "-gzip";
+
+	private static final int BUFFER_BYTES = 8192;
+
+	private ResponseCompression() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Tells whether a client that sent acceptEncoding, which may be
+	 * <code>null</code>, accepts gzip
+	 */
+	public static boolean acceptsGzip(final String acceptEncoding) {
+		if (acceptEncoding == null) {
+			return false;
+		}
+		Boolean gzip = null;
+		Boolean any = null;
+		for (final String coding: acceptEncoding.split(",")) {
+			final String[] parts = coding.split(";");
+			final String name = toLower(parts[0].trim());
+			final boolean accepted = getQuality(parts) > 0;
+			if (name.equals(GZIP) || name.equals("x-gzip")) {
+				gzip = accepted;
+			} else if (name.equals("*")) {
+				any = accepted;
+			}
+		}
+		if (gzip != null) {
+			return gzip;
+		}
+		return any != null && any;
+	}
+
+	// Returns the q parameter among parts, the first of which is the
+	// coding itself
+	private static double getQuality(final String[] parts) {
+		for (int i = 1; i < parts.length; i++) {
+			final String[] parameter = parts[i].trim().split("=", 2);
+			if (parameter.length == 2 && toLower(parameter[0].trim()).equals("q")) {
+				try {
+					return Double.parseDouble(parameter[1].trim());
+				} catch (NumberFormatException e) {
+					return 0;
+				}
+			}
+		}
+		return 1;
+	}
+
+	/**
+	 * Tells whether bodies of contentType, which may be <code>null</code>,
+	 * are worth compressing
+	 */
+	public static boolean isCompressible(final String contentType) {
+		if (contentType == null) {
+			return false;
+		}
+		final String type = toLower(contentType.split(";")[0].trim());
+		return type.startsWith("text/")
+			|| type.equals("application/json")
+			|| type.equals("application/javascript")
+			|| type.equals("application/xml")
+			|| type.endsWith("+json")
+			|| type.endsWith("+xml");
+	}
+
+	/**
+	 * Tells whether a body should be gzipped on its way to a client
+	 *
+	 * @param acceptEncoding
+	 * 	The <code>Accept-Encoding</code> header of the client, or
+	 * 	<code>null</code>
+	 * @param contentType
+	 * 	The type of the body, or <code>null</code> if unknown
+	 * @param contentEncoding
+	 * 	The encoding the upstream server gave the body, or
+	 * 	<code>null</code> if none
+	 * @param contentLength
+	 * 	The length of the body, or a negative number if unknown
+	 */
+	public static boolean shouldCompress(final String acceptEncoding, final String contentType, final String contentEncoding, final long contentLength) {
+		return isIdentity(contentEncoding)
+			&& isCompressible(contentType)
+			&& (contentLength < 0 || contentLength >= MIN_COMPRESS_BYTES)
+			&& acceptsGzip(acceptEncoding);
+	}
+
+	private static boolean isIdentity(final String contentEncoding) {
+		return contentEncoding == null || toLower(contentEncoding.trim()).equals("identity");
+	}
+
+	/**
+	 * Tells whether the body of response is gzipped
+	 */
+	public static boolean isGzipped(final CachedResponse response) {
+		final String contentEncoding = response.getHeader("content-encoding");
+		return contentEncoding != null && toLower(contentEncoding.trim()).equals(GZIP);
+	}
+
+	/**
+	 * Returns etag, which may be <code>null</code>, marked as the ETag of
+	 * a gzipped body
+	 */
+	public static String toGzipEtag(final String etag) {
+		if (etag == null || !etag.endsWith("\"")) {
+			return etag;
+		}
+		return etag.substring(0, etag.length() - 1) + GZIP_ETAG_SUFFIX + "\"";
+	}
+
+	/**
+	 * Returns etag, which may be <code>null</code>, without the mark of a
+	 * gzipped body, as the upstream server knows it
+	 */
+	public static String toUpstreamEtag(final String etag) {
+		if (etag == null || !etag.endsWith(GZIP_ETAG_SUFFIX + "\"")) {
+			return etag;
+		}
+		return etag.substring(0, etag.length() - GZIP_ETAG_SUFFIX.length() - 1) + "\"";
+	}
+
+	/**
+	 * Returns the ETag of a gzipped body tagged etag, which may be
+	 * <code>null</code>, once the proxy has decompressed it.  That is etag
+	 * without the mark of a gzipped body, or, if it has no such mark, a
+	 * weak version of etag, since the upstream server never sent those
+	 * exact bytes.
+	 */
+	public static String toIdentityEtag(final String etag) {
+		if (etag == null) {
+			return null;
+		}
+		final String upstreamEtag = toUpstreamEtag(etag);
+		if (!upstreamEtag.equals(etag) || etag.startsWith("W/")) {
+			return upstreamEtag;
+		}
+		return "W/" + etag;
+	}
+
+	/**
+	 * Returns response with its body gzipped, if it is a successful,
+	 * textual, unencoded response worth compressing, or response itself
+	 * otherwise.  The compressed response says that it varies on
+	 * <code>Accept-Encoding</code>, and its <code>ETag</code> header is
+	 * marked with {@link #GZIP_ETAG_SUFFIX}, though
+	 * {@link CachedResponse#getEtag} still gives the upstream ETag.
+	 */
+	public static CachedResponse compress(final CachedResponse response) throws IOException {
+		if (response.getStatus() != CachedResponse.STATUS_OK
+				|| response.isOnDisk()
+				|| !isIdentity(response.getHeader("content-encoding"))
+				|| !isCompressible(response.getHeader("content-type"))
+				|| response.getBodyLength() < MIN_COMPRESS_BYTES) {
+			return response;
+		}
+
+		final byte[] body = response.getBody();
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length / 4 + 64);
+		final GZIPOutputStream out = new GZIPOutputStream(bytes, BUFFER_BYTES);
+		out.write(body);
+		out.close();
+		final byte[] compressed = bytes.toByteArray();
+		if (compressed.length >= body.length) {
+			return response;
+		}
+
+		final List<CachedResponse.HeaderField> headers = new ArrayList<CachedResponse.HeaderField>();
+		boolean hasVary = false;
+		for (final CachedResponse.HeaderField header: response.getHeaders()) {
+			if (header.getName().equalsIgnoreCase("content-encoding")) {
+				continue;
+			}
+			if (header.getName().equalsIgnoreCase("etag")) {
+				headers.add(new CachedResponse.HeaderField(header.getName(), toGzipEtag(header.getValue())));
+				continue;
+			}
+			if (header.getName().equalsIgnoreCase("vary")) {
+				hasVary = true;
+				if (!header.getValue().toLowerCase(Locale.ENGLISH).contains("accept-encoding")) {
+					headers.add(new CachedResponse.HeaderField(header.getName(), header.getValue() + ", Accept-Encoding"));
+					continue;
+				}
+			}
+			headers.add(header);
+		}
+		headers.add(new CachedResponse.HeaderField("Content-Encoding", GZIP));
+		if (!hasVary) {
+			headers.add(new CachedResponse.HeaderField("Vary", "Accept-Encoding"));
+		}
+		return response.withEncodedBody(headers, compressed);
+	}
+
+	private static String toLower(final String input) {
+		return input.toLowerCase(Locale.ENGLISH);
+	}
+}
@@ -0,0 +1,122 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.woonoz.proxy.servlet;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The counters of one route of the proxy, such as the tiles, which are
+ * updated by the requests on it
+ */
+public class RouteMetrics {
+
+	private final String name;
+
+	private final ConcurrentHashMap<Integer, AtomicLong> statuses = new ConcurrentHashMap<Integer, AtomicLong>();
+	private final LatencyHistogram upstreamLatency = new LatencyHistogram();
+	private final AtomicLong upstreamErrors = new AtomicLong();
+	private final AtomicLong bytesIn = new AtomicLong();
+	private final AtomicLong bytesOut = new AtomicLong();
+
+	RouteMetrics(final String name) {
+		this.name = name;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Counts a finished request, with the status and the number of body
+	 * bytes sent to the client
+	 */
+	public void recordResponse(final int status, final long bodyBytes) {
+		AtomicLong count = statuses.get(status);
+		if (count == null) {
+			final AtomicLong created = new AtomicLong();
+			count = statuses.putIfAbsent(status, created);
+			if (count == null) {
+				count = created;
+			}
+		}
+		count.incrementAndGet();
+		bytesOut.addAndGet(bodyBytes);
+	}
+
+	/**
+	 * Records the time from sending a request upstream to receiving the
+	 * headers of its response
+	 */
+	public void recordUpstreamLatency(final long nanos) {
+		upstreamLatency.record(nanos);
+	}
+
+	/**
+	 * Counts an upstream request that failed without a response
+	 */
+	public void recordUpstreamError() {
+		upstreamErrors.incrementAndGet();
+	}
+
+	/**
+	 * Counts bytes of request body sent by a client
+	 */
+	public void recordBytesIn(final long bytes) {
+		bytesIn.addAndGet(bytes);
+	}
+
+	public long getRequestCount() {
+		long count = 0;
+		for (final AtomicLong statusCount: statuses.values()) {
+			count += statusCount.get();
+		}
+		return count;
+	}
+
+	/**
+	 * Returns the number of requests finished with each status, in order
+	 * of status
+	 */
+	public Map<Integer, Long> getStatusCounts() {
+		final Map<Integer, Long> counts = new TreeMap<Integer, Long>();
+		for (final Map.Entry<Integer, AtomicLong> status: statuses.entrySet()) {
+			counts.put(status.getKey(), status.getValue().get());
+		}
+		return counts;
+	}
+
+	public LatencyHistogram getUpstreamLatency() {
+		return upstreamLatency;
+	}
+
+	public long getUpstreamErrorCount() {
+		return upstreamErrors.get();
+	}
+
+	public long getBytesIn() {
+		return bytesIn.get();
+	}
+
+	public long getBytesOut() {
+		return bytesOut.get();
+	}
+}
@@ -0,0 +1,117 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.woonoz.proxy.servlet;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+import javax.servlet.ServletRequest;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * Starts asynchronous processing of requests through the Servlet 3.0 API,
+ * which is called by reflection so that the proxy still builds and runs
+ * in Servlet 2.5 containers, where it simply is not used.
+ */
+final class ServletAsyncSupport {
+
+	private static final Log logger = LogFactory.getLog("com.woonoz.proxy.servlet");
+
+	// Upstream requests are limited by the HTTP client's own timeouts, so
+	// the container should not give up on them first
+	private static final long ASYNC_TIMEOUT_MILLIS = 10 * 60 * 1000;
+
+	private static final Method IS_ASYNC_SUPPORTED;
+	private static final Method START_ASYNC;
+	private static final Method SET_TIMEOUT;
+	private static final Method COMPLETE;
+
+	static {
+		Method isAsyncSupported = null;
+		Method startAsync = null;
+		Method setTimeout = null;
+		Method complete = null;
+		try {
+			final Class<?> asyncContext = Class.forName("javax.servlet.AsyncContext");
+			isAsyncSupported = ServletRequest.class.getMethod("isAsyncSupported");
+			startAsync = ServletRequest.class.getMethod("startAsync");
+			setTimeout = asyncContext.getMethod("setTimeout", long.class);
+			complete = asyncContext.getMethod("complete");
+		} catch (ClassNotFoundException e) {
+			isAsyncSupported = null;
+		} catch (NoSuchMethodException e) {
+			isAsyncSupported = null;
+		}
+		IS_ASYNC_SUPPORTED = isAsyncSupported;
+		START_ASYNC = startAsync;
+		SET_TIMEOUT = setTimeout;
+		COMPLETE = complete;
+	}
+
+	private ServletAsyncSupport() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Puts request into asynchronous mode, so that the container does not
+	 * finish the response when the servlet returns
+	 *
+	 * @return
+	 * 	The completion that finishes the response, or <code>null</code> if
+	 * 	the container, or the mapping of the servlet, does not support
+	 * 	asynchronous processing
+	 */
+	static UpstreamDispatcher.Completion startAsync(final ServletRequest request) {
+		if (IS_ASYNC_SUPPORTED == null) {
+			return null;
+		}
+		final Object asyncContext;
+		try {
+			if (!Boolean.TRUE.equals(IS_ASYNC_SUPPORTED.invoke(request))) {
+				return null;
+			}
+			asyncContext = START_ASYNC.invoke(request);
+		} catch (IllegalAccessException e) {
+			logger.error(e);
+			return null;
+		} catch (InvocationTargetException e) {
+			logger.error(e.getCause());
+			return null;
+		}
+
+		invoke(SET_TIMEOUT, asyncContext, ASYNC_TIMEOUT_MILLIS);
+		return new UpstreamDispatcher.Completion() {
+			public void complete() {
+				invoke(COMPLETE, asyncContext);
+			}
+		};
+	}
+
+	private static void invoke(final Method method, final Object target, final Object... args) {
+		try {
+			method.invoke(target, args);
+		} catch (IllegalAccessException e) {
+			logger.error(e);
+		} catch (InvocationTargetException e) {
+			logger.error(e.getCause());
+		}
+	}
+}
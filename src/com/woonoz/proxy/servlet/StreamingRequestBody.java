@@ -0,0 +1,141 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.woonoz.proxy.servlet;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * The body of a client request, ready to be streamed to the upstream
+ * server without being held in memory.
+ *
+ * <p>When the client gives the length of the body, the body is read
+ * straight from the client as the upstream request is written.
+ * Otherwise it is first copied to a temporary file, so that the upstream
+ * request can still be sent with a <code>Content-Length</code>.  Either
+ * way, only a small buffer is held in memory.  {@link #release} must be
+ * called when the upstream request is done, to delete any temporary
+ * file.</p>
+ */
+public class StreamingRequestBody {
+
+	private static final Log logger = LogFactory.getLog("com.woonoz.proxy.servlet");
+
+	private static final int BUFFER_BYTES = 8192;
+
+	private final InputStream stream;
+	private final long length;
+	private final File spoolFile;
+
+	private StreamingRequestBody(final InputStream stream, final long length, final File spoolFile) {
+		this.stream = stream;
+		this.length = length;
+		this.spoolFile = spoolFile;
+	}
+
+	/**
+	 * Prepares the body read from in
+	 *
+	 * @param in
+	 * 	The body sent by the client
+	 * @param length
+	 * 	The length of the body given by the client, or a negative number if
+	 * 	it gave none
+	 * @param spoolDirectory
+	 * 	The directory for the temporary file, or <code>null</code> for the
+	 * 	default temporary directory
+	 */
+	public static StreamingRequestBody open(final InputStream in, final long length, final File spoolDirectory) throws IOException {
+		if (length >= 0) {
+			return new StreamingRequestBody(in, length, null);
+		}
+
+		final File spoolFile = File.createTempFile("proxy-body", ".tmp", spoolDirectory);
+		boolean spooled = false;
+		try {
+			final OutputStream out = new FileOutputStream(spoolFile);
+			long copied = 0;
+			try {
+				final byte[] buffer = new byte[BUFFER_BYTES];
+				int count;
+				while ((count = in.read(buffer)) >= 0) {
+					out.write(buffer, 0, count);
+					copied += count;
+				}
+			} finally {
+				out.close();
+			}
+			final InputStream stream = new BufferedInputStream(new FileInputStream(spoolFile), BUFFER_BYTES);
+			spooled = true;
+			return new StreamingRequestBody(stream, copied, spoolFile);
+		} finally {
+			if (!spooled) {
+				delete(spoolFile);
+			}
+		}
+	}
+
+	/**
+	 * Returns the stream to read the body from, which may be read only once
+	 */
+	public InputStream getStream() {
+		return stream;
+	}
+
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * Tells whether the body was copied to a temporary file
+	 */
+	public boolean isSpooled() {
+		return spoolFile != null;
+	}
+
+	/**
+	 * Deletes the temporary file, if there is one.  The stream of a body
+	 * read straight from the client is left for the container to close.
+	 */
+	public void release() {
+		if (spoolFile == null) {
+			return;
+		}
+		try {
+			stream.close();
+		} catch (IOException e) {
+			logger.error(e);
+		}
+		delete(spoolFile);
+	}
+
+	private static void delete(final File file) {
+		if (!file.delete()) {
+			logger.warn("Cannot delete " + file);
+		}
+	}
+}
@@ -0,0 +1,461 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.woonoz.proxy.servlet;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+/**
+ * An in-memory cache of upstream responses, such as the tiles served
+ * under <code>/tiles/*</code>, bounded by the total size of the cached
+ * responses and evicting the least recently used first.
+ *
+ * <p>A response is cached under its URI together with the value of the
+ * session cookie of the client that asked for it, so that the tiles of
+ * one user are never sent to another, even when the upstream server
+ * marks them <code>private</code>.  If no session cookie name is given,
+ * the whole <code>Cookie</code> header is used instead.</p>
+ *
+ * <p>A fresh response is sent straight from the cache.  A stale
+ * response with an <code>ETag</code> is revalidated by a conditional
+ * request to the upstream server, and sent again, with its freshness
+ * renewed, if the server answers 304.  The rules for what may be stored
+ * and for how long are in {@link CachedResponse}.</p>
+ *
+ * <p>If a {@link DiskTileStore} is given, every stored response is also
+ * written to it, and responses missing from memory are looked for there
+ * before asking the upstream server.  Responses found on disk are sent
+ * from disk rather than brought back into memory, leaving the operating
+ * system's page cache to keep the popular ones quick.  A failure of the
+ * disk tier is logged, and the request carries on as if it were not
+ * there.</p>
+ *
+ * <p>Concurrent requests for the same key that the cache cannot answer
+ * share a single upstream request: the first one makes it, and the others
+ * wait for its response, unless that response sets a cookie, in which
+ * case each makes its own.</p>
+ *
+ * <p>All methods are thread safe.  Upstream requests are made without
+ * holding any lock.</p>
+ */
+public class TileResponseCache {
+
+	private static final Log logger = LogFactory.getLog("com.woonoz.proxy.servlet");
+
+	/**
+	 * Fetches a response from the upstream server
+	 */
+	public interface Upstream {
+		/**
+		 * Makes the request to the upstream server
+		 *
+		 * @param etag
+		 * 	If not <code>null</code>, the request must be sent with this
+		 * 	value in an <code>If-None-Match</code> header
+		 */
+		CachedResponse fetch(String etag) throws IOException;
+	}
+
+	private final long maxBytes;
+	private final long maxEntryBytes;
+	private final String sessionCookieName;
+	private final DiskTileStore diskTier;
+
+	// In order of access, least recently used first
+	private final LinkedHashMap<String, CachedResponse> entries = new LinkedHashMap<String, CachedResponse>(16, 0.75f, true);
+	private long bytes = 0;
+
+	// The upstream requests being made, by key
+	private final ConcurrentHashMap<String, Flight> flights = new ConcurrentHashMap<String, Flight>();
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong diskHits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+	private final AtomicLong revalidations = new AtomicLong();
+	private final AtomicLong evictions = new AtomicLong();
+	private final AtomicLong coalesced = new AtomicLong();
+
+	/**
+	 * Creates an empty cache
+	 *
+	 * @param maxBytes
+	 * 	The most bytes that all the cached responses may take together.
+	 * 	A single response larger than an eighth of this is never cached.
+	 * @param sessionCookieName
+	 * 	The name of the cookie holding the session ID, or <code>null</code>
+	 * 	to key responses on the whole <code>Cookie</code> header
+	 * @throws IllegalArgumentException
+	 * 	If maxBytes is negative
+	 */
+	public TileResponseCache(final long maxBytes, final String sessionCookieName) {
+		this(maxBytes, sessionCookieName, null);
+	}
+
+	/**
+	 * Creates a cache with a disk tier
+	 *
+	 * @param maxBytes
+	 * 	The most bytes that the responses cached in memory may take
+	 * 	together.  A single response larger than an eighth of this is kept
+	 * 	only on disk.
+	 * @param sessionCookieName
+	 * 	The name of the cookie holding the session ID, or <code>null</code>
+	 * 	to key responses on the whole <code>Cookie</code> header
+	 * @param diskTier
+	 * 	The store that keeps responses on disk, or <code>null</code> for
+	 * 	none
+	 * @throws IllegalArgumentException
+	 * 	If maxBytes is negative
+	 */
+	public TileResponseCache(final long maxBytes, final String sessionCookieName, final DiskTileStore diskTier) {
+		if (maxBytes < 0) {
+			throw new IllegalArgumentException("Negative cache size");
+		}
+		this.maxBytes = maxBytes;
+		this.maxEntryBytes = maxBytes / 8;
+		this.sessionCookieName = sessionCookieName;
+		this.diskTier = diskTier;
+	}
+
+	/**
+	 * Returns the response for uri, from the cache if possible, and from
+	 * upstream otherwise
+	 *
+	 * @param uri
+	 * 	The URI requested from the upstream server
+	 * @param cookieHeader
+	 * 	The <code>Cookie</code> header sent by the client, or
+	 * 	<code>null</code> if it sent none
+	 * @param upstream
+	 * 	Makes the request to the upstream server if necessary
+	 */
+	public CachedResponse get(final String uri, final String cookieHeader, final Upstream upstream) throws IOException {
+		final String key = buildKey(uri, cookieHeader);
+		CachedResponse cached = findCached(key);
+		if (cached != null && cached.isFresh(now())) {
+			return countHit(cached);
+		}
+
+		final Flight flight = new Flight();
+		final Flight leader = flights.putIfAbsent(key, flight);
+		if (leader != null) {
+			final CachedResponse shared = leader.await();
+			if (shared.getHeader("set-cookie") == null) {
+				coalesced.incrementAndGet();
+				return shared;
+			}
+			return fetch(key, cached, upstream);
+		}
+
+		try {
+			// Another request may have stored a response since the lookup
+			cached = findCached(key);
+			if (cached != null && cached.isFresh(now())) {
+				flight.finish(cached, null);
+				return countHit(cached);
+			}
+			final CachedResponse response = fetch(key, cached, upstream);
+			flight.finish(response, null);
+			return response;
+		} catch (IOException e) {
+			flight.finish(null, e);
+			throw e;
+		} finally {
+			flights.remove(key, flight);
+			// Release the waiting requests if an unchecked exception was thrown
+			flight.failIfPending(uri);
+		}
+	}
+
+	// Returns the response for key from memory or from disk, fresh or not,
+	// or null if there is none
+	private CachedResponse findCached(final String key) {
+		final CachedResponse cached = lookup(key);
+		return cached != null ? cached : readFromDisk(key);
+	}
+
+	private CachedResponse countHit(final CachedResponse cached) {
+		if (cached.isOnDisk()) {
+			diskHits.incrementAndGet();
+		} else {
+			hits.incrementAndGet();
+		}
+		return cached;
+	}
+
+	// Gets the response for key from upstream, revalidating cached if it
+	// is not null, and stores it
+	private CachedResponse fetch(final String key, final CachedResponse cached, final Upstream upstream) throws IOException {
+		final CachedResponse fetched = upstream.fetch(cached != null ? cached.getEtag() : null);
+		if (cached != null && fetched.getStatus() == CachedResponse.STATUS_NOT_MODIFIED) {
+			revalidations.incrementAndGet();
+			final CachedResponse revalidated = cached.revalidate(fetched, now());
+			if (!revalidated.isOnDisk()) {
+				store(key, revalidated);
+			}
+			updateDiskFreshness(key, revalidated);
+			return revalidated;
+		}
+
+		misses.incrementAndGet();
+		if (fetched.isStorable()) {
+			store(key, fetched);
+			writeToDisk(key, fetched);
+		} else {
+			remove(key);
+			removeFromDisk(key);
+		}
+		return fetched;
+	}
+
+	private CachedResponse readFromDisk(final String key) {
+		if (diskTier == null) {
+			return null;
+		}
+		try {
+			return diskTier.get(key);
+		} catch (IOException e) {
+			logger.error(e);
+			return null;
+		}
+	}
+
+	private void writeToDisk(final String key, final CachedResponse response) {
+		if (diskTier == null) {
+			return;
+		}
+		try {
+			diskTier.put(key, response);
+		} catch (IOException e) {
+			logger.error(e);
+		}
+	}
+
+	private void updateDiskFreshness(final String key, final CachedResponse response) {
+		if (diskTier == null) {
+			return;
+		}
+		try {
+			diskTier.updateFreshness(key, response.getFreshUntil());
+		} catch (IOException e) {
+			logger.error(e);
+		}
+	}
+
+	private void removeFromDisk(final String key) {
+		if (diskTier == null) {
+			return;
+		}
+		try {
+			diskTier.remove(key);
+		} catch (IOException e) {
+			logger.error(e);
+		}
+	}
+
+	/**
+	 * Returns the key for uri as requested by a client that sent
+	 * cookieHeader
+	 */
+	String buildKey(final String uri, final String cookieHeader) {
+		final String session = sessionCookieName != null ? findCookie(cookieHeader, sessionCookieName) : cookieHeader;
+		return session == null ? uri : uri + "\n" + session;
+	}
+
+	// Returns the value of the cookie called name in cookieHeader, or
+	// null if there is no such cookie
+	private static String findCookie(final String cookieHeader, final String name) {
+		if (cookieHeader == null) {
+			return null;
+		}
+		for (final String cookie: cookieHeader.split(";")) {
+			final String[] parts = cookie.trim().split("=", 2);
+			if (parts.length == 2 && parts[0].trim().equals(name)) {
+				return parts[1].trim();
+			}
+		}
+		return null;
+	}
+
+	private synchronized CachedResponse lookup(final String key) {
+		return entries.get(key);
+	}
+
+	private synchronized void store(final String key, final CachedResponse response) {
+		final long size = response.getSize();
+		if (size > maxEntryBytes) {
+			removeEntry(key);
+			return;
+		}
+
+		final CachedResponse old = entries.put(key, response);
+		if (old != null) {
+			bytes -= old.getSize();
+		}
+		bytes += size;
+
+		final Iterator<Map.Entry<String, CachedResponse>> it = entries.entrySet().iterator();
+		while (bytes > maxBytes && it.hasNext()) {
+			final Map.Entry<String, CachedResponse> eldest = it.next();
+			if (eldest.getKey().equals(key)) {
+				continue;
+			}
+			it.remove();
+			bytes -= eldest.getValue().getSize();
+			evictions.incrementAndGet();
+		}
+	}
+
+	private synchronized void remove(final String key) {
+		removeEntry(key);
+	}
+
+	private void removeEntry(final String key) {
+		final CachedResponse old = entries.remove(key);
+		if (old != null) {
+			bytes -= old.getSize();
+		}
+	}
+
+	/**
+	 * Returns the current time in milliseconds, which tests may override
+	 */
+	protected long now() {
+		return System.currentTimeMillis();
+	}
+
+	/**
+	 * Returns the number of responses sent from the cache without asking
+	 * the upstream server
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * Returns the number of responses sent from the disk tier without
+	 * asking the upstream server
+	 */
+	public long getDiskHitCount() {
+		return diskHits.get();
+	}
+
+	/**
+	 * Returns the number of upstream requests saved by sharing the response
+	 * to a request for the same key that was already being made
+	 */
+	public long getCoalescedCount() {
+		return coalesced.get();
+	}
+
+	/**
+	 * Returns the number of upstream requests being made now
+	 */
+	public int getInFlightCount() {
+		return flights.size();
+	}
+
+	/**
+	 * Returns the disk tier, or <code>null</code> if there is none
+	 */
+	public DiskTileStore getDiskTier() {
+		return diskTier;
+	}
+
+	/**
+	 * Returns the number of responses fetched in full from the upstream
+	 * server
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * Returns the number of cached responses the upstream server confirmed
+	 * were still current
+	 */
+	public long getRevalidationCount() {
+		return revalidations.get();
+	}
+
+	/**
+	 * Returns the number of responses removed to make room for others
+	 */
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	public synchronized int getEntryCount() {
+		return entries.size();
+	}
+
+	public synchronized long getByteCount() {
+		return bytes;
+	}
+
+	/**
+	 * An upstream request that other requests for the same key wait on
+	 */
+	private static final class Flight {
+
+		private final CountDownLatch done = new CountDownLatch(1);
+		private CachedResponse response;
+		private IOException failure;
+
+		// Sets the outcome, unless it has already been set
+		private synchronized void finish(final CachedResponse response, final IOException failure) {
+			if (done.getCount() == 0) {
+				return;
+			}
+			this.response = response;
+			this.failure = failure;
+			done.countDown();
+		}
+
+		private synchronized void failIfPending(final String uri) {
+			if (done.getCount() != 0) {
+				finish(null, new IOException("Upstream request for " + uri + " failed"));
+			}
+		}
+
+		private CachedResponse await() throws IOException {
+			try {
+				done.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new InterruptedIOException("Interrupted waiting for upstream response");
+			}
+			synchronized (this) {
+				if (failure != null) {
+					throw new IOException("Shared upstream request failed", failure);
+				}
+				return response;
+			}
+		}
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.woonoz.proxy.servlet;
+
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs proxied requests on a pool of its own, so that the thread of the
+ * servlet container that received a request can go back to the container
+ * while the upstream server works on it.
+ *
+ * <p>The upstream HTTP client blocks, so each request still holds one
+ * thread of this pool for its whole round trip.  What changes is that
+ * slow upstream requests queue here rather than in the container, and
+ * the number of requests waiting on the upstream server is limited by
+ * the size of this pool, not by the number of container threads, which
+ * stay free for everything else.</p>
+ */
+public class UpstreamDispatcher {
+
+	/**
+	 * Told when a dispatched request has finished, whether or not it
+	 * succeeded
+	 */
+	public interface Completion {
+		void complete();
+	}
+
+	private final ThreadPoolExecutor executor;
+
+	private final AtomicInteger active = new AtomicInteger();
+	private final AtomicLong completed = new AtomicLong();
+
+	/**
+	 * Creates a dispatcher running at most maxThreads requests at once.
+	 * Further requests wait in an unbounded queue.
+	 *
+	 * @throws IllegalArgumentException
+	 * 	If maxThreads is less than 1
+	 */
+	public UpstreamDispatcher(final int maxThreads) {
+		if (maxThreads < 1) {
+			throw new IllegalArgumentException("Must have at least one thread");
+		}
+		final AtomicInteger threadCount = new AtomicInteger();
+		executor = new ThreadPoolExecutor(maxThreads, maxThreads, 60, TimeUnit.SECONDS,
+			new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+				public Thread newThread(final Runnable r) {
+					final Thread thread = new Thread(r, "proxy-upstream-" + threadCount.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		executor.allowCoreThreadTimeOut(true);
+	}
+
+	/**
+	 * Runs work on the pool, then tells completion.  If the dispatcher has
+	 * been shut down, both run on the calling thread instead.
+	 */
+	public void dispatch(final Runnable work, final Completion completion) {
+		final Runnable task = new Runnable() {
+			public void run() {
+				active.incrementAndGet();
+				try {
+					work.run();
+				} finally {
+					active.decrementAndGet();
+					completed.incrementAndGet();
+					completion.complete();
+				}
+			}
+		};
+		try {
+			executor.execute(task);
+		} catch (RejectedExecutionException e) {
+			task.run();
+		}
+	}
+
+	/**
+	 * Stops taking requests, letting the ones already dispatched finish
+	 */
+	public void shutdown() {
+		executor.shutdown();
+	}
+
+	/**
+	 * Returns the number of requests running now
+	 */
+	public int getActiveCount() {
+		return active.get();
+	}
+
+	/**
+	 * Returns the number of requests waiting for a thread
+	 */
+	public int getQueuedCount() {
+		return executor.getQueue().size();
+	}
+
+	public long getCompletedCount() {
+		return completed.get();
+	}
+}
@@ -49,27 +49,20 @@ public class UrlRewriterImpl implements UrlRewriter {
 	}
 
 	public String rewriteHost(final String host) throws URISyntaxException, MalformedURLException {
-		System.out.print("rewriteHost\n");
 		URI hostAsUri = new URI("http://" + host);
 		if (hostIsSameAsServletHost(hostAsUri)) {
-			System.out.print("getTargetHostString\n");
 			return getTargetHostString();
 		} else {
-			System.out.print("same\n");
 			return host;
 		}
 	}
 
 	public URI rewriteUri(URI url) throws URISyntaxException, MalformedURLException {
-		System.out.print("rewriteUri enter\n");
 		if (requestedUrlPointsToServlet(url)) {
-			System.out.print("rewriteUri points\n");
 			final String targetPath = rewritePathIfNeeded(url.getPath());
-			System.out.print("rewriteUri target path\n");
 			return URIUtils.createURI(targetServer.getProtocol(), targetServer.getHost(), 
 					targetServer.getPort(), targetPath, servletRequest.getQueryString(), null);
 		} else {
-			System.out.print("rewriteUri no rewrite\n");
 			return url;
 		}
 	}
@@ -102,20 +95,10 @@ public class UrlRewriterImpl implements UrlRewriter {
 	}
 	
 	private String rewritePathIfNeeded(String requestedPath) {
-		System.out.print("rewritePathIfNeeded " + requestedPath + "\n");
 		String servletURI = servletRequest.getContextPath() + servletRequest.getServletPath();
-		System.out.print("getContextPath is " + servletRequest.getContextPath() + "\n");
-		System.out.println("getServletPath is " + servletRequest.getServletPath());
-		System.out.print("uri "+servletURI + "\n");
 		if (false && requestIsSubpathOfServlet(requestedPath)) {
-			System.out.print("isSubpath\n");
-			System.out.print("targetServer.getPath() is " + targetServer.getPath() + "\n");
-			System.out.print("servletURI is " + servletURI + "\n");
-			System.out.print("servletURI.length() is " + servletURI.length() + "\n");
-			System.out.print("requestedPath.substring(servletURI.length()) is " + requestedPath.substring(servletURI.length()) + "\n");
 					return appendPathFragments(targetServer.getPath(), requestedPath.substring(servletURI.length()));
 		} else {
-			System.out.print("notSubpath\n");
 			return requestedPath;
 		}
 	}
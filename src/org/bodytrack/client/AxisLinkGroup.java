@@ -0,0 +1,151 @@
+package org.bodytrack.client;
+
+import gwt.g2d.client.math.Vector2;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A set of axes that always show the same range, such as the time axes
+ * of several plot containers stacked on a page.
+ *
+ * <p>Dragging, zooming, or setting the range of any axis in a group
+ * moves every axis in the group by the same amount, in the units of the
+ * axes.  However many axes move, the change is published as a single
+ * event: every listener registered on any of the moved axes is called
+ * once, so a plot container repaints, and its plots check for new tiles,
+ * once per frame rather than once per axis.  A move made here stops any
+ * {@link AxisTransition} animating one of the moved axes.</p>
+ *
+ * <p>An axis belongs to at most one group.  The static methods here are
+ * also used by {@link GraphAxis} itself, so that moving an axis that is
+ * not in a group goes through the same code.</p>
+ */
+public final class AxisLinkGroup {
+	private final List<GraphAxis> axes = new ArrayList<GraphAxis>();
+
+	/**
+	 * Adds axis to this group, taking it out of any other group.  If
+	 * this group already has axes, axis takes on their range.
+	 *
+	 * @throws NullPointerException
+	 * 	If axis is <code>null</code>
+	 */
+	public void add(final GraphAxis axis) {
+		if (axis == null)
+			throw new NullPointerException("Cannot link a null axis");
+		if (axis.getLinkGroup() == this)
+			return;
+
+		if (axis.getLinkGroup() != null)
+			axis.getLinkGroup().remove(axis);
+
+		axis.setLinkGroup(this);
+		axes.add(axis);
+
+		if (axes.size() > 1) {
+			final GraphAxis first = axes.get(0);
+			axis.uncheckedReplaceBounds(first.getMin(), first.getMax());
+			GraphAxis.publishAxisChangeEvent(
+				Collections.singleton(axis), SequenceNumber.getNext());
+		}
+	}
+
+	/**
+	 * Removes axis from this group.  Does nothing if axis is
+	 * <code>null</code> or not in this group.
+	 */
+	public void remove(final GraphAxis axis) {
+		if (axis != null && axes.remove(axis))
+			axis.setLinkGroup(null);
+	}
+
+	/**
+	 * Returns an unmodifiable view of the axes in this group
+	 */
+	public List<GraphAxis> getAxes() {
+		return Collections.unmodifiableList(axes);
+	}
+
+	/**
+	 * Drags each axis in axes by the distance between from and to,
+	 * converted to the units of that axis, and moves every axis linked
+	 * to it by the same amount.  Then publishes one change event for all
+	 * the axes that moved.
+	 *
+	 * <p>An axis that is linked to one that already moved is not moved
+	 * again, so dragging two linked axes moves them once.</p>
+	 */
+	static void drag(final Collection<GraphAxis> axes,
+			final Vector2 from,
+			final Vector2 to,
+			final int eventId) {
+		RenderQuality.noteInteraction();
+
+		final Set<GraphAxis> changed = new LinkedHashSet<GraphAxis>();
+		for (final GraphAxis axis: axes) {
+			if (changed.contains(axis))
+				continue;
+
+			final double motion = axis.unproject(from) - axis.unproject(to);
+			for (final GraphAxis member: getLinkedAxes(axis)) {
+				if (changed.add(member)) {
+					member.cancelTransition();
+					member.uncheckedDrag(motion);
+				}
+			}
+		}
+
+		GraphAxis.publishAxisChangeEvent(changed, eventId);
+	}
+
+	/**
+	 * Zooms axis, and every axis linked to it, by factor about the
+	 * specified value, then publishes one change event for all of them
+	 */
+	static void zoom(final GraphAxis axis,
+			final double factor,
+			final double about,
+			final int eventId) {
+		RenderQuality.noteInteraction();
+
+		final List<GraphAxis> linked = getLinkedAxes(axis);
+		for (final GraphAxis member: linked) {
+			member.cancelTransition();
+			member.uncheckedZoom(factor, about);
+		}
+
+		GraphAxis.publishAxisChangeEvent(linked, eventId);
+	}
+
+	/**
+	 * Sets the bounds of axis, and of every axis linked to it, then
+	 * publishes one change event for all of them.  The caller must make
+	 * sure that newMin is less than newMax.
+	 */
+	static void replaceBounds(final GraphAxis axis,
+			final double newMin,
+			final double newMax,
+			final int eventId) {
+		final List<GraphAxis> linked = getLinkedAxes(axis);
+		for (final GraphAxis member: linked) {
+			member.cancelTransition();
+			member.uncheckedReplaceBounds(newMin, newMax);
+		}
+
+		GraphAxis.publishAxisChangeEvent(linked, eventId);
+	}
+
+	// Returns axis if it is not in a group, and otherwise a copy of the
+	// list of axes in its group, in case a listener changes the group
+	static List<GraphAxis> getLinkedAxes(final GraphAxis axis) {
+		final AxisLinkGroup group = axis.getLinkGroup();
+		return group == null
+			? Collections.singletonList(axis)
+			: new ArrayList<GraphAxis>(group.axes);
+	}
+}
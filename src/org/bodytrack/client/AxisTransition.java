@@ -0,0 +1,166 @@
+package org.bodytrack.client;
+
+import java.util.List;
+
+import com.google.gwt.animation.client.Animation;
+import com.google.gwt.core.client.Duration;
+
+/**
+ * An animated change of the range of an axis, and of every axis linked
+ * to it, from the current range to a target range.
+ *
+ * <p>A transition that passes through many zoom levels would fetch
+ * tiles at every level it passes through if each frame were an ordinary
+ * axis change.  Instead, when a transition starts, every
+ * {@link GraphAxis.TransitionListener} on the moving axes is told the
+ * target range once, so that plots can request the tiles for the end of
+ * the transition right away.  While the transition runs, the moving
+ * axes report {@link GraphAxis#isFetchDeferred()}, and plots draw from
+ * the tiles they already have.  If a frame comes more than
+ * {@link #STALL_MILLIS} milliseconds after the one before it, the
+ * animation has stalled, and fetches are allowed for that frame so that
+ * a slow page does not show stale tiles for long.</p>
+ *
+ * <p>The width of the range changes geometrically, so that each frame
+ * zooms by the same factor, and the center moves in proportion to the
+ * change in width.  That way, a transition that zooms about a point
+ * keeps that point still on the screen.</p>
+ */
+final class AxisTransition extends Animation {
+	/**
+	 * The longest gap between frames, in milliseconds, before fetches
+	 * are allowed again in the middle of a transition
+	 */
+	static final double STALL_MILLIS = 250;
+
+	// Relative width changes smaller than this are treated as pure pans
+	private static final double MIN_RELATIVE_WIDTH_CHANGE = 1e-9;
+
+	private final GraphAxis axis;
+	private final double startMin;
+	private final double startMax;
+	private final double targetMin;
+	private final double targetMax;
+
+	private List<GraphAxis> movingAxes;
+	private boolean deferringFetches = false;
+	private double lastFrameMillis;
+
+	/**
+	 * Creates a transition for axis and the axes linked to it.  The
+	 * caller must make sure that targetMin is less than targetMax.
+	 */
+	AxisTransition(final GraphAxis axis, final double targetMin,
+			final double targetMax) {
+		this.axis = axis;
+		this.startMin = axis.getMin();
+		this.startMax = axis.getMax();
+		this.targetMin = targetMin;
+		this.targetMax = targetMax;
+	}
+
+	/**
+	 * Returns <code>true</code> if and only if the axes moved by this
+	 * transition should not fetch tiles for the current frame
+	 */
+	boolean isDeferringFetches() {
+		return deferringFetches;
+	}
+
+	@Override
+	protected void onStart() {
+		movingAxes = AxisLinkGroup.getLinkedAxes(axis);
+		for (final GraphAxis member: movingAxes)
+			member.startTransition(this);
+
+		GraphAxis.publishTransitionStart(movingAxes, targetMin, targetMax);
+
+		deferringFetches = true;
+		lastFrameMillis = Duration.currentTimeMillis();
+		super.onStart();
+	}
+
+	@Override
+	protected void onUpdate(final double progress) {
+		final double now = Duration.currentTimeMillis();
+		deferringFetches = now - lastFrameMillis <= STALL_MILLIS;
+		lastFrameMillis = now;
+
+		final double startWidth = startMax - startMin;
+		final double targetWidth = targetMax - targetMin;
+		final double width = interpolateWidth(startWidth, targetWidth,
+			progress);
+		final double center = interpolateCenter(
+			(startMin + startMax) / 2, (targetMin + targetMax) / 2,
+			startWidth, targetWidth, width, progress);
+
+		moveTo(center - width / 2, center + width / 2,
+			SequenceNumber.getNextThrottled());
+	}
+
+	@Override
+	protected void onComplete() {
+		// The final frame fetches whatever the start of the transition
+		// did not already request
+		finish();
+		moveTo(targetMin, targetMax, SequenceNumber.getNext());
+	}
+
+	@Override
+	protected void onCancel() {
+		// Stay wherever the last frame left the axes, and let the next
+		// paint fetch tiles for that range
+		finish();
+	}
+
+	private void finish() {
+		deferringFetches = false;
+		if (movingAxes == null)
+			return;
+
+		for (final GraphAxis member: movingAxes)
+			member.endTransition(this);
+	}
+
+	private void moveTo(final double min, final double max,
+			final int eventId) {
+		if (movingAxes == null)
+			return;
+
+		for (final GraphAxis member: movingAxes)
+			member.uncheckedReplaceBounds(min, max);
+
+		GraphAxis.publishAxisChangeEvent(movingAxes, eventId);
+	}
+
+	/**
+	 * Returns the width of the range at progress, changing by the same
+	 * factor for equal steps in progress
+	 *
+	 * @param progress
+	 * 	A value from 0, for the start of the transition, to 1, for
+	 * 	the end
+	 */
+	static double interpolateWidth(final double startWidth,
+			final double targetWidth, final double progress) {
+		return startWidth * Math.pow(targetWidth / startWidth, progress);
+	}
+
+	/**
+	 * Returns the center of the range for a frame whose range has the
+	 * specified width.  The center moves in proportion to the change in
+	 * width, or in proportion to progress if the width does not change.
+	 */
+	static double interpolateCenter(final double startCenter,
+			final double targetCenter, final double startWidth,
+			final double targetWidth, final double width,
+			final double progress) {
+		final double widthChange = targetWidth - startWidth;
+		final double fraction =
+			Math.abs(widthChange) > MIN_RELATIVE_WIDTH_CHANGE * startWidth
+				? (width - startWidth) / widthChange
+				: progress;
+
+		return startCenter + (targetCenter - startCenter) * fraction;
+	}
+}
@@ -2,7 +2,9 @@ package org.bodytrack.client;
 
 import gwt.g2d.client.math.Vector2;
 
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Set;
 
 import org.bodytrack.client.DataPointListener.TriggerAction;
@@ -41,8 +43,20 @@ public abstract class BaseSeriesPlot implements Plot {
       }
    };
 
+   // Requests the tiles for the end of an animated change of range
+   // right away, since the frames in between do not fetch anything
+   private final GraphAxis.TransitionListener transitionListener = new GraphAxis.TransitionListener() {
+      @Override
+      public void onTransitionStart(final double targetMin, final double targetMax) {
+         tileLoader.checkForFetch(targetMin, targetMax, null);
+      }
+   };
+
    private int previousPaintEventId = 0;
 
+   // The tiles drawn by the last paint, in order of time
+   private List<GrapherTile> paintedTiles = Collections.emptyList();
+
    /**
     *
     *
@@ -206,6 +220,7 @@ public abstract class BaseSeriesPlot implements Plot {
 
       this.registerGraphAxisEventListener(getXAxis());
       this.registerGraphAxisEventListener(getYAxis());
+      getXAxis().addTransitionListener(transitionListener);
    }
 
    /**
@@ -227,12 +242,22 @@ public abstract class BaseSeriesPlot implements Plot {
 
          this.unregisterGraphAxisEventListener(getXAxis());
          this.unregisterGraphAxisEventListener(getYAxis());
+         getXAxis().removeTransitionListener(transitionListener);
+         onUnregisterPlotContainer();
 
          // TODO: Possibly set an inactive flag that disables all operations
          // until the flag is reset by calling registerPlotContainer?
       }
    }
 
+   /**
+    * Called after this plot is removed from its {@link PlotContainer}, so
+    * that subclasses can let go of anything they hold for painting.  Does
+    * nothing by default.
+    */
+   protected void onUnregisterPlotContainer() {
+   }
+
    protected abstract SeriesPlotRenderer getRenderer();
 
    /**
@@ -257,25 +282,70 @@ public abstract class BaseSeriesPlot implements Plot {
     */
    @Override
    public final void paint(final Canvas canvas, final int newPaintEventId) {
+      paint(canvas, newPaintEventId, 0);
+   }
+
+   @Override
+   public final void paint(final Canvas canvas, final int newPaintEventId, final int levelOffset) {
       final SeriesPlotRenderer renderer = getRenderer();
       if (renderer != null) {
          // guard against redundant paints
          if (previousPaintEventId != newPaintEventId) {
             previousPaintEventId = newPaintEventId;
+            paintedTiles = getTiles(levelOffset);
 
             renderer.render(canvas,
                             getDrawingBounds(canvas),
-                            tileLoader.getBestResolutionTiles(),
+                            paintedTiles,
                             getXAxis(),
                             getYAxis(),
                             getHighlightedPoint());
 
-            // Make sure we shouldn't get any more info from the server
-            tileLoader.checkForFetch();
+            // Make sure we shouldn't get any more info from the server,
+            // unless an animation has already asked for the tiles it needs
+            if (!getXAxis().isFetchDeferred()) {
+               tileLoader.checkForFetch();
+            }
          }
       }
    }
 
+   @Override
+   public final void paintHighlight(final Canvas canvas) {
+      final SeriesPlotRenderer renderer = getRenderer();
+      if (renderer != null) {
+         renderer.renderHighlight(canvas,
+                                  getDrawingBounds(canvas),
+                                  getXAxis(),
+                                  getYAxis(),
+                                  getHighlightedPoint());
+      }
+   }
+
+   private List<GrapherTile> getTiles(final int levelOffset) {
+      if (levelOffset == 0) {
+         return tileLoader.getBestResolutionTiles();
+      }
+
+      final double minTime = xAxis.getMin();
+      final double maxTime = xAxis.getMax();
+      final int level = StandardTileLoader.computeLevel(maxTime - minTime);
+      if (level == Integer.MIN_VALUE) {
+         return tileLoader.getBestResolutionTiles();
+      }
+
+      return tileLoader.getBestResolutionTiles(minTime, maxTime, level + levelOffset);
+   }
+
+   /**
+    * Returns the tiles drawn by the last paint, in order of time, which
+    * are the tiles the user can see.  This is an empty list before the
+    * first paint.
+    */
+   protected final List<GrapherTile> getPaintedTiles() {
+      return paintedTiles;
+   }
+
    /** Causes the containing {@link SeriesPlotContainer} to paint itself. */
    protected final void signalRepaintOfPlotContainer() {
       if (plotContainer != null) {
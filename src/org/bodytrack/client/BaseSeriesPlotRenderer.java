@@ -1,6 +1,7 @@
 package org.bodytrack.client;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.bodytrack.client.StyleDescription.CommentsDescription;
@@ -16,8 +17,10 @@ import com.google.gwt.user.client.ui.PopupPanel;
  *
  * <p>A BaseSeriesPlotRenderer can render a highlighted point, as set by the
  * {@link Plot#setHighlightedPoint(PlottablePoint)} method.  If this value is
- * not null, that point is drawn at a larger radius whenever
+ * not null, the plot is drawn in its highlighted style whenever
  * {@link SeriesPlotRenderer#render(Canvas, BoundedDrawingBox, Iterable, GraphAxis, GraphAxis, PlottablePoint)}
+ * is called, and that point is drawn at a larger radius whenever
+ * {@link SeriesPlotRenderer#renderHighlight(Canvas, BoundedDrawingBox, GraphAxis, GraphAxis, PlottablePoint)}
  * is called.  Hidden from the user of this
  * object is a mutable comment panel, which may be visible or invisible at
  * different points in time.  This mutable comment panel is never initialized
@@ -38,6 +41,14 @@ public abstract class BaseSeriesPlotRenderer implements SeriesPlotRenderer {
 	 */
 	private static final int PREFERRED_MAX_COMMENT_WIDTH = 600;
 
+	/**
+	 * The minimum horizontal distance in pixels between the points drawn
+	 * while the user is interacting with the view, for renderers that
+	 * decimate.  Points closer than this to the last point drawn are
+	 * skipped.
+	 */
+	private static final double INTERACTIVE_MIN_POINT_SPACING = 2.0;
+
 	private PopupPanel commentPanel;
 	private boolean willShowComments = false;
 	private double commentVerticalMargin = DEFAULT_COMMENT_VERTICAL_MARGIN;
@@ -124,6 +135,20 @@ public abstract class BaseSeriesPlotRenderer implements SeriesPlotRenderer {
 			final JsArray<StyleDescription.StyleType> styleTypes,
 			final Double highlightLineWidth);
 
+	/**
+	 * Tells whether this renderer may skip points that are very close to
+	 * each other while the user is interacting with the view.
+	 *
+	 * <p>This implementation returns <code>false</code>, which is
+	 * necessary for renderers whose strategies expect to be called once
+	 * for every point.</p>
+	 *
+	 * @see RenderQuality#isInteracting()
+	 */
+	protected boolean willDecimateWhileInteracting() {
+		return false;
+	}
+
 	@Override
 	public final void render(final Canvas canvas,
 			final BoundedDrawingBox drawing,
@@ -137,7 +162,7 @@ public abstract class BaseSeriesPlotRenderer implements SeriesPlotRenderer {
 				isAnyPointHighlighted);
 		renderPlotStrategies(canvas, drawing, tiles, xAxis, yAxis,
 				isAnyPointHighlighted);
-		renderHighlightedPointsAndComments(canvas, drawing, tiles, xAxis, yAxis,
+		renderComments(canvas, drawing, tiles, xAxis, yAxis,
 				highlightedPoint);
 	}
 
@@ -177,6 +202,11 @@ public abstract class BaseSeriesPlotRenderer implements SeriesPlotRenderer {
 		double prevX = -Double.MAX_VALUE;
 		double prevY = -Double.MAX_VALUE;
 
+		final double minPointSpacing =
+			(willDecimateWhileInteracting() && RenderQuality.isInteracting())
+				? INTERACTIVE_MIN_POINT_SPACING
+				: 0;
+
 		for (final GrapherTile tile: tiles) {
 			for (final PlottablePoint point: getDataPoints(tile)) {
 				final double x = xAxis.project2D(point.getDate()).getX();
@@ -197,6 +227,12 @@ public abstract class BaseSeriesPlotRenderer implements SeriesPlotRenderer {
 					continue;
 				}
 
+				// Skip points that are too close to the last point drawn
+				if (x - prevX < minPointSpacing
+						&& prevY > MIN_DRAWABLE_VALUE) {
+					continue;
+				}
+
 				// Draw this part of the line
 				if (prevX > MIN_DRAWABLE_VALUE
 						&& prevY > MIN_DRAWABLE_VALUE) {
@@ -213,7 +249,7 @@ public abstract class BaseSeriesPlotRenderer implements SeriesPlotRenderer {
 		}
 	}
 
-	private void renderHighlightedPointsAndComments(final Canvas canvas,
+	private void renderComments(final Canvas canvas,
 			final BoundedDrawingBox drawing,
 			final Iterable<GrapherTile> tiles,
 			final GraphAxis xAxis,
@@ -221,7 +257,14 @@ public abstract class BaseSeriesPlotRenderer implements SeriesPlotRenderer {
 			final PlottablePoint highlightedPoint) {
 		final boolean isAnyPointHighlighted = highlightedPoint != null;
 
-		for (final DataPointRenderingStrategy renderingStrategy: commentRenderingStrategies) {
+		// Comment markers are too expensive to draw while the user is
+		// interacting with the view
+		final List<DataPointRenderingStrategy> commentStrategies =
+			RenderQuality.isInteracting()
+				? Collections.<DataPointRenderingStrategy>emptyList()
+				: commentRenderingStrategies;
+
+		for (final DataPointRenderingStrategy renderingStrategy: commentStrategies) {
 			for (final GrapherTile tile: tiles) {
 				for (final PlottablePoint point: getDataPoints(tile)) {
 					if (point.hasComment()) {
@@ -236,29 +279,33 @@ public abstract class BaseSeriesPlotRenderer implements SeriesPlotRenderer {
 				}
 			}
 		}
+	}
 
+	@Override
+	public final void renderHighlight(final Canvas canvas,
+			final BoundedDrawingBox drawing,
+			final GraphAxis xAxis,
+			final GraphAxis yAxis,
+			final PlottablePoint highlightedPoint) {
 		hideComment();
 
 		// if there's a highlighted point, then we should render it as such and,
 		// if it has a comment, also render the comment
-		if (isAnyPointHighlighted) {
+		if (highlightedPoint != null) {
+			final double x = xAxis.projectCoordinate(highlightedPoint.getDate());
+			final double y = yAxis.projectCoordinate(highlightedPoint.getValue());
+
 			// render highlight
 			for (final DataPointRenderingStrategy renderingStrategy: highlightRenderingStrategies) {
-				renderingStrategy.beforeRender(canvas, drawing, isAnyPointHighlighted);
-				renderingStrategy.paintPoint(drawing,
-						xAxis,
-						yAxis,
-						xAxis.project2D(highlightedPoint.getDate()).getX(),
-						yAxis.project2D(highlightedPoint.getValue()).getY(),
+				renderingStrategy.beforeRender(canvas, drawing, true);
+				renderingStrategy.paintPoint(drawing, xAxis, yAxis, x, y,
 						highlightedPoint);
 				renderingStrategy.afterRender(canvas, drawing);
 			}
 
 			// finally, render the comment
 			if (highlightedPoint.hasComment()) {
-				paintComment(drawing, highlightedPoint,
-						xAxis.project2D(highlightedPoint.getDate()).getX(),
-						yAxis.project2D(highlightedPoint.getValue()).getY());
+				paintComment(drawing, highlightedPoint, x, y);
 			}
 		}
 	}
@@ -1,7 +1,6 @@
 package org.bodytrack.client;
 
 import gwt.g2d.client.graphics.Color;
-import gwt.g2d.client.graphics.canvas.Context;
 import gwt.g2d.client.math.Vector2;
 
 import java.util.ArrayList;
@@ -31,6 +30,9 @@ public final class BoundedDrawingBox {
 
 	private static final double TWO_PI = 2 * Math.PI;
 
+	// Half the length of the line segment drawDot uses as a dot
+	private static final double DOT_HALF_WIDTH = 0.5;
+
 	// General tolerance for double equality
 	private static final double TOLERANCE = 1e-6;
 
@@ -136,14 +138,14 @@ public final class BoundedDrawingBox {
                           final double y,
                           final double radius) {
       if (contains(x, y)) {
-         final Context ctx1 = canvas.getSurface().getContext();
-         ctx1.moveTo(x + radius, y);
-         ctx1.arc(x, y, radius, 0, TWO_PI, false);
+         canvas.moveTo(x + radius, y);
+         canvas.arc(x, y, radius, 0, TWO_PI, false);
       }
    }
 
    public void fillCircle(final double x, final double y, final double radius) {
-		canvas.getRenderer().drawCircle(x, y, radius);
+		canvas.moveTo(x, y);
+		canvas.arc(x, y, radius, 0, TWO_PI, true);
 
 		// TODO: This and other BoundedDrawingBox methods should not stroke
 		// or fill directly
@@ -172,15 +174,32 @@ public final class BoundedDrawingBox {
                           final double y,
                           final double radius) {
       if (contains(x, y)) {
-         final Context ctx = canvas.getSurface().getContext();
-         ctx.moveTo(x - radius, y - radius);
-         ctx.rect(x - radius, y - radius, 2 * radius, 2 * radius);
+         canvas.moveTo(x - radius, y - radius);
+         canvas.rect(x - radius, y - radius, 2 * radius, 2 * radius);
+      }
+   }
+
+   /**
+    * Draws a dot about one pixel in size at the specified point, if and
+    * only if the point is in bounds.  This is much cheaper to draw than
+    * a circle or a square.  This method merely draws the shape--it is up
+    * to the caller to call {@link #strokeClippedPath} afterwards.
+    *
+    * @param x
+    * 		the X-value of the dot
+    * @param y
+    * 		the Y-value of the dot
+    */
+   public void drawDot(final double x, final double y) {
+      if (contains(x, y)) {
+         canvas.moveTo(x - DOT_HALF_WIDTH, y);
+         canvas.lineTo(x + DOT_HALF_WIDTH, y);
       }
    }
 
 	public void fillText(final String text, final double x, final double y) {
 		// TODO: Same issue as fillCircle
-		canvas.getSurface().fillText(text, x, y);
+		canvas.fillText(text, x, y);
 	}
 
 	public void setStrokeStyle(final Color color) {
@@ -199,16 +218,14 @@ public final class BoundedDrawingBox {
 	 * @see #strokeClippedPath()
 	 */
 	public void beginClippedPath() {
-		Context ctx = canvas.getContext();
-
-		ctx.save();
+		canvas.save();
 		// Set up the path for clipping
-		ctx.beginPath();
-		ctx.rect(xMin, yMin, getWidth(), getHeight());
-		ctx.closePath();
-		ctx.clip();
+		canvas.beginPath();
+		canvas.rect(xMin, yMin, getWidth(), getHeight());
+		canvas.closePath();
+		canvas.clip();
 
-		ctx.beginPath();
+		canvas.beginPath();
 	}
 
 	/**
@@ -236,10 +253,8 @@ public final class BoundedDrawingBox {
 	 * 	by the line segment we are to draw)
 	 */
 	public void drawLineSegment(double x1, double y1, double x2, double y2) {
-		Context ctx = canvas.getSurface().getContext();
-
-		ctx.moveTo(x1, y1);
-		ctx.lineTo(x2, y2);
+		canvas.moveTo(x1, y1);
+		canvas.lineTo(x2, y2);
 	}
 
 	/**
@@ -253,10 +268,8 @@ public final class BoundedDrawingBox {
 	 * @see #beginClippedPath()
 	 */
 	public void strokeClippedPath() {
-		Context ctx = canvas.getSurface().getContext();
-
-		ctx.stroke();
-		ctx.restore();
+		canvas.stroke();
+		canvas.restore();
 	}
 
 	/**
@@ -271,10 +284,8 @@ public final class BoundedDrawingBox {
 	 * @see #strokeClippedPath
 	 */
 	public void fillClippedPath() {
-		Context ctx = canvas.getSurface().getContext();
-
-		ctx.fill();
-		ctx.restore();
+		canvas.fill();
+		canvas.restore();
 	}
 
 	/**
@@ -309,7 +320,7 @@ public final class BoundedDrawingBox {
 			double y2) {
 		if (contains(x1, y1) && contains(x2, y2)) {
 			// If everything is in bounds, we just draw the line
-			getCanvas().getRenderer().drawLineSegment(x1, y1, x2, y2);
+			getCanvas().drawLineSegment(x1, y1, x2, y2);
 			return;
 		}
 
@@ -322,7 +333,7 @@ public final class BoundedDrawingBox {
 
 			// Now we have a pair (x1, y1), (x2, y2) where both points are
 			// in bounds
-			getCanvas().getRenderer().drawLineSegment(x1, y1,
+			getCanvas().drawLineSegment(x1, y1,
 					secondEndpoint.getX(), secondEndpoint.getY());
 
 			return;
@@ -486,14 +497,14 @@ public final class BoundedDrawingBox {
 		double slope = (y2 - y1) / (x2 - x1);		
 		if (doubleEquals(x1, x2) || Double.isInfinite(slope)) {
 			// Vertical line
-			getCanvas().getRenderer().drawLineSegment(x1, yMin, x1, yMax);
+			getCanvas().drawLineSegment(x1, yMin, x1, yMax);
 			return;
 		}
 
 		if (doubleEquals(slope, 0.0)) {
 			// Optimization: don't do anything extra if the slope is 0
 
-			getCanvas().getRenderer().drawLineSegment(xMin, y1, xMax, y2);
+			getCanvas().drawLineSegment(xMin, y1, xMax, y2);
 			return;
 		}
 
@@ -554,7 +565,7 @@ public final class BoundedDrawingBox {
 		}
 
 		// Now we have the line to draw across the box
-		getCanvas().getRenderer().drawLineSegment(
+		getCanvas().drawLineSegment(
 				inBoundsIntercepts.get(0),
 				inBoundsIntercepts.get(1));
 	}
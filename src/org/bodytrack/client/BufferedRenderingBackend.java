@@ -0,0 +1,480 @@
+package org.bodytrack.client;
+
+import gwt.g2d.client.graphics.Color;
+import gwt.g2d.client.graphics.Surface;
+import gwt.g2d.client.graphics.TextAlign;
+import gwt.g2d.client.graphics.TextBaseline;
+import gwt.g2d.client.graphics.canvas.CanvasElement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gwt.core.client.JavaScriptObject;
+import com.google.gwt.core.client.JsArray;
+import com.google.gwt.core.client.JsArrayNumber;
+import com.google.gwt.core.client.JsArrayString;
+
+/**
+ * A {@link RenderingBackend} that records drawing operations into a
+ * compact command buffer, and replays the whole buffer on the 2D context
+ * of a G2D {@link gwt.g2d.client.graphics.Surface Surface}, in a single
+ * native loop, when {@link #flush()} is called.
+ *
+ * <p>Drawing through G2D crosses from Java into JavaScript once for
+ * every operation.  This backend instead appends each operation to a
+ * JavaScript array of numbers: an opcode, followed by the operation's
+ * arguments.  Strings, such as color codes, fonts, and text, and images
+ * are kept in separate arrays and referred to by index.</p>
+ *
+ * <p>The backend also tracks the drawing state, including across save and
+ * restore, and does not record a setter call that would not change the
+ * current value.  This way, the common pattern of resetting the line
+ * width and the colors to their defaults after drawing each series
+ * costs nothing when nothing was changed.  Because of this, code that
+ * draws on the same canvas without going through this backend must call
+ * {@link #flush()} first, which also makes the backend forget the
+ * drawing state.  Code that changes the drawing state between flushes
+ * without going through this backend must call
+ * {@link #invalidateState()}.</p>
+ */
+public final class BufferedRenderingBackend implements RenderingBackend {
+	// The opcodes in the command buffer, each followed by the number
+	// of arguments in the comment.  These must match the cases in
+	// replay, which uses the literal values for speed
+	private static final int STROKE_STYLE = 0; // 1, an index into strings
+	private static final int FILL_STYLE = 1; // 1, an index into strings
+	private static final int LINE_WIDTH = 2; // 1
+	private static final int GLOBAL_ALPHA = 3; // 1
+	private static final int TEXT_ALIGN = 4; // 1, an index into strings
+	private static final int TEXT_BASELINE = 5; // 1, an index into strings
+	private static final int FONT = 6; // 1, an index into strings
+	private static final int CLEAR = 7; // 0
+	private static final int SAVE = 8; // 0
+	private static final int RESTORE = 9; // 0
+	private static final int TRANSLATE = 10; // 2
+	private static final int BEGIN_PATH = 11; // 0
+	private static final int CLOSE_PATH = 12; // 0
+	private static final int MOVE_TO = 13; // 2
+	private static final int LINE_TO = 14; // 2
+	private static final int ARC = 15; // 6, with anticlockwise as 0 or 1
+	private static final int RECT = 16; // 4
+	private static final int CLIP = 17; // 0
+	private static final int STROKE = 18; // 0
+	private static final int FILL = 19; // 0
+	private static final int STROKE_RECT = 20; // 4
+	private static final int FILL_RECT = 21; // 4
+	private static final int STROKE_TEXT = 22; // 3, with an index into strings first
+	private static final int FILL_TEXT = 23; // 3, with an index into strings first
+	private static final int DRAW_IMAGE = 24; // 5, with an index into images first
+
+	private final Surface surface;
+	private final CanvasElement canvasElement;
+
+	private JsArrayNumber commands;
+	private JsArrayString strings;
+	private JsArray<CanvasElement> images;
+
+	private DrawingState state;
+	private final List<DrawingState> savedStates;
+
+	/**
+	 * Creates a new backend that draws on the specified surface.
+	 *
+	 * @param surface
+	 * 	The surface on which to draw
+	 * @throws NullPointerException
+	 * 	If surface is <code>null</code>
+	 */
+	public BufferedRenderingBackend(final Surface surface) {
+		if (surface == null)
+			throw new NullPointerException("Can't draw on a null surface");
+
+		this.surface = surface;
+		this.canvasElement = surface.getCanvas();
+		this.commands = JavaScriptObject.createArray().cast();
+		this.strings = JavaScriptObject.createArray().cast();
+		this.images = JavaScriptObject.createArray().cast();
+		this.state = DrawingState.unknown();
+		this.savedStates = new ArrayList<DrawingState>();
+	}
+
+	/**
+	 * Returns the number of numbers, opcodes and arguments together,
+	 * currently in the command buffer
+	 */
+	public int getBufferedLength() {
+		return commands.length();
+	}
+
+	/**
+	 * Forgets what this backend knows about the current drawing state,
+	 * so that the next call to each setter is always recorded.
+	 *
+	 * <p>This must be called whenever the drawing state of the canvas
+	 * may have been changed without going through this backend.  The
+	 * states saved by {@link #save()} are kept, since a restore on the
+	 * real context brings back exactly those states.</p>
+	 */
+	public void invalidateState() {
+		state = DrawingState.unknown();
+	}
+
+	/**
+	 * Replays every buffered command on the canvas, and empties the
+	 * buffer.
+	 *
+	 * <p>Since the canvas may be drawn on directly once the buffer has
+	 * been flushed, this also calls {@link #invalidateState()}.</p>
+	 */
+	@Override
+	public void flush() {
+		invalidateState();
+
+		if (commands.length() == 0)
+			return;
+
+		replay(canvasElement, commands, strings, images);
+
+		commands = JavaScriptObject.createArray().cast();
+		strings = JavaScriptObject.createArray().cast();
+		images = JavaScriptObject.createArray().cast();
+	}
+
+	@Override
+	public int getWidth() {
+		return surface.getWidth();
+	}
+
+	@Override
+	public int getHeight() {
+		return surface.getHeight();
+	}
+
+	@Override
+	public void setStrokeStyle(final Color color) {
+		if (DrawingState.isSame(color, state.strokeStyle))
+			return;
+
+		state.strokeStyle = color;
+		push(STROKE_STYLE, addString(color.getColorCode()));
+	}
+
+	@Override
+	public void setFillStyle(final Color color) {
+		if (DrawingState.isSame(color, state.fillStyle))
+			return;
+
+		state.fillStyle = color;
+		push(FILL_STYLE, addString(color.getColorCode()));
+	}
+
+	@Override
+	public double getLineWidth() {
+		// If the line width is unknown, it has not been set since the
+		// state was invalidated, so the real context is up to date
+		if (Double.isNaN(state.lineWidth))
+			state.lineWidth = surface.getLineWidth();
+
+		return state.lineWidth;
+	}
+
+	@Override
+	public void setLineWidth(final double width) {
+		if (width == state.lineWidth)
+			return;
+
+		state.lineWidth = width;
+		push(LINE_WIDTH, width);
+	}
+
+	@Override
+	public double getGlobalAlpha() {
+		if (Double.isNaN(state.globalAlpha))
+			state.globalAlpha = surface.getGlobalAlpha();
+
+		return state.globalAlpha;
+	}
+
+	@Override
+	public void setGlobalAlpha(final double alpha) {
+		if (alpha == state.globalAlpha)
+			return;
+
+		state.globalAlpha = alpha;
+		push(GLOBAL_ALPHA, alpha);
+	}
+
+	@Override
+	public TextAlign getTextAlign() {
+		if (state.textAlign == null)
+			state.textAlign = surface.getTextAlign();
+
+		return state.textAlign;
+	}
+
+	@Override
+	public void setTextAlign(final TextAlign textAlign) {
+		if (DrawingState.isSame(textAlign, state.textAlign))
+			return;
+
+		state.textAlign = textAlign;
+		push(TEXT_ALIGN, addString(textAlign.toString()));
+	}
+
+	@Override
+	public TextBaseline getTextBaseline() {
+		if (state.textBaseline == null)
+			state.textBaseline = surface.getTextBaseline();
+
+		return state.textBaseline;
+	}
+
+	@Override
+	public void setTextBaseline(final TextBaseline textBaseline) {
+		if (DrawingState.isSame(textBaseline, state.textBaseline))
+			return;
+
+		state.textBaseline = textBaseline;
+		push(TEXT_BASELINE, addString(textBaseline.toString()));
+	}
+
+	@Override
+	public String getFont() {
+		if (state.font == null)
+			state.font = surface.getFont();
+
+		return state.font;
+	}
+
+	@Override
+	public void setFont(final String font) {
+		if (DrawingState.isSame(font, state.font))
+			return;
+
+		state.font = font;
+		push(FONT, addString(font));
+	}
+
+	@Override
+	public void clear() {
+		push(CLEAR);
+	}
+
+	@Override
+	public void save() {
+		savedStates.add(state.copy());
+		push(SAVE);
+	}
+
+	@Override
+	public void restore() {
+		// Like a real context, ignore restore calls without a
+		// matching save call.  Since an unmatched save might have come
+		// from outside this backend, the state is no longer known
+		if (savedStates.isEmpty())
+			state = DrawingState.unknown();
+		else
+			state = savedStates.remove(savedStates.size() - 1);
+
+		push(RESTORE);
+	}
+
+	@Override
+	public void translate(final double x, final double y) {
+		push(TRANSLATE, x, y);
+	}
+
+	@Override
+	public void beginPath() {
+		push(BEGIN_PATH);
+	}
+
+	@Override
+	public void closePath() {
+		push(CLOSE_PATH);
+	}
+
+	@Override
+	public void moveTo(final double x, final double y) {
+		push(MOVE_TO, x, y);
+	}
+
+	@Override
+	public void lineTo(final double x, final double y) {
+		push(LINE_TO, x, y);
+	}
+
+	@Override
+	public void arc(final double x, final double y, final double radius,
+			final double startAngle, final double endAngle,
+			final boolean anticlockwise) {
+		push(ARC, x, y, radius, startAngle, endAngle);
+		commands.push(anticlockwise ? 1 : 0);
+	}
+
+	@Override
+	public void rect(final double x, final double y,
+			final double width, final double height) {
+		push(RECT, x, y, width, height);
+	}
+
+	@Override
+	public void clip() {
+		push(CLIP);
+	}
+
+	@Override
+	public void stroke() {
+		push(STROKE);
+	}
+
+	@Override
+	public void fill() {
+		push(FILL);
+	}
+
+	@Override
+	public void strokeRectangle(final double x, final double y,
+			final double width, final double height) {
+		push(STROKE_RECT, x, y, width, height);
+	}
+
+	@Override
+	public void fillRectangle(final double x, final double y,
+			final double width, final double height) {
+		push(FILL_RECT, x, y, width, height);
+	}
+
+	@Override
+	public void strokeText(final String text, final double x, final double y) {
+		push(STROKE_TEXT, addString(text), x, y);
+	}
+
+	@Override
+	public void fillText(final String text, final double x, final double y) {
+		push(FILL_TEXT, addString(text), x, y);
+	}
+
+	@Override
+	public void drawImage(final CanvasElement image, final double x,
+			final double y, final double width, final double height) {
+		images.push(image);
+		push(DRAW_IMAGE, images.length() - 1, x, y, width, height);
+	}
+
+	@Override
+	public double measureText(final String text) {
+		return measureText(canvasElement, getFont(), text);
+	}
+
+	private int addString(final String s) {
+		strings.push(s);
+		return strings.length() - 1;
+	}
+
+	private void push(final int opcode) {
+		commands.push(opcode);
+	}
+
+	private void push(final int opcode, final double a) {
+		commands.push(opcode);
+		commands.push(a);
+	}
+
+	private void push(final int opcode, final double a, final double b) {
+		commands.push(opcode);
+		commands.push(a);
+		commands.push(b);
+	}
+
+	private void push(final int opcode, final double a, final double b,
+			final double c) {
+		commands.push(opcode);
+		commands.push(a);
+		commands.push(b);
+		commands.push(c);
+	}
+
+	private void push(final int opcode, final double a, final double b,
+			final double c, final double d) {
+		commands.push(opcode);
+		commands.push(a);
+		commands.push(b);
+		commands.push(c);
+		commands.push(d);
+	}
+
+	private void push(final int opcode, final double a, final double b,
+			final double c, final double d, final double e) {
+		commands.push(opcode);
+		commands.push(a);
+		commands.push(b);
+		commands.push(c);
+		commands.push(d);
+		commands.push(e);
+	}
+
+	/**
+	 * Measures text with the specified font, which may differ from the
+	 * font the real context holds while commands are still buffered
+	 */
+	private static native double measureText(final CanvasElement canvasElement,
+			final String font,
+			final String text) /*-{
+		var ctx = canvasElement.getContext('2d');
+		var oldFont = ctx.font;
+		ctx.font = font;
+		var width = ctx.measureText(text).width;
+		ctx.font = oldFont;
+		return width;
+	}-*/;
+
+	private static native void replay(final CanvasElement canvasElement,
+			final JsArrayNumber commands,
+			final JsArrayString strings,
+			final JsArray<CanvasElement> images) /*-{
+		var ctx = canvasElement.getContext('2d');
+		var n = commands.length;
+		var c = commands;
+		var i = 0;
+
+		while (i < n) {
+			switch (c[i++]) {
+			case 0: ctx.strokeStyle = strings[c[i++]]; break;
+			case 1: ctx.fillStyle = strings[c[i++]]; break;
+			case 2: ctx.lineWidth = c[i++]; break;
+			case 3: ctx.globalAlpha = c[i++]; break;
+			case 4: ctx.textAlign = strings[c[i++]]; break;
+			case 5: ctx.textBaseline = strings[c[i++]]; break;
+			case 6: ctx.font = strings[c[i++]]; break;
+			// Same as the G2D clear, which clears far beyond the edges
+			// in case the context has been translated
+			case 7: ctx.clearRect(-1e4, -1e4, 2e4, 2e4); break;
+			case 8: ctx.save(); break;
+			case 9: ctx.restore(); break;
+			case 10: ctx.translate(c[i], c[i + 1]); i += 2; break;
+			case 11: ctx.beginPath(); break;
+			case 12: ctx.closePath(); break;
+			case 13: ctx.moveTo(c[i], c[i + 1]); i += 2; break;
+			case 14: ctx.lineTo(c[i], c[i + 1]); i += 2; break;
+			case 15:
+				ctx.arc(c[i], c[i + 1], c[i + 2], c[i + 3], c[i + 4], c[i + 5] != 0);
+				i += 6;
+				break;
+			case 16: ctx.rect(c[i], c[i + 1], c[i + 2], c[i + 3]); i += 4; break;
+			case 17: ctx.clip(); break;
+			case 18: ctx.stroke(); break;
+			case 19: ctx.fill(); break;
+			case 20: ctx.strokeRect(c[i], c[i + 1], c[i + 2], c[i + 3]); i += 4; break;
+			case 21: ctx.fillRect(c[i], c[i + 1], c[i + 2], c[i + 3]); i += 4; break;
+			case 22: ctx.strokeText(strings[c[i]], c[i + 1], c[i + 2]); i += 3; break;
+			case 23: ctx.fillText(strings[c[i]], c[i + 1], c[i + 2]); i += 3; break;
+			case 24:
+				ctx.drawImage(images[c[i]], c[i + 1], c[i + 2], c[i + 3], c[i + 4]);
+				i += 5;
+				break;
+			default: return; // Should never happen
+			}
+		}
+	}-*/;
+}
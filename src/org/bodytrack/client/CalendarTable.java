@@ -0,0 +1,327 @@
+package org.bodytrack.client;
+
+/**
+ * Calendar arithmetic for local time, without creating a
+ * <code>Date</code> object for every question asked.
+ *
+ * <p>A <code>CalendarTable</code> is built for a range of times, normally
+ * the visible range of a {@link TimeGraphAxis} plus some padding on each
+ * side, and for a {@link TimeZoneMapping}, which defaults to the
+ * browser's time zone.  When it is built, it precomputes the start of
+ * every local day in the range, along with the year, month, and day of
+ * the month for that day.  After that, every query is a binary search
+ * over primitive arrays.  Queries outside the range still work, using
+ * the same integer calendar arithmetic that builds the table.</p>
+ *
+ * <p>Days are identified by day numbers, which count local days since
+ * January 1, 1970, so day 0 is that date and day -1 is the day before.
+ * All times are in seconds since the epoch, as everywhere else in the
+ * grapher.</p>
+ */
+final class CalendarTable {
+	static final int SECONDS_PER_HOUR = 60 * 60;
+	static final int SECONDS_PER_DAY = 24 * SECONDS_PER_HOUR;
+
+	/**
+	 * The largest number of days for which a table is built.  Wider
+	 * ranges only show month and year ticks, so they use the calendar
+	 * arithmetic directly.
+	 */
+	static final int MAX_TABLE_DAYS = 4096;
+
+	/**
+	 * The least amount of padding added on each side of the range passed
+	 * to {@link #forRange(CalendarTable, TimeZoneMapping, double, double)}
+	 */
+	private static final int MIN_PADDING_SECONDS = 7 * SECONDS_PER_DAY;
+
+	// 1970-01-01 was a Thursday
+	private static final int EPOCH_WEEKDAY = 4;
+
+	private final double min;
+	private final double max;
+
+	// The mapping passed in by the caller, or null if zone is the
+	// browser's time zone
+	private final TimeZoneMapping requestedZone;
+	private final TimeZoneMapping zone;
+
+	// dayStarts[i] is the start of day firstDay + i, and there is one
+	// more entry than there are days, to mark the end of the last day.
+	// All these arrays are null if the range is too wide
+	private final int firstDay;
+	private final double[] dayStarts;
+	private final int[] years;
+	private final int[] months;
+	private final int[] dates;
+
+	private CalendarTable(final TimeZoneMapping requestedZone,
+			final double min, final double max) {
+		this.min = min;
+		this.max = max;
+		this.requestedZone = requestedZone;
+		this.zone = requestedZone != null
+			? requestedZone
+			: TimeZoneMapping.fromBrowser(min, max);
+
+		firstDay = dayNumber(min);
+		final int nDays = dayNumber(max) - firstDay + 1;
+		if (nDays > MAX_TABLE_DAYS) {
+			dayStarts = null;
+			years = months = dates = null;
+			return;
+		}
+
+		dayStarts = new double[nDays + 1];
+		years = new int[nDays];
+		months = new int[nDays];
+		dates = new int[nDays];
+		for (int i = 0; i < nDays; i++) {
+			final int day = firstDay + i;
+			dayStarts[i] = localToUtc((double) day * SECONDS_PER_DAY);
+			years[i] = computeYear(day);
+			months[i] = computeMonth(day);
+			dates[i] = computeDate(day);
+		}
+		dayStarts[nDays] =
+			localToUtc((double) (firstDay + nDays) * SECONDS_PER_DAY);
+	}
+
+	/**
+	 * Returns a table suitable for the range from min to max in the
+	 * specified time zone, reusing previous if it is suitable.
+	 *
+	 * @param previous
+	 * 	The table returned from the last call, or <code>null</code>
+	 * @param zone
+	 * 	The time zone mapping to use, or <code>null</code> to use
+	 * 	the browser's time zone
+	 * @param min
+	 * 	The start of the range that will be queried most
+	 * @param max
+	 * 	The end of the range that will be queried most
+	 * @return
+	 * 	A table with precomputed days for at least the range from
+	 * 	min to max, unless that range is too wide for a day table
+	 */
+	static CalendarTable forRange(final CalendarTable previous,
+			final TimeZoneMapping zone, final double min, final double max) {
+		if (previous != null && previous.isSuitableFor(zone, min, max))
+			return previous;
+
+		final double padding = Math.max(max - min, MIN_PADDING_SECONDS);
+		return new CalendarTable(zone, min - padding, max + padding);
+	}
+
+	private boolean isSuitableFor(final TimeZoneMapping zone,
+			final double min, final double max) {
+		if (zone != requestedZone || min < this.min || max > this.max)
+			return false;
+
+		// After zooming in from a range too wide for a day table, rebuild
+		// so that the new, narrower range gets one
+		return dayStarts != null
+			|| (max - min) * 3 > (double) MAX_TABLE_DAYS * SECONDS_PER_DAY;
+	}
+
+	/**
+	 * Returns the local UTC offset, in seconds east of UTC, at time
+	 */
+	int getOffset(final double time) {
+		return zone.getOffset(time);
+	}
+
+	/**
+	 * Returns the number of the local day containing time
+	 */
+	int dayNumber(final double time) {
+		if (dayStarts != null && time >= dayStarts[0]
+				&& time < dayStarts[dayStarts.length - 1]) {
+			// Find the last day starting at or before time
+			int lo = 0;
+			int hi = dayStarts.length - 2;
+			while (lo < hi) {
+				final int mid = (lo + hi + 1) >>> 1;
+				if (dayStarts[mid] <= time)
+					lo = mid;
+				else
+					hi = mid - 1;
+			}
+
+			return firstDay + lo;
+		}
+
+		return (int) Math.floor((time + getOffset(time)) / SECONDS_PER_DAY);
+	}
+
+	/**
+	 * Returns the time at which the local day with the specified
+	 * number starts
+	 */
+	double getDayStart(final int day) {
+		if (dayStarts != null && day >= firstDay
+				&& day - firstDay < dayStarts.length)
+			return dayStarts[day - firstDay];
+
+		return localToUtc((double) day * SECONDS_PER_DAY);
+	}
+
+	/**
+	 * Returns the number of seconds between the last local midnight and
+	 * time, as shown on a local clock
+	 */
+	double getSecondOfDay(final double time) {
+		final double local = time + getOffset(time);
+		return local - Math.floor(local / SECONDS_PER_DAY) * SECONDS_PER_DAY;
+	}
+
+	/**
+	 * Returns the first local midnight at or after time
+	 */
+	double getNextDayStart(final double time) {
+		final int day = dayNumber(time);
+		final double start = getDayStart(day);
+		return start < time ? getDayStart(day + 1) : start;
+	}
+
+	/**
+	 * Returns the local midnight closest to time on a local clock
+	 */
+	double getClosestDayStart(final double time) {
+		final int day = dayNumber(time);
+		return getSecondOfDay(time) >= SECONDS_PER_DAY / 2
+			? getDayStart(day + 1)
+			: getDayStart(day);
+	}
+
+	/**
+	 * Returns the time at which the specified local date starts
+	 *
+	 * @param month
+	 * 	The month, from 0 for January to 11 for December.  Values out
+	 * 	of that range roll over into neighboring years
+	 */
+	double getDateStart(final int year, final int month, final int date) {
+		final int yearOffset = floorDivide(month, 12);
+		return getDayStart(daysFromCivil(year + yearOffset,
+			month - yearOffset * 12 + 1, date));
+	}
+
+	/**
+	 * Converts a local time, in seconds since the local epoch, to
+	 * seconds since the epoch
+	 */
+	double localToUtc(final double local) {
+		final double guess = local - getOffset(local);
+		return local - getOffset(guess);
+	}
+
+	/**
+	 * Returns the year, such as 2012, containing the specified day
+	 */
+	int getYear(final int day) {
+		if (years != null && day >= firstDay && day - firstDay < years.length)
+			return years[day - firstDay];
+		return computeYear(day);
+	}
+
+	/**
+	 * Returns the month, from 0 for January to 11 for December,
+	 * containing the specified day
+	 */
+	int getMonth(final int day) {
+		if (months != null && day >= firstDay
+				&& day - firstDay < months.length)
+			return months[day - firstDay];
+		return computeMonth(day);
+	}
+
+	/**
+	 * Returns the day of the month, starting at 1, of the specified day
+	 */
+	int getDate(final int day) {
+		if (dates != null && day >= firstDay && day - firstDay < dates.length)
+			return dates[day - firstDay];
+		return computeDate(day);
+	}
+
+	/**
+	 * Returns the day of the week, from 0 for Sunday to 6 for Saturday,
+	 * of the specified day
+	 */
+	static int getWeekday(final int day) {
+		return floorMod(day + EPOCH_WEEKDAY, 7);
+	}
+
+	/**
+	 * Returns <code>true</code> if and only if this table has
+	 * precomputed days, which is only false for very wide ranges
+	 */
+	boolean hasDayTable() {
+		return dayStarts != null;
+	}
+
+	// The civil calendar conversions are from Howard Hinnant's
+	// chrono-compatible low-level date algorithms, which work for any
+	// proleptic Gregorian date using integer arithmetic only
+
+	static int daysFromCivil(int year, final int month, final int date) {
+		if (month <= 2)
+			year--;
+		final int era = floorDivide(year, 400);
+		final int yearOfEra = year - era * 400;
+		final int dayOfYear =
+			(153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + date - 1;
+		final int dayOfEra = yearOfEra * 365 + yearOfEra / 4
+			- yearOfEra / 100 + dayOfYear;
+		return era * 146097 + dayOfEra - 719468;
+	}
+
+	private static int computeYear(final int day) {
+		final int shifted = day + 719468;
+		final int era = floorDivide(shifted, 146097);
+		final int dayOfEra = shifted - era * 146097;
+		final int yearOfEra = yearOfEra(dayOfEra);
+		final int year = yearOfEra + era * 400;
+		return monthIndex(dayOfEra, yearOfEra) < 10 ? year : year + 1;
+	}
+
+	// Returns a month from 0 to 11
+	private static int computeMonth(final int day) {
+		final int dayOfEra = floorMod(day + 719468, 146097);
+		final int index = monthIndex(dayOfEra, yearOfEra(dayOfEra));
+		return index < 10 ? index + 2 : index - 10;
+	}
+
+	private static int computeDate(final int day) {
+		final int dayOfEra = floorMod(day + 719468, 146097);
+		final int dayOfYear = dayOfYear(dayOfEra, yearOfEra(dayOfEra));
+		final int index = (5 * dayOfYear + 2) / 153;
+		return dayOfYear - (153 * index + 2) / 5 + 1;
+	}
+
+	private static int yearOfEra(final int dayOfEra) {
+		return (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524
+			- dayOfEra / 146096) / 365;
+	}
+
+	private static int dayOfYear(final int dayOfEra, final int yearOfEra) {
+		return dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+	}
+
+	// Months indexed from March, so that leap days come last
+	private static int monthIndex(final int dayOfEra, final int yearOfEra) {
+		return (5 * dayOfYear(dayOfEra, yearOfEra) + 2) / 153;
+	}
+
+	static int floorDivide(final int numerator, final int divisor) {
+		final int quotient = numerator / divisor;
+		return (numerator % divisor != 0 && (numerator < 0) != (divisor < 0))
+			? quotient - 1
+			: quotient;
+	}
+
+	static int floorMod(final int numerator, final int divisor) {
+		return numerator - floorDivide(numerator, divisor) * divisor;
+	}
+}
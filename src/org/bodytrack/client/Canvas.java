@@ -5,6 +5,7 @@ import gwt.g2d.client.graphics.DirectShapeRenderer;
 import gwt.g2d.client.graphics.Surface;
 import gwt.g2d.client.graphics.TextAlign;
 import gwt.g2d.client.graphics.TextBaseline;
+import gwt.g2d.client.graphics.canvas.CanvasElement;
 import gwt.g2d.client.graphics.canvas.Context;
 import gwt.g2d.client.math.Vector2;
 
@@ -25,6 +26,16 @@ import com.google.gwt.user.client.Element;
  * {@link #getRenderer()}, which simply return references to those two
  * objects, allow calls to the other methods.</p>
  *
+ * <p>All of the wrapper methods in this class are forwarded to a
+ * {@link RenderingBackend}.  A Canvas built from a Surface uses a
+ * {@link SurfaceRenderingBackend}, while a Canvas built with
+ * {@link #buildCanvas(RenderingBackend)} may use any backend, such as a
+ * {@link RecordingRenderingBackend} for benchmarks and tests.  Such a
+ * Canvas has no Surface, DirectShapeRenderer, or native canvas element,
+ * so code that should work with any backend must only use the wrapper
+ * methods.  A Canvas built with {@link #buildBufferedCanvas(Surface)}
+ * defers its drawing until {@link #flush()} is called.</p>
+ *
  * <p>This class is instance-controlled for efficiency: under this
  * system, only one DirectShapeRenderer is created per Surface.</p>
  */
@@ -43,6 +54,7 @@ public final class Canvas {
 	 */
 	public static final double DEFAULT_ALPHA = 1.0;
 
+	private final RenderingBackend backend;
 	private final Surface surface;
 	private final DirectShapeRenderer renderer;
 	private final Element nativeCanvasElement;
@@ -54,35 +66,62 @@ public final class Canvas {
 			new InstanceProducer<Surface, Canvas>() {
 				@Override
 				public Canvas newInstance(Surface param) {
-					// The constructor will throw the NullPointerException
-					// if param is null
-					return new Canvas(param);
+					// The SurfaceRenderingBackend constructor will throw
+					// the NullPointerException if param is null
+					return new Canvas(param,
+						new SurfaceRenderingBackend(param));
 				}
 			});
 	}
 
 	/**
-	 * Creates a new <tt>Canvas</tt> that draws on the specified surface.
+	 * Creates a new <tt>Canvas</tt> that draws on the specified surface
+	 * using the specified backend.
 	 *
 	 * @param s
 	 * 	The surface on which the new {@link Canvas} will draw
+	 * @param backend
+	 * 	The backend that will receive all drawing operations, which
+	 * 	must draw on s
 	 * @throws NullPointerException
-	 * 	If s is <code>null</code>
+	 * 	If s or backend is <code>null</code>
 	 * @throws IllegalArgumentException
 	 * 	If s has no native HTML canvas element inside its DOM tree
 	 */
-	private Canvas(Surface s) {
+	private Canvas(Surface s, RenderingBackend backend) {
 		if (s == null)
 			throw new NullPointerException("Can't draw on a null surface");
+		if (backend == null)
+			throw new NullPointerException("Can't draw on a null backend");
 
 		surface = s;
 		renderer = new DirectShapeRenderer(surface);
+		this.backend = backend;
 		nativeCanvasElement = findCanvasElement(surface.getElement());
 		if (nativeCanvasElement == null)
 			throw new IllegalArgumentException(
 				"No native canvas element available");
 	}
 
+	/**
+	 * Creates a new <tt>Canvas</tt> that forwards all drawing to the
+	 * specified backend, and has no Surface.
+	 *
+	 * @param backend
+	 * 	The backend that will receive all drawing operations
+	 * @throws NullPointerException
+	 * 	If backend is <code>null</code>
+	 */
+	private Canvas(RenderingBackend backend) {
+		if (backend == null)
+			throw new NullPointerException("Can't draw on a null backend");
+
+		this.backend = backend;
+		surface = null;
+		renderer = null;
+		nativeCanvasElement = null;
+	}
+
 	/**
 	 * Finds the first canvas element in the DOM tree rooted at e.
 	 *
@@ -130,13 +169,75 @@ public final class Canvas {
 		return instances.newInstance(s);
 	}
 
+	/**
+	 * Factory method to create a new Canvas object that draws on the
+	 * specified surface using a {@link BufferedRenderingBackend}.
+	 *
+	 * <p>Unlike {@link #buildCanvas(Surface)}, this is not
+	 * instance-controlled: every call returns a new Canvas with its own
+	 * buffer.  Nothing drawn with the wrapper methods appears on s until
+	 * {@link #flush()} is called.  Code that uses {@link #getSurface()},
+	 * {@link #getRenderer()}, {@link #getContext()}, or
+	 * {@link #getNativeCanvasElement()} to draw must call {@link #flush()}
+	 * first, and must not change the drawing state without restoring
+	 * it.</p>
+	 *
+	 * @param s
+	 * 	The {@link gwt.g2d.client.graphics.Surface Surface}
+	 * 	on which the new Canvas will draw
+	 * @return
+	 * 	A Canvas that buffers all drawing on s
+	 * @throws NullPointerException
+	 * 	If s is <code>null</code>
+	 */
+	public static Canvas buildBufferedCanvas(Surface s) {
+		// The BufferedRenderingBackend constructor will throw the
+		// NullPointerException if s is null
+		return new Canvas(s, new BufferedRenderingBackend(s));
+	}
+
+	/**
+	 * Factory method to create a new Canvas object that draws using
+	 * the specified backend.
+	 *
+	 * <p>Unlike {@link #buildCanvas(Surface)}, this is not
+	 * instance-controlled: every call returns a new Canvas.  The returned
+	 * Canvas returns <code>null</code> from {@link #getSurface()},
+	 * {@link #getRenderer()}, {@link #getContext()}, and
+	 * {@link #getNativeCanvasElement()}.</p>
+	 *
+	 * @param backend
+	 * 	The {@link RenderingBackend} that will receive all drawing
+	 * 	operations on the new Canvas
+	 * @return
+	 * 	A Canvas that draws using backend
+	 * @throws NullPointerException
+	 * 	If backend is <code>null</code>
+	 */
+	public static Canvas buildCanvas(RenderingBackend backend) {
+		return new Canvas(backend);
+	}
+
+	/**
+	 * Returns the backend that receives all drawing operations
+	 * on this canvas.
+	 */
+	public RenderingBackend getBackend() {
+		return backend;
+	}
+
+	/**
+	 * Returns the Surface passed in to this object's constructor, or
+	 * <code>null</code> if this canvas was not built from a Surface.
+	 */
 	public Surface getSurface() {
 		return surface;
 	}
 
 	/**
 	 * Returns the DirectShapeRenderer derived from the Surface passed
-	 * in to this object's constructor.
+	 * in to this object's constructor, or <code>null</code> if this
+	 * canvas was not built from a Surface.
 	 */
 	public DirectShapeRenderer getRenderer() {
 		return renderer;
@@ -147,7 +248,8 @@ public final class Canvas {
 	 * rooted at the surface passed in to this object's constructor.
 	 *
 	 * @return
-	 * 	The native canvas element
+	 * 	The native canvas element, or <code>null</code> if this
+	 * 	canvas was not built from a Surface
 	 */
 	public Element getNativeCanvasElement() {
 		return nativeCanvasElement;
@@ -157,10 +259,11 @@ public final class Canvas {
 	 * Returns the Context returned by {@code getSurface().getContext()}
 	 *
 	 * @return
-	 * 	The context for this canvas
+	 * 	The context for this canvas, or <code>null</code> if this
+	 * 	canvas was not built from a Surface
 	 */
 	public Context getContext() {
-		return surface.getContext();
+		return surface == null ? null : surface.getContext();
 	}
 
 	// --------------------------------------------------------------
@@ -174,7 +277,7 @@ public final class Canvas {
 	 * 	The width of this canvas
 	 */
 	public int getWidth() {
-		return surface.getWidth();
+		return backend.getWidth();
 	}
 
 	/**
@@ -184,7 +287,7 @@ public final class Canvas {
 	 * 	The height of this canvas
 	 */
 	public int getHeight() {
-		return surface.getHeight();
+		return backend.getHeight();
 	}
 
 	/**
@@ -193,10 +296,11 @@ public final class Canvas {
 	 * @param color
 	 * 	The color that will be used to stroke future drawing on the surface
 	 * @return
-	 * 	The Surface used for the setStrokeStyle call
+	 * 	This Canvas, to allow chaining
 	 */
-	public Surface setStrokeStyle(Color color) {
-		return surface.setStrokeStyle(color);
+	public Canvas setStrokeStyle(Color color) {
+		backend.setStrokeStyle(color);
+		return this;
 	}
 
 	/**
@@ -205,17 +309,18 @@ public final class Canvas {
 	 * @param color
 	 * 	The color that will be used to fill future drawing on the surface
 	 * @return
-	 * 	The Surface used for the setFillStyle call
+	 * 	This Canvas, to allow chaining
 	 */
-	public Surface setFillStyle(Color color) {
-		return surface.setFillStyle(color);
+	public Canvas setFillStyle(Color color) {
+		backend.setFillStyle(color);
+		return this;
 	}
 
 	/**
 	 * Equivalent to <code>getSurface().getLineWidth()</code>
 	 */
 	public double getLineWidth() {
-		return surface.getLineWidth();
+		return backend.getLineWidth();
 	}
 
 	/**
@@ -224,17 +329,18 @@ public final class Canvas {
 	 * @param width
 	 * 	The new width for lines on the surface
 	 * @return
-	 * 	The Surface used for the setLineWidth call
+	 * 	This Canvas, to allow chaining
 	 */
-	public Surface setLineWidth(double width) {
-		return surface.setLineWidth(width);
+	public Canvas setLineWidth(double width) {
+		backend.setLineWidth(width);
+		return this;
 	}
 
 	/**
 	 * Equivalent to <code>getSurface().getGlobalAlpha()</code>
 	 */
 	public double getGlobalAlpha() {
-		return surface.getGlobalAlpha();
+		return backend.getGlobalAlpha();
 	}
 
 	/**
@@ -243,10 +349,11 @@ public final class Canvas {
 	 * @param alpha
 	 * 	The new alpha for the canvas
 	 * @return
-	 * 	The Surface used for the setGlobalAlpha call
+	 * 	This Canvas, to allow chaining
 	 */
-	public Surface setGlobalAlpha(double alpha) {
-		return surface.setGlobalAlpha(alpha);
+	public Canvas setGlobalAlpha(double alpha) {
+		backend.setGlobalAlpha(alpha);
+		return this;
 	}
 
 	/**
@@ -256,7 +363,7 @@ public final class Canvas {
 	 * 	The text alignment for this canvas
 	 */
 	public TextAlign getTextAlign() {
-		return surface.getTextAlign();
+		return backend.getTextAlign();
 	}
 
 	/**
@@ -265,17 +372,18 @@ public final class Canvas {
 	 * @param textAlign
 	 * 	The new alignment to use for text on the canvas
 	 * @return
-	 * 	The Surface used for the setTextAlign call
+	 * 	This Canvas, to allow chaining
 	 */
-	public Surface setTextAlign(TextAlign textAlign) {
-		return surface.setTextAlign(textAlign);
+	public Canvas setTextAlign(TextAlign textAlign) {
+		backend.setTextAlign(textAlign);
+		return this;
 	}
 
 	/**
 	 * Equivalent to <code>getSurface().getTextBaseline()</code>
 	 */
 	public TextBaseline getTextBaseline() {
-		return surface.getTextBaseline();
+		return backend.getTextBaseline();
 	}
 
 	/**
@@ -284,31 +392,63 @@ public final class Canvas {
 	 * @param textBaseline
 	 * 	The new baseline to use for text on the canvas
 	 * @return
-	 * 	The Surface used for the setTextBaseline call
+	 * 	This Canvas, to allow chaining
+	 */
+	public Canvas setTextBaseline(TextBaseline textBaseline) {
+		backend.setTextBaseline(textBaseline);
+		return this;
+	}
+
+	/**
+	 * Equivalent to <code>getSurface().getFont()</code>
 	 */
-	public Surface setTextBaseline(TextBaseline textBaseline) {
-		return surface.setTextBaseline(textBaseline);
+	public String getFont() {
+		return backend.getFont();
+	}
+
+	/**
+	 * Equivalent to <code>getSurface().setFont(font)</code>
+	 *
+	 * @param font
+	 * 	The CSS font to use for text on the canvas
+	 * @return
+	 * 	This Canvas, to allow chaining
+	 */
+	public Canvas setFont(String font) {
+		backend.setFont(font);
+		return this;
 	}
 
 	/**
 	 * Equivalent to <code>getSurface().clear()</code>
 	 */
-	public Surface clear() {
-		return surface.clear();
+	public Canvas clear() {
+		backend.clear();
+		return this;
 	}
 
 	/**
 	 * Equivalent to <code>getSurface().save()</code>
 	 */
-	public Surface save() {
-		return surface.save();
+	public Canvas save() {
+		backend.save();
+		return this;
 	}
 
 	/**
 	 * Equivalent to <code>getSurface().restore()</code>
 	 */
-	public Surface restore() {
-		return surface.restore();
+	public Canvas restore() {
+		backend.restore();
+		return this;
+	}
+
+	/**
+	 * Equivalent to <code>getSurface().translate(x, y)</code>
+	 */
+	public Canvas translate(double x, double y) {
+		backend.translate(x, y);
+		return this;
 	}
 
 	/**
@@ -324,11 +464,12 @@ public final class Canvas {
 	 * @param height
 	 * 	The height of the rectangle
 	 * @return
-	 * 	The Surface used for the strokeRectangle call
+	 * 	This Canvas, to allow chaining
 	 */
-	public Surface strokeRectangle(double x,
+	public Canvas strokeRectangle(double x,
 			double y, double width, double height) {
-		return surface.strokeRectangle(x, y, width, height);
+		backend.strokeRectangle(x, y, width, height);
+		return this;
 	}
 
 	/**
@@ -344,42 +485,156 @@ public final class Canvas {
 	 * @param height
 	 * 	The height of the rectangle
 	 * @return
-	 * 	The Surface used for the fillRectangle call
+	 * 	This Canvas, to allow chaining
 	 */
-	public Surface fillRectangle(double x,
+	public Canvas fillRectangle(double x,
 			double y, double width, double height) {
-		return surface.fillRectangle(x, y, width, height);
+		backend.fillRectangle(x, y, width, height);
+		return this;
+	}
+
+	/**
+	 * Equivalent to <code>getSurface().strokeText(text, x, y)</code>
+	 */
+	public Canvas strokeText(String text, double x, double y) {
+		backend.strokeText(text, x, y);
+		return this;
+	}
+
+	/**
+	 * Equivalent to <code>getSurface().fillText(text, x, y)</code>
+	 */
+	public Canvas fillText(String text, double x, double y) {
+		backend.fillText(text, x, y);
+		return this;
+	}
+
+	/**
+	 * Equivalent to
+	 * <code>getContext().drawImage(image, x, y, width, height)</code>
+	 */
+	public Canvas drawImage(CanvasElement image, double x, double y,
+			double width, double height) {
+		backend.drawImage(image, x, y, width, height);
+		return this;
+	}
+
+	/**
+	 * Equivalent to <code>getContext().measureText(text)</code>
+	 *
+	 * @param text
+	 * 	The text to measure
+	 * @return
+	 * 	The width of text in pixels, using the current font
+	 */
+	public double measureText(String text) {
+		return backend.measureText(text);
+	}
+
+	/**
+	 * Sends any drawing that the backend has deferred on to the screen
+	 *
+	 * @see RenderingBackend#flush()
+	 */
+	public Canvas flush() {
+		backend.flush();
+		return this;
 	}
 
 	// --------------------------------------------------------------
-	// Wrappers for DirectShapeRenderer methods
+	// Wrappers for DirectShapeRenderer and Context path methods
 	// --------------------------------------------------------------
 
 	/**
 	 * Equivalent to <code>getRenderer().beginPath()</code>
 	 */
-	public DirectShapeRenderer beginPath() {
-		return renderer.beginPath();
+	public Canvas beginPath() {
+		backend.beginPath();
+		return this;
+	}
+
+	/**
+	 * Equivalent to <code>getRenderer().closePath()</code>
+	 */
+	public Canvas closePath() {
+		backend.closePath();
+		return this;
+	}
+
+	/**
+	 * Equivalent to <code>getRenderer().moveTo(x, y)</code>
+	 */
+	public Canvas moveTo(double x, double y) {
+		backend.moveTo(x, y);
+		return this;
+	}
+
+	/**
+	 * Equivalent to <code>getRenderer().drawLineTo(x, y)</code>
+	 */
+	public Canvas lineTo(double x, double y) {
+		backend.lineTo(x, y);
+		return this;
+	}
+
+	/**
+	 * Equivalent to
+	 * <code>getContext().arc(x, y, radius, startAngle, endAngle,
+	 * anticlockwise)</code>
+	 */
+	public Canvas arc(double x, double y, double radius,
+			double startAngle, double endAngle, boolean anticlockwise) {
+		backend.arc(x, y, radius, startAngle, endAngle, anticlockwise);
+		return this;
+	}
+
+	/**
+	 * Equivalent to <code>getContext().rect(x, y, width, height)</code>
+	 */
+	public Canvas rect(double x, double y, double width, double height) {
+		backend.rect(x, y, width, height);
+		return this;
+	}
+
+	/**
+	 * Equivalent to <code>getContext().clip()</code>
+	 */
+	public Canvas clip() {
+		backend.clip();
+		return this;
 	}
 
 	/**
 	 * Equivalent to <code>getRenderer().stroke()</code>
 	 */
-	public DirectShapeRenderer stroke() {
-		return renderer.stroke();
+	public Canvas stroke() {
+		backend.stroke();
+		return this;
 	}
 
 	/**
 	 * Equivalent to <code>getRenderer().fill()</code>
 	 */
-	public DirectShapeRenderer fill() {
-		return renderer.fill();
+	public Canvas fill() {
+		backend.fill();
+		return this;
+	}
+
+	/**
+	 * Equivalent to
+	 * <code>getRenderer().drawLineSegment(x1, y1, x2, y2)</code>
+	 */
+	public Canvas drawLineSegment(double x1, double y1, double x2, double y2) {
+		backend.moveTo(x1, y1);
+		backend.lineTo(x2, y2);
+		return this;
 	}
 
 	/**
 	 * Equivalent to <code>getRenderer().drawLineSegment(start, end)</code>
 	 */
-	public DirectShapeRenderer drawLineSegment(Vector2 start, Vector2 end) {
-		return renderer.drawLineSegment(start, end);
+	public Canvas drawLineSegment(Vector2 start, Vector2 end) {
+		return drawLineSegment(start.getX(), start.getY(),
+			end.getX(), end.getY());
 	}
 }
@@ -0,0 +1,150 @@
+package org.bodytrack.client;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A pyramid of 1-D grids over a sorted list of counted items, such as
+ * the photos in a {@link PhotoIndex}, that groups nearby items into
+ * clusters at any scale.
+ *
+ * <p>At level k, time is cut into cells 2<sup>k</sup> units wide, and
+ * all the items with a nonzero count that fall in one cell form one
+ * cluster.  The cluster is represented by its earliest such item, and
+ * has the sum of their counts.  A level is built the first time it is
+ * asked for, in time linear in the number of items, and kept until the
+ * items change, after which finding the clusters in a range of times is
+ * a binary search followed by a walk over just those clusters.</p>
+ */
+final class ClusterPyramid {
+	// The smallest level ever used, which keeps the cell widths from
+	// going to 0 for very small widths
+	private static final int MIN_LEVEL = -30;
+
+	private final double[] times;
+	private final int[] counts;
+
+	private final Map<Integer, Level> levels = new HashMap<Integer, Level>();
+
+	/**
+	 * Creates a pyramid over items with the specified times and counts,
+	 * which must have the same length, and with times in nondecreasing
+	 * order.  The arrays are used directly, not copied.
+	 *
+	 * @throws NullPointerException
+	 * 	If times or counts is <code>null</code>
+	 * @throws IllegalArgumentException
+	 * 	If times and counts have different lengths
+	 */
+	ClusterPyramid(final double[] times, final int[] counts) {
+		if (times == null || counts == null)
+			throw new NullPointerException("Null times or counts");
+		if (times.length != counts.length)
+			throw new IllegalArgumentException(
+				"Must have one count for each time");
+
+		this.times = times;
+		this.counts = counts;
+	}
+
+	/**
+	 * Returns the lowest level whose cells are at least minCellWidth
+	 * units wide
+	 */
+	static int levelFor(final double minCellWidth) {
+		if (!(minCellWidth > 0))
+			return MIN_LEVEL;
+
+		final int level = (int) Math.ceil(Math.log(minCellWidth) / Math.log(2));
+		return Math.max(level, MIN_LEVEL);
+	}
+
+	/**
+	 * Returns the clusters at the specified level, building them if
+	 * necessary
+	 */
+	Level getLevel(final int level) {
+		Level result = levels.get(level);
+		if (result == null) {
+			result = new Level(Math.pow(2, Math.max(level, MIN_LEVEL)));
+			levels.put(level, result);
+		}
+
+		return result;
+	}
+
+	/**
+	 * The clusters at one level of a {@link ClusterPyramid}, in order of
+	 * time
+	 */
+	final class Level {
+		// The index into times of the item that represents each cluster
+		private final int[] representatives;
+		private final int[] clusterCounts;
+		private final int size;
+
+		private Level(final double cellWidth) {
+			final int[] reps = new int[times.length];
+			final int[] sums = new int[times.length];
+			int n = 0;
+			double lastCell = Double.NaN;
+
+			for (int i = 0; i < times.length; i++) {
+				if (counts[i] <= 0)
+					continue;
+
+				final double cell = Math.floor(times[i] / cellWidth);
+				if (n > 0 && cell == lastCell) {
+					sums[n - 1] += counts[i];
+				} else {
+					reps[n] = i;
+					sums[n] = counts[i];
+					n++;
+					lastCell = cell;
+				}
+			}
+
+			representatives = reps;
+			clusterCounts = sums;
+			size = n;
+		}
+
+		int size() {
+			return size;
+		}
+
+		/**
+		 * Returns the index, among the items of the pyramid, of the item
+		 * that represents the cluster at index
+		 */
+		int getRepresentative(final int index) {
+			return representatives[index];
+		}
+
+		/**
+		 * Returns the sum of the counts of the items in the cluster at
+		 * index
+		 */
+		int getCount(final int index) {
+			return clusterCounts[index];
+		}
+
+		/**
+		 * Returns the index of the first cluster whose representative is
+		 * at or after time, which is {@link #size()} if there is none
+		 */
+		int firstIndexAtOrAfter(final double time) {
+			int lo = 0;
+			int hi = size;
+			while (lo < hi) {
+				final int mid = (lo + hi) >>> 1;
+				if (times[representatives[mid]] < time)
+					lo = mid + 1;
+				else
+					hi = mid;
+			}
+
+			return lo;
+		}
+	}
+}
@@ -0,0 +1,196 @@
+package org.bodytrack.client;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.bodytrack.client.ProviderHashSet.EqualsHashcodeProvider;
+
+import com.google.gwt.core.client.Duration;
+import com.google.gwt.i18n.client.NumberFormat;
+import com.google.gwt.user.client.Window;
+
+/**
+ * Measures the throughput of the open-addressing collections
+ * {@link DoubleObjectMap}, {@link IntObjectMap}, and
+ * {@link ProviderHashSet}, comparing each against the
+ * <code>java.util</code> collection it replaced.
+ *
+ * <p>Collections compile to quite different code in the browser than on
+ * the JVM, so this runs in the browser, and is exposed to the page as
+ * <code>CollectionsBenchmark.run(iterations)</code> by
+ * {@link NativeInterface}.  The report starts with the user agent, so
+ * that results pasted from several browsers can be told apart.</p>
+ */
+public final class CollectionsBenchmark {
+	private static final NumberFormat RATE_FORMAT = NumberFormat.getFormat("0.0");
+
+	// The number of distinct keys, about the number of tiles or photos
+	// a plot holds after some browsing
+	private static final int KEY_COUNT = 1024;
+
+	private static final int TILE_LEVEL = -3;
+
+	private static final EqualsHashcodeProvider<TileDescription> TILE_PROVIDER =
+		new EqualsHashcodeProvider<TileDescription>() {
+			@Override
+			public boolean equals(final TileDescription obj1,
+					final TileDescription obj2) {
+				return obj1.equals(obj2);
+			}
+
+			@Override
+			public int hashCode(final TileDescription obj) {
+				return obj.hashCode();
+			}
+		};
+
+	private CollectionsBenchmark() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Runs the benchmark.
+	 *
+	 * @param iterations
+	 * 	The number of lookups made in each collection, after each
+	 * 	collection is filled with {@link #KEY_COUNT} entries
+	 * @return
+	 * 	A report with one line per collection, giving the throughput in
+	 * 	millions of lookups per second
+	 * @throws IllegalArgumentException
+	 * 	If iterations is less than 1
+	 */
+	public static String run(final int iterations) {
+		if (iterations < 1)
+			throw new IllegalArgumentException(
+				"Must have a positive number of iterations");
+
+		final StringBuilder report = new StringBuilder();
+		report.append(Window.Navigator.getUserAgent()).append('\n');
+		report.append(iterations).append(" lookups per collection\n");
+
+		// Count every hit, so that no lookup can be optimized away
+		int hits = 0;
+		double start;
+
+		// Tiles, looked up by level and offset as the tile loader does
+		final Map<TileDescription, Object> tileHashMap =
+			new HashMap<TileDescription, Object>();
+		final DoubleObjectMap<Object> tileDoubleMap = new DoubleObjectMap<Object>();
+		for (int i = 0; i < KEY_COUNT; i++) {
+			tileHashMap.put(new TileDescription(TILE_LEVEL, i), report);
+			tileDoubleMap.put(TileDescription.getKey(TILE_LEVEL, i), report);
+		}
+
+		start = Duration.currentTimeMillis();
+		for (int i = 0; i < iterations; i++) {
+			if (tileHashMap.containsKey(
+					new TileDescription(TILE_LEVEL, i % (2 * KEY_COUNT))))
+				hits++;
+		}
+		appendRate(report, "HashMap<TileDescription, V>", iterations, start);
+
+		start = Duration.currentTimeMillis();
+		for (int i = 0; i < iterations; i++) {
+			if (tileDoubleMap.containsKey(
+					TileDescription.getKey(TILE_LEVEL, i % (2 * KEY_COUNT))))
+				hits++;
+		}
+		appendRate(report, "DoubleObjectMap<V>", iterations, start);
+
+		// Photos, looked up by image ID as the photo index does
+		final Map<Integer, Object> idHashMap = new HashMap<Integer, Object>();
+		final IntObjectMap<Object> idIntMap = new IntObjectMap<Object>();
+		for (int i = 0; i < KEY_COUNT; i++) {
+			idHashMap.put(i * 7, report);
+			idIntMap.put(i * 7, report);
+		}
+
+		start = Duration.currentTimeMillis();
+		for (int i = 0; i < iterations; i++) {
+			if (idHashMap.get(i % (8 * KEY_COUNT)) != null)
+				hits++;
+		}
+		appendRate(report, "HashMap<Integer, V>", iterations, start);
+
+		start = Duration.currentTimeMillis();
+		for (int i = 0; i < iterations; i++) {
+			if (idIntMap.get(i % (8 * KEY_COUNT)) != null)
+				hits++;
+		}
+		appendRate(report, "IntObjectMap<V>", iterations, start);
+
+		// Objects compared by a provider, as NativeObjectSet compares
+		// overlay types
+		final TileDescription[] elements = new TileDescription[2 * KEY_COUNT];
+		for (int i = 0; i < elements.length; i++)
+			elements[i] = new TileDescription(TILE_LEVEL, i);
+
+		final Set<Wrapper> wrapperSet = new HashSet<Wrapper>();
+		final ProviderHashSet<TileDescription> providerSet =
+			new ProviderHashSet<TileDescription>(TILE_PROVIDER);
+		for (int i = 0; i < KEY_COUNT; i++) {
+			wrapperSet.add(new Wrapper(elements[i]));
+			providerSet.add(elements[i]);
+		}
+
+		start = Duration.currentTimeMillis();
+		for (int i = 0; i < iterations; i++) {
+			if (wrapperSet.contains(new Wrapper(elements[i % elements.length])))
+				hits++;
+		}
+		appendRate(report, "HashSet of wrappers (old NativeObjectSet)",
+			iterations, start);
+
+		start = Duration.currentTimeMillis();
+		for (int i = 0; i < iterations; i++) {
+			if (providerSet.contains(elements[i % elements.length]))
+				hits++;
+		}
+		appendRate(report, "ProviderHashSet<T>", iterations, start);
+
+		report.append("hits ").append(hits);
+		return report.toString();
+	}
+
+	private static void appendRate(final StringBuilder report,
+			final String collection,
+			final int iterations,
+			final double startMillis) {
+		final double millis =
+			Math.max(Duration.currentTimeMillis() - startMillis, 1e-3);
+		report.append(collection).append(": ")
+			.append(RATE_FORMAT.format(iterations / millis / 1000.0))
+			.append(" M lookups/s\n");
+	}
+
+	/**
+	 * The wrapper that the old NativeObjectSet created on every call to
+	 * add and contains, kept here for comparison
+	 */
+	private static final class Wrapper {
+		private final TileDescription underlyingObject;
+
+		private Wrapper(final TileDescription underlyingObject) {
+			this.underlyingObject = underlyingObject;
+		}
+
+		@Override
+		public boolean equals(final Object obj) {
+			if (this == obj)
+				return true;
+			if (!(obj instanceof Wrapper))
+				return false;
+
+			return TILE_PROVIDER.equals(underlyingObject,
+				((Wrapper) obj).underlyingObject);
+		}
+
+		@Override
+		public int hashCode() {
+			return TILE_PROVIDER.hashCode(underlyingObject);
+		}
+	}
+}
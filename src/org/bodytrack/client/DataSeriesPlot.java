@@ -38,6 +38,12 @@ public class DataSeriesPlot extends BaseSeriesPlot {
    private static final double HIGHLIGHT_DISTANCE_THRESHOLD = 5;
    private final SeriesPlotRenderer renderer;
 
+   // The two most recently searched tiles and their hit-testing indexes
+   private GrapherTile hitIndexTile = null;
+   private PointHitIndex hitIndex = null;
+   private GrapherTile olderHitIndexTile = null;
+   private PointHitIndex olderHitIndex = null;
+
    public static DataSeriesPlot getDataSeriesPlot(final JavaScriptObject nativePlot) {
       final Dynamic dynPlot = nativePlot.cast();
       return dynPlot.get("__backingPlot");
@@ -95,13 +101,14 @@ public class DataSeriesPlot extends BaseSeriesPlot {
 
    /**
     * Returns a PlottablePoint if and only if there is a point, part of
-    * this DataSeriesPlot, within threshold pixels of pos.  Otherwise, returns
-    * <tt>null</tt>.
+    * this DataSeriesPlot and visible to the user, within threshold pixels
+    * of pos.  Otherwise, returns <tt>null</tt>.
     *
-    * This actually builds a square of 2 * threshold pixels on each
-    * side, centered at pos, and checks if there is a data point within
-    * that square, but that is a minor detail that should not affect
-    * the workings of this method.
+    * <p>Only the tiles drawn by the last paint are searched.  In each one,
+    * a binary search finds the points with times within threshold pixels
+    * of pos, and the closest of those, measured in pixels, wins.  Apart
+    * from building an index the first time a tile is searched, and the
+    * point returned, this creates no objects.</p>
     *
     * @param pos
     *		the mouse position from which to check proximity to a data
@@ -111,7 +118,7 @@ public class DataSeriesPlot extends BaseSeriesPlot {
     * 		considered &quot;near&quot; to it
     * @return
     * 		<tt>null</tt> if there is no point within threshold pixels
-    * 		of pos, or one of the points, if there is such a point
+    * 		of pos, or the closest point, if there is such a point
     * @throws IllegalArgumentException
     * 		if threshold is negative
     */
@@ -121,178 +128,93 @@ public class DataSeriesPlot extends BaseSeriesPlot {
                "Cannot work with a negative distance");
       }
 
+      final GraphAxis xAxis = getXAxis();
+      final GraphAxis yAxis = getYAxis();
       final double x = pos.getX();
       final double y = pos.getY();
 
-      // Build a square for checking location
-      final Vector2 topLeft = new Vector2(x - threshold, y - threshold);
-      final Vector2 bottomRight = new Vector2(x + threshold, y + threshold);
-
-      // Now convert that square into a square of times and values
-      final double minTime = getXAxis().unproject(topLeft);
-      final double maxTime = getXAxis().unproject(bottomRight);
-      final double minValue = getYAxis().unproject(bottomRight);
-      final double maxValue = getYAxis().unproject(topLeft);
-
-      final double centerTime = getXAxis().unproject(pos);
-      final double centerValue = getXAxis().unproject(pos);
-
-      // Don't even bother trying to highlight if the mouse is out of
-      // bounds
-      if (maxTime < getXAxis().getMin()
-          || minTime > getXAxis().getMax()
-          || maxValue < getYAxis().getMin()
-          || minValue > getYAxis().getMax()) {
-         return null;
-      }
-
-      // Get the tiles to check
-
-      final GrapherTile bestTileMinTime = getBestResolutionTileAt(minTime);
-      final GrapherTile bestTileMaxTime = getBestResolutionTileAt(maxTime);
-
-      final PlottablePoint closest = getClosestPoint(bestTileMinTime,
-                                                     minTime,
-                                                     maxTime,
-                                                     minValue,
-                                                     maxValue,
-                                                     centerTime,
-                                                     centerValue);
-
-      // pos is right on the border between two tiles (TODO: should this be an .equals() comparison instead?)
-      if (bestTileMinTime != bestTileMaxTime) {
-         // This is unlikely but possible, especially if threshold
-         // is large
-
-         final PlottablePoint closestMaxTime = getClosestPoint(
-               bestTileMaxTime, minTime, maxTime, minValue,
-               maxValue, centerTime, centerValue);
-
-         final double distClosestSq = getDistanceSquared(closest,
-                                                         centerTime,
-                                                         centerValue);
-         final double distClosestMaxTimeSq =
-               getDistanceSquared(closestMaxTime, centerTime, centerValue);
-
-         if (distClosestMaxTimeSq < distClosestSq) {
-            return closestMaxTime;
-         }
-      }
-
-      return closest;
-   }
-
-   /**
-    * Helper method for {@link DataSeriesPlot#closest(Vector2, double)}.
-    *
-    * This method has a lot of similar parameters, which is normally
-    * poor style, but it is an internal helper method, so this is
-    * OK.
-    *
-    * @param tile
-    * 		the {@link GrapherTile GrapherTile}
-    * 		in which to search for the closest point
-    * @param minTime
-    * 		the minimum time at which we consider points
-    * @param maxTime
-    * 		the maximum time at which we consider points
-    * @param minValue
-    * 		the minimum value of a point for us to consider it
-    * @param maxValue
-    * 		the maximum value of a point at which we will consider it
-    * @param centerTime
-    * 		the time to which we will try to make our point close
-    * @param centerValue
-    * 		the value to which we will try to make our point close
-    * @return
-    * 		the point closest to (centerTime, centerValue)
-    * 		in getDataPoints(tile), as long as that point is within the
-    * 		square determined by (minTime, minValue) and
-    * 		(maxTime, maxValue) and visible to the user.  If there is no
-    * 		such point, returns <tt>null</tt>
-    */
-   private PlottablePoint getClosestPoint(final GrapherTile tile,
-                                          final double minTime,
-                                          final double maxTime,
-                                          final double minValue,
-                                          final double maxValue,
-                                          final double centerTime,
-                                          final double centerValue) {
-      if (tile == null) {
+      // Only points the user can see, and within threshold pixels of
+      // pos horizontally, are candidates
+      final double minTime = Math.max(xAxis.getMin(),
+            Math.min(xAxis.unprojectCoordinate(x - threshold),
+                     xAxis.unprojectCoordinate(x + threshold)));
+      final double maxTime = Math.min(xAxis.getMax(),
+            Math.max(xAxis.unprojectCoordinate(x - threshold),
+                     xAxis.unprojectCoordinate(x + threshold)));
+      final double minValue = yAxis.getMin();
+      final double maxValue = yAxis.getMax();
+      if (minTime > maxTime) {
          return null;
       }
 
-      final List<PlottablePoint> points = getDataPoints(tile);
-      if (points == null) {
-         return null;
-      }
-
-      PlottablePoint closest = null;
+      final double thresholdSq = threshold * threshold;
+      PointHitIndex closestIndex = null;
+      int closestPosition = -1;
       double shortestDistanceSq = Double.MAX_VALUE;
-      for (final PlottablePoint point : points) {
-         final double time = point.getDate();
-         final double val = point.getValue();
 
-         // Only check for proximity to points we can see
-         if (time < getXAxis().getMin() || time > getXAxis().getMax()) {
+      final List<GrapherTile> tiles = getPaintedTiles();
+      for (int i = 0; i < tiles.size(); i++) {
+         final GrapherTile tile = tiles.get(i);
+         final TileDescription desc = tile.getDescription();
+         if (desc.getMaxTime() < minTime || desc.getMinTime() > maxTime) {
             continue;
          }
-         if (val < getYAxis().getMin() || val > getYAxis().getMax()) {
+
+         final PointHitIndex index = getHitIndex(tile);
+         if (index == null) {
             continue;
          }
 
-         // Only check for proximity to points within the desired
-         // range
-         if (time >= minTime && time <= maxTime
-             && val >= minValue && val <= maxValue) {
-
-            // If we don't have a value for closest, any point
-            // in the specified range is closer
-            if (closest == null) {
-               closest = point;
+         for (int j = index.firstIndexAtOrAfter(minTime);
+              j < index.size() && index.getTime(j) <= maxTime; j++) {
+            final double value = index.getValue(j);
+            if (value < minValue || value > maxValue) {
                continue;
             }
 
-            // Compute the square of the distance to pos
-            final double distanceSq = getDistanceSquared(point,
-                                                         centerTime,
-                                                         centerValue);
+            final double dx = xAxis.projectCoordinate(index.getTime(j)) - x;
+            final double dy = yAxis.projectCoordinate(value) - y;
+            final double distanceSq = dx * dx + dy * dy;
 
-            if (distanceSq < shortestDistanceSq) {
-               closest = point;
+            if (distanceSq <= thresholdSq && distanceSq < shortestDistanceSq) {
+               closestIndex = index;
+               closestPosition = j;
                shortestDistanceSq = distanceSq;
             }
          }
       }
 
-      return closest;
+      return closestIndex == null ? null : closestIndex.getPoint(closestPosition);
    }
 
    /**
-    * Returns the square of the distance from point to (time, value).
+    * Returns the hit-testing index for the points of tile, building it
+    * from the columns of the tile if tile is not one of the two most
+    * recently searched tiles, or <tt>null</tt> if tile has no points.
     *
-    * @param point
-    * 		the first of the two points
-    * @param time
-    * 		the time for the second point
-    * @param value
-    * 		the distance for the second point
-    * @return
-    * 		the square of the distance from point to (time, value), or
-    * 		{@link Double#MAX_VALUE} if point is <tt>null</tt>
+    * <p>Two indexes are kept because the mouse is usually over one tile,
+    * or near the boundary between two.</p>
     */
-   private double getDistanceSquared(final PlottablePoint point,
-                                     final double time,
-                                     final double value) {
-      if (point == null) {
-         return Double.MAX_VALUE;
+   private PointHitIndex getHitIndex(final GrapherTile tile) {
+      if (tile == hitIndexTile) {
+         return hitIndex;
+      }
+
+      if (tile != olderHitIndexTile) {
+         olderHitIndexTile = tile;
+         final PlottablePointTile plottableTile = tile.getPlottableTile();
+         olderHitIndex = (plottableTile == null) ? null : plottableTile.buildHitIndex();
       }
 
-      final double pointTime = point.getDate();
-      final double pointValue = point.getValue();
+      // Swap so that tile's index is the most recent
+      final GrapherTile swapTile = hitIndexTile;
+      final PointHitIndex swapIndex = hitIndex;
+      hitIndexTile = olderHitIndexTile;
+      hitIndex = olderHitIndex;
+      olderHitIndexTile = swapTile;
+      olderHitIndex = swapIndex;
 
-      return (time - pointTime) * (time - pointTime)
-             + (value - pointValue) * (value - pointValue);
+      return hitIndex;
    }
 
    /**
@@ -22,6 +22,11 @@ public final class DataSeriesPlotRenderer extends BaseSeriesPlotRenderer {
       super(styleDescription);
    }
 
+   @Override
+   protected boolean willDecimateWhileInteracting() {
+      return true;
+   }
+
    @Override
    protected List<SeriesPlotRenderingStrategy> buildSeriesPlotRenderingStrategies(final JsArray<StyleDescription.StyleType> styleTypes,
                                                                                   final Double highlightLineWidth) {
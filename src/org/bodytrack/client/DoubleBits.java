@@ -0,0 +1,24 @@
+package org.bodytrack.client;
+
+/**
+ * The fast path for the bit-level double operations in {@link MathEx}.
+ *
+ * <p>This version runs on the JVM, including in tests and in
+ * development mode, and calls the platform's own methods.  The GWT
+ * compiler uses the version under <code>org/bodytrack/jre</code>
+ * instead, which reinterprets values through a typed array, since
+ * GWT does not emulate these methods of {@link Double}.</p>
+ */
+final class DoubleBits {
+	private DoubleBits() {
+		throw new UnsupportedOperationException();
+	}
+
+	static long doubleToLongBits(final double d) {
+		return Double.doubleToLongBits(d);
+	}
+
+	static double longBitsToDouble(final long bits) {
+		return Double.longBitsToDouble(bits);
+	}
+}
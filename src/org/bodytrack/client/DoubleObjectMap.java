@@ -0,0 +1,232 @@
+package org.bodytrack.client;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A hash map from <code>double</code> keys, such as the keys from
+ * {@link TileDescription#getKey()}, to non-null values.
+ *
+ * <p>Unlike a <code>HashMap&lt;Double, V&gt;</code>, this stores the
+ * keys in a primitive array with open addressing, so that getting,
+ * adding, and removing entries creates no boxed keys or entry objects.
+ * The keys are doubles rather than longs because GWT emulates
+ * <code>long</code> with objects, while a double is a plain JavaScript
+ * number, so that no operation on the map allocates in the browser.
+ * Keys are compared with <code>==</code>, so <code>NaN</code> cannot be
+ * used as a key.
+ * Removed entries leave a marker behind until the next resize, so that
+ * the iterator over the values stays valid when entries are removed
+ * through it.</p>
+ *
+ * @param <V>
+ * 	The type of the values
+ * @see IntObjectMap
+ */
+public final class DoubleObjectMap<V> {
+	// Marks a slot whose entry was removed
+	private static final Object REMOVED = new Object();
+
+	private static final int MIN_CAPACITY = 8;
+
+	private static final double TWO_TO_31 = 2147483648.0;
+	private static final double TWO_TO_32 = 4294967296.0;
+
+	private double[] keys;
+	private Object[] values;
+	private int size;
+
+	// The number of slots holding an entry or REMOVED
+	private int usedSlots;
+
+	public DoubleObjectMap() {
+		allocate(MIN_CAPACITY);
+	}
+
+	/**
+	 * Returns the value for key, or <code>null</code> if there is none
+	 */
+	@SuppressWarnings("unchecked")
+	public V get(final double key) {
+		final int slot = findSlot(key);
+		return slot < 0 ? null : (V) values[slot];
+	}
+
+	public boolean containsKey(final double key) {
+		return findSlot(key) >= 0;
+	}
+
+	/**
+	 * Sets the value for key
+	 *
+	 * @return
+	 * 	The previous value for key, or <code>null</code> if there was none
+	 * @throws NullPointerException
+	 * 	If value is <code>null</code>
+	 */
+	@SuppressWarnings("unchecked")
+	public V put(final double key, final V value) {
+		if (value == null)
+			throw new NullPointerException("Null values are not allowed");
+
+		final int existing = findSlot(key);
+		if (existing >= 0) {
+			final V old = (V) values[existing];
+			values[existing] = value;
+			return old;
+		}
+
+		if (2 * (usedSlots + 1) > keys.length)
+			resize(size + 1);
+
+		final int mask = keys.length - 1;
+		int slot = hash(key) & mask;
+		while (values[slot] != null && values[slot] != REMOVED)
+			slot = (slot + 1) & mask;
+
+		if (values[slot] == null)
+			usedSlots++;
+		keys[slot] = key;
+		values[slot] = value;
+		size++;
+
+		return null;
+	}
+
+	/**
+	 * Removes the value for key
+	 *
+	 * @return
+	 * 	The removed value, or <code>null</code> if there was none
+	 */
+	@SuppressWarnings("unchecked")
+	public V remove(final double key) {
+		final int slot = findSlot(key);
+		if (slot < 0)
+			return null;
+
+		final V old = (V) values[slot];
+		values[slot] = REMOVED;
+		size--;
+		return old;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	public void clear() {
+		allocate(MIN_CAPACITY);
+	}
+
+	/**
+	 * Returns a view of the values, in no particular order, whose
+	 * iterator supports removal
+	 */
+	public Iterable<V> values() {
+		return new Iterable<V>() {
+			@Override
+			public Iterator<V> iterator() {
+				return new ValueIterator();
+			}
+		};
+	}
+
+	// Returns the slot holding key, or -1 if key is not in the map
+	private int findSlot(final double key) {
+		final int mask = keys.length - 1;
+		int slot = hash(key) & mask;
+		while (values[slot] != null) {
+			if (values[slot] != REMOVED && keys[slot] == key)
+				return slot;
+			slot = (slot + 1) & mask;
+		}
+
+		return -1;
+	}
+
+	private static int hash(final double key) {
+		// Split the key into its high and low 32 bits with double
+		// arithmetic, since a long would be emulated in the browser.
+		// Every step is exact for integral keys below 2^63.
+		final double high = Math.floor(key / TWO_TO_32);
+		final double low = key - high * TWO_TO_32;
+
+		// Spread sequential keys across the table
+		final int h = ((int) high ^ (int) (low - TWO_TO_31)) * 0x9e3779b9;
+		return h ^ (h >>> 16);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void resize(final int minSize) {
+		final double[] oldKeys = keys;
+		final Object[] oldValues = values;
+
+		int capacity = MIN_CAPACITY;
+		while (capacity < 4 * minSize)
+			capacity <<= 1;
+		allocate(capacity);
+
+		for (int i = 0; i < oldKeys.length; i++) {
+			if (oldValues[i] != null && oldValues[i] != REMOVED)
+				put(oldKeys[i], (V) oldValues[i]);
+		}
+	}
+
+	private void allocate(final int capacity) {
+		keys = new double[capacity];
+		values = new Object[capacity];
+		size = 0;
+		usedSlots = 0;
+	}
+
+	private final class ValueIterator implements Iterator<V> {
+		// The arrays are captured so that a resize during iteration
+		// cannot cause entries to be skipped or repeated
+		private final Object[] iterValues = values;
+		private int next = -1;
+		private int current = -1;
+
+		private ValueIterator() {
+			advance();
+		}
+
+		private void advance() {
+			do {
+				next++;
+			} while (next < iterValues.length
+				&& (iterValues[next] == null || iterValues[next] == REMOVED));
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next < iterValues.length;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public V next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+
+			current = next;
+			advance();
+			return (V) iterValues[current];
+		}
+
+		@Override
+		public void remove() {
+			if (current < 0 || iterValues[current] == REMOVED)
+				throw new IllegalStateException();
+			if (iterValues != values)
+				throw new IllegalStateException("Map resized during iteration");
+
+			iterValues[current] = REMOVED;
+			size--;
+		}
+	}
+}
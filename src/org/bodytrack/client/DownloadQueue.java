@@ -0,0 +1,234 @@
+package org.bodytrack.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A queue of downloads that runs at most a fixed number at once, in
+ * order of priority.
+ *
+ * <p>Each owner, such as a plot, makes its requests once per paint,
+ * between calls to {@link #beginRequests(Object)} and
+ * {@link #endRequests(Object)}.  A queued download that its owner did not
+ * request again during its latest paint is for something that has
+ * scrolled out of view, so it is cancelled before it starts.  Downloads
+ * that have already started always run to completion, and the caller
+ * reports their end with {@link #finished(Object)}.</p>
+ *
+ * <p>Requests are ordered first by tier, so that every request in a lower
+ * tier, such as the thumbnails, starts before any in a higher tier, such
+ * as the full-size images.  Within a tier, requests with smaller
+ * distances, such as photos nearer the center of the view, start
+ * first.</p>
+ *
+ * @param <K>
+ * 	The type of object that is downloaded, such as a {@link PhotoGetter}
+ */
+final class DownloadQueue<K> {
+	/**
+	 * A callback that actually starts a download
+	 */
+	interface Downloader<K> {
+		void start(K key);
+	}
+
+	private static final Comparator<Request<?>> PRIORITY_COMPARATOR =
+		new Comparator<Request<?>>() {
+			@Override
+			public int compare(final Request<?> r1, final Request<?> r2) {
+				if (r1.tier != r2.tier)
+					return r1.tier < r2.tier ? -1 : 1;
+				return Double.compare(r1.distance, r2.distance);
+			}
+		};
+
+	private final Downloader<K> downloader;
+	private int maxActive;
+
+	private final Map<K, Request<K>> queued = new HashMap<K, Request<K>>();
+	private final Set<K> active = new HashSet<K>();
+	private final Map<Object, Integer> generations =
+		new HashMap<Object, Integer>();
+
+	/**
+	 * Creates a new empty queue
+	 *
+	 * @param maxActive
+	 * 	The most downloads that may run at once
+	 * @param downloader
+	 * 	The callback that starts each download
+	 * @throws IllegalArgumentException
+	 * 	If maxActive is less than 1
+	 * @throws NullPointerException
+	 * 	If downloader is <code>null</code>
+	 */
+	DownloadQueue(final int maxActive, final Downloader<K> downloader) {
+		if (downloader == null)
+			throw new NullPointerException("Null downloader");
+
+		this.downloader = downloader;
+		setMaxActive(maxActive);
+	}
+
+	/**
+	 * Sets the most downloads that may run at once.  Lowering the limit
+	 * does not stop downloads that are already running.
+	 *
+	 * @throws IllegalArgumentException
+	 * 	If maxActive is less than 1
+	 */
+	void setMaxActive(final int maxActive) {
+		if (maxActive < 1)
+			throw new IllegalArgumentException(
+				"Must allow at least one download at a time");
+
+		this.maxActive = maxActive;
+		startDownloads();
+	}
+
+	int getMaxActive() {
+		return maxActive;
+	}
+
+	/**
+	 * Starts a new round of requests from owner, after which any queued
+	 * request from owner that is not made again is cancelled by
+	 * {@link #endRequests(Object)}
+	 */
+	void beginRequests(final Object owner) {
+		final Integer generation = generations.get(owner);
+		generations.put(owner, generation == null ? 0 : generation + 1);
+	}
+
+	/**
+	 * Queues a download of key, or updates the priority of a download of
+	 * key that is already queued.  Does nothing if key is already being
+	 * downloaded.  The download does not start until the next call to
+	 * {@link #endRequests(Object)} or {@link #finished(Object)}.
+	 *
+	 * @param key
+	 * 	The object to download
+	 * @param owner
+	 * 	The owner making the request, which must be inside a call to
+	 * 	{@link #beginRequests(Object)}
+	 * @param tier
+	 * 	The tier of the request, with lower tiers downloaded first
+	 * @param distance
+	 * 	The distance of key from the center of the view, with nearer
+	 * 	objects downloaded first within a tier
+	 * @throws NullPointerException
+	 * 	If key or owner is <code>null</code>
+	 * @throws IllegalStateException
+	 * 	If owner has never called {@link #beginRequests(Object)}
+	 */
+	void request(final K key, final Object owner, final int tier,
+			final double distance) {
+		if (key == null || owner == null)
+			throw new NullPointerException("Null key or owner");
+
+		final Integer generation = generations.get(owner);
+		if (generation == null)
+			throw new IllegalStateException("Requests not begun");
+
+		if (active.contains(key))
+			return;
+
+		queued.put(key, new Request<K>(key, owner, generation, tier, distance));
+	}
+
+	/**
+	 * Cancels the queued requests from owner that were not made again
+	 * since the last call to {@link #beginRequests(Object)}, then starts
+	 * as many queued downloads as the limit allows
+	 */
+	void endRequests(final Object owner) {
+		final Integer generation = generations.get(owner);
+		if (generation != null) {
+			final Iterator<Request<K>> it = queued.values().iterator();
+			while (it.hasNext()) {
+				final Request<K> request = it.next();
+				if (request.owner == owner && request.generation != generation)
+					it.remove();
+			}
+		}
+
+		startDownloads();
+	}
+
+	/**
+	 * Cancels all queued requests from owner, and forgets owner
+	 */
+	void removeOwner(final Object owner) {
+		final Iterator<Request<K>> it = queued.values().iterator();
+		while (it.hasNext()) {
+			if (it.next().owner == owner)
+				it.remove();
+		}
+
+		generations.remove(owner);
+	}
+
+	/**
+	 * Records that the download of key has finished, successfully or
+	 * not, or been abandoned, and starts the next queued download.  Does
+	 * nothing if key is not being downloaded.
+	 */
+	void finished(final K key) {
+		if (active.remove(key))
+			startDownloads();
+	}
+
+	int getActiveCount() {
+		return active.size();
+	}
+
+	int getQueuedCount() {
+		return queued.size();
+	}
+
+	private void startDownloads() {
+		if (active.size() >= maxActive || queued.isEmpty())
+			return;
+
+		final List<Request<K>> requests =
+			new ArrayList<Request<K>>(queued.values());
+		Collections.sort(requests, PRIORITY_COMPARATOR);
+
+		for (final Request<K> request: requests) {
+			if (active.size() >= maxActive)
+				break;
+
+			// A download started earlier in this loop may have finished
+			// already and started this one
+			if (queued.remove(request.key) == null)
+				continue;
+
+			active.add(request.key);
+			downloader.start(request.key);
+		}
+	}
+
+	private static final class Request<K> {
+		private final K key;
+		private final Object owner;
+		private final int generation;
+		private final int tier;
+		private final double distance;
+
+		private Request(final K key, final Object owner, final int generation,
+				final int tier, final double distance) {
+			this.key = key;
+			this.owner = owner;
+			this.generation = generation;
+			this.tier = tier;
+			this.distance = distance;
+		}
+	}
+}
@@ -0,0 +1,79 @@
+package org.bodytrack.client;
+
+import gwt.g2d.client.graphics.Color;
+import gwt.g2d.client.graphics.TextAlign;
+import gwt.g2d.client.graphics.TextBaseline;
+
+/**
+ * The part of a 2D context's drawing state that save and restore act upon,
+ * as tracked by the {@link RenderingBackend} implementations that do not
+ * read it back from a real context.
+ *
+ * <p>A field that is <code>null</code> (or <code>NaN</code>, for the
+ * numeric fields) is <em>unknown</em>: the backend does not know what
+ * the real context holds for that field.</p>
+ */
+final class DrawingState {
+	/**
+	 * The font that an HTML canvas context starts with
+	 */
+	static final String DEFAULT_FONT = "10px sans-serif";
+
+	Color strokeStyle;
+	Color fillStyle;
+	double lineWidth;
+	double globalAlpha;
+	TextAlign textAlign;
+	TextBaseline textBaseline;
+	String font;
+
+	private DrawingState() { }
+
+	/**
+	 * Returns a new state with the same values that a newly created HTML
+	 * canvas context has
+	 */
+	static DrawingState defaults() {
+		final DrawingState result = new DrawingState();
+		result.strokeStyle = Canvas.DEFAULT_COLOR;
+		result.fillStyle = Canvas.DEFAULT_COLOR;
+		result.lineWidth = 1.0;
+		result.globalAlpha = Canvas.DEFAULT_ALPHA;
+		result.textAlign = TextAlign.START;
+		result.textBaseline = TextBaseline.ALPHABETIC;
+		result.font = DEFAULT_FONT;
+		return result;
+	}
+
+	/**
+	 * Returns a new state in which every field is unknown
+	 */
+	static DrawingState unknown() {
+		final DrawingState result = new DrawingState();
+		result.lineWidth = Double.NaN;
+		result.globalAlpha = Double.NaN;
+		return result;
+	}
+
+	DrawingState copy() {
+		final DrawingState result = new DrawingState();
+		result.strokeStyle = strokeStyle;
+		result.fillStyle = fillStyle;
+		result.lineWidth = lineWidth;
+		result.globalAlpha = globalAlpha;
+		result.textAlign = textAlign;
+		result.textBaseline = textBaseline;
+		result.font = font;
+		return result;
+	}
+
+	/**
+	 * Returns <code>true</code> if and only if a and b are both
+	 * non-<code>null</code> and equal.  Since an unknown value is never
+	 * the same as any value, this tells whether setting a field that
+	 * holds a to b can be skipped.
+	 */
+	static boolean isSame(final Object a, final Object b) {
+		return a != null && a.equals(b);
+	}
+}
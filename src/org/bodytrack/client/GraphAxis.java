@@ -8,8 +8,13 @@ import gwt.g2d.client.graphics.TextAlign;
 import gwt.g2d.client.graphics.TextBaseline;
 import gwt.g2d.client.math.Vector2;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Set;
 
@@ -33,6 +38,14 @@ public class GraphAxis implements Resizable {
 		void onAxisChange(final int eventId);
 	}
 
+	/**
+	 * An object that is told where an animated change of range will
+	 * end, once, when the animation starts
+	 */
+	public interface TransitionListener {
+		void onTransitionStart(final double targetMin, final double targetMax);
+	}
+
 	/**
 	 * A point that signals to the {@link #highlight(PlottablePoint)}
 	 * method that there should be no visible highlighted point, just
@@ -47,6 +60,24 @@ public class GraphAxis implements Resizable {
 	protected static final double HIGHLIGHTED_POINT_LINE_WIDTH = 3;
 	protected static final double HIGHLIGHTED_POINT_LINE_LENGTH = 15;
 
+	/**
+	 * The number of axis lengths pre-rendered on each side of the visible
+	 * range, so that a pan of up to this much just moves the cached strip
+	 */
+	private static final double STRIP_MARGIN = 1.0;
+
+	/**
+	 * The relative change in scale below which the cached strip is
+	 * still used, since a pan may change max - min by a rounding error
+	 */
+	private static final double STRIP_SCALE_TOLERANCE = 1e-9;
+
+	/**
+	 * The least distance in pixels between the first or last inline tick
+	 * and the end of the axis for which a range label is drawn at the end
+	 */
+	private static final int INLINE_LABEL_MARGIN_PIXELS = 100;
+
 	static final int JUSTIFY_MIN = 0;
 	static final int JUSTIFY_MED = 1;
 	static final int JUSTIFY_MAX = 2;
@@ -84,10 +115,36 @@ public class GraphAxis implements Resizable {
 
 	private final Set<EventListener> eventListeners = new HashSet<EventListener>();
 
+	private final Set<TransitionListener> transitionListeners =
+		new HashSet<TransitionListener>();
+
+	private AxisLinkGroup linkGroup = null;
+
+	// The animated change of range moving this axis, if any
+	private AxisTransition transition = null;
+
 	private Vector2 mouseDragLastPos;
 
 	private int previousPaintEventId = 0;
 
+	// The offscreen strip holding the axis drawn over a range wider than
+	// the visible one, created on the first paint
+	private Canvas stripCanvas = null;
+	private boolean stripValid = false;
+	private boolean stripHighlighted = false;
+	private double stripMin;
+	private double stripMax;
+	private double stripScale;
+	private Vector2 stripBegin;
+
+	// Set only while the strip is being drawn
+	private boolean paintingStrip = false;
+
+	// Inline range labels that depend on the visible range, so are drawn
+	// over the strip on every paint
+	private final List<InlineLabelRow> stickyLabelRows =
+		new ArrayList<InlineLabelRow>();
+
 	public GraphAxis(final String placeholderElementId,
 			final double min,
 			final double max,
@@ -206,6 +263,19 @@ public class GraphAxis implements Resizable {
 		}
 	}
 
+	public final void addTransitionListener(final TransitionListener listener) {
+		if (listener != null) {
+			transitionListeners.add(listener);
+		}
+	}
+
+	public final void removeTransitionListener(
+			final TransitionListener listener) {
+		if (listener != null) {
+			transitionListeners.remove(listener);
+		}
+	}
+
 	public final void addEventListener(final JavaScriptObject listener) {
 		if (listener != null) {
 			addEventListener(new JavaScriptAxisChangeListener(listener));
@@ -252,10 +322,19 @@ public class GraphAxis implements Resizable {
 		layout(beginVector, axisLength);
 	}
 
-	private void layout(final Vector2 begin, final double length) {
+	/**
+	 * Lays out this axis starting at begin and extending for length
+	 * pixels.
+	 *
+	 * <p>This is called by {@link #layout()} using the size of the
+	 * drawing canvas, and may be called directly to lay out an axis
+	 * that was built without a placeholder element.</p>
+	 */
+	void layout(final Vector2 begin, final double length) {
 		this.begin = begin;
 		this.length = length;
 		rescale();
+		invalidateStrip();
 	}
 
 	private void rescale() {
@@ -293,6 +372,28 @@ public class GraphAxis implements Resizable {
 		return this.min + (point.subtract(begin).dot(basis.y) / scale);
 	}
 
+	/**
+	 * Returns the X-coordinate of {@link #project2D(double)} for an
+	 * X-axis, or the Y-coordinate for a Y-axis, without creating any
+	 * objects.
+	 */
+	public double projectCoordinate(final double value) {
+		return isXAxis
+			? begin.getX() + basis.y.getX() * project1D(value)
+			: begin.getY() + basis.y.getY() * project1D(value);
+	}
+
+	/**
+	 * The inverse of {@link #projectCoordinate(double)}: returns the value
+	 * at the specified X-coordinate for an X-axis, or Y-coordinate for a
+	 * Y-axis, without creating any objects.
+	 */
+	public double unprojectCoordinate(final double coordinate) {
+		return isXAxis
+			? this.min + (coordinate - begin.getX()) * basis.y.getX() / scale
+			: this.min + (coordinate - begin.getY()) * basis.y.getY() / scale;
+	}
+
 	/**
 	 * Marks this GraphAxis as highlighted.
 	 *
@@ -353,31 +454,156 @@ public class GraphAxis implements Resizable {
 
 			drawingCanvas.clear();
 
-			// Pick the color to use, based on highlighting status
-			if (isHighlighted()) {
-				drawingCanvas.setStrokeStyle(HIGHLIGHTED_COLOR);
-			} else {
-				drawingCanvas.setStrokeStyle(NORMAL_COLOR);
+			if (RenderQuality.isInteracting() && !isStripScale()) {
+				// A zoom changes the scale on every frame, so a strip
+				// drawn now would be thrown away on the next frame.  Draw
+				// just the visible range instead, and leave the strip to
+				// be drawn again once the interaction settles.
+				paintAxis(drawingCanvas);
+				renderHighlight(drawingCanvas, highlightedPoint);
+				return;
 			}
 
-			drawingCanvas.beginPath();
-			drawingCanvas.drawLineSegment(project2D(this.min), project2D(this.max));
+			if (!isStripUsable()) {
+				renderStrip();
+			}
 
-			final double majorTickSize = computeTickSize(majorTickMinSpacingPixels);
-			renderTicks(0, majorTickSize, null, drawingCanvas,
-					majorTickWidthPixels, new DefaultLabelFormatter());
-			//renderTickLabels(surface, majorTickSize, majorTickWidthPixels+3);
+			blitStrip();
+			renderStickyLabels(drawingCanvas);
+			renderHighlight(drawingCanvas, highlightedPoint);
+		}
+	}
 
-			final double minorTickSize = computeTickSize(minorTickMinSpacingPixels);
-			renderTicks(0, minorTickSize, null, drawingCanvas,minorTickWidthPixels, null);
+	/**
+	 * Draws the axis line, ticks, and labels on canvas, using the
+	 * current range and layout of this axis.
+	 *
+	 * <p>This is called by {@link #paint(int)} to draw an offscreen strip
+	 * that is wider than the visible axis, and while it runs the range
+	 * and layout are those of the strip.  While a zoom is in progress,
+	 * it is instead called to draw the visible range directly.  The
+	 * strip is reused for as long as the scale stays the same and the
+	 * visible range stays inside it, so this must only depend on the
+	 * range, the layout, and {@link #isHighlighted()}.  Subclasses that
+	 * draw anything else must call {@link #invalidateStrip()} when it
+	 * changes.  The highlighted point is drawn separately, by
+	 * {@link #renderHighlight(Canvas, PlottablePoint)}.</p>
+	 *
+	 * @param canvas
+	 * 	The canvas to draw on, which has already been cleared
+	 */
+	protected void paintAxis(final Canvas canvas) {
+		// Pick the color to use, based on highlighting status
+		if (isHighlighted()) {
+			canvas.setStrokeStyle(HIGHLIGHTED_COLOR);
+		} else {
+			canvas.setStrokeStyle(NORMAL_COLOR);
+		}
 
-			drawingCanvas.stroke();
+		canvas.beginPath();
+		canvas.drawLineSegment(project2D(this.min), project2D(this.max));
 
-			renderHighlight(drawingCanvas, highlightedPoint);
+		final double majorTickSize = computeTickSize(majorTickMinSpacingPixels);
+		renderTicks(0, majorTickSize, null, canvas,
+				majorTickWidthPixels, new DefaultLabelFormatter());
+		//renderTickLabels(surface, majorTickSize, majorTickWidthPixels+3);
+
+		final double minorTickSize = computeTickSize(minorTickMinSpacingPixels);
+		renderTicks(0, minorTickSize, null, canvas, minorTickWidthPixels, null);
+
+		canvas.stroke();
+
+		// Clean up after ourselves
+		canvas.setStrokeStyle(Canvas.DEFAULT_COLOR);
+	}
+
+	/**
+	 * Makes the next call to {@link #paint(int)} draw the axis again
+	 * rather than reusing the cached strip
+	 */
+	protected void invalidateStrip() {
+		stripValid = false;
+	}
+
+	// Returns true if and only if the strip was drawn at the current scale
+	private boolean isStripScale() {
+		return stripValid
+			&& Math.abs(scale - stripScale)
+				<= STRIP_SCALE_TOLERANCE * stripScale;
+	}
+
+	private boolean isStripUsable() {
+		return isStripScale()
+			&& stripHighlighted == isHighlighted()
+			&& this.min >= stripMin
+			&& this.max <= stripMax;
+	}
+
+	/**
+	 * Draws the axis on the strip, covering {@link #STRIP_MARGIN} axis
+	 * lengths on each side of the visible range at the current scale
+	 */
+	private void renderStrip() {
+		final Surface surface = drawingCanvas.getSurface();
+		final double margin = Math.ceil(STRIP_MARGIN * length);
+		final double stripLength = length + 2 * margin;
+
+		final int stripWidth = isXAxis ? (int) stripLength : surface.getWidth();
+		final int stripHeight = isXAxis ? surface.getHeight() : (int) stripLength;
+		if (stripCanvas == null) {
+			stripCanvas = Canvas.buildCanvas(new Surface(stripWidth, stripHeight));
+		} else if (stripCanvas.getWidth() != stripWidth
+				|| stripCanvas.getHeight() != stripHeight) {
+			stripCanvas.getSurface().setSize(stripWidth, stripHeight);
+		}
+
+		stripScale = scale;
+		stripMin = this.min - margin / scale;
+		stripMax = this.max + margin / scale;
+		stripBegin = isXAxis ? Vector2.ZERO : new Vector2(0, stripLength);
+		stripHighlighted = isHighlighted();
+
+		// Temporarily lay this axis out over the whole strip, so that
+		// paintAxis draws the wider range
+		final double savedMin = this.min;
+		final double savedMax = this.max;
+		final Vector2 savedBegin = this.begin;
+		final double savedLength = this.length;
+
+		this.min = stripMin;
+		this.max = stripMax;
+		this.begin = stripBegin;
+		this.length = stripLength;
+		rescale();
 
-			// Clean up after ourselves
-			drawingCanvas.setStrokeStyle(Canvas.DEFAULT_COLOR);
+		stickyLabelRows.clear();
+		paintingStrip = true;
+		try {
+			stripCanvas.clear();
+			paintAxis(stripCanvas);
+		} finally {
+			paintingStrip = false;
+			this.min = savedMin;
+			this.max = savedMax;
+			this.begin = savedBegin;
+			this.length = savedLength;
+			rescale();
 		}
+
+		stripValid = true;
+	}
+
+	/**
+	 * Copies the strip to the visible canvas, lined up with the
+	 * current range
+	 */
+	private void blitStrip() {
+		// Round to whole pixels, so that the browser copies the strip
+		// rather than resampling it
+		final Vector2 origin = project2D(stripMin).subtract(stripBegin);
+		drawingCanvas.getSurface().drawImage(
+			stripCanvas.getSurface().getCanvas(),
+			Math.round(origin.getX()), Math.round(origin.getY()));
 	}
 
 	/**
@@ -640,18 +866,26 @@ public class GraphAxis implements Resizable {
 		double labelOffsetPixels = setupText(surface, JUSTIFY_MED)
 		+ offsetPixels;
 
+		if (paintingStrip) {
+			// The labels at the ends of the visible range move with
+			// the range, so they are drawn over the strip on each paint
+			stickyLabelRows.add(new InlineLabelRow(offsetPixels, tickSize,
+				tickGen, formatter));
+		}
+
 		double tick = tickGen.nextTick(this.min);
 
 		if (tick > this.max) {
 			// No ticks are visible
 			// Draw one inline label in the middle
-			renderTickLabel(surface, (this.min + this.max) / 2.0,
-					labelOffsetPixels, formatter);
+			if (!paintingStrip) {
+				renderTickLabel(surface, (this.min + this.max) / 2.0,
+						labelOffsetPixels, formatter);
+			}
 			return;
 		}
 
-		int pixelMargin = 100;  // TODO: fix this
-		if (project1D(tick) >= pixelMargin) {
+		if (!paintingStrip && project1D(tick) >= INLINE_LABEL_MARGIN_PIXELS) {
 			// Draw label for before first tick, justified to the minimum
 			// of axis (left or bottom)
 			setupText(surface, JUSTIFY_MIN);
@@ -672,7 +906,8 @@ public class GraphAxis implements Resizable {
 			tick = nextTick;
 		}
 
-		if (length - project1D(tick) >= pixelMargin) {
+		if (!paintingStrip
+				&& length - project1D(tick) >= INLINE_LABEL_MARGIN_PIXELS) {
 			// Draw label for after last tick, justified to maximum of
 			// axis (right or top)
 
@@ -681,6 +916,89 @@ public class GraphAxis implements Resizable {
 		}
 	}
 
+	/**
+	 * Draws the inline range labels at the ends of the visible range, for
+	 * each row of inline labels drawn on the strip.  A label is only drawn
+	 * if the strip does not already show the same label in view.
+	 */
+	private void renderStickyLabels(final Canvas canvas) {
+		final Surface surface = canvas.getSurface();
+
+		for (final InlineLabelRow row: stickyLabelRows) {
+			final TickGenerator tickGen = row.tickGen;
+			final double labelOffsetPixels = setupText(surface, JUSTIFY_MED)
+				+ row.offsetPixels;
+
+			// Find the last tick before the visible range, if any,
+			// and the first tick in it
+			double before = Double.NEGATIVE_INFINITY;
+			double tick = tickGen.nextTick(this.min - row.tickSize * 1.5);
+			while (tick < this.min) {
+				before = tick;
+				tick = tickGen.nextTick();
+			}
+
+			if (tick > this.max) {
+				if (!isStripLabelVisible(before, tick)) {
+					renderTickLabel(surface, (this.min + this.max) / 2.0,
+						labelOffsetPixels, row.formatter);
+				}
+				continue;
+			}
+
+			if (project1D(tick) >= INLINE_LABEL_MARGIN_PIXELS
+					&& !isStripLabelVisible(before, tick)) {
+				setupText(surface, JUSTIFY_MIN);
+				renderTickLabel(surface, this.min, labelOffsetPixels,
+					row.formatter);
+			}
+
+			double after = tickGen.nextTick();
+			while (after <= this.max) {
+				tick = after;
+				after = tickGen.nextTick();
+			}
+
+			if (length - project1D(tick) >= INLINE_LABEL_MARGIN_PIXELS
+					&& !isStripLabelVisible(tick, after)) {
+				setupText(surface, JUSTIFY_MAX);
+				renderTickLabel(surface, this.max, labelOffsetPixels,
+					row.formatter);
+			}
+		}
+	}
+
+	// Returns true if and only if the strip shows a range label between
+	// the two ticks, and that label is in the visible range
+	private boolean isStripLabelVisible(final double fromTick,
+			final double toTick) {
+		final double middle = (fromTick + toTick) / 2.0;
+		return fromTick >= stripMin && toTick <= stripMax
+			&& middle >= this.min && middle <= this.max;
+	}
+
+	/**
+	 * The inputs to one call to renderTicksRangeLabelInline while the
+	 * strip was drawn, kept so the labels at the ends of the visible
+	 * range can be drawn on each paint
+	 */
+	private static final class InlineLabelRow {
+		private final double offsetPixels;
+		private final double tickSize;
+		private final TickGenerator tickGen;
+		private final LabelFormatter formatter;
+
+		InlineLabelRow(final double offsetPixels,
+				final double tickSize,
+				final TickGenerator tickGen,
+				final LabelFormatter formatter) {
+			this.offsetPixels = offsetPixels;
+			this.tickSize = tickSize;
+			this.tickGen = tickGen;
+			this.formatter = formatter;
+		}
+	}
+
 	protected void renderTicksRangeLabel(double offsetPixels,
 			double tickSize,
 			TickGenerator tickGen,
@@ -798,53 +1116,94 @@ public class GraphAxis implements Resizable {
 		}
 	}
 
+	/**
+	 * Zooms this axis, and every axis linked to it, by factor about the
+	 * specified value, sending one change event for all of them.
+	 */
 	public void zoom(final double factor, final double about, final int eventId) {
-		this.min = about + factor * (this.min - about);
-		this.max = about + factor * (this.max - about);
-		clampToRange();
-		rescale();
+		AxisLinkGroup.zoom(this, factor, about, eventId);
+	}
 
-		// notify event listeners that the axis has changed
-		publishAxisChangeEvent(eventId);
+	/**
+	 * Tells every listener on the axes in changedAxes about a change,
+	 * calling each distinct listener only once, then repaints the axes.
+	 * This is the only way a change made through an {@link AxisLinkGroup}
+	 * is published.
+	 */
+	static void publishAxisChangeEvent(final Collection<GraphAxis> changedAxes,
+			final int eventId) {
+		// Plots listen to both of their axes, and JavaScript code may
+		// listen to several linked axes, so merge the listeners
+		final Set<EventListener> listeners = new LinkedHashSet<EventListener>();
+		for (final GraphAxis axis: changedAxes) {
+			listeners.addAll(axis.eventListeners);
+		}
+
+		for (final EventListener listener: listeners) {
+			listener.onAxisChange(eventId);
+		}
 
 		// Even if there are no change listeners, should still update the UI
-		paint(eventId);
+		for (final GraphAxis axis: changedAxes) {
+			axis.paint(eventId);
+		}
 	}
 
-	private void publishAxisChangeEvent(final int eventId) {
+	protected void publishAxisChangeEvent(final int eventId) {
 		for (final EventListener listener : eventListeners) {
 			listener.onAxisChange(eventId);
 		}
 	}
 
+	/**
+	 * Drags this axis, and every axis linked to it, by the distance
+	 * between from and to, sending one change event for all of them.
+	 */
 	public void drag(final Vector2 from, final Vector2 to, final int eventId) {
-		final double motion = unproject(from) - unproject(to);
-		uncheckedDrag(motion, eventId);
+		AxisLinkGroup.drag(Collections.singleton(this), from, to, eventId);
+	}
 
-		// Even if there are no change listeners, should still update the UI
-		paint(eventId);
+	/**
+	 * Zooms this axis without telling listeners or repainting
+	 */
+	void uncheckedZoom(final double factor, final double about) {
+		this.min = about + factor * (this.min - about);
+		this.max = about + factor * (this.max - about);
+		clampToRange();
+		rescale();
 	}
 
 	/**
 	 * Drags this axis by motion, which is expressed in terms of
-	 * the units for this axis.
+	 * the units for this axis, without telling listeners or
+	 * repainting.
 	 *
 	 * @param motion
 	 * 	The amount to move this axis in logical units (seconds
 	 * 	for an axis representing time, other values for another
 	 * 	axis), not in screen pixels
 	 */
-	private void uncheckedDrag(final double motion, final int eventId) {
+	void uncheckedDrag(final double motion) {
 		uncheckedTranslate(motion);
 		clampToRange();
 		rescale();
+	}
 
-		// notify event listeners that the axis has changed
-		publishAxisChangeEvent(eventId);
+	/**
+	 * Sets the bounds of this axis without telling listeners or
+	 * repainting.  The caller must make sure that newMin is less
+	 * than newMax.
+	 */
+	void uncheckedReplaceBounds(final double newMin, final double newMax) {
+		this.min = newMin;
+		this.max = newMax;
+		clampToRange();
+		rescale();
 	}
 
 	/**
-	 * Replaces the bounds of this axis with the specified min and max.
+	 * Replaces the bounds of this axis, and of every axis linked to
+	 * it, with the specified min and max.
 	 *
 	 * @param newMin
 	 * 	The new min value for this axis
@@ -857,27 +1216,112 @@ public class GraphAxis implements Resizable {
 		if (newMin >= newMax)
 			throw new IllegalArgumentException("Must have min < max");
 
-		final double oldMin = getMin();
-		final double oldMax = getMax();
+		AxisLinkGroup.replaceBounds(this, newMin, newMax,
+			SequenceNumber.getNext());
+	}
 
-		final int eventId = SequenceNumber.getNext();
-		
-		this.min = newMin;
-		this.max = newMax;
-		
-		clampToRange();
-		rescale();
+	/**
+	 * Animates the bounds of this axis, and of every axis linked to it,
+	 * from their current values to newMin and newMax.
+	 *
+	 * <p>Tiles for the new range are requested once, when the animation
+	 * starts, and the frames in between are drawn from the tiles that
+	 * are already loaded.  Dragging or zooming any of the moving axes
+	 * stops the animation where it is.</p>
+	 *
+	 * @param newMin
+	 * 	The min value for this axis at the end of the animation
+	 * @param newMax
+	 * 	The max value for this axis at the end of the animation
+	 * @param durationMillis
+	 * 	The length of the animation, in milliseconds.  If this is zero
+	 * 	or negative, this is the same as
+	 * 	{@link #replaceBounds(double, double)}
+	 * @throws IllegalArgumentException
+	 * 	If <code>newMin >= newMax</code>
+	 */
+	public void animateBounds(final double newMin, final double newMax,
+			final int durationMillis) {
+		if (newMin >= newMax)
+			throw new IllegalArgumentException("Must have min < max");
+
+		if (durationMillis <= 0) {
+			replaceBounds(newMin, newMax);
+			return;
+		}
+
+		new AxisTransition(this, newMin, newMax).run(durationMillis);
+	}
+
+	/**
+	 * Returns <code>true</code> if and only if this axis is being moved
+	 * by an animation that has asked plots not to fetch tiles for the
+	 * current frame
+	 */
+	public boolean isFetchDeferred() {
+		return transition != null && transition.isDeferringFetches();
+	}
+
+	/**
+	 * Stops any animation moving this axis, leaving it at its current
+	 * range
+	 */
+	void cancelTransition() {
+		if (transition != null)
+			transition.cancel();
+	}
+
+	// Called only by AxisTransition
+	void startTransition(final AxisTransition newTransition) {
+		if (transition != newTransition)
+			cancelTransition();
+		transition = newTransition;
+	}
+
+	// Called only by AxisTransition
+	void endTransition(final AxisTransition oldTransition) {
+		if (transition == oldTransition)
+			transition = null;
+	}
+
+	/**
+	 * Tells every transition listener on the axes in movingAxes, once
+	 * each, where an animation of those axes will end
+	 */
+	static void publishTransitionStart(final Collection<GraphAxis> movingAxes,
+			final double targetMin, final double targetMax) {
+		final Set<TransitionListener> listeners =
+			new LinkedHashSet<TransitionListener>();
+		for (final GraphAxis axis: movingAxes) {
+			listeners.addAll(axis.transitionListeners);
+		}
 
-		// notify event listeners that the axis has changed
-		publishAxisChangeEvent(eventId);
+		for (final TransitionListener listener: listeners) {
+			listener.onTransitionStart(targetMin, targetMax);
+		}
+	}
 
-		// Zoom in place to the right factor
-		//zoom((newMax - newMin) / (oldMax - oldMin), (oldMin + oldMax) / 2, eventId);
+	/**
+	 * Returns the link group holding this axis, or <code>null</code>
+	 * if this axis is not linked to any other
+	 */
+	public AxisLinkGroup getLinkGroup() {
+		return linkGroup;
+	}
 
-		// Now translate
-		//uncheckedDrag(newMin - getMin(), eventId);
+	// Called only by AxisLinkGroup
+	void setLinkGroup(final AxisLinkGroup linkGroup) {
+		this.linkGroup = linkGroup;
+	}
 
-		paint(eventId);
+	/**
+	 * Sets the time zone mapping used to show local times on this axis.
+	 * Does nothing, since only a {@link TimeGraphAxis} shows times.
+	 *
+	 * @param mapping
+	 * 	The mapping passed in from JavaScript code
+	 */
+	public void setTimeZoneMapping(final JavaScriptObject mapping) {
 	}
 
 	// TODO: Removing a listener probably doesn't work
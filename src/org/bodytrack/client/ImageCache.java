@@ -0,0 +1,176 @@
+package org.bodytrack.client;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A least recently drawn cache of images, bounded by the total number of
+ * pixels in the images rather than by the number of images.
+ *
+ * <p>The cache does not hold the images themselves.  Instead, a caller
+ * tells the cache each time it draws an image, along with the number of
+ * pixels that image currently holds decoded.  When the total goes over
+ * the budget, the cache hands the images that have gone longest without
+ * being drawn to its {@link ReleaseHandler}, which should let go of the
+ * decoded pixels, until the total is back within the budget.  The image
+ * that was just drawn is never released, even if it alone is over the
+ * budget.</p>
+ *
+ * <p>A released image is forgotten by the cache, and is counted again
+ * the next time it is drawn, after the caller has loaded it again.</p>
+ *
+ * <p>Drawing may be buffered and only reach the screen when the buffer
+ * is flushed, so the images drawn between {@link #beginPaint()} and the
+ * matching {@link #endPaint()} are not released until the last paint in
+ * progress ends.  The cache may go over its budget in the meantime.</p>
+ *
+ * @param <K>
+ * 	The type of object that owns an image, such as a {@link PhotoGetter}
+ */
+final class ImageCache<K> {
+	/**
+	 * A callback that frees the pixels held for an image when the
+	 * cache evicts it
+	 */
+	interface ReleaseHandler<K> {
+		void release(K key);
+	}
+
+	private final long pixelBudget;
+	private final ReleaseHandler<K> releaseHandler;
+
+	// In order of access, least recently drawn first
+	private final Map<K, Long> pixelCounts =
+		new LinkedHashMap<K, Long>(16, 0.75f, true);
+	private long pixelCount;
+
+	// The number of paints in progress, and the images drawn since the
+	// first of them began
+	private int paintDepth;
+	private final Set<K> drawnInPaint = new HashSet<K>();
+
+	/**
+	 * Creates a new empty cache
+	 *
+	 * @param pixelBudget
+	 * 	The most pixels the cache will hold before releasing images
+	 * @param releaseHandler
+	 * 	The callback that frees evicted images
+	 * @throws IllegalArgumentException
+	 * 	If pixelBudget is negative
+	 * @throws NullPointerException
+	 * 	If releaseHandler is <code>null</code>
+	 */
+	ImageCache(final long pixelBudget, final ReleaseHandler<K> releaseHandler) {
+		if (pixelBudget < 0)
+			throw new IllegalArgumentException("Negative pixel budget");
+		if (releaseHandler == null)
+			throw new NullPointerException("Null release handler");
+
+		this.pixelBudget = pixelBudget;
+		this.releaseHandler = releaseHandler;
+	}
+
+	/**
+	 * Records that the image owned by key was just drawn, and that it
+	 * holds pixels decoded pixels, then releases the least recently
+	 * drawn other images until the cache is within its budget
+	 *
+	 * @throws NullPointerException
+	 * 	If key is <code>null</code>
+	 * @throws IllegalArgumentException
+	 * 	If pixels is negative
+	 */
+	void noteDrawn(final K key, final long pixels) {
+		if (key == null)
+			throw new NullPointerException("Null key");
+		if (pixels < 0)
+			throw new IllegalArgumentException("Negative pixel count");
+
+		final Long oldPixels = pixelCounts.put(key, pixels);
+		if (oldPixels != null)
+			pixelCount -= oldPixels;
+		pixelCount += pixels;
+
+		if (paintDepth > 0)
+			drawnInPaint.add(key);
+
+		releaseOverBudget(key);
+	}
+
+	/**
+	 * Starts a paint, during which the images drawn are not released.
+	 * Paints may overlap, since a paint can span several frames.
+	 */
+	void beginPaint() {
+		paintDepth++;
+	}
+
+	/**
+	 * Ends a paint started by {@link #beginPaint()}, after the drawing it
+	 * buffered has been flushed or discarded.  When no other paint is in
+	 * progress, this releases least recently drawn images until the cache
+	 * is within its budget.
+	 *
+	 * @throws IllegalStateException
+	 * 	If no paint is in progress
+	 */
+	void endPaint() {
+		if (paintDepth == 0)
+			throw new IllegalStateException("No paint in progress");
+
+		paintDepth--;
+		if (paintDepth == 0) {
+			drawnInPaint.clear();
+			releaseOverBudget(null);
+		}
+	}
+
+	// Releases least recently drawn images, other than keep and the
+	// images drawn during the paints in progress, until the cache is
+	// within its budget
+	private void releaseOverBudget(final K keep) {
+		final Iterator<Map.Entry<K, Long>> it =
+			pixelCounts.entrySet().iterator();
+		while (pixelCount > pixelBudget && it.hasNext()) {
+			final Map.Entry<K, Long> entry = it.next();
+			if (entry.getKey().equals(keep)
+					|| drawnInPaint.contains(entry.getKey()))
+				continue;
+
+			it.remove();
+			pixelCount -= entry.getValue();
+			releaseHandler.release(entry.getKey());
+		}
+	}
+
+	/**
+	 * Forgets key without calling the release handler, for an image
+	 * its owner has already freed.  Does nothing if key is not in the
+	 * cache.
+	 */
+	void remove(final K key) {
+		drawnInPaint.remove(key);
+		final Long pixels = pixelCounts.remove(key);
+		if (pixels != null)
+			pixelCount -= pixels;
+	}
+
+	boolean contains(final K key) {
+		return pixelCounts.containsKey(key);
+	}
+
+	int size() {
+		return pixelCounts.size();
+	}
+
+	/**
+	 * Returns the total number of pixels held by the images in the cache
+	 */
+	long getPixelCount() {
+		return pixelCount;
+	}
+}
@@ -40,12 +40,34 @@ public final class MathEx {
 		if (d == Double.MAX_VALUE || d == -Double.MAX_VALUE)
 			return ULPS_OF_MAX_VALUE;
 
-		final long bits = doubleToLongBits(Math.abs(d));
+		final double absd = Math.abs(d);
+		final long bits = doubleToLongBits(absd);
 		final double next = longBitsToDouble(bits + 1);
-		return next - d;
+		return next - absd;
 	}
 
+	/**
+	 * Returns the same value as {@link Double#doubleToLongBits(double)},
+	 * which GWT does not emulate.
+	 */
 	public static long doubleToLongBits(final double d) {
+		return DoubleBits.doubleToLongBits(d);
+	}
+
+	/**
+	 * Returns the same value as {@link Double#longBitsToDouble(long)},
+	 * which GWT does not emulate.
+	 */
+	public static double longBitsToDouble(final long bits) {
+		return DoubleBits.longBitsToDouble(bits);
+	}
+
+	// The reference implementations below use only arithmetic, so they
+	// work anywhere.  They are much slower than the DoubleBits versions,
+	// which are checked against them in MathExTest, and they are the
+	// fallback for browsers without typed arrays
+
+	static long referenceDoubleToLongBits(final double d) {
 		final Double dObj = Double.valueOf(d);
 		final double absd = Math.abs(d);
 
@@ -106,7 +128,7 @@ public final class MathEx {
 		return d > 0 ? result : (result | SIGN_BIT);
 	}
 
-	public static double longBitsToDouble(final long bits) {
+	static double referenceLongBitsToDouble(final long bits) {
 		final boolean positive = (bits & SIGN_BIT) == 0;
 		final long exponentBits = (bits >> SIGNIFICAND_NBITS) & EXPONENT_ALL_ONES;
 		final long significandBits = bits & SIGNIFICAND_ALL_ONES;
@@ -0,0 +1,95 @@
+package org.bodytrack.client;
+
+import com.google.gwt.core.client.Duration;
+import com.google.gwt.i18n.client.NumberFormat;
+
+/**
+ * Measures the throughput of the bit-level double operations in
+ * {@link MathEx}, comparing the fast path against the reference
+ * implementation.
+ *
+ * <p>The fast path differs between the browser and the JVM, so this
+ * runs in the browser, and is exposed to the page as
+ * <code>MathExBenchmark.run(iterations)</code> by
+ * {@link NativeInterface}.</p>
+ */
+public final class MathExBenchmark {
+	private static final NumberFormat RATE_FORMAT = NumberFormat.getFormat("0.0");
+
+	// Spread the inputs over many exponents, like real axis values
+	private static final double[] INPUTS = {
+		0.1, 1.0, 3.75, 1234.5, 1.3e9, 1.3e9 + 0.25, -42.0, 6.02e23,
+		1e-200, -1e300
+	};
+
+	private MathExBenchmark() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Runs the benchmark.
+	 *
+	 * @param iterations
+	 * 	The number of times each operation is called for each
+	 * 	implementation
+	 * @return
+	 * 	A report with one line per operation and implementation, giving
+	 * 	the throughput in millions of calls per second
+	 * @throws IllegalArgumentException
+	 * 	If iterations is less than 1
+	 */
+	public static String run(final int iterations) {
+		if (iterations < 1)
+			throw new IllegalArgumentException(
+				"Must have a positive number of iterations");
+
+		final StringBuilder report = new StringBuilder();
+		report.append(iterations).append(" calls per operation\n");
+
+		// Fold every result into the checksum, so that no call can be
+		// optimized away
+		long checksum = 0;
+		double start;
+
+		start = Duration.currentTimeMillis();
+		for (int i = 0; i < iterations; i++)
+			checksum += MathEx.doubleToLongBits(INPUTS[i % INPUTS.length]);
+		appendRate(report, "doubleToLongBits (fast)", iterations, start);
+
+		start = Duration.currentTimeMillis();
+		for (int i = 0; i < iterations; i++)
+			checksum += MathEx.referenceDoubleToLongBits(INPUTS[i % INPUTS.length]);
+		appendRate(report, "doubleToLongBits (reference)", iterations, start);
+
+		start = Duration.currentTimeMillis();
+		for (int i = 0; i < iterations; i++)
+			checksum += (long) MathEx.longBitsToDouble(checksum & 0x3fffffffffffffffL);
+		appendRate(report, "longBitsToDouble (fast)", iterations, start);
+
+		start = Duration.currentTimeMillis();
+		for (int i = 0; i < iterations; i++)
+			checksum += (long) MathEx.referenceLongBitsToDouble(
+				checksum & 0x3fffffffffffffffL);
+		appendRate(report, "longBitsToDouble (reference)", iterations, start);
+
+		start = Duration.currentTimeMillis();
+		double sum = 0;
+		for (int i = 0; i < iterations; i++)
+			sum += MathEx.ulp(INPUTS[i % INPUTS.length]);
+		appendRate(report, "ulp", iterations, start);
+
+		report.append("checksum ").append(checksum).append(' ').append(sum);
+		return report.toString();
+	}
+
+	private static void appendRate(final StringBuilder report,
+			final String operation,
+			final int iterations,
+			final double startMillis) {
+		final double millis =
+			Math.max(Duration.currentTimeMillis() - startMillis, 1e-3);
+		report.append(operation).append(": ")
+			.append(RATE_FORMAT.format(iterations / millis / 1000.0))
+			.append(" M calls/s\n");
+	}
+}
@@ -1,12 +1,9 @@
 package org.bodytrack.client;
 
-import java.util.Date;
-
 import gwt.g2d.client.graphics.Color;
 
 public class MidnightLineRenderingStrategy implements DataIndependentRenderingStrategy {
-	private static final int SECONDS_PER_DAY = 24 * 60 * 60;
-	private static final int MILLISECONDS_PER_DAY = SECONDS_PER_DAY * 1000;
+	private static final int SECONDS_PER_DAY = CalendarTable.SECONDS_PER_DAY;
 
 	private static final double STROKE_WIDTH = 0.5;
 	private static final Color STROKE_COLOR = ColorUtils.SILVER;
@@ -29,12 +26,16 @@ public class MidnightLineRenderingStrategy implements DataIndependentRenderingSt
 		final double yTop = yAxis.project2D(yAxis.getMin()).getY();
 		final double yBottom = yAxis.project2D(yAxis.getMax()).getY();
 
-		final double firstDay = getNextDay(xMin);
+		// Step through days rather than adding SECONDS_PER_DAY, so that
+		// the lines stay at midnight across daylight saving time changes
+		final CalendarTable calendar = ((TimeGraphAxis) xAxis).getCalendar();
+		int day = calendar.dayNumber(calendar.getNextDayStart(xMin));
 
-		double midnight = firstDay;
+		double midnight = calendar.getDayStart(day);
 		while (midnight <= xMax) {
 			drawVerticalLine(drawing, xAxis, yTop, yBottom, midnight);
-			midnight += SECONDS_PER_DAY;
+			day++;
+			midnight = calendar.getDayStart(day);
 		}
 	}
 
@@ -52,24 +53,6 @@ public class MidnightLineRenderingStrategy implements DataIndependentRenderingSt
 		return dayWidth >= MIN_SPACING;
 	}
 
-	// This is roughly based on TimeGraphAxis.closestDay, but this doesn't
-	// mutate internal TimeGraphAxis data structures.  Also, this always
-	// moves to the NEXT day rather than the closest day.
-	@SuppressWarnings("deprecation")
-	private static double getNextDay(final double time) {
-		Date timeDate = new Date(((long)time) * 1000);
-
-		// Move forward by 1 day - 1 millisecond
-		timeDate.setTime(timeDate.getTime() + MILLISECONDS_PER_DAY - 1);
-
-		// Truncate to beginning of day
-		timeDate.setHours(0);
-		timeDate.setMinutes(0);
-		timeDate.setSeconds(0);
-
-		return timeDate.getTime() / 1000; // Convert milliseconds to seconds
-	}
-
 	private static void drawVerticalLine(final BoundedDrawingBox drawing,
 			final GraphAxis xAxis,
 			final double yTop,
@@ -118,9 +118,15 @@ public final class NativeInterface {
 				this.getMax = function() {
 					return this.__backingAxis.@org.bodytrack.client.GraphAxis::getMax()();
 				};
-				this.setRange = function(min, max) {
-					// Exceptions for illegal min and max values are handled in Java
-					this.__backingAxis.@org.bodytrack.client.GraphAxis::replaceBounds(DD)(min, max);
+				this.setRange = function(min, max, durationMillis) {
+					// Exceptions for illegal min and max values are handled
+					// in Java.  With a positive duration, the axis animates
+					// to the new range instead of jumping there
+					if (durationMillis > 0) {
+						this.__backingAxis.@org.bodytrack.client.GraphAxis::animateBounds(DDI)(min, max, Math.round(durationMillis));
+					} else {
+						this.__backingAxis.@org.bodytrack.client.GraphAxis::replaceBounds(DD)(min, max);
+					}
 				};
 				this.setSize = function (widthInPixels, heightInPixels, eventId) {
 					this.__backingAxis.@org.bodytrack.client.GraphAxis::setSize(III)(widthInPixels, heightInPixels, eventId);
@@ -132,7 +138,9 @@ public final class NativeInterface {
 					this.__backingAxis.@org.bodytrack.client.GraphAxis::removeEventListener(Lcom/google/gwt/core/client/JavaScriptObject;)(listenerFunction);
 				}
 				this.setTimeZoneMapping = function (mapping) {
-					// TODO: Not currently implemented
+					// Mappings are only used by DateAxis objects, and other
+					// axes ignore them
+					this.__backingAxis.@org.bodytrack.client.GraphAxis::setTimeZoneMapping(Lcom/google/gwt/core/client/JavaScriptObject;)(mapping);
 				};
 				this.id = __getNextID();
 			};
@@ -153,6 +161,16 @@ public final class NativeInterface {
 
 		/// Initializes a new DateAxis object
 		///
+		/// A DateAxis shows local times in the browser's time zone, unless
+		/// setTimeZoneMapping is called with a dictionary with keys
+		/// 'transitions' and 'offsets'.  The value on 'transitions' is a
+		/// strictly increasing array of the times, in seconds since the
+		/// epoch, at which the UTC offset changes.  The value on 'offsets'
+		/// is an array, one element longer, of the offsets in seconds
+		/// east of UTC before the first transition, between each pair of
+		/// transitions, and after the last one.  Calling
+		/// setTimeZoneMapping with null goes back to the browser's zone
+		///
 		/// @param placeholder
 		///		The ID of a div in which this axis should go, or null
 		/// @param orientation
@@ -177,6 +195,32 @@ public final class NativeInterface {
 		///		If this key is not present, a default range will be assigned
 		$wnd.PhotoAxis = __createAxisConstructor(@org.bodytrack.client.PhotoGraphAxis::new(Ljava/lang/String;DDLorg/bodytrack/client/Basis;DZ));
 
+		/// Initializes a new AxisLinkGroup object
+		///
+		/// Axes added to a link group always show the same range: dragging,
+		/// zooming, or calling setRange on any of them moves all of them,
+		/// and listeners registered with addAxisChangeListener on any of
+		/// them are called once per change rather than once per axis.  An
+		/// axis added to a group that already has axes takes on their range
+		///
+		/// @param axes
+		///		Optional parameter: an array of axes to add to the new group
+		$wnd.AxisLinkGroup = function(axes) {
+			this.__backingGroup = @org.bodytrack.client.AxisLinkGroup::new()();
+			this.add = function(axis) {
+				this.__backingGroup.@org.bodytrack.client.AxisLinkGroup::add(Lorg/bodytrack/client/GraphAxis;)(axis.__backingAxis);
+			};
+			this.remove = function(axis) {
+				this.__backingGroup.@org.bodytrack.client.AxisLinkGroup::remove(Lorg/bodytrack/client/GraphAxis;)(axis.__backingAxis);
+			};
+			if (axes) {
+				for (var i = 0; i < axes.length; i++) {
+					this.add(axes[i]);
+				}
+			}
+			this.id = __getNextID();
+		};
+
 		/// Initializes a new DataSeriesPlot object
 		///
 		/// @param datasource
@@ -306,10 +350,52 @@ public final class NativeInterface {
 			this.id = __getNextID();
 		};
 
+		/// Sets the most photo downloads that may run at once, across all
+		/// the photo plots on the page
+		///
+		/// @param maxDownloads
+		///		The new limit, which must be at least 1
+		$wnd.PhotoSeriesPlot.setMaxConcurrentDownloads = function(maxDownloads) {
+			@org.bodytrack.client.PhotoGetter::setMaxConcurrentDownloads(I)(maxDownloads);
+		};
+
 		/// Defines the SequenceNumber object
 		$wnd.SequenceNumber = function() {};
 		$wnd.SequenceNumber.getNext = function() { return @org.bodytrack.client.SequenceNumber::getNext()(); };
 
+		/// Defines the RenderBenchmark object
+		///
+		/// RenderBenchmark.run(tileCount, pointsPerTile, frameCount) renders
+		/// synthetic tiles with every data series plot style, without
+		/// drawing anything, and returns a report of the time and number
+		/// of drawing operations per frame
+		$wnd.RenderBenchmark = function() {};
+		$wnd.RenderBenchmark.run = function(tileCount, pointsPerTile, frameCount) {
+			return @org.bodytrack.client.RenderBenchmark::run(III)(tileCount, pointsPerTile, frameCount);
+		};
+
+		/// Defines the MathExBenchmark object
+		///
+		/// MathExBenchmark.run(iterations) calls the bit-level double
+		/// operations used by the axes and tile loaders, in both their
+		/// fast and reference versions, and returns a report of the
+		/// number of calls per second
+		$wnd.MathExBenchmark = function() {};
+		$wnd.MathExBenchmark.run = function(iterations) {
+			return @org.bodytrack.client.MathExBenchmark::run(I)(iterations);
+		};
+
+		/// Defines the CollectionsBenchmark object
+		///
+		/// CollectionsBenchmark.run(iterations) looks up tiles, photo IDs,
+		/// and provider-compared objects in the open-addressing collections
+		/// and in the java.util collections they replaced, and returns a
+		/// report of the number of lookups per second
+		$wnd.CollectionsBenchmark = function() {};
+		$wnd.CollectionsBenchmark.run = function(iterations) {
+			return @org.bodytrack.client.CollectionsBenchmark::run(I)(iterations);
+		};
+
 		/// Initializes a new PlotContainer
 		///
 		/// @param placeholder
@@ -351,6 +437,12 @@ public final class NativeInterface {
 			this.setSize = function(widthInPixels, heightInPixels, eventId) {
 				this.__backingPlotContainer.@org.bodytrack.client.SeriesPlotContainer::setSize(III)(widthInPixels, heightInPixels, eventId);
 			};
+			this.setProgressiveRendering = function(enabled) {
+				this.__backingPlotContainer.@org.bodytrack.client.SeriesPlotContainer::setProgressiveRendering(Z)(!!enabled);
+			};
+			this.destroy = function() {
+				this.__backingPlotContainer.@org.bodytrack.client.SeriesPlotContainer::destroy()();
+			};
 			this.id = __getNextID();
 		};
 
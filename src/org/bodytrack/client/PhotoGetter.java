@@ -1,15 +1,15 @@
 package org.bodytrack.client;
 
-import gwt.g2d.client.math.Vector2;
+import gwt.g2d.client.graphics.canvas.CanvasElement;
 
 import java.util.Comparator;
 
-import org.bodytrack.client.NativeObjectSet.EqualsHashcodeProvider;
 import org.bodytrack.client.PhotoSeriesPlot.PhotoAlertable;
 import org.bodytrack.client.PlottablePoint.DateComparator;
+import org.bodytrack.client.ProviderHashSet.EqualsHashcodeProvider;
 
 import com.google.gwt.core.client.JavaScriptObject;
-import com.google.gwt.user.client.Element;
+import com.google.gwt.dom.client.ImageElement;
 
 /**
  * A class to download a single photo and return the appropriate
@@ -29,10 +29,7 @@ import com.google.gwt.user.client.Element;
  */
 
 // TODO: Add a PhotoManager class to ensure that no photo is ever downloaded
-// twice (even if two photo plots point to the same channel), with some logic
-// for dropping photos from the cache after the cache is too full (possibly use
-// reference counting to make sure that the cache doesn't drop photos that
-// a plot is using)
+// twice (even if two photo plots point to the same channel)
 
 public final class PhotoGetter extends JavaScriptObject implements Comparable<PhotoGetter> {
     public static final EqualsHashcodeProvider<PhotoGetter> EQUALS_HASHCODE =
@@ -40,6 +37,44 @@ public final class PhotoGetter extends JavaScriptObject implements Comparable<Ph
 
     private static final Comparator<Double> DATE_COMPARATOR = new DateComparator();
 
+    /**
+     * The most decoded pixels that all the photos on the page may hold
+     * at once, which is 128 MB at 4 bytes per pixel
+     */
+    private static final long IMAGE_PIXEL_BUDGET = 32L * 1024 * 1024;
+
+    // Shared by every PhotoGetter on the page, so that photos which
+    // have not been drawn recently give up their decoded pixels
+    private static final ImageCache<PhotoGetter> IMAGE_CACHE =
+            new ImageCache<PhotoGetter>(IMAGE_PIXEL_BUDGET,
+                    new ImageCache.ReleaseHandler<PhotoGetter>() {
+                        @Override
+                        public void release(final PhotoGetter photo) {
+                            photo.releaseImages();
+                        }
+                    });
+
+    /**
+     * The number of photo downloads that may run at once by default,
+     * which leaves room in the browser's connection pool for tile fetches
+     */
+    private static final int DEFAULT_MAX_DOWNLOADS = 4;
+
+    // Thumbnails are downloaded before any full-size images
+    private static final int THUMBNAIL_TIER = 0;
+    private static final int FULL_SIZE_TIER = 1;
+
+    // Shared by every PhotoGetter on the page, so that the limit on
+    // concurrent downloads holds across all the photo plots
+    private static final DownloadQueue<PhotoGetter> DOWNLOAD_QUEUE =
+            new DownloadQueue<PhotoGetter>(DEFAULT_MAX_DOWNLOADS,
+                    new DownloadQueue.Downloader<PhotoGetter>() {
+                        @Override
+                        public void start(final PhotoGetter photo) {
+                            photo.downloadImage(photo.getQueuedIndex());
+                        }
+                    });
+
     /* Overlay types always have protected zero-arg constructors. */
     protected PhotoGetter() { }
 
@@ -108,7 +143,17 @@ public final class PhotoGetter extends JavaScriptObject implements Comparable<Ph
         getter.widths.push(-1);
         getter.heights = thumbnailInfos.map(function (info) { return info.height; });
         getter.heights.push(-1);
-        getter.images = getter.urls.map(function (_) { return new Image(); });
+        // Each Image is only created when its download starts, and is
+        // dropped again by releaseImages
+        getter.images = getter.urls.map(function (_) { return null; });
+
+        // The image scaled to the height at which it was last drawn, and
+        // the image it was scaled from
+        getter.scaled = null;
+        getter.scaledSource = null;
+        getter.scaledHeight = -1;
+
+        @org.bodytrack.client.PhotoGetter::updateAspectRatio(Lorg/bodytrack/client/PhotoGetter;)(getter);
 
         return getter;
     }-*/;
@@ -162,30 +207,74 @@ public final class PhotoGetter extends JavaScriptObject implements Comparable<Ph
      * known until the image itself has been loaded).  If the full-size image has not been
      * loaded and there are no thumbnails, returns <code>1.0</code>.
      * </p>
+     *
+     * <p>
+     * The aspect ratio is only computed when the photo is created and when an image
+     * loads, since those are the only times the known sizes change.
+     * </p>
      */
     public native double getAspectRatio() /*-{
+        return this.aspectRatio;
+    }-*/;
+
+    // Static, since JSNI code cannot call instance methods of an overlay type
+    private static native void updateAspectRatio(PhotoGetter getter) /*-{
         var max = function (array) {
             return array.reduce(
                     function (prev, curr, _, __) { return curr > prev ? curr : prev; },
                     -Number.MAX_VALUE);
         };
 
-        // Assuming that all elements of this.widths and this.heights refer to the same
-        // photo, the aspect ratios will all be the same within rounding error, so the
-        // largest width and the largest height will correspond to the same thumbnail
+        // Assuming that all elements of getter.widths and getter.heights refer to the
+        // same photo, the aspect ratios will all be the same within rounding error, so
+        // the largest width and the largest height will correspond to the same thumbnail
         // or to the full-size image
-        var width = max(this.widths);
-        var height = max(this.heights);
-
-        if (width <= 0 || height <= 0) {
-            return 1.0;
-        }
+        var width = max(getter.widths);
+        var height = max(getter.heights);
 
-        return width / height;
+        getter.aspectRatio = (width <= 0 || height <= 0) ? 1.0 : width / height;
     }-*/;
 
     /**
-     * Begins downloading the full-size image or thumbnail closest to the
+     * Sets the most photo downloads that may run at once, across all the
+     * photo plots on the page
+     *
+     * @throws IllegalArgumentException
+     *  If maxDownloads is less than 1
+     */
+    public static void setMaxConcurrentDownloads(final int maxDownloads) {
+        DOWNLOAD_QUEUE.setMaxActive(maxDownloads);
+    }
+
+    /**
+     * Starts a round of download requests from owner, which should be
+     * called before owner paints its photos.  Queued downloads that owner
+     * does not request again before calling
+     * {@link #endDownloadRequests(Object)} are cancelled.
+     */
+    public static void beginDownloadRequests(final Object owner) {
+        DOWNLOAD_QUEUE.beginRequests(owner);
+    }
+
+    /**
+     * Ends a round of download requests from owner, cancelling the queued
+     * downloads owner did not request again, and starting as many queued
+     * downloads as the limit allows
+     */
+    public static void endDownloadRequests(final Object owner) {
+        DOWNLOAD_QUEUE.endRequests(owner);
+    }
+
+    /**
+     * Cancels all the queued downloads requested by owner, which should
+     * be called when owner stops painting photos
+     */
+    public static void cancelDownloadRequests(final Object owner) {
+        DOWNLOAD_QUEUE.removeOwner(owner);
+    }
+
+    /**
+     * Queues a download of the full-size image or thumbnail closest to the
      * specified height.
      *
      * <p>
@@ -194,6 +283,17 @@ public final class PhotoGetter extends JavaScriptObject implements Comparable<Ph
      * downloads the full-size image when appropriate.
      * </p>
      *
+     * <p>
+     * The download starts once there is room under the page-wide limit on
+     * concurrent downloads, with thumbnails first and then the photos nearest
+     * the center of the view.  It must be requested again in each round of
+     * requests from owner until it starts, or it is cancelled.
+     * </p>
+     *
+     * @param owner
+     *  The plot painting this photo, which must be between calls to
+     *  {@link #beginDownloadRequests(Object)} and
+     *  {@link #endDownloadRequests(Object)}
      * @param preferredHeight
      *  The preferred height of the image to download
      * @param minScale
@@ -204,21 +304,47 @@ public final class PhotoGetter extends JavaScriptObject implements Comparable<Ph
      *  This method will only initiate a download if there are no photos
      *  already begun to be downloaded at size less than or equal to
      *  <pre>preferredHeight * maxScale</pre>
+     * @param distance
+     *  The distance, in pixels, of this photo from the center of the view
      * @return
-     *  <code>true</code> if and only if calling this method actually
-     * 	started a download
+     *  <code>true</code> if and only if calling this method queued
+     * 	a download
      */
-    public boolean downloadIfNecessary(final double preferredHeight,
+    public boolean downloadIfNecessary(final Object owner,
+            final double preferredHeight,
             final double minScale,
-            final double maxScale) {
+            final double maxScale,
+            final double distance) {
         final int bestIdx = chooseDownloadIndex(preferredHeight, minScale, maxScale);
         if (bestIdx < 0)
             return false;
 
-        downloadImage(bestIdx);
+        setQueuedIndex(bestIdx);
+        DOWNLOAD_QUEUE.request(this, owner,
+                isFullSizeIndex(bestIdx) ? FULL_SIZE_TIER : THUMBNAIL_TIER,
+                distance);
         return true;
     }
 
+    // The index of the image to download when this photo reaches the
+    // front of the download queue
+    private native int getQueuedIndex() /*-{
+        return this.queuedIdx;
+    }-*/;
+
+    private native void setQueuedIndex(final int idx) /*-{
+        this.queuedIdx = idx;
+    }-*/;
+
+    private native boolean isFullSizeIndex(final int idx) /*-{
+        return idx == this.images.length - 1;
+    }-*/;
+
+    // Called when a download started by the queue ends, one way or another
+    private static void downloadFinished(final PhotoGetter photo) {
+        DOWNLOAD_QUEUE.finished(photo);
+    }
+
     // Helper function for downloadIfNecessary, which chooses the index of the photo to
     // download, returning -1 if no photo should be downloaded
     private native int chooseDownloadIndex(final double preferredHeight,
@@ -262,15 +388,23 @@ public final class PhotoGetter extends JavaScriptObject implements Comparable<Ph
         return this.loadStarted[0] ? -1 : 0;
     }-*/;
 
-    // Helper function for downloadIfNecessary, which initiates a download on the image at the
-    // specified index, keeping the bookkeeping information in this.loadStarted, this.loadFailed,
+    // Called when this photo reaches the front of the download queue, which initiates a
+    // download on the image at the specified index, keeping the bookkeeping information in this.loadStarted, this.loadFailed,
     // and this.imageLoaded correct
     private native void downloadImage(int idx) /*-{
         var getter = this;
         // If we used this keyword inside callbacks, would get wrong this because any
         // JavaScript function defines a new constructor
 
-        this.images[idx].onload = function() {
+        var img = new Image();
+        this.images[idx] = img;
+
+        img.onload = function() {
+            // Ignore a load that finishes after the image was released
+            if (getter.images[idx] !== img)
+                return;
+
+            @org.bodytrack.client.PhotoGetter::downloadFinished(Lorg/bodytrack/client/PhotoGetter;)(getter);
             getter.imageLoaded[idx] = true;
             getter.loadFailed[idx] = false;
 
@@ -280,13 +414,19 @@ public final class PhotoGetter extends JavaScriptObject implements Comparable<Ph
             if (getter.images[idx].height && getter.images[idx].height > 0)
                 getter.heights[idx] = getter.images[idx].height;
 
+            @org.bodytrack.client.PhotoGetter::updateAspectRatio(Lorg/bodytrack/client/PhotoGetter;)(getter);
+
             if (!!getter.callback) {
                 // In Java-like style:
                 // getter.callback.onSuccess(getter);
                 getter.callback.@org.bodytrack.client.PhotoSeriesPlot.PhotoAlertable::onSuccess(Lorg/bodytrack/client/PhotoGetter;)(getter);
             }
         };
-        this.images[idx].onerror = function() {
+        img.onerror = function() {
+            if (getter.images[idx] !== img)
+                return;
+
+            @org.bodytrack.client.PhotoGetter::downloadFinished(Lorg/bodytrack/client/PhotoGetter;)(getter);
             if (!getter.imageLoaded[idx])
                 getter.loadFailed[idx] = true;
 
@@ -298,125 +438,151 @@ public final class PhotoGetter extends JavaScriptObject implements Comparable<Ph
         };
 
         this.loadStarted[idx] = true;
-        this.images[idx].src = this.urls[idx]; // Actually initiate download
+        img.src = this.urls[idx]; // Actually initiate download
     }-*/;
 
     /**
-     * A handy shortcut to the native drawImageBounded method
-     *
-     * <p>
-     * This gets the position, width, and height of bounds, and uses
-     * that information to call the other
-     * {@link #drawImageBounded(String, double, double, double, double,
-     * double, double, double, double) drawImageBounded} with the correct
-     * parameters.
-     * </p>
-     *
-     * @param canvas
-     * 	The canvas we should use to draw the image
-     * @param x
-     * 	The X-position of the <em>center</em> of the image, in pixels
-     * 	from the left edge of the canvas
-     * @param y
-     * 	The Y-position of the <em>center</em> of the image, in pixels
-     * 	from the top edge of the canvas
-     * @param width
-     * 	The width of the image
-     * @param height
-     * 	The height of the image
-     * @param bounds
-     * 	A {@link BoundedDrawingBox} with the bounds that we should
-     * 	use to constrain the image drawing
-     * @return
-     * 	<code>true</code> if and only if the image was successfully drawn,
-     * 	meaning that {@link #imageLoaded() imageLoaded} returns
-     * 	<code>true</code> and that canvas is a valid HTML canvas.  Note that
-     * 	this does <em>not</em> return <code>false</code> if everything else
-     * 	is fine but the image is outside the bounding box; a caller can
-     * 	check for this using arithmetic, so we do not alert a caller to
-     * 	that event
+     * Starts a paint that may draw photos into a buffer, so that the
+     * photos it draws keep their images until the matching call to
+     * {@link #endPaint()}, even if the page goes over its pixel budget
      */
-    public boolean drawImageBounded(Element canvas, double x, double y,
-            double width, double height, BoundedDrawingBox bounds) {
-        Vector2 topLeft = bounds.getTopLeft();
-
-        return drawImageBounded(canvas, x, y, width, height,
-                topLeft.getX(),
-                topLeft.getY(),
-                bounds.getWidth(),
-                bounds.getHeight());
+    public static void beginPaint() {
+        IMAGE_CACHE.beginPaint();
     }
 
     /**
-     * Draws the image with the specified <strong>center</strong> location
-     * and dimensions, and only inside the specified box.
-     *
-     * <p>This is exactly like
-     * {@link #drawImage(String, double, double, double, double) drawImage},
-     * except that it also takes parameters for the bounds of the region
-     * where we might draw the image.</p>
+     * Ends a paint started by {@link #beginPaint()}, which must be called
+     * once the buffer the paint drew into has been flushed or discarded
+     */
+    public static void endPaint() {
+        IMAGE_CACHE.endPaint();
+    }
+
+    /**
+     * Records that this photo was just drawn, so that the page-wide image
+     * cache keeps its images over those of photos drawn less recently.
+     * This may release the images of other photos.
+     */
+    public void noteDrawn() {
+        IMAGE_CACHE.noteDrawn(this, (long) getLoadedPixelCount());
+    }
+
+    // Returns the number of pixels in all the loaded images of this photo,
+    // using the decoded size of each image, since the size stored for the
+    // full-size image is not known in advance
+    private native double getLoadedPixelCount() /*-{
+        var pixels = 0;
+        for (var i = 0; i < this.imageLoaded.length; i++) {
+            var img = this.images[i];
+            if (!this.imageLoaded[i] || !img)
+                continue;
+
+            var width = img.naturalWidth || img.width || this.widths[i];
+            var height = img.naturalHeight || img.height || this.heights[i];
+            pixels += Math.max(width, 0) * Math.max(height, 0);
+        }
+
+        if (this.scaled)
+            pixels += this.scaled.width * this.scaled.height;
+
+        return pixels;
+    }-*/;
+
+    /**
+     * Drops all the images of this photo, clearing their <tt>src</tt>
+     * so that the browser can free the decoded pixels, and cancelling
+     * any downloads in progress.  The next call to
+     * {@link #downloadIfNecessary(Object, double, double, double, double)} downloads
+     * the photo again, normally from the browser cache.
+     */
+    private native void releaseImages() /*-{
+        // Frees the download slot if a download is cut off
+        @org.bodytrack.client.PhotoGetter::downloadFinished(Lorg/bodytrack/client/PhotoGetter;)(this);
+
+        for (var i = 0; i < this.images.length; i++) {
+            var img = this.images[i];
+            if (img) {
+                img.onload = null;
+                img.onerror = null;
+                img.src = "";
+            }
+
+            this.images[i] = null;
+            this.imageLoaded[i] = false;
+            this.loadFailed[i] = false;
+            this.loadStarted[i] = false;
+        }
+
+        if (this.scaled) {
+            this.scaled.width = 0;
+            this.scaled.height = 0;
+        }
+        this.scaled = null;
+        this.scaledSource = null;
+        this.scaledHeight = -1;
+    }-*/;
+
+    /**
+     * Returns the largest image of getter that has finished loading
      *
-     * @param canvas
-     * 	The canvas we should use to draw the image
-     * @param x
-     * 	The X-position of the <em>center</em> of the image, in pixels
-     * 	from the left edge of the canvas
-     * @param y
-     * 	The Y-position of the <em>center</em> of the image, in pixels
-     * 	from the top edge of the canvas
-     * @param width
-     * 	The width of the image
-     * @param height
-     * 	The height of the image
-     * @param minX
-     * 	The minimum X-value that is within the bounds
-     * @param minY
-     * 	The minimum Y-value that is within the bounds
-     * @param boundsWidth
-     * 	The width of the clipping region i.e. the width of the region
-     * 	in which we will draw an image
-     * @param boundsHeight
-     * 	The height of the clipping region i.e. the height of the
-     * 	region in which we will draw an image
      * @return
-     * 	<code>true</code> if and only if the image was successfully drawn,
-     * 	meaning that {@link #imageLoaded()} returns <code>true</code> and
-     * 	that canvas is a valid HTML canvas.  Note that this does <em>not</em>
-     * 	return <code>false</code> if everything else is fine but the image
-     * 	is outside the bounding box; a caller can check for that using
-     * 	arithmetic, so this method does not alert a caller to that event
+     * 	The loaded image with the greatest height, or <code>null</code>
+     * 	if no image has been loaded yet
      */
-    public native boolean drawImageBounded(Element canvas, double x, double y,
-            double width, double height, double minX, double minY,
-            double boundsWidth, double boundsHeight) /*-{
+    private static native ImageElement getLargestLoadedImage(PhotoGetter getter) /*-{
         var largestLoadedIdx = -1;
-        for (var i = 0; i < this.imageLoaded.length; i++) {
-            if (this.imageLoaded[i]) {
-                if (largestLoadedIdx < 0 || this.heights[i] > this.heights[largestLoadedIdx]) {
+        for (var i = 0; i < getter.imageLoaded.length; i++) {
+            if (getter.imageLoaded[i]) {
+                if (largestLoadedIdx < 0 || getter.heights[i] > getter.heights[largestLoadedIdx]) {
                     largestLoadedIdx = i;
                 }
             }
         }
 
-        // Same as drawImage, except with clipping also enabled
-        if (largestLoadedIdx < 0) return false;
-        if (!(canvas && canvas.getContext)) return false;
+        return largestLoadedIdx < 0 ? null : getter.images[largestLoadedIdx];
+    }-*/;
 
-        var ctx = canvas.getContext('2d');
-        if (!ctx) return false;
+    /**
+     * Returns the largest loaded image of this photo, already scaled to
+     * the specified height and to the matching width
+     *
+     * <p>
+     * The scaled bitmap is kept and returned again until the height,
+     * rounded to whole pixels, changes, which only happens when the
+     * scale of the Y-axis changes, or until a larger image loads.  That
+     * way, drawing the photo at its usual size copies pixels rather than
+     * resampling the image on every frame.
+     * </p>
+     *
+     * @param height
+     *  The height, in pixels, at which the photo will be drawn
+     * @return
+     *  A canvas element holding the scaled image, or <code>null</code>
+     *  if no image has loaded or height rounds to 0
+     */
+    public native CanvasElement getScaledImage(final double height) /*-{
+        var img = @org.bodytrack.client.PhotoGetter::getLargestLoadedImage(Lorg/bodytrack/client/PhotoGetter;)(this);
+        if (!img) return null;
 
-        ctx.save();
-        ctx.beginPath();
-        ctx.rect(minX, minY, boundsWidth, boundsHeight);
-        ctx.closePath();
-        ctx.clip();
+        var h = Math.round(height);
+        var w = Math.round(height * this.aspectRatio);
+        if (h < 1 || w < 1) return null;
 
-        var img = this.images[largestLoadedIdx];
-        ctx.drawImage(img, x - width / 2, y - height / 2, width, height);
+        if (this.scaled && this.scaledHeight == h && this.scaledSource === img)
+            return this.scaled;
 
-        ctx.restore();
+        var scaled = this.scaled || $doc.createElement('canvas');
+        scaled.width = w;
+        scaled.height = h;
+        var ctx = scaled.getContext('2d');
+        if (!ctx) return null;
+        ctx.drawImage(img, 0, 0, w, h);
 
-        return true;
+        this.scaled = scaled;
+        this.scaledSource = img;
+        this.scaledHeight = h;
+
+        return scaled;
     }-*/;
 
     // Compare first by floor of time, then by user ID, then by image ID
@@ -449,7 +615,9 @@ public final class PhotoGetter extends JavaScriptObject implements Comparable<Ph
             if (obj == null)
                 return 0;
 
-            return (obj.getUserId() << 16) + obj.getImageId();
+            // Shifting the user ID by 16 bits made image IDs past 65535
+            // collide with the photos of the next user
+            return 31 * obj.getUserId() + obj.getImageId();
         }
     }
 }
@@ -101,7 +101,7 @@ public class PhotoGraphAxis extends GraphAxis {
             return;
          }
 
-         canvas.getSurface().clear();
+         canvas.clear();
 
          // Pick the color to use, based on highlighting status
          if (isHighlighted()) {
@@ -143,7 +143,7 @@ public class PhotoGraphAxis extends GraphAxis {
          final double bottomY = projectY(bottomValue);
 
          // Now draw the vertical line
-         canvas.getRenderer().drawLineSegment(x, topY, x, bottomY);
+         canvas.drawLineSegment(x, topY, x, bottomY);
 
          // Actually render all our ticks and lines on the canvas
          canvas.stroke();
@@ -195,6 +195,6 @@ public class PhotoGraphAxis extends GraphAxis {
       final double tickWidth = TICK_WIDTH_FACTOR * width;
       final double xRight = x + tickWidth;
 
-      canvas.getRenderer().drawLineSegment(x, y, xRight, y);
+      canvas.drawLineSegment(x, y, xRight, y);
    }
 }
@@ -0,0 +1,253 @@
+package org.bodytrack.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bodytrack.client.PhotoSeriesPlot.PhotoAlertable;
+
+/**
+ * The photos known to a {@link PhotoSeriesPlot}, sorted by time.
+ *
+ * <p>The photo descriptions in each tile are merged in once, the first
+ * time the tile is painted.  New photos are sorted among themselves and
+ * then merged with the existing photos in one pass, and photos already
+ * in the index are found by ID, so merging a tile costs time linear in
+ * the number of photos rather than a binary search and an insertion for
+ * each new photo.  After that, finding the photos in a range of times
+ * is a binary search.</p>
+ *
+ * <p>The counts of the photos are kept apart from the photos, and are
+ * those given by the tiles being painted, so a tile merged earlier, at
+ * any level, cannot change them.  They are recomputed lazily whenever
+ * the painted tiles change, along with a {@link ClusterPyramid} over the
+ * photos, for grouping the photos that are too close together to draw
+ * separately.</p>
+ */
+final class PhotoIndex {
+	private static final Comparator<PhotoGetter> TIME_COMPARATOR =
+		new Comparator<PhotoGetter>() {
+			@Override
+			public int compare(final PhotoGetter photo1,
+					final PhotoGetter photo2) {
+				return Double.compare(photo1.getTime(), photo2.getTime());
+			}
+		};
+
+	private final int userId;
+	private final PhotoAlertable loadListener;
+
+	// Sorted by time
+	private List<PhotoGetter> photos = new ArrayList<PhotoGetter>();
+	private final IntObjectMap<PhotoGetter> photosById =
+		new IntObjectMap<PhotoGetter>();
+
+	// The photo descriptions of every merged tile, by photo ID.  Since
+	// GrapherTile does not override equals, the keys are compared by
+	// identity, so a reloaded tile is merged again.
+	private final Map<GrapherTile, IntObjectMap<PhotoDescription>> mergedTiles =
+		new HashMap<GrapherTile, IntObjectMap<PhotoDescription>>();
+
+	// The tiles passed to the last call to setPaintedTiles
+	private List<GrapherTile> paintedTiles = Collections.emptyList();
+
+	// Parallel to photos, and null until first needed after a change to
+	// the photos or the painted tiles
+	private int[] counts;
+	private ClusterPyramid clusters;
+
+	/**
+	 * Creates an empty index
+	 *
+	 * @param userId
+	 * 	The user ID passed to every {@link PhotoGetter} this creates
+	 * @param loadListener
+	 * 	The callback passed to every {@link PhotoGetter} this creates
+	 */
+	PhotoIndex(final int userId, final PhotoAlertable loadListener) {
+		this.userId = userId;
+		this.loadListener = loadListener;
+	}
+
+	/**
+	 * Sets the tiles being painted, merging the photo descriptions from
+	 * any of them that have not been merged before.
+	 *
+	 * <p>A paint draws the best-resolution tiles available for the visible
+	 * range, which do not overlap, so the photos in the range of those
+	 * tiles have the counts those tiles give, and photos in that range
+	 * that are not in the painted tiles have a count of 0.  That fixes the
+	 * issue in which a photo loaded at a higher level is not passed in a
+	 * tile to a lower level, causing the count to go too high.  Photos
+	 * outside every painted tile keep the count they were merged with.</p>
+	 *
+	 * <p>This does nothing if tiles holds the same tile objects, in the
+	 * same order, as on the last call.</p>
+	 */
+	void setPaintedTiles(final List<GrapherTile> tiles) {
+		if (isPainted(tiles))
+			return;
+
+		for (final GrapherTile tile: tiles) {
+			if (tile.getPhotoDescriptions() != null
+					&& !mergedTiles.containsKey(tile))
+				mergedTiles.put(tile, merge(tile.getPhotoDescriptions()));
+		}
+
+		paintedTiles = new ArrayList<GrapherTile>(tiles);
+		counts = null;
+		clusters = null;
+	}
+
+	// Returns true if and only if tiles holds the same tile objects, in
+	// the same order, as the last painted tiles
+	private boolean isPainted(final List<GrapherTile> tiles) {
+		if (tiles.size() != paintedTiles.size())
+			return false;
+
+		for (int i = 0; i < tiles.size(); i++) {
+			if (tiles.get(i) != paintedTiles.get(i))
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Adds the photos in descs that are not yet in this index, and returns
+	 * descs by photo ID
+	 */
+	private IntObjectMap<PhotoDescription> merge(
+			final List<PhotoDescription> descs) {
+		final IntObjectMap<PhotoDescription> tileIds =
+			new IntObjectMap<PhotoDescription>();
+		final List<PhotoGetter> added = new ArrayList<PhotoGetter>();
+
+		for (final PhotoDescription desc: descs) {
+			// The server should never repeat a photo within a tile
+			if (tileIds.put(desc.getId(), desc) != null)
+				continue;
+
+			// The photo isn't downloaded until absolutely necessary
+			if (!photosById.containsKey(desc.getId()))
+				added.add(PhotoGetter.buildPhotoGetter(userId, desc,
+					loadListener));
+		}
+
+		if (!added.isEmpty())
+			insertAll(added);
+
+		return tileIds;
+	}
+
+	private void insertAll(final List<PhotoGetter> added) {
+		Collections.sort(added, TIME_COMPARATOR);
+
+		final List<PhotoGetter> merged =
+			new ArrayList<PhotoGetter>(photos.size() + added.size());
+		int i = 0;
+		int j = 0;
+		while (i < photos.size() || j < added.size()) {
+			if (j >= added.size() || (i < photos.size()
+					&& TIME_COMPARATOR.compare(photos.get(i), added.get(j)) <= 0))
+				merged.add(photos.get(i++));
+			else
+				merged.add(added.get(j++));
+		}
+
+		for (final PhotoGetter photo: added)
+			photosById.put(photo.getImageId(), photo);
+
+		photos = merged;
+	}
+
+	/**
+	 * Returns the clustering of the photos in this index, with indices
+	 * that match those of {@link #get(int)} and counts given by the
+	 * painted tiles
+	 */
+	ClusterPyramid getClusters() {
+		if (clusters == null) {
+			final int n = photos.size();
+			final double[] times = new double[n];
+			for (int i = 0; i < n; i++)
+				times[i] = photos.get(i).getTime();
+
+			clusters = new ClusterPyramid(times, getCounts());
+		}
+
+		return clusters;
+	}
+
+	// Returns the counts of the photos, parallel to photos
+	private int[] getCounts() {
+		if (counts == null) {
+			counts = new int[photos.size()];
+			for (int i = 0; i < counts.length; i++)
+				counts[i] = photos.get(i).getCount();
+
+			for (final GrapherTile tile: paintedTiles) {
+				final IntObjectMap<PhotoDescription> tileIds =
+					mergedTiles.get(tile);
+				if (tileIds == null)
+					continue;
+
+				final TileDescription tileDesc = tile.getDescription();
+				final double maxTime = tileDesc.getMaxTime();
+				for (int i = firstIndexAfter(tileDesc.getMinTime());
+						i < photos.size() && photos.get(i).getTime() < maxTime;
+						i++) {
+					final PhotoDescription desc =
+						tileIds.get(photos.get(i).getImageId());
+					counts[i] = (desc != null) ? desc.getCount() : 0;
+				}
+			}
+		}
+
+		return counts;
+	}
+
+	int size() {
+		return photos.size();
+	}
+
+	PhotoGetter get(final int index) {
+		return photos.get(index);
+	}
+
+	/**
+	 * Returns the index of the first photo at or after time, which is
+	 * {@link #size()} if every photo is before time
+	 */
+	int firstIndexAtOrAfter(final double time) {
+		int lo = 0;
+		int hi = photos.size();
+		while (lo < hi) {
+			final int mid = (lo + hi) >>> 1;
+			if (photos.get(mid).getTime() < time)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+
+		return lo;
+	}
+
+	// Returns the index of the first photo strictly after time
+	private int firstIndexAfter(final double time) {
+		int lo = 0;
+		int hi = photos.size();
+		while (lo < hi) {
+			final int mid = (lo + hi) >>> 1;
+			if (photos.get(mid).getTime() <= time)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+
+		return lo;
+	}
+}
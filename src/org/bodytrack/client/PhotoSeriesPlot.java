@@ -3,11 +3,12 @@ package org.bodytrack.client;
 import gwt.g2d.client.graphics.KnownColor;
 import gwt.g2d.client.graphics.TextAlign;
 import gwt.g2d.client.graphics.TextBaseline;
+import gwt.g2d.client.graphics.canvas.CanvasElement;
 import gwt.g2d.client.math.Vector2;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Set;
 
 import org.bodytrack.client.DataPointListener.TriggerAction;
 import org.bodytrack.client.StyleDescription.StyleType;
@@ -27,9 +28,15 @@ public class PhotoSeriesPlot extends BaseSeriesPlot {
 
 	private static final double COUNT_CIRCLE_SIZE = 20;
 
-	private final int userId;
-	private final List<PhotoGetter> images;
+	/**
+	 * How far outside the visible range, in multiples of the photo
+	 * height, the center of a photo may be and still have part of the
+	 * photo show
+	 */
+	private static final double EDGE_MARGIN_HEIGHTS = 2.0;
+
 	private final PhotoAlertable loadListener;
+	private final PhotoIndex photos;
 	private final SeriesPlotRenderer renderer;
 
 	/**
@@ -59,110 +66,121 @@ public class PhotoSeriesPlot extends BaseSeriesPlot {
 		if (styleJson == null)
 			throw new NullPointerException();
 
-		this.userId = userId;
-
-		images = new ArrayList<PhotoGetter>();
 		loadListener = new PhotoAlertable();
+		photos = new PhotoIndex(userId, loadListener);
 		renderer = new PhotoRenderer(styleJson.<StyleDescription>cast());
 	}
 
+	@Override
+	protected void onUnregisterPlotContainer() {
+		PhotoGetter.cancelDownloadRequests(this);
+	}
+
 	@Override
 	protected SeriesPlotRenderer getRenderer() {
 		return renderer;
 	}
 
 	/**
-	 * Returns the points that will form the centers of the images
-	 *
-	 * <p>This also has the hidden side effect of starting to load
-	 * any unseen images in tile, thus making our drawing possible.
-	 * There is some subtlety here: the call to this method populates
-	 * the set of available images whenever called, which happens
-	 * to be every time the points are needed for painting.</p>
-	 *
-	 * <p>This returns one point per photo.  Even though the rendering
-	 * strategy ignores the actual coordinates of the points, this
-	 * ensures that one call to
-	 * {@link #drawPhoto(BoundedDrawingBox, int, PhotoGetter, Reference)}
-	 * is made for each photo in the images list.</p>
+	 * Draws the photos that may be visible, one for each cluster of photos
+	 * at the current scale, with a count of the photos in the cluster.
+	 * Clusters whose photos would still overlap are grouped under the
+	 * first of them.
 	 */
-	private List<PlottablePoint> getDataPoints(final GrapherTile tile) {
-		if (tile.getPhotoDescriptions() != null)
-			loadPhotos(tile.getPhotoDescriptions(), tile.getDescription());
+	private void drawVisiblePhotos(final Canvas canvas,
+			final BoundedDrawingBox drawing) {
+		final TextAlign oldTextAlign = canvas.getTextAlign();
+		final TextBaseline oldTextBaseline = canvas.getTextBaseline();
 
-		return getDataPoints();
-	}
-
-	private List<PlottablePoint> getDataPoints() {
-		// TODO: Possibly cache this list of immutable objects to avoid
-		// creating a bunch of little objects on every repaint
+		canvas.setStrokeStyle(Canvas.DEFAULT_COLOR);
+		canvas.setTextAlign(TextAlign.CENTER);
+		canvas.setTextBaseline(TextBaseline.MIDDLE);
 
-		int photoCount = images.size();
-		double min = getXAxis().getMin();
-		double max = getXAxis().getMax();
+		drawing.beginClippedPath();
 
-		List<PlottablePoint> result = new ArrayList<PlottablePoint>();
+		// The counts come from the tiles being painted, so that a tile
+		// at another level, painted earlier, cannot hide photos
+		photos.setPaintedTiles(getPaintedTiles());
 
-		for (int i = 0; i < photoCount; i++)
-			result.add(new PlottablePoint((max - min) * i + min, IMAGE_Y_VALUE));
+		final GraphAxis xAxis = getXAxis();
+		final double centerX = (xAxis.projectCoordinate(xAxis.getMin())
+			+ xAxis.projectCoordinate(xAxis.getMax())) / 2.0;
 
-		return result;
-	}
+		PhotoGetter.beginDownloadRequests(this);
 
-	private void loadPhotos(final List<PhotoDescription> descs,
-			final TileDescription tileDesc) {
-		final Set<PhotoGetter> descSet =
-			new NativeObjectSet<PhotoGetter>(PhotoGetter.EQUALS_HASHCODE);
-
-		for (final PhotoDescription desc: descs) {
-			final PhotoGetter dummy = PhotoGetter.buildDummyPhotoGetter(userId, desc);
-			descSet.add(dummy);
-
-			final int idx = CollectionUtils.binarySearch(images, dummy);
-			if (idx < 0) {
-				// Since the download parameter is false, the photo isn't
-				// downloaded until absolutely necessary
-				final PhotoGetter getter =
-                    PhotoGetter.buildPhotoGetter(userId, desc, loadListener);
-				CollectionUtils.insertInOrder(images, getter);
-			} else {
-				// Update count to reflect closer neighbors from server
-				images.get(idx).setCount(desc.getCount());
-			}
+		final ClusterPyramid.Level clusters = getVisibleClusters();
+		PhotoGetter lastPhoto = null;
+		final Reference<Integer> currentCount = new Reference<Integer>(0);
+		final int end = getVisibleEnd(clusters);
+		for (int i = getVisibleStart(clusters); i < end; i++) {
+			lastPhoto = drawPhoto(drawing,
+				photos.get(clusters.getRepresentative(i)),
+				clusters.getCount(i), lastPhoto, currentCount, centerX);
 		}
 
-		// Fixes the issue in which a photo loaded at a higher level is not
-		// passed in a tile to a lower level, causing the count to go too high
-		final double minTime = tileDesc.getMinTime();
-		final double maxTime = tileDesc.getMaxTime();
+		// Starts the downloads requested by drawPhoto, nearest the center
+		// first, and cancels those for photos no longer in view
+		PhotoGetter.endDownloadRequests(this);
 
-		for (final PhotoGetter image: images) {
-			if (image.getTime() > minTime && image.getTime() < maxTime) {
-				if (!descSet.contains(image))
-					image.setCount(0);
-			}
-		}
+		// One last count rendering before we finish, since drawPhoto
+		// only draws the count for earlier photos
+		drawCount(drawing, lastPhoto, currentCount.get());
+
+		drawing.strokeClippedPath();
+
+		canvas.setTextBaseline(oldTextBaseline);
+		canvas.setTextAlign(oldTextAlign);
+		canvas.setStrokeStyle(Canvas.DEFAULT_COLOR);
+	}
+
+	/**
+	 * Returns the clusters of photos at the current scale, with cells
+	 * as wide as a square photo, so that photos in the same cell would
+	 * always overlap
+	 */
+	private ClusterPyramid.Level getVisibleClusters() {
+		final GraphAxis xAxis = getXAxis();
+		final double photoWidth = Math.abs(
+			xAxis.unprojectCoordinate(getPhotoHeight())
+			- xAxis.unprojectCoordinate(0));
+		return photos.getClusters().getLevel(
+			ClusterPyramid.levelFor(photoWidth));
 	}
 
-	private PhotoGetter drawPhoto(final BoundedDrawingBox drawing, final int idx,
-			final PhotoGetter lastPhoto, final Reference<Integer> currentCount) {
-		if (idx < 0 || idx >= images.size())
-			return lastPhoto;
+	// Returns the index in clusters of the first cluster that may be visible
+	private int getVisibleStart(final ClusterPyramid.Level clusters) {
+		final GraphAxis xAxis = getXAxis();
+		final double margin = getPhotoHeight() * EDGE_MARGIN_HEIGHTS;
+		final double left = xAxis.projectCoordinate(xAxis.getMin());
+		return clusters.firstIndexAtOrAfter(
+			xAxis.unprojectCoordinate(left - margin));
+	}
 
-		PhotoGetter photo = images.get(idx);
-		if (photo.getCount() == 0)
-			return lastPhoto;
+	// Returns one more than the index in clusters of the last cluster that
+	// may be visible
+	private int getVisibleEnd(final ClusterPyramid.Level clusters) {
+		final GraphAxis xAxis = getXAxis();
+		final double margin = getPhotoHeight() * EDGE_MARGIN_HEIGHTS;
+		final double right = xAxis.projectCoordinate(xAxis.getMax());
+		return clusters.firstIndexAtOrAfter(
+			xAxis.unprojectCoordinate(right + margin));
+	}
 
+	private PhotoGetter drawPhoto(final BoundedDrawingBox drawing,
+			final PhotoGetter photo, final int count,
+			final PhotoGetter lastPhoto, final Reference<Integer> currentCount,
+			final double centerX) {
 		if (lastPhoto == null || !overlaps(photo, lastPhoto)) {
-		    photo.downloadIfNecessary(getPhotoHeight(), MIN_PHOTO_SCALE, MAX_PHOTO_SCALE);
+			photo.downloadIfNecessary(this, getPhotoHeight(), MIN_PHOTO_SCALE,
+				MAX_PHOTO_SCALE, Math.abs(getPhotoX(photo) - centerX));
 
 			drawCount(drawing, lastPhoto, currentCount.get());
 			drawPhoto(drawing, getPhotoX(photo), getPhotoY(), photo);
-			currentCount.set(photo.getCount());
+			currentCount.set(count);
 			return photo;
 		}
 
-		currentCount.set(currentCount.get() + photo.getCount());
+		currentCount.set(currentCount.get() + count);
 
 		return lastPhoto;
 	}
@@ -233,10 +251,24 @@ public class PhotoSeriesPlot extends BaseSeriesPlot {
 		if (!drawing.containsRectanglePart(xMin, yMin, width, height))
 			return;
 
-		// Now draw the image itself, not allowing it to overflow onto
-		// the axes
-		photo.drawImageBounded(drawing.getCanvas().getNativeCanvasElement(),
-				x, y, width, height, drawing);
+		// Now draw the image itself, already scaled to the photo height.
+		// Drawing it at its own size on whole pixels lets the browser copy
+		// the bitmap rather than resampling it, and the clipped path set
+		// up by drawVisiblePhotos keeps it from overflowing onto the axes
+		final CanvasElement image = photo.getScaledImage(height);
+		if (image != null) {
+			final int imageWidth = image.getWidth();
+			final int imageHeight = image.getHeight();
+			drawing.getCanvas().drawImage(image,
+				Math.round(x - imageWidth / 2.0),
+				Math.round(y - imageHeight / 2.0),
+				imageWidth, imageHeight);
+			photo.noteDrawn();
+		}
+
+		// The borders are left out while the user is interacting with the view
+		if (RenderQuality.isInteracting())
+			return;
 
 		// Note that the borders are drawn after the image is, so the image
 		// doesn't obscure the borders
@@ -308,7 +340,7 @@ public class PhotoSeriesPlot extends BaseSeriesPlot {
 	 * 	The X-value, in pixels, at which we should draw the center of photo
 	 */
 	private double getPhotoX(final PhotoGetter photo) {
-		return getXAxis().project2D(photo.getTime()).getX();
+		return getXAxis().projectCoordinate(photo.getTime());
 	}
 
 	/**
@@ -318,7 +350,7 @@ public class PhotoSeriesPlot extends BaseSeriesPlot {
 	 * 	The Y-value in pixels at which photos should be drawn
 	 */
 	private double getPhotoY() {
-		return getYAxis().project2D(IMAGE_Y_VALUE).getY();
+		return getYAxis().projectCoordinate(IMAGE_Y_VALUE);
 	}
 
 	/**
@@ -332,8 +364,8 @@ public class PhotoSeriesPlot extends BaseSeriesPlot {
 
 		// Note that 0 has a lower Y-value than PHOTO_HEIGHT, since
 		// higher values in logical units have smaller Y-values in pixels
-		return yAxis.project2D(0).getY()
-			- yAxis.project2D(PhotoGraphAxis.PHOTO_HEIGHT).getY();
+		return yAxis.projectCoordinate(0)
+			- yAxis.projectCoordinate(PhotoGraphAxis.PHOTO_HEIGHT);
 	}
 
 	@Override
@@ -367,10 +399,15 @@ public class PhotoSeriesPlot extends BaseSeriesPlot {
 		PhotoGetter lastVisible = null;
 		final double x = pos.getX();
 
-		for (final PhotoGetter photo: images) {
-			// Photo can't be visible unless it has been downloaded and
-			// has nonzero count
-			if ((!photo.loadStarted()) || (photo.getCount() <= 0))
+		// Hit-test against the same clusters that were drawn
+		final ClusterPyramid.Level clusters = getVisibleClusters();
+		final int end = getVisibleEnd(clusters);
+		for (int i = getVisibleStart(clusters); i < end; i++) {
+			final PhotoGetter photo = photos.get(clusters.getRepresentative(i));
+
+			// Photo can't be visible unless it has been downloaded, and
+			// clusters only have photos with nonzero count
+			if (!photo.loadStarted())
 				continue;
 
 			if (lastVisible != null && overlaps(lastVisible, photo))
@@ -387,87 +424,6 @@ public class PhotoSeriesPlot extends BaseSeriesPlot {
 		return null;
 	}
 
-	private class PhotoRenderingStrategy implements SeriesPlotRenderingStrategy {
-		private static final int NOT_RENDERING = -1;
-
-		private TextAlign oldTextAlign;
-		private TextBaseline oldTextBaseline;
-
-		private int photoIndex = NOT_RENDERING;
-		private PhotoGetter lastPhoto;
-		private Reference<Integer> currentCount;
-		private BoundedDrawingBox savedDrawing;
-
-		@Override
-		public void beforeRender(final Canvas canvas,
-				final BoundedDrawingBox drawing,
-				final boolean isAnyPointHighlighted) {
-			oldTextAlign = canvas.getTextAlign();
-			oldTextBaseline = canvas.getTextBaseline();
-
-			canvas.setStrokeStyle(Canvas.DEFAULT_COLOR);
-			canvas.setTextAlign(TextAlign.CENTER);
-			canvas.setTextBaseline(TextBaseline.MIDDLE);
-
-			drawing.beginClippedPath();
-
-			photoIndex = 0;
-			lastPhoto = null;
-			currentCount = new Reference<Integer>(0);
-			savedDrawing = null;
-		}
-
-		@Override
-		public final void paintEdgePoint(final BoundedDrawingBox drawing,
-				final GrapherTile tile,
-				final GraphAxis xAxis,
-				final GraphAxis yAxis,
-				final boolean isAnyPointHighlighted,
-				final double x,
-				final double y,
-				final PlottablePoint rawDataPoint) {
-			drawNextPhoto(drawing);
-		}
-
-		@Override
-		public final void paintDataPoint(final BoundedDrawingBox drawing,
-				final GrapherTile tile,
-				final GraphAxis xAxis,
-				final GraphAxis yAxis,
-				final boolean isAnyPointHighlighted,
-				final double prevX,
-				final double prevY,
-				final double x,
-				final double y,
-				final PlottablePoint rawDataPoint) {
-			drawNextPhoto(drawing);
-		}
-
-		private void drawNextPhoto(final BoundedDrawingBox drawing) {
-			lastPhoto = drawPhoto(drawing, photoIndex, lastPhoto, currentCount);
-			photoIndex++;
-			savedDrawing = drawing;
-		}
-
-		@Override
-		public void afterRender(final Canvas canvas, final BoundedDrawingBox drawing) {
-			// One last count rendering before we finish, since drawPhoto
-			// only draws the count for earlier photos
-			drawCount(savedDrawing, lastPhoto, currentCount.get());
-
-			drawing.strokeClippedPath();
-
-			canvas.setTextBaseline(oldTextBaseline);
-			canvas.setTextAlign(oldTextAlign);
-			canvas.setStrokeStyle(Canvas.DEFAULT_COLOR);
-
-			photoIndex = NOT_RENDERING;
-			lastPhoto = null;
-			currentCount = null;
-			savedDrawing = null;
-		}
-	}
-
 	private final class PhotoRenderer extends BaseSeriesPlotRenderer {
 
 		private PhotoRenderer(final StyleDescription styleDescription) {
@@ -478,10 +434,19 @@ public class PhotoSeriesPlot extends BaseSeriesPlot {
 		protected List<SeriesPlotRenderingStrategy> buildSeriesPlotRenderingStrategies(
 				JsArray<StyleType> styleTypes, Double highlightLineWidth) {
 			// TODO: honor the style...
-			final List<SeriesPlotRenderingStrategy> renderingStrategies =
-				new ArrayList<SeriesPlotRenderingStrategy>();
-			renderingStrategies.add(new PhotoRenderingStrategy());
-			return renderingStrategies;
+			return new ArrayList<SeriesPlotRenderingStrategy>();
+		}
+
+		// Photos are drawn straight from the photo index, rather than
+		// one point at a time from each tile
+		@Override
+		public void renderPlotStrategies(final Canvas canvas,
+				final BoundedDrawingBox drawing,
+				final Iterable<GrapherTile> tiles,
+				final GraphAxis xAxis,
+				final GraphAxis yAxis,
+				final boolean isAnyPointHighlighted) {
+			drawVisiblePhotos(canvas, drawing);
 		}
 
 		@Override
@@ -492,9 +457,10 @@ public class PhotoSeriesPlot extends BaseSeriesPlot {
 			return null;
 		}
 
+		// There are no points to mark with comments
 		@Override
 		protected List<PlottablePoint> getDataPoints(final GrapherTile tile) {
-			return PhotoSeriesPlot.this.getDataPoints(tile);
+			return Collections.emptyList();
 		}
 	}
 
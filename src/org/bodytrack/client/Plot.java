@@ -25,6 +25,22 @@ public interface Plot {
     */
    void paint(Canvas canvas, int newPaintEventId);
 
+   /**
+    * Paints this Plot on the given canvas, using tiles that are up to <code>levelOffset</code> levels coarser than
+    * the tiles that {@link #paint(Canvas, int)} would use.  Passing in a <code>levelOffset</code> of 0 is the same as
+    * calling {@link #paint(Canvas, int)}.
+    *
+    * <p>Coarser tiles have fewer points, so this allows a complete but less detailed picture to be drawn quickly.
+    * Whichever tiles are loaded are used, so the actual tiles may be finer than requested.</p>
+    */
+   void paint(Canvas canvas, int newPaintEventId, int levelOffset);
+
+   /**
+    * Paints the highlighted point of this Plot, if it has one, on the given canvas, which is an overlay above the
+    * canvas passed to {@link #paint(Canvas, int)}.  Paints nothing if this Plot is not highlighted.
+    */
+   void paintHighlight(Canvas canvas);
+
    /**
     * Returns the X-Axis for this Plot.
     *
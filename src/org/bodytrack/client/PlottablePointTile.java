@@ -134,23 +134,9 @@ public final class PlottablePointTile extends JavaScriptObject {
     * 		by {@link #getFields() getFields()})
     */
    public List<PlottablePoint> getDataPoints() {
-      int timeIndex = -1;
-      int meanIndex = -1;
-      int commentIndex = -1;
-
-      final JsArrayString fieldNames = getFields();
-
-      for (int i = 0; i < fieldNames.length(); i++) {
-         if ("time".equalsIgnoreCase(fieldNames.get(i))) {
-            timeIndex = i;
-         }
-         else if ("mean".equalsIgnoreCase(fieldNames.get(i))) {
-            meanIndex = i;
-         }
-         else if ("comment".equalsIgnoreCase(fieldNames.get(i))) {
-            commentIndex = i;
-         }
-      }
+      final int timeIndex = findField("time");
+      final int meanIndex = findField("mean");
+      final int commentIndex = findField("comment");
 
       if (timeIndex < 0 || meanIndex < 0) {
          return null;
@@ -178,6 +164,60 @@ public final class PlottablePointTile extends JavaScriptObject {
       return result;
    }
 
+   /**
+    * Builds a hit-testing index over the same points as
+    * {@link #getDataPoints()}, reading the time, mean, and comment
+    * columns into arrays without creating a {@link PlottablePoint} for
+    * each point.
+    *
+    * @return
+    * 		the index, or <tt>null</tt> if the field names
+    * 		&quot;time&quot; and &quot;mean&quot; are not elements of the
+    * 		array returned by {@link #getFields() getFields()}
+    */
+   PointHitIndex buildHitIndex() {
+      final int timeIndex = findField("time");
+      final int meanIndex = findField("mean");
+      final int commentIndex = findField("comment");
+
+      if (timeIndex < 0 || meanIndex < 0) {
+         return null;
+      }
+
+      final JsArray<JsArrayMixed> dataPoints = getData();
+      final int n = dataPoints.length();
+      final double[] times = new double[n];
+      final double[] means = new double[n];
+      final String[] comments = commentIndex >= 0 ? new String[n] : null;
+
+      for (int i = 0; i < n; i++) {
+         final JsArrayMixed dataPoint = dataPoints.get(i);
+         times[i] = dataPoint.getNumber(timeIndex);
+         means[i] = dataPoint.getNumber(meanIndex);
+         if (comments != null) {
+            final String comment = dataPoint.getString(commentIndex);
+            if (comment != null && !"null".equalsIgnoreCase(comment)) {
+               comments[i] = comment;
+            }
+         }
+      }
+
+      return PointHitIndex.build(times, means, comments);
+   }
+
+   // Returns the index of the named field, ignoring case, or -1 if this
+   // tile has no such field
+   private int findField(final String name) {
+      final JsArrayString fieldNames = getFields();
+      for (int i = 0; i < fieldNames.length(); i++) {
+         if (name.equalsIgnoreCase(fieldNames.get(i))) {
+            return i;
+         }
+      }
+
+      return -1;
+   }
+
    /**
     * Returns a TileDescription that describes this tile.
     *
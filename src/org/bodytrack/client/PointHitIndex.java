@@ -0,0 +1,121 @@
+package org.bodytrack.client;
+
+/**
+ * The points of one tile, sorted by time and stored in primitive
+ * arrays, for finding the points near the mouse.
+ *
+ * <p>An index is built once per tile, straight from the columns of the
+ * tile, after which finding the points in a range of times is a binary
+ * search, and reading their times and values creates no objects.  A
+ * {@link PlottablePoint} is only created for a point that is asked for
+ * with {@link #getPoint(int)}.</p>
+ */
+final class PointHitIndex {
+	private final double[] times;
+	private final double[] values;
+
+	// Null if the tile has no comments
+	private final String[] comments;
+
+	private PointHitIndex(final double[] times, final double[] values,
+			final String[] comments) {
+		this.times = times;
+		this.values = values;
+		this.comments = comments;
+	}
+
+	/**
+	 * Builds an index over the points with the given times, values, and
+	 * comments, sorting them by time if they are not already sorted.  The
+	 * arrays are used directly, not copied, and are reordered if they
+	 * are not sorted.
+	 *
+	 * @param comments
+	 * 	The comment for each point, with <code>null</code> for a point
+	 * 	without a comment, or <code>null</code> if no point has one
+	 * @throws NullPointerException
+	 * 	If times or values is <code>null</code>
+	 * @throws IllegalArgumentException
+	 * 	If times, values, and comments do not all have the same length
+	 */
+	static PointHitIndex build(final double[] times, final double[] values,
+			final String[] comments) {
+		if (times == null || values == null)
+			throw new NullPointerException("Null times or values");
+		if (times.length != values.length
+				|| (comments != null && comments.length != times.length))
+			throw new IllegalArgumentException(
+				"Must have one value and comment for each time");
+
+		// Tiles are sorted in practice, so an insertion sort costs
+		// a single pass
+		for (int i = 1; i < times.length; i++) {
+			if (times[i - 1] <= times[i])
+				continue;
+
+			final double time = times[i];
+			final double value = values[i];
+			final String comment = comments == null ? null : comments[i];
+			int j = i;
+			while (j > 0 && times[j - 1] > time) {
+				times[j] = times[j - 1];
+				values[j] = values[j - 1];
+				if (comments != null)
+					comments[j] = comments[j - 1];
+				j--;
+			}
+			times[j] = time;
+			values[j] = value;
+			if (comments != null)
+				comments[j] = comment;
+		}
+
+		return new PointHitIndex(times, values, comments);
+	}
+
+	int size() {
+		return times.length;
+	}
+
+	double getTime(final int index) {
+		return times[index];
+	}
+
+	double getValue(final int index) {
+		return values[index];
+	}
+
+	/**
+	 * Returns the comment of the point at index, or <code>null</code>
+	 * if it has none
+	 */
+	String getComment(final int index) {
+		return comments == null ? null : comments[index];
+	}
+
+	/**
+	 * Returns a new point with the time, value, and comment at index
+	 */
+	PlottablePoint getPoint(final int index) {
+		return new PlottablePoint(times[index], values[index],
+			getComment(index));
+	}
+
+	/**
+	 * Returns the index of the first point at or after time, which is
+	 * {@link #size()} if every point is before time
+	 */
+	int firstIndexAtOrAfter(final double time) {
+		int lo = 0;
+		int hi = times.length;
+		while (lo < hi) {
+			final int mid = (lo + hi) >>> 1;
+			if (times[mid] < time)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+
+		return lo;
+	}
+}
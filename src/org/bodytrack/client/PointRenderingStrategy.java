@@ -22,7 +22,7 @@ public abstract class PointRenderingStrategy extends BaseDataSeriesPlotRendering
                                     final double x,
                                     final double y,
                                     final PlottablePoint rawDataPoint) {
-      paintPoint(drawing, xAxis, yAxis, x, y, rawDataPoint);
+      paintPointForQuality(drawing, xAxis, yAxis, x, y, rawDataPoint);
    }
 
    @Override
@@ -36,7 +36,21 @@ public abstract class PointRenderingStrategy extends BaseDataSeriesPlotRendering
                                     final double x,
                                     final double y,
                                     final PlottablePoint rawDataPoint) {
-      paintPoint(drawing, xAxis, yAxis, x, y, rawDataPoint);
+      paintPointForQuality(drawing, xAxis, yAxis, x, y, rawDataPoint);
+   }
+
+   /** Draws a plain dot instead of the full marker while the user is interacting with the view. */
+   private void paintPointForQuality(final BoundedDrawingBox drawing,
+                                     final GraphAxis xAxis,
+                                     final GraphAxis yAxis,
+                                     final double x,
+                                     final double y,
+                                     final PlottablePoint rawDataPoint) {
+      if (RenderQuality.isInteracting()) {
+         drawing.drawDot(x, y);
+      } else {
+         paintPoint(drawing, xAxis, yAxis, x, y, rawDataPoint);
+      }
    }
 
    /** Returns the radius of the dot. */
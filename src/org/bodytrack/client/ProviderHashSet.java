@@ -0,0 +1,215 @@
+package org.bodytrack.client;
+
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A hash set whose elements are compared and hashed by an
+ * {@link EqualsHashcodeProvider} rather than by their own
+ * <code>equals</code> and <code>hashCode</code> methods, which overlay
+ * types such as {@link PhotoGetter} cannot override.
+ *
+ * <p>The elements are stored directly in one array with open
+ * addressing, so adding, finding, and removing elements creates no
+ * wrapper or entry objects.  Removed elements leave a marker behind
+ * until the next resize, so that the iterator stays valid when elements
+ * are removed through it.  Null elements are not allowed.</p>
+ *
+ * @param <T>
+ * 	The type of the elements
+ */
+public class ProviderHashSet<T> extends AbstractSet<T> {
+	public interface EqualsHashcodeProvider<U> {
+		boolean equals(U obj1, U obj2);
+		int hashCode(U obj);
+	}
+
+	// Marks a slot whose element was removed
+	private static final Object REMOVED = new Object();
+
+	private static final int MIN_CAPACITY = 8;
+
+	private final EqualsHashcodeProvider<T> provider;
+
+	private Object[] elements;
+	private int size;
+
+	// The number of slots holding an element or REMOVED
+	private int usedSlots;
+
+	/**
+	 * Creates an empty set
+	 *
+	 * @throws NullPointerException
+	 * 	If provider is <code>null</code>
+	 */
+	public ProviderHashSet(final EqualsHashcodeProvider<T> provider) {
+		if (provider == null)
+			throw new NullPointerException("Null provider");
+
+		this.provider = provider;
+		allocate(MIN_CAPACITY);
+	}
+
+	/**
+	 * Adds e to this set
+	 *
+	 * @throws NullPointerException
+	 * 	If e is <code>null</code>
+	 */
+	@Override
+	public boolean add(final T e) {
+		if (e == null)
+			throw new NullPointerException("Null elements are not allowed");
+		if (findSlot(e) >= 0)
+			return false;
+
+		if (2 * (usedSlots + 1) > elements.length)
+			resize(size + 1);
+
+		final int mask = elements.length - 1;
+		int slot = hash(e) & mask;
+		while (elements[slot] != null && elements[slot] != REMOVED)
+			slot = (slot + 1) & mask;
+
+		if (elements[slot] == null)
+			usedSlots++;
+		elements[slot] = e;
+		size++;
+
+		return true;
+	}
+
+	/**
+	 * Tells whether this set holds an element equal to o, according to
+	 * the provider.  Since the type of the elements is erased, o must be
+	 * of the element type or <code>null</code>.
+	 */
+	@Override
+	@SuppressWarnings("unchecked")
+	public boolean contains(final Object o) {
+		return o != null && findSlot((T) o) >= 0;
+	}
+
+	@Override
+	@SuppressWarnings("unchecked")
+	public boolean remove(final Object o) {
+		if (o == null)
+			return false;
+
+		final int slot = findSlot((T) o);
+		if (slot < 0)
+			return false;
+
+		elements[slot] = REMOVED;
+		size--;
+		return true;
+	}
+
+	@Override
+	public void clear() {
+		allocate(MIN_CAPACITY);
+	}
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns an iterator over the elements, in no particular order,
+	 * which supports removal
+	 */
+	@Override
+	public Iterator<T> iterator() {
+		return new ElementIterator();
+	}
+
+	// Returns the slot holding an element equal to e, or -1 if there is none
+	@SuppressWarnings("unchecked")
+	private int findSlot(final T e) {
+		final int mask = elements.length - 1;
+		int slot = hash(e) & mask;
+		while (elements[slot] != null) {
+			if (elements[slot] != REMOVED
+					&& provider.equals((T) elements[slot], e))
+				return slot;
+			slot = (slot + 1) & mask;
+		}
+
+		return -1;
+	}
+
+	private int hash(final T e) {
+		final int h = provider.hashCode(e) * 0x9e3779b9;
+		return h ^ (h >>> 16);
+	}
+
+	@SuppressWarnings("unchecked")
+	private void resize(final int minSize) {
+		final Object[] oldElements = elements;
+
+		int capacity = MIN_CAPACITY;
+		while (capacity < 4 * minSize)
+			capacity <<= 1;
+		allocate(capacity);
+
+		for (final Object e: oldElements) {
+			if (e != null && e != REMOVED)
+				add((T) e);
+		}
+	}
+
+	private void allocate(final int capacity) {
+		elements = new Object[capacity];
+		size = 0;
+		usedSlots = 0;
+	}
+
+	private final class ElementIterator implements Iterator<T> {
+		// The array is captured so that a resize during iteration
+		// cannot cause elements to be skipped or repeated
+		private final Object[] iterElements = elements;
+		private int next = -1;
+		private int current = -1;
+
+		private ElementIterator() {
+			advance();
+		}
+
+		private void advance() {
+			do {
+				next++;
+			} while (next < iterElements.length
+				&& (iterElements[next] == null || iterElements[next] == REMOVED));
+		}
+
+		@Override
+		public boolean hasNext() {
+			return next < iterElements.length;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public T next() {
+			if (!hasNext())
+				throw new NoSuchElementException();
+
+			current = next;
+			advance();
+			return (T) iterElements[current];
+		}
+
+		@Override
+		public void remove() {
+			if (current < 0 || iterElements[current] == REMOVED)
+				throw new IllegalStateException();
+			if (iterElements != elements)
+				throw new IllegalStateException("Set resized during iteration");
+
+			iterElements[current] = REMOVED;
+			size--;
+		}
+	}
+}
@@ -0,0 +1,325 @@
+package org.bodytrack.client;
+
+import gwt.g2d.client.graphics.Color;
+import gwt.g2d.client.graphics.TextAlign;
+import gwt.g2d.client.graphics.TextBaseline;
+import gwt.g2d.client.graphics.canvas.CanvasElement;
+
+import java.util.ArrayList;
+import java.util.List;
+
+
+/**
+ * A {@link RenderingBackend} that draws nothing, but counts every
+ * operation it is asked to perform.
+ *
+ * <p>This class uses no browser APIs, so it works both in compiled
+ * JavaScript and on the JVM.  It is intended for benchmarks and tests
+ * of the rendering code: wrap one in a {@link Canvas} using
+ * {@link Canvas#buildCanvas(RenderingBackend)}, render, and then read
+ * the counters.</p>
+ *
+ * <p>Operations are counted in four groups:</p>
+ * <ul>
+ * <li>Path operations: beginPath, closePath, moveTo, lineTo, arc,
+ * and rect</li>
+ * <li>State changes: every setter, plus save, restore, translate,
+ * and clip.  A setter call that does not change the current value is
+ * also counted as a <em>redundant</em> state change</li>
+ * <li>Strokes: stroke, strokeRectangle, and strokeText</li>
+ * <li>Fills: fill, fillRectangle, fillText, and drawImage</li>
+ * </ul>
+ *
+ * <p>The current drawing state is tracked, including across save and
+ * restore, so the getters return the same values a real 2D context
+ * would.  Text is measured as {@link #CHARACTER_WIDTH} pixels per
+ * character, regardless of font.</p>
+ */
+public final class RecordingRenderingBackend implements RenderingBackend {
+	/**
+	 * The width, in pixels, that {@link #measureText(String)} assigns
+	 * to each character
+	 */
+	public static final double CHARACTER_WIDTH = 6.0;
+
+	private final int width;
+	private final int height;
+
+	private DrawingState state;
+	private final List<DrawingState> savedStates;
+
+	private int pathOperationCount;
+	private int stateChangeCount;
+	private int redundantStateChangeCount;
+	private int strokeCount;
+	private int fillCount;
+
+	/**
+	 * Creates a new backend with a drawing area of the specified size.
+	 *
+	 * @param width
+	 * 	The width of the drawing area, in pixels
+	 * @param height
+	 * 	The height of the drawing area, in pixels
+	 * @throws IllegalArgumentException
+	 * 	If width or height is negative
+	 */
+	public RecordingRenderingBackend(final int width, final int height) {
+		if (width < 0 || height < 0)
+			throw new IllegalArgumentException("Negative dimensions");
+
+		this.width = width;
+		this.height = height;
+		this.state = DrawingState.defaults();
+		this.savedStates = new ArrayList<DrawingState>();
+	}
+
+	/**
+	 * Sets all counters back to zero.
+	 *
+	 * <p>This does not change the current drawing state.</p>
+	 */
+	public void resetCounts() {
+		pathOperationCount = 0;
+		stateChangeCount = 0;
+		redundantStateChangeCount = 0;
+		strokeCount = 0;
+		fillCount = 0;
+	}
+
+	public int getPathOperationCount() {
+		return pathOperationCount;
+	}
+
+	public int getStateChangeCount() {
+		return stateChangeCount;
+	}
+
+	/**
+	 * Returns the number of setter calls that did not change the
+	 * value they set.  These calls are also included in
+	 * {@link #getStateChangeCount()}.
+	 */
+	public int getRedundantStateChangeCount() {
+		return redundantStateChangeCount;
+	}
+
+	public int getStrokeCount() {
+		return strokeCount;
+	}
+
+	public int getFillCount() {
+		return fillCount;
+	}
+
+	/**
+	 * Returns the number of calls to {@link #save()} that have not
+	 * yet been matched by a call to {@link #restore()}
+	 */
+	public int getSaveDepth() {
+		return savedStates.size();
+	}
+
+	public Color getStrokeStyle() {
+		return state.strokeStyle;
+	}
+
+	public Color getFillStyle() {
+		return state.fillStyle;
+	}
+
+	@Override
+	public int getWidth() {
+		return width;
+	}
+
+	@Override
+	public int getHeight() {
+		return height;
+	}
+
+	@Override
+	public void setStrokeStyle(final Color color) {
+		countStateChange(DrawingState.isSame(color, state.strokeStyle));
+		state.strokeStyle = color;
+	}
+
+	@Override
+	public void setFillStyle(final Color color) {
+		countStateChange(DrawingState.isSame(color, state.fillStyle));
+		state.fillStyle = color;
+	}
+
+	@Override
+	public double getLineWidth() {
+		return state.lineWidth;
+	}
+
+	@Override
+	public void setLineWidth(final double width) {
+		countStateChange(width == state.lineWidth);
+		state.lineWidth = width;
+	}
+
+	@Override
+	public double getGlobalAlpha() {
+		return state.globalAlpha;
+	}
+
+	@Override
+	public void setGlobalAlpha(final double alpha) {
+		countStateChange(alpha == state.globalAlpha);
+		state.globalAlpha = alpha;
+	}
+
+	@Override
+	public TextAlign getTextAlign() {
+		return state.textAlign;
+	}
+
+	@Override
+	public void setTextAlign(final TextAlign textAlign) {
+		countStateChange(textAlign == state.textAlign);
+		state.textAlign = textAlign;
+	}
+
+	@Override
+	public TextBaseline getTextBaseline() {
+		return state.textBaseline;
+	}
+
+	@Override
+	public void setTextBaseline(final TextBaseline textBaseline) {
+		countStateChange(textBaseline == state.textBaseline);
+		state.textBaseline = textBaseline;
+	}
+
+	@Override
+	public String getFont() {
+		return state.font;
+	}
+
+	@Override
+	public void setFont(final String font) {
+		countStateChange(DrawingState.isSame(font, state.font));
+		state.font = font;
+	}
+
+	@Override
+	public void clear() {
+		fillCount++;
+	}
+
+	@Override
+	public void save() {
+		stateChangeCount++;
+		savedStates.add(state.copy());
+	}
+
+	@Override
+	public void restore() {
+		stateChangeCount++;
+
+		// Like a real context, ignore restore calls without a
+		// matching save call
+		if (!savedStates.isEmpty())
+			state = savedStates.remove(savedStates.size() - 1);
+	}
+
+	@Override
+	public void translate(final double x, final double y) {
+		stateChangeCount++;
+	}
+
+	@Override
+	public void beginPath() {
+		pathOperationCount++;
+	}
+
+	@Override
+	public void closePath() {
+		pathOperationCount++;
+	}
+
+	@Override
+	public void moveTo(final double x, final double y) {
+		pathOperationCount++;
+	}
+
+	@Override
+	public void lineTo(final double x, final double y) {
+		pathOperationCount++;
+	}
+
+	@Override
+	public void arc(final double x, final double y, final double radius,
+			final double startAngle, final double endAngle,
+			final boolean anticlockwise) {
+		pathOperationCount++;
+	}
+
+	@Override
+	public void rect(final double x, final double y,
+			final double width, final double height) {
+		pathOperationCount++;
+	}
+
+	@Override
+	public void clip() {
+		stateChangeCount++;
+	}
+
+	@Override
+	public void stroke() {
+		strokeCount++;
+	}
+
+	@Override
+	public void fill() {
+		fillCount++;
+	}
+
+	@Override
+	public void strokeRectangle(final double x, final double y,
+			final double width, final double height) {
+		strokeCount++;
+	}
+
+	@Override
+	public void fillRectangle(final double x, final double y,
+			final double width, final double height) {
+		fillCount++;
+	}
+
+	@Override
+	public void strokeText(final String text, final double x, final double y) {
+		strokeCount++;
+	}
+
+	@Override
+	public void fillText(final String text, final double x, final double y) {
+		fillCount++;
+	}
+
+	@Override
+	public void drawImage(final CanvasElement image, final double x,
+			final double y, final double width, final double height) {
+		fillCount++;
+	}
+
+	@Override
+	public double measureText(final String text) {
+		return text == null ? 0 : text.length() * CHARACTER_WIDTH;
+	}
+
+	@Override
+	public void flush() {
+		// Nothing is ever drawn
+	}
+
+	private void countStateChange(final boolean isRedundant) {
+		stateChangeCount++;
+		if (isRedundant)
+			redundantStateChangeCount++;
+	}
+}
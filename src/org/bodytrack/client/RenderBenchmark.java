@@ -0,0 +1,184 @@
+package org.bodytrack.client;
+
+import gwt.g2d.client.math.Vector2;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gwt.core.client.Duration;
+import com.google.gwt.i18n.client.NumberFormat;
+
+/**
+ * Replays synthetic tiles through a {@link DataSeriesPlotRenderer} for each
+ * of the data series plot styles, drawing on a
+ * {@link RecordingRenderingBackend}, and reports the time and the number of
+ * drawing operations per frame.
+ *
+ * <p>Because the renderer reads its styles and tiles from JavaScript
+ * overlay types, this runs in the browser, and is exposed to the page
+ * as <code>RenderBenchmark.run(tileCount, pointsPerTile, frameCount)</code>
+ * by {@link NativeInterface}.  Since nothing is actually drawn, the times
+ * cover the rendering code itself, not the browser's rasterization.</p>
+ */
+public final class RenderBenchmark {
+	/**
+	 * The style types that are benchmarked, one per
+	 * {@link DataSeriesPlotRenderer} strategy
+	 */
+	private static final String[] STYLE_TYPES = {
+		"point", "lollipop", "cross", "plus", "square",
+		"line", "value", "zeo"
+	};
+
+	private static final int WIDTH = 1000;
+	private static final int HEIGHT = 300;
+	private static final double AXIS_WIDTH = 10;
+
+	private static final double MIN_VALUE = -1;
+	private static final double MAX_VALUE = 5;
+
+	// Midnight, January 1, 2011 UTC, so that the time axis looks like
+	// a realistic time axis and draws midnight lines
+	private static final double FIRST_TILE_START = 1293840000;
+
+	private static final NumberFormat TIME_FORMAT = NumberFormat.getFormat("0.000");
+
+	private RenderBenchmark() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Runs the benchmark.
+	 *
+	 * @param tileCount
+	 * 	The number of adjacent tiles to render in each frame
+	 * @param pointsPerTile
+	 * 	The number of data points in each tile
+	 * @param frameCount
+	 * 	The number of frames to render for each style
+	 * @return
+	 * 	A report with one line per style, giving the mean time per frame
+	 * 	and the number of path operations, state changes, strokes,
+	 * 	and fills in each frame
+	 * @throws IllegalArgumentException
+	 * 	If any parameter is less than 1
+	 */
+	public static String run(final int tileCount,
+			final int pointsPerTile,
+			final int frameCount) {
+		if (tileCount < 1 || pointsPerTile < 1 || frameCount < 1)
+			throw new IllegalArgumentException(
+				"All benchmark parameters must be positive");
+
+		// Choose the smallest level at which pointsPerTile points
+		// fit in a tile at one point per second or less
+		int level = 0;
+		while (GrapherTile.TILE_WIDTH * Math.pow(2, level) < pointsPerTile)
+			level++;
+
+		final double tileSeconds = GrapherTile.TILE_WIDTH * Math.pow(2, level);
+		final long firstOffset = (long) Math.floor(FIRST_TILE_START / tileSeconds);
+		final List<GrapherTile> tiles =
+			buildTiles(level, firstOffset, tileCount, pointsPerTile);
+
+		final double minTime = firstOffset * tileSeconds;
+		final TimeGraphAxis xAxis = new TimeGraphAxis(null, minTime,
+			minTime + tileCount * tileSeconds, Basis.xDownYRight,
+			AXIS_WIDTH, true);
+		xAxis.layout(Vector2.ZERO, WIDTH);
+		final GraphAxis yAxis = new GraphAxis(null, MIN_VALUE, MAX_VALUE,
+			Basis.xRightYUp, AXIS_WIDTH, false);
+		yAxis.layout(new Vector2(0, HEIGHT), HEIGHT);
+
+		final StringBuilder report = new StringBuilder();
+		report.append(tileCount).append(" tiles x ")
+			.append(pointsPerTile).append(" points, ")
+			.append(frameCount).append(" frames\n");
+
+		for (final String styleType: STYLE_TYPES) {
+			final RecordingRenderingBackend backend =
+				new RecordingRenderingBackend(WIDTH, HEIGHT);
+			final Canvas canvas = Canvas.buildCanvas(backend);
+			final BoundedDrawingBox drawing =
+				new BoundedDrawingBox(canvas, 0, 0, WIDTH, HEIGHT);
+			final DataSeriesPlotRenderer renderer =
+				new DataSeriesPlotRenderer(buildStyle(styleType));
+
+			// One untimed frame, so that one-time costs are not counted
+			renderer.render(canvas, drawing, tiles, xAxis, yAxis, null);
+
+			double totalMillis = 0;
+			for (int i = 0; i < frameCount; i++) {
+				backend.resetCounts();
+				final double start = Duration.currentTimeMillis();
+				renderer.render(canvas, drawing, tiles, xAxis, yAxis, null);
+				totalMillis += Duration.currentTimeMillis() - start;
+			}
+
+			// Every frame draws the same thing, so the counts from the
+			// last frame are the counts per frame
+			report.append(styleType)
+				.append(": ").append(TIME_FORMAT.format(totalMillis / frameCount))
+				.append(" ms/frame, ")
+				.append(backend.getPathOperationCount()).append(" path ops, ")
+				.append(backend.getStateChangeCount()).append(" state changes (")
+				.append(backend.getRedundantStateChangeCount()).append(" redundant), ")
+				.append(backend.getStrokeCount()).append(" strokes, ")
+				.append(backend.getFillCount()).append(" fills\n");
+		}
+
+		return report.toString();
+	}
+
+	/**
+	 * Builds tileCount adjacent tiles, each holding pointsPerTile
+	 * evenly spaced points on a slow sine wave between 0 and 4, so that
+	 * the same data also makes sense as Zeo sleep states
+	 */
+	private static List<GrapherTile> buildTiles(final int level,
+			final long firstOffset,
+			final int tileCount,
+			final int pointsPerTile) {
+		final double tileSeconds = GrapherTile.TILE_WIDTH * Math.pow(2, level);
+		final double sampleWidth = tileSeconds / pointsPerTile;
+		final List<GrapherTile> tiles = new ArrayList<GrapherTile>(tileCount);
+
+		for (int i = 0; i < tileCount; i++) {
+			final long offset = firstOffset + i;
+			final double tileStart = offset * tileSeconds;
+
+			final StringBuilder json = new StringBuilder();
+			json.append("{\"level\":").append(level)
+				.append(",\"offset\":").append(offset)
+				.append(",\"sample_width\":").append(sampleWidth)
+				.append(",\"fields\":[\"time\",\"mean\"],\"data\":[");
+			for (int j = 0; j < pointsPerTile; j++) {
+				final int index = i * pointsPerTile + j;
+				final double time = tileStart + (j + 0.5) * sampleWidth;
+				final double value = Math.round(2 + 2 * Math.sin(index / 50.0));
+				if (j > 0)
+					json.append(',');
+				json.append('[').append(time).append(',').append(value).append(']');
+			}
+			json.append("]}");
+
+			tiles.add(buildTile(level, Long.toString(offset), json.toString()));
+		}
+
+		return tiles;
+	}
+
+	private static native GrapherTile buildTile(final int level,
+			final String offsetString,
+			final String json) /*-{
+		return @org.bodytrack.client.GrapherTile::new(ILjava/lang/String;Lcom/google/gwt/core/client/JavaScriptObject;)(level, offsetString, json);
+	}-*/;
+
+	private static native StyleDescription buildStyle(final String type) /*-{
+		return {
+			"styles": [
+				{"type": type, "show": true, "lineWidth": 1, "color": "#336699", "fill": true}
+			]
+		};
+	}-*/;
+}
@@ -0,0 +1,100 @@
+package org.bodytrack.client;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gwt.user.client.Timer;
+
+/**
+ * Tracks whether the user is in the middle of an interaction, such as
+ * a drag or a mouse wheel zoom, so that the rendering code can trade
+ * detail for speed while the view is changing.
+ *
+ * <p>While {@link #isInteracting()} returns <code>true</code>, the
+ * rendering code skips value labels, comment markers, and photo borders,
+ * draws data points as plain dots, and decimates data more aggressively.
+ * Once {@link #SETTLE_DELAY_MILLIS} milliseconds pass without a call to
+ * {@link #noteInteraction()}, the interaction is over, and every
+ * registered {@link SettleListener} is called so that it can paint
+ * again at full quality.</p>
+ *
+ * <p>There is a single interaction state for the whole page, since one
+ * drag can move axes shared by several plot containers.</p>
+ */
+public final class RenderQuality {
+	/**
+	 * The number of milliseconds without any interaction after which
+	 * an interaction is considered to be over
+	 */
+	public static final int SETTLE_DELAY_MILLIS = 200;
+
+	/**
+	 * An object that is told whenever an interaction ends
+	 */
+	public interface SettleListener {
+		void onSettle();
+	}
+
+	private static boolean interacting = false;
+	private static Timer settleTimer = null;
+	private static final List<SettleListener> settleListeners =
+		new ArrayList<SettleListener>();
+
+	private RenderQuality() {
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * Returns <code>true</code> if and only if an interaction is in
+	 * progress, meaning that rendering should favor speed over detail
+	 */
+	public static boolean isInteracting() {
+		return interacting;
+	}
+
+	/**
+	 * Records that the user is interacting with the view right now.
+	 *
+	 * <p>This should be called on every step of a drag or zoom, before
+	 * the repaint for that step.  Each call pushes the end of the
+	 * interaction back to {@link #SETTLE_DELAY_MILLIS} milliseconds
+	 * from now.</p>
+	 */
+	public static void noteInteraction() {
+		interacting = true;
+
+		if (settleTimer == null) {
+			settleTimer = new Timer() {
+				@Override
+				public void run() {
+					settle();
+				}
+			};
+		}
+
+		// Scheduling a Timer cancels any earlier schedule for it
+		settleTimer.schedule(SETTLE_DELAY_MILLIS);
+	}
+
+	/**
+	 * Adds a listener that is called whenever an interaction ends.
+	 * Does nothing if listener is <code>null</code> or already added.
+	 */
+	public static void addSettleListener(final SettleListener listener) {
+		if (listener != null && !settleListeners.contains(listener))
+			settleListeners.add(listener);
+	}
+
+	public static void removeSettleListener(final SettleListener listener) {
+		settleListeners.remove(listener);
+	}
+
+	private static void settle() {
+		interacting = false;
+
+		// Copy the list, in case a listener adds or removes listeners
+		for (final SettleListener listener:
+				new ArrayList<SettleListener>(settleListeners))
+			listener.onSettle();
+	}
+}
@@ -0,0 +1,136 @@
+package org.bodytrack.client;
+
+import gwt.g2d.client.graphics.Color;
+import gwt.g2d.client.graphics.TextAlign;
+import gwt.g2d.client.graphics.TextBaseline;
+import gwt.g2d.client.graphics.canvas.CanvasElement;
+
+
+/**
+ * The set of drawing operations that a {@link Canvas} forwards to
+ * whatever actually produces pixels.
+ *
+ * <p>In the browser, a {@link SurfaceRenderingBackend} passes each call
+ * on to a G2D {@link gwt.g2d.client.graphics.Surface Surface} and its 2D
+ * context.  A {@link RecordingRenderingBackend} draws nothing and instead
+ * counts the operations it receives, which allows the render paths to be
+ * measured and tested without a browser.  A {@link BufferedRenderingBackend}
+ * records the operations and replays them all at once when flushed.</p>
+ *
+ * <p>The methods mirror the HTML canvas 2D context, so implementations
+ * should behave exactly as the corresponding context methods do.</p>
+ */
+public interface RenderingBackend {
+
+	/**
+	 * Returns the width of the drawing area, in pixels
+	 */
+	int getWidth();
+
+	/**
+	 * Returns the height of the drawing area, in pixels
+	 */
+	int getHeight();
+
+	void setStrokeStyle(Color color);
+
+	void setFillStyle(Color color);
+
+	double getLineWidth();
+
+	void setLineWidth(double width);
+
+	double getGlobalAlpha();
+
+	void setGlobalAlpha(double alpha);
+
+	TextAlign getTextAlign();
+
+	void setTextAlign(TextAlign textAlign);
+
+	TextBaseline getTextBaseline();
+
+	void setTextBaseline(TextBaseline textBaseline);
+
+	String getFont();
+
+	void setFont(String font);
+
+	/**
+	 * Clears every pixel of the drawing area to transparent black
+	 */
+	void clear();
+
+	void save();
+
+	void restore();
+
+	void translate(double x, double y);
+
+	void beginPath();
+
+	void closePath();
+
+	void moveTo(double x, double y);
+
+	void lineTo(double x, double y);
+
+	void arc(double x, double y, double radius, double startAngle,
+			double endAngle, boolean anticlockwise);
+
+	void rect(double x, double y, double width, double height);
+
+	void clip();
+
+	void stroke();
+
+	void fill();
+
+	void strokeRectangle(double x, double y, double width, double height);
+
+	void fillRectangle(double x, double y, double width, double height);
+
+	void strokeText(String text, double x, double y);
+
+	void fillText(String text, double x, double y);
+
+	/**
+	 * Draws image, a canvas holding a bitmap such as a photo, scaled to
+	 * the specified rectangle
+	 *
+	 * @param image
+	 * 	The canvas to draw
+	 * @param x
+	 * 	The X-coordinate of the top left of the image
+	 * @param y
+	 * 	The Y-coordinate of the top left of the image
+	 * @param width
+	 * 	The width at which to draw the image
+	 * @param height
+	 * 	The height at which to draw the image
+	 */
+	void drawImage(CanvasElement image, double x, double y,
+			double width, double height);
+
+	/**
+	 * Returns the width, in pixels, that text would occupy if drawn
+	 * with the current font
+	 *
+	 * @param text
+	 * 	The text to measure
+	 * @return
+	 * 	The width of text, in pixels
+	 */
+	double measureText(String text);
+
+	/**
+	 * Sends any drawing operations that this backend has deferred on to
+	 * the screen.  Backends that draw immediately do nothing here.
+	 *
+	 * <p>Code that draws on the underlying canvas without going through
+	 * this backend, such as code that draws images on the native canvas
+	 * element, must call this first so that its drawing happens in the
+	 * right order.</p>
+	 */
+	void flush();
+}
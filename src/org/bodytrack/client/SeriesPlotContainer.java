@@ -1,5 +1,6 @@
 package org.bodytrack.client;
 
+import com.google.gwt.core.client.Duration;
 import com.google.gwt.event.dom.client.MouseDownEvent;
 import com.google.gwt.event.dom.client.MouseDownHandler;
 import com.google.gwt.event.dom.client.MouseMoveEvent;
@@ -8,6 +9,9 @@ import com.google.gwt.event.dom.client.MouseOutEvent;
 import com.google.gwt.event.dom.client.MouseOutHandler;
 import com.google.gwt.event.dom.client.MouseUpEvent;
 import com.google.gwt.event.dom.client.MouseUpHandler;
+import com.google.gwt.event.logical.shared.AttachEvent;
+import com.google.gwt.user.client.Timer;
+import com.google.gwt.user.client.ui.AbsolutePanel;
 import com.google.gwt.user.client.ui.RootPanel;
 import gwt.g2d.client.graphics.Color;
 import gwt.g2d.client.graphics.KnownColor;
@@ -45,6 +49,21 @@ public class SeriesPlotContainer extends BasePlotContainer {
     */
    public static final int VALUE_MESSAGES_CAPACITY = 4;
 
+   /**
+    * The default number of milliseconds that progressive rendering
+    * spends drawing plots before yielding to the browser.
+    *
+    * @see #setProgressiveRendering(boolean)
+    */
+   public static final int DEFAULT_FRAME_BUDGET_MILLIS = 12;
+
+   /**
+    * The number of tile levels coarser than normal at which progressive
+    * rendering draws its first, quick picture of the plots.  Each level
+    * halves the number of points.
+    */
+   private static final int COARSE_LEVEL_OFFSET = 2;
+
    private static final int INITIAL_MESSAGE_ID = 1;
    private static final Color LOADING_MSG_COLOR = KnownColor.DARK_GRAY;
    private static final double LOADING_MSG_X_MARGIN = 5;
@@ -56,7 +75,36 @@ public class SeriesPlotContainer extends BasePlotContainer {
    private static final double TEXT_LINE_WIDTH = 0.75;
    private static final int MAX_DRAG_CLICK_EVENT = 3;
 
+   /**
+    * The number of milliseconds between updates of the hover highlight,
+    * which is about one animation frame.  Mouse moves in between only
+    * record the latest pointer position.
+    */
+   private static final int HOVER_FRAME_MILLIS = 16;
+
+   private final AbsolutePanel layers;
    private final Surface drawing;
+   private final Canvas plotCanvas;
+
+   // Lies over drawing, and holds only the highlighted points, so that
+   // moving the highlight does not repaint the plots
+   private final Surface overlay;
+   private final Canvas overlayCanvas;
+
+   // The latest pointer position, and the position for which the hover
+   // highlight was last computed
+   private int hoverX;
+   private int hoverY;
+   private int lastHoverX = Integer.MIN_VALUE;
+   private int lastHoverY = Integer.MIN_VALUE;
+   private boolean hoverScheduled = false;
+   private final Timer hoverTimer = new Timer() {
+      @Override
+      public void run() {
+         hoverScheduled = false;
+         updateHover();
+      }
+   };
 
    // For the loading message API, which shows one message at a time
    // on the bottom left, without regard to width
@@ -82,6 +130,35 @@ public class SeriesPlotContainer extends BasePlotContainer {
 
    private int previousPaintEventId = 0;
 
+   private boolean progressiveRendering = false;
+   private int frameBudgetMillis = DEFAULT_FRAME_BUDGET_MILLIS;
+   private ProgressivePaint currentProgressivePaint = null;
+
+   // The progressive paints of all containers on the page, which share
+   // one time slice per frame, so that several containers cannot together
+   // hold the browser for longer than a frame
+   private static final List<ProgressivePaint> pendingProgressivePaints =
+      new ArrayList<ProgressivePaint>();
+   private static int nextProgressivePaintIndex = 0;
+   private static final Timer progressiveSliceTimer = new Timer() {
+      @Override
+      public void run() {
+         runProgressiveSlice();
+      }
+   };
+
+   // Drags and zooms paint at reduced quality, so this paints again at
+   // full quality once the user stops.  It is registered only while the
+   // container is attached, so that discarded containers can be
+   // collected rather than repainted forever.
+   private final RenderQuality.SettleListener settleListener =
+      new RenderQuality.SettleListener() {
+         @Override
+         public void onSettle() {
+            paint(SequenceNumber.getNext());
+         }
+      };
+
    @SuppressWarnings("unused")
    private final String placeholderElementId;
 
@@ -95,7 +172,27 @@ public class SeriesPlotContainer extends BasePlotContainer {
       this.width = placeholderElement.getElement().getClientWidth();
       this.height = placeholderElement.getElement().getClientHeight();
       drawing = new Surface(width, height);
-      placeholderElement.add(drawing);
+      overlay = new Surface(width, height);
+      layers = new AbsolutePanel();
+      layers.setPixelSize(width, height);
+      layers.add(drawing, 0, 0);
+      layers.add(overlay, 0, 0);
+      layers.addAttachHandler(new AttachEvent.Handler() {
+         @Override
+         public void onAttachOrDetach(final AttachEvent event) {
+            if (event.isAttached()) {
+               RenderQuality.addSettleListener(settleListener);
+            } else {
+               RenderQuality.removeSettleListener(settleListener);
+               cancelProgressivePaint();
+               hoverTimer.cancel();
+               hoverScheduled = false;
+            }
+         }
+      });
+      placeholderElement.add(layers);
+      plotCanvas = Canvas.buildBufferedCanvas(drawing);
+      overlayCanvas = Canvas.buildCanvas(overlay);
 
       nextLoadingMessageId = INITIAL_MESSAGE_ID;
       loadingMessages = new ArrayList<DisplayMessage>();
@@ -104,14 +201,14 @@ public class SeriesPlotContainer extends BasePlotContainer {
       valueMessages = new ArrayList<DisplayMessage>();
       
       if (!ignoreClickEvents){
-    	  drawing.addMouseDownHandler(new MouseDownHandler() {
+    	  overlay.addMouseDownHandler(new MouseDownHandler() {
     	         @Override
     	         public void onMouseDown(final MouseDownEvent event) {
     	            handleMouseDownEvent(event);
     	         }
     	      });
     	  
-    	  drawing.addMouseUpHandler(new MouseUpHandler() {
+    	  overlay.addMouseUpHandler(new MouseUpHandler() {
     	         @Override
     	         public void onMouseUp(final MouseUpEvent event) {
     	            handleMouseUpEvent(event);
@@ -122,7 +219,7 @@ public class SeriesPlotContainer extends BasePlotContainer {
 
       
 
-      drawing.addMouseMoveHandler(new MouseMoveHandler() {
+      overlay.addMouseMoveHandler(new MouseMoveHandler() {
          @Override
          public void onMouseMove(final MouseMoveEvent event) {
             handleMouseMoveEvent(event);
@@ -130,7 +227,7 @@ public class SeriesPlotContainer extends BasePlotContainer {
       });
 
 
-      drawing.addMouseOutHandler(new MouseOutHandler() {
+      overlay.addMouseOutHandler(new MouseOutHandler() {
          @Override
          public void onMouseOut(final MouseOutEvent event) {
             handleMouseOutEvent(event);
@@ -138,7 +235,22 @@ public class SeriesPlotContainer extends BasePlotContainer {
       });
    }
 
+   /**
+    * Removes this container from the page, and stops all painting that
+    * it has scheduled.  The container must not be used afterwards.
+    */
+   public void destroy() {
+      layers.removeFromParent();
+
+      // In case the container was never attached
+      RenderQuality.removeSettleListener(settleListener);
+      cancelProgressivePaint();
+      hoverTimer.cancel();
+      hoverScheduled = false;
+   }
+
    private void handleMouseDownEvent(final MouseDownEvent event) {
+      forgetHoverPosition();
       mouseDragStartPos = new Vector2(event.getX(), event.getY());
       mouseDragLastPos = new Vector2(event.getX(), event.getY());
    }
@@ -172,50 +284,117 @@ public class SeriesPlotContainer extends BasePlotContainer {
             axes.add(plot.getYAxis());
          }
 
-         // drag the axes
-         for (final GraphAxis axis : axes) {
-            axis.drag(mouseDragLastPos, pos, SequenceNumber.getNextThrottled());
-         }
+         // drag the axes, and any axes linked to them, together, so
+         // that listeners hear about the whole move once
+         AxisLinkGroup.drag(axes, mouseDragLastPos, pos, SequenceNumber.getNextThrottled());
 
          mouseDragLastPos = pos;
       } else {
-         // We are not dragging anything, so we just update the
-         // highlighting on the plots and axes
+         // We are not dragging anything, so we just record where the
+         // pointer is, and update the highlighting once per frame
+         hoverX = event.getX();
+         hoverY = event.getY();
+         if (!hoverScheduled) {
+            hoverScheduled = true;
+            hoverTimer.schedule(HOVER_FRAME_MILLIS);
+         }
+      }
+   }
 
-         final Set<Plot> highlightedPlots = new HashSet<Plot>();
-         for (final Plot plot : containedPlots) {
-            if (plot.highlightIfNear(pos)) {
-               highlightedPlots.add(plot);
-            } else {
+   /**
+    * Updates the highlighting on the plots and axes for the latest
+    * pointer position.
+    *
+    * <p>Does nothing if the pointer has not moved since the last update.
+    * Only plots whose axes span the pointer are asked to look for a
+    * nearby point.  If no highlighted point changed, nothing is
+    * repainted.  If the highlight only moved from one point to another
+    * within a plot, only the overlay and the axes are repainted, and the
+    * axes just copy their cached drawings back to the screen.  The plots
+    * are repainted only when a plot starts or stops being highlighted,
+    * since a highlighted plot is drawn in its highlighted style.</p>
+    */
+   private void updateHover() {
+      if (mouseDragLastPos != null
+          || (hoverX == lastHoverX && hoverY == lastHoverY)) {
+         return;
+      }
+      lastHoverX = hoverX;
+      lastHoverY = hoverY;
+
+      final Vector2 pos = new Vector2(hoverX, hoverY);
+      boolean pointChanged = false;
+      boolean styleChanged = false;
+
+      for (final Plot plot : containedPlots) {
+         final PlottablePoint oldPoint = plot.getHighlightedPoint();
+
+         if (spansPointer(plot.getXAxis(), hoverX)
+             && spansPointer(plot.getYAxis(), hoverY)) {
+            if (!plot.highlightIfNear(pos)) {
                plot.unhighlight();
             }
+         } else if (oldPoint != null) {
+            plot.unhighlight();
          }
 
-         // Now we handle highlighting of the axes--first build a set of the unhighlighted plots
-         final Set<Plot> unhighlightedPlots = new HashSet<Plot>(containedPlots);
-         unhighlightedPlots.removeAll(highlightedPlots);
-
-         // unhighlight the axes of the unhighlighted plots
-         final Set<GraphAxis> unhighlightedAxes = new HashSet<GraphAxis>();
-         for (final Plot plot : unhighlightedPlots) {
-            unhighlightedAxes.add(plot.getXAxis());
-            unhighlightedAxes.add(plot.getYAxis());
-         }
-         for (final GraphAxis axis : unhighlightedAxes) {
-            axis.unhighlight();
+         final PlottablePoint newPoint = plot.getHighlightedPoint();
+         if (oldPoint == null ? newPoint != null : !oldPoint.equals(newPoint)) {
+            pointChanged = true;
+            styleChanged |= (oldPoint == null) != (newPoint == null);
          }
+      }
 
-         // now highlight the axes of the highlighted plots
-         for (final Plot plot : highlightedPlots) {
-            final PlottablePoint highlightedPoint = plot.getHighlightedPoint();
+      if (!pointChanged) {
+         return;
+      }
+
+      // Unhighlight the axes of the unhighlighted plots, and then
+      // highlight the axes of the highlighted plots, so that an axis
+      // shared by both kinds of plot ends up highlighted
+      for (final Plot plot : containedPlots) {
+         if (!plot.isHighlighted()) {
+            plot.getXAxis().unhighlight();
+            plot.getYAxis().unhighlight();
+         }
+      }
+      for (final Plot plot : containedPlots) {
+         final PlottablePoint highlightedPoint = plot.getHighlightedPoint();
+         if (highlightedPoint != null) {
             plot.getXAxis().highlight(highlightedPoint);
             plot.getYAxis().highlight(highlightedPoint);
          }
+      }
 
-         paint(SequenceNumber.getNextThrottled());
+      final int paintEventId = SequenceNumber.getNext();
+      if (styleChanged) {
+         paint(paintEventId);
+      } else {
+         for (final Plot plot : containedPlots) {
+            plot.getXAxis().paint(paintEventId);
+            plot.getYAxis().paint(paintEventId);
+         }
+         paintOverlay();
       }
    }
 
+   // Returns true if and only if coordinate, along axis, lies between
+   // the pixels for the min and max of axis
+   private static boolean spansPointer(final GraphAxis axis,
+                                       final double coordinate) {
+      final double minPixel = axis.projectCoordinate(axis.getMin());
+      final double maxPixel = axis.projectCoordinate(axis.getMax());
+      return coordinate >= Math.min(minPixel, maxPixel)
+             && coordinate <= Math.max(minPixel, maxPixel);
+   }
+
+   // Makes the next hover update run even if the pointer comes back to
+   // the last position
+   private void forgetHoverPosition() {
+      lastHoverX = Integer.MIN_VALUE;
+      lastHoverY = Integer.MIN_VALUE;
+   }
+
    private void handleMouseUpEvent(final MouseUpEvent event) {
       final Vector2 pos = new Vector2(event.getX(), event.getY());
       final boolean isClickEvent = (mouseDragStartPos == null)
@@ -224,6 +403,7 @@ public class SeriesPlotContainer extends BasePlotContainer {
 
       mouseDragStartPos = null;
       mouseDragLastPos = null;
+      forgetHoverPosition();
 
       // Alert all the plots to the click event
       if (isClickEvent) {
@@ -237,6 +417,9 @@ public class SeriesPlotContainer extends BasePlotContainer {
 
    private void handleMouseOutEvent(final MouseOutEvent event) {
       mouseDragLastPos = null;
+      forgetHoverPosition();
+      hoverTimer.cancel();
+      hoverScheduled = false;
 
       // Ensure that all plots are unhighlighted, as are all axes
       for (final Plot plot : containedPlots) {
@@ -266,52 +449,194 @@ public class SeriesPlotContainer extends BasePlotContainer {
 
       if ((canvas.getClientWidth() != widthInPixels) ||
           (canvas.getClientHeight() != heightInPixels)) {
+         layers.setPixelSize(widthInPixels, heightInPixels);
          drawing.setSize(widthInPixels, heightInPixels);
+         overlay.setSize(widthInPixels, heightInPixels);
          paint(newPaintEventId);
       }
    }
 
+   /**
+    * Turns progressive rendering on or off.
+    *
+    * <p>When progressive rendering is on, each paint first draws all
+    * plots quickly, using coarser tiles than usual, and then draws the
+    * plots at full detail over later frames, spending at most about
+    * {@link #setFrameBudgetMillis(int) the frame budget} on each frame
+    * so that the page stays responsive.  The detailed picture replaces
+    * the coarse one once every plot has been drawn.  Any paint, such as
+    * the one caused by a change to an axis, cancels the detailed drawing
+    * in progress and starts over.</p>
+    *
+    * <p>Progressive rendering is off by default.</p>
+    */
+   public void setProgressiveRendering(final boolean progressiveRendering) {
+      this.progressiveRendering = progressiveRendering;
+      if (!progressiveRendering) {
+         cancelProgressivePaint();
+      }
+   }
+
+   public boolean isProgressiveRendering() {
+      return progressiveRendering;
+   }
+
+   /**
+    * Sets the number of milliseconds that progressive rendering may spend
+    * drawing plots before yielding to the browser.
+    *
+    * <p>The budget is shared by all containers on the page, using the
+    * smallest budget among the containers with drawing left, and the
+    * browser gets control back between slices.  The budget is checked
+    * after each plot is drawn, so a single plot that takes longer than
+    * the budget still finishes in one slice.</p>
+    *
+    * @throws IllegalArgumentException
+    * 		if frameBudgetMillis is less than 1
+    */
+   public void setFrameBudgetMillis(final int frameBudgetMillis) {
+      if (frameBudgetMillis < 1) {
+         throw new IllegalArgumentException("The frame budget must be positive");
+      }
+      this.frameBudgetMillis = frameBudgetMillis;
+   }
+
    public void paint(final int newPaintEventId) {
       // guard against redundant paints
       if (previousPaintEventId != newPaintEventId) {
          previousPaintEventId = newPaintEventId;
 
+         // Whatever detailed drawing is in progress is now out of date
+         cancelProgressivePaint();
+
          layout();
-         drawing.clear();
-         drawing.save();
-         drawing.translate(.5, .5);
 
-         // Draw any Loading... messages that might be requested
-         if (loadingMessages.size() > 0) {
-            showLoadingMessage(loadingMessages.get(0));
+         // Draw the axes
+         for (final Plot plot : containedPlots) {
+            plot.getXAxis().paint(newPaintEventId);
+            plot.getYAxis().paint(newPaintEventId);
          }
 
-         // Draw any value messages that might be requested
-         if (valueMessages.size() > 0) {
-            // We use the first (oldest) VALUE_MESSAGES_CAPACITY
-            // messages in valueMessages, at least for now
-            final int numMessages = Math.min(VALUE_MESSAGES_CAPACITY,
-                                             valueMessages.size());
+         final boolean isProgressive = progressiveRendering && !containedPlots.isEmpty();
 
-            showValueMessages(valueMessages.subList(0, numMessages));
+         // Now draw the data, recording it all and then sending it
+         // to the screen at once.  Photos drawn into the buffer must
+         // keep their images until it is flushed.
+         PhotoGetter.beginPaint();
+         try {
+            beginPlotLayer();
+            for (final Plot plot : containedPlots) {
+               plot.paint(plotCanvas, newPaintEventId, isProgressive ? COARSE_LEVEL_OFFSET : 0);
+            }
+            plotCanvas.flush();
+            endPlotLayer();
+         } finally {
+            PhotoGetter.endPaint();
          }
 
-         // Draw the axes
-         for (final Plot plot : containedPlots) {
-            plot.getXAxis().paint(newPaintEventId);
-            plot.getYAxis().paint(newPaintEventId);
+         if (isProgressive) {
+            currentProgressivePaint = new ProgressivePaint();
+            scheduleProgressivePaint(currentProgressivePaint);
          }
 
-         // Now draw the data
-         final Canvas canvas = Canvas.buildCanvas(drawing);
-         for (final Plot plot : containedPlots) {
-            plot.paint(canvas, newPaintEventId);
+         paintOverlay();
+      }
+   }
+
+   /**
+    * Clears the overlay and draws the highlighted points of the plots
+    * on it.
+    */
+   private void paintOverlay() {
+      overlay.clear();
+      overlay.save();
+      overlay.translate(.5, .5);
+      for (final Plot plot : containedPlots) {
+         plot.paintHighlight(overlayCanvas);
+      }
+      overlay.restore();
+   }
+
+   private void cancelProgressivePaint() {
+      if (currentProgressivePaint != null) {
+         pendingProgressivePaints.remove(currentProgressivePaint);
+         currentProgressivePaint.finish();
+         currentProgressivePaint = null;
+      }
+   }
+
+   private static void scheduleProgressivePaint(final ProgressivePaint progressivePaint) {
+      pendingProgressivePaints.add(progressivePaint);
+      if (pendingProgressivePaints.size() == 1) {
+         progressiveSliceTimer.schedule(1);
+      }
+   }
+
+   /**
+    * Draws one plot at a time from the pending progressive paints, taking
+    * turns among them, until the smallest frame budget among them is
+    * spent, and then returns to the browser, scheduling the next slice
+    * with a timer if any drawing is left.
+    */
+   private static void runProgressiveSlice() {
+      if (pendingProgressivePaints.isEmpty()) {
+         return;
+      }
+
+      int budgetMillis = Integer.MAX_VALUE;
+      for (final ProgressivePaint progressivePaint : pendingProgressivePaints) {
+         budgetMillis = Math.min(budgetMillis, progressivePaint.getFrameBudgetMillis());
+      }
+
+      final double start = Duration.currentTimeMillis();
+      do {
+         if (nextProgressivePaintIndex >= pendingProgressivePaints.size()) {
+            nextProgressivePaintIndex = 0;
          }
+         final ProgressivePaint progressivePaint =
+            pendingProgressivePaints.get(nextProgressivePaintIndex);
+         if (progressivePaint.paintNextPlot()) {
+            nextProgressivePaintIndex++;
+         } else {
+            pendingProgressivePaints.remove(nextProgressivePaintIndex);
+         }
+      } while (!pendingProgressivePaints.isEmpty()
+               && Duration.currentTimeMillis() - start < budgetMillis);
+
+      if (!pendingProgressivePaints.isEmpty()) {
+         progressiveSliceTimer.schedule(1);
+      }
+   }
+
+   /**
+    * Clears the drawing and draws the messages, leaving the drawing ready
+    * for the plots.  Must be followed by a call to {@link #endPlotLayer()}.
+    */
+   private void beginPlotLayer() {
+      drawing.clear();
+      drawing.save();
+      drawing.translate(.5, .5);
+
+      // Draw any Loading... messages that might be requested
+      if (loadingMessages.size() > 0) {
+         showLoadingMessage(loadingMessages.get(0));
+      }
+
+      // Draw any value messages that might be requested
+      if (valueMessages.size() > 0) {
+         // We use the first (oldest) VALUE_MESSAGES_CAPACITY
+         // messages in valueMessages, at least for now
+         final int numMessages = Math.min(VALUE_MESSAGES_CAPACITY,
+                                          valueMessages.size());
 
-         drawing.restore();
+         showValueMessages(valueMessages.subList(0, numMessages));
       }
    }
 
+   private void endPlotLayer() {
+      drawing.restore();
+   }
+
    /**
     * Shows the specified loading message.
     *
@@ -560,6 +885,72 @@ public class SeriesPlotContainer extends BasePlotContainer {
       return valueMessages.size();
    }
 
+   /**
+    * Draws the plots at full detail into a buffer of its own, one plot
+    * per call to {@link #paintNextPlot()}, and then replaces the coarse
+    * picture with the buffered one.  The photos drawn into the buffer
+    * keep their images until it is flushed or the paint is cancelled.
+    */
+   private final class ProgressivePaint {
+      private final List<Plot> plots;
+      private final Canvas detailCanvas;
+      private final int paintEventId;
+      private int nextPlotIndex;
+      private boolean finished;
+
+      private ProgressivePaint() {
+         plots = new ArrayList<Plot>(containedPlots);
+         detailCanvas = Canvas.buildBufferedCanvas(drawing);
+         paintEventId = SequenceNumber.getNext();
+         nextPlotIndex = 0;
+         finished = false;
+         PhotoGetter.beginPaint();
+      }
+
+      /**
+       * Lets the photos drawn into the buffer give up their images again,
+       * which must be done once the buffer is flushed or abandoned
+       */
+      public void finish() {
+         if (!finished) {
+            finished = true;
+            PhotoGetter.endPaint();
+         }
+      }
+
+      public int getFrameBudgetMillis() {
+         return frameBudgetMillis;
+      }
+
+      /**
+       * Draws the next plot, and sends the whole picture to the screen
+       * after the last one
+       *
+       * @return
+       * 		<code>true</code> if there are more plots to draw
+       */
+      public boolean paintNextPlot() {
+         if (nextPlotIndex < plots.size()) {
+            plots.get(nextPlotIndex).paint(detailCanvas, paintEventId);
+            nextPlotIndex++;
+         }
+         if (nextPlotIndex < plots.size()) {
+            return true;
+         }
+
+         try {
+            beginPlotLayer();
+            detailCanvas.flush();
+            endPlotLayer();
+         } finally {
+            finish();
+         }
+
+         currentProgressivePaint = null;
+         return false;
+      }
+   }
+
    /**
     * A class representing a message ID and loading message.
     *
@@ -37,6 +37,21 @@ public interface SeriesPlotRenderer {
                GraphAxis yAxis,
                PlottablePoint highlightedPoint);
 
+   /**
+    * Draws the highlighted point, and its comment if it has one, on a
+    * canvas that lies over the one passed to {@link #render}.  Draws
+    * nothing if highlightedPoint is <code>null</code>.
+    *
+    * <p>The highlighted point is drawn separately so that moving the
+    * highlight from one point to another only repaints the overlay,
+    * not the whole plot.</p>
+    */
+   void renderHighlight(Canvas canvas,
+                        BoundedDrawingBox drawing,
+                        GraphAxis xAxis,
+                        GraphAxis yAxis,
+                        PlottablePoint highlightedPoint);
+
    /** Sets the {@link StyleDescription} for this renderer. */
    void setStyleDescription(StyleDescription styleDescription);
 }
@@ -26,8 +26,9 @@ public class StandardTileLoader implements TileLoader {
 
 	// Values related to getting new values from the server (the
 	// data will be pulled in with the checkForFetch call)
-	private final Map<TileDescription, GrapherTile> descriptions;
-	private final Set<TileDescription> pendingDescriptions;
+	// Both keyed by TileDescription.getKey()
+	private final DoubleObjectMap<GrapherTile> descriptions;
+	private final DoubleObjectMap<TileDescription> pendingDescriptions;
 	private final Map<String, Integer> pendingUrls;
 	private final List<GrapherTile> pendingData;
 
@@ -43,8 +44,8 @@ public class StandardTileLoader implements TileLoader {
 		this.datasource = datasource;
 		this.timeAxis = timeAxis;
 
-		descriptions = new HashMap<TileDescription, GrapherTile>();
-		pendingDescriptions = new HashSet<TileDescription>();
+		descriptions = new DoubleObjectMap<GrapherTile>();
+		pendingDescriptions = new DoubleObjectMap<TileDescription>();
 		pendingUrls = new HashMap<String, Integer>();
 		pendingData = new ArrayList<GrapherTile>();
 
@@ -98,13 +99,16 @@ public class StandardTileLoader implements TileLoader {
 			return false;
 
 		final int level = computeLevel(maxTime - minTime);
-		final long minOffset = computeOffset(minTime, level);
-		final long maxOffset = computeOffset(maxTime, level);
+		final double minOffset = computeOffset(minTime, level);
+		final double maxOffset = computeOffset(maxTime, level);
 		final List<TileDescription> tiles = new ArrayList<TileDescription>();
 
-		for (long offset = minOffset; offset <= maxOffset; offset++) {
-			if (fetchFromServer(level, offset))
-				tiles.add(new TileDescription(level, offset));
+		// The offsets are whole numbers held in doubles, so that checking
+		// the tiles we already have creates no emulated longs
+		for (double offset = minOffset; offset <= maxOffset; offset++) {
+			final TileDescription desc = fetchFromServer(level, offset);
+			if (desc != null)
+				tiles.add(desc);
 		}
 
 		if (onload != null) {
@@ -127,9 +131,10 @@ public class StandardTileLoader implements TileLoader {
 		return MathEx.log2(dataPointWidth);
 	}
 
-	private long computeOffset(final double x, final int level) {
-		final double tileWidth = getTileWidth(level);
-		return (long)(x / tileWidth);
+	// Returns a whole number, rounded toward zero as a cast to long would
+	private double computeOffset(final double x, final int level) {
+		final double offset = x / getTileWidth(level);
+		return offset < 0 ? Math.ceil(offset) : Math.floor(offset);
 	}
 
 	/**
@@ -144,26 +149,28 @@ public class StandardTileLoader implements TileLoader {
 	 * @param level
 	 * 	The level of the tile to fetch
 	 * @param offset
-	 * 	The offset of the tile to fetch
+	 * 	The offset of the tile to fetch, which must be a whole number
 	 * @return
-	 * 	<code>true</code> if and only if we actually perform a tile fetch
+	 * 	The description of the tile if we actually perform a tile fetch,
+	 * 	or <code>null</code> otherwise
 	 */
-	private boolean fetchFromServer(final int level, final long offset) {
-		final TileDescription desc = new TileDescription(level, offset);
+	private TileDescription fetchFromServer(final int level, final double offset) {
+		final double key = TileDescription.getKey(level, offset);
 
 		// Ensures we don't fetch the same tile twice unnecessarily
-		if (pendingDescriptions.contains(desc) || descriptions.containsKey(desc)) {
-			return false;
+		if (pendingDescriptions.containsKey(key) || descriptions.containsKey(key)) {
+			return null;
 		}
 
+		final TileDescription desc = new TileDescription(level, (long) offset);
 		final String tileKey = desc.getTileKey();
 
 		// Make sure we don't fetch this again unnecessarily
-		pendingDescriptions.add(desc);
+		pendingDescriptions.put(key, desc);
 		pendingUrls.put(tileKey, 0);
 
-		loadTile(level, offset);
-		return true;
+		loadTile(level, desc.getOffset());
+		return desc;
 	}
 
 	/**
@@ -177,10 +184,11 @@ public class StandardTileLoader implements TileLoader {
 					continue;
 				}
 
-				descriptions.put(tile.getDescription(), tile);
+				final double key = tile.getDescription().getKey();
+				descriptions.put(key, tile);
 
 				// Make sure we don't still mark this as pending
-				pendingDescriptions.remove(tile.getDescription());
+				pendingDescriptions.remove(key);
 			}
 
 			pendingData.clear();
@@ -0,0 +1,223 @@
+package org.bodytrack.client;
+
+import gwt.g2d.client.graphics.Color;
+import gwt.g2d.client.graphics.Surface;
+import gwt.g2d.client.graphics.TextAlign;
+import gwt.g2d.client.graphics.TextBaseline;
+import gwt.g2d.client.graphics.canvas.CanvasElement;
+import gwt.g2d.client.graphics.canvas.Context;
+
+
+/**
+ * A {@link RenderingBackend} that draws on a G2D
+ * {@link gwt.g2d.client.graphics.Surface Surface}.
+ *
+ * <p>Style and state changes go through the Surface, and path operations
+ * go straight to the Surface's 2D {@link Context}, which is exactly
+ * what the drawing code did before it was routed through
+ * {@link RenderingBackend}.</p>
+ */
+public final class SurfaceRenderingBackend implements RenderingBackend {
+	private final Surface surface;
+	private final Context context;
+
+	/**
+	 * Creates a new backend that draws on the specified surface.
+	 *
+	 * @param surface
+	 * 	The surface on which to draw
+	 * @throws NullPointerException
+	 * 	If surface is <code>null</code>
+	 */
+	public SurfaceRenderingBackend(final Surface surface) {
+		if (surface == null)
+			throw new NullPointerException("Can't draw on a null surface");
+
+		this.surface = surface;
+		this.context = surface.getContext();
+	}
+
+	public Surface getSurface() {
+		return surface;
+	}
+
+	public Context getContext() {
+		return context;
+	}
+
+	@Override
+	public int getWidth() {
+		return surface.getWidth();
+	}
+
+	@Override
+	public int getHeight() {
+		return surface.getHeight();
+	}
+
+	@Override
+	public void setStrokeStyle(final Color color) {
+		surface.setStrokeStyle(color);
+	}
+
+	@Override
+	public void setFillStyle(final Color color) {
+		surface.setFillStyle(color);
+	}
+
+	@Override
+	public double getLineWidth() {
+		return surface.getLineWidth();
+	}
+
+	@Override
+	public void setLineWidth(final double width) {
+		surface.setLineWidth(width);
+	}
+
+	@Override
+	public double getGlobalAlpha() {
+		return surface.getGlobalAlpha();
+	}
+
+	@Override
+	public void setGlobalAlpha(final double alpha) {
+		surface.setGlobalAlpha(alpha);
+	}
+
+	@Override
+	public TextAlign getTextAlign() {
+		return surface.getTextAlign();
+	}
+
+	@Override
+	public void setTextAlign(final TextAlign textAlign) {
+		surface.setTextAlign(textAlign);
+	}
+
+	@Override
+	public TextBaseline getTextBaseline() {
+		return surface.getTextBaseline();
+	}
+
+	@Override
+	public void setTextBaseline(final TextBaseline textBaseline) {
+		surface.setTextBaseline(textBaseline);
+	}
+
+	@Override
+	public String getFont() {
+		return surface.getFont();
+	}
+
+	@Override
+	public void setFont(final String font) {
+		surface.setFont(font);
+	}
+
+	@Override
+	public void clear() {
+		surface.clear();
+	}
+
+	@Override
+	public void save() {
+		surface.save();
+	}
+
+	@Override
+	public void restore() {
+		surface.restore();
+	}
+
+	@Override
+	public void translate(final double x, final double y) {
+		surface.translate(x, y);
+	}
+
+	@Override
+	public void beginPath() {
+		context.beginPath();
+	}
+
+	@Override
+	public void closePath() {
+		context.closePath();
+	}
+
+	@Override
+	public void moveTo(final double x, final double y) {
+		context.moveTo(x, y);
+	}
+
+	@Override
+	public void lineTo(final double x, final double y) {
+		context.lineTo(x, y);
+	}
+
+	@Override
+	public void arc(final double x, final double y, final double radius,
+			final double startAngle, final double endAngle,
+			final boolean anticlockwise) {
+		context.arc(x, y, radius, startAngle, endAngle, anticlockwise);
+	}
+
+	@Override
+	public void rect(final double x, final double y,
+			final double width, final double height) {
+		context.rect(x, y, width, height);
+	}
+
+	@Override
+	public void clip() {
+		context.clip();
+	}
+
+	@Override
+	public void stroke() {
+		context.stroke();
+	}
+
+	@Override
+	public void fill() {
+		context.fill();
+	}
+
+	@Override
+	public void strokeRectangle(final double x, final double y,
+			final double width, final double height) {
+		surface.strokeRectangle(x, y, width, height);
+	}
+
+	@Override
+	public void fillRectangle(final double x, final double y,
+			final double width, final double height) {
+		surface.fillRectangle(x, y, width, height);
+	}
+
+	@Override
+	public void strokeText(final String text, final double x, final double y) {
+		surface.strokeText(text, x, y);
+	}
+
+	@Override
+	public void fillText(final String text, final double x, final double y) {
+		surface.fillText(text, x, y);
+	}
+
+	@Override
+	public void drawImage(final CanvasElement image, final double x,
+			final double y, final double width, final double height) {
+		context.drawImage(image, x, y, width, height);
+	}
+
+	@Override
+	public double measureText(final String text) {
+		return context.measureText(text);
+	}
+
+	@Override
+	public void flush() {
+		// Everything has already been drawn
+	}
+}
@@ -14,6 +14,10 @@ public final class TileDescription {
 	private final int level;
 	private final long offset;
 
+	// Computed once, since converting the offset from a long is not
+	// free in the browser
+	private final double key;
+
 	/**
 	 * Creates a new TileDescription.
 	 *
@@ -25,6 +29,7 @@ public final class TileDescription {
 	public TileDescription(int level, long offset) {
 		this.level = level;
 		this.offset = offset;
+		this.key = getKey(level, (double) offset);
 	}
 
 	public int getLevel() {
@@ -111,6 +116,32 @@ public final class TileDescription {
 		return level + "." + offset;
 	}
 
+	/**
+	 * Returns a number uniquely representing this {@link TileDescription},
+	 * for use as a key in a {@link DoubleObjectMap}.
+	 *
+	 * <p>The key is 256 times the offset plus the low 8 bits of the
+	 * level, so keys are unique for levels from -128 to 127 and are exact
+	 * for offsets with magnitude below 2<sup>45</sup>, far wider than any
+	 * range of times the grapher can show.  The key is a double rather
+	 * than a long so that computing and comparing keys allocates nothing
+	 * in the browser, where GWT emulates <code>long</code>.</p>
+	 */
+	public double getKey() {
+		return key;
+	}
+
+	/**
+	 * Returns the {@link #getKey() key} of the tile at level and offset,
+	 * without creating a {@link TileDescription}
+	 *
+	 * @param offset
+	 * 	The offset of the tile, which should be a whole number
+	 */
+	public static double getKey(final int level, final double offset) {
+		return offset * 256 + (level & 0xff);
+	}
+
 	/**
 	 * Computes the tile level corresponding to a length of time.
 	 * Returns a double;  consider using Math.{floor,round,ceil} to convert to integer.
@@ -1,11 +1,21 @@
 package org.bodytrack.client;
 
-import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
 
+import com.google.gwt.core.client.JavaScriptObject;
+import com.google.gwt.core.client.JsArrayNumber;
 import com.google.gwt.i18n.client.NumberFormat;
 
-@SuppressWarnings("deprecation")
 public class TimeGraphAxis extends GraphAxis {
+	private static final NumberFormat TWO_DIGITS = NumberFormat.getFormat("00");
+	private static final NumberFormat SIX_DIGITS =
+		NumberFormat.getFormat("000000");
+
+	/**
+	 * The number of labels each formatter remembers before it starts over
+	 */
+	private static final int MAX_CACHED_LABELS = 1024;
 
 	public TimeGraphAxis(String divName, double min, double max, Basis basis,
 			double width, boolean isXAxis) {
@@ -15,8 +25,8 @@ public class TimeGraphAxis extends GraphAxis {
 		hasMinRange = hasMaxRange = true;
 	}
 
-	private final long secondsInHour = 3600;
-	private final long secondsInDay = secondsInHour * 24;
+	private final int secondsInHour = CalendarTable.SECONDS_PER_HOUR;
+	private final int secondsInDay = CalendarTable.SECONDS_PER_DAY;
 	private final long secondsInWeek = secondsInDay * 7;
 	private final long secondsInYear = 31556926;
 	private final long secondsInMonth = (long)Math.round(secondsInYear / 12.);
@@ -31,7 +41,13 @@ public class TimeGraphAxis extends GraphAxis {
 			{secondsInYear}                                            // 1 year
 	};
 
-	private int previousPaintEventId = 0;
+	private TimeZoneMapping timeZoneMapping = null;
+	private CalendarTable calendar = null;
+
+	private final TimeLabelFormatter timeLabels = new TimeLabelFormatter();
+	private final DayLabelFormatter dayLabels = new DayLabelFormatter();
+	private final MonthLabelFormatter monthLabels = new MonthLabelFormatter();
+	private final YearLabelFormatter yearLabels = new YearLabelFormatter();
 
 	private double computeTimeTickSize(double minPixels) {
 		//double minDelta = Math.max(minTickSize,
@@ -76,25 +92,136 @@ public class TimeGraphAxis extends GraphAxis {
 		return computeTimeTickSize(minPixels);
 	}
 
-	private class TimeLabelFormatter extends LabelFormatter {
+	/**
+	 * Returns the calendar to use for the current range of this axis
+	 */
+	CalendarTable getCalendar() {
+		calendar = CalendarTable.forRange(calendar, timeZoneMapping,
+			this.min, this.max);
+		return calendar;
+	}
+
+	/**
+	 * Returns the time zone mapping used by this axis, or
+	 * <code>null</code> if this axis uses the browser's time zone
+	 */
+	public TimeZoneMapping getTimeZoneMapping() {
+		return timeZoneMapping;
+	}
+
+	/**
+	 * Sets the time zone mapping used by this axis, then repaints this
+	 * axis and tells listeners about the change, since the ticks and
+	 * midnight lines move.
+	 *
+	 * @param mapping
+	 * 	The new mapping, or <code>null</code> to use the browser's
+	 * 	time zone
+	 */
+	public void setTimeZoneMapping(final TimeZoneMapping mapping) {
+		if (mapping == timeZoneMapping)
+			return;
+
+		timeZoneMapping = mapping;
+		calendar = null;
+		invalidateStrip();
+		timeLabels.clearCache();
+		dayLabels.clearCache();
+		monthLabels.clearCache();
+		yearLabels.clearCache();
+
+		final int eventId = SequenceNumber.getNext();
+		publishAxisChangeEvent(eventId);
+		paint(eventId);
+	}
+
+	/**
+	 * Sets the time zone mapping from a JavaScript dictionary with
+	 * keys 'transitions' and 'offsets', as described for
+	 * {@link TimeZoneMapping#TimeZoneMapping(double[], int[])}.
+	 *
+	 * @param mapping
+	 * 	The dictionary, or <code>null</code> to use the browser's
+	 * 	time zone
+	 * @throws NullPointerException
+	 * 	If either key is missing from mapping
+	 * @throws IllegalArgumentException
+	 * 	If the arrays do not form a valid mapping
+	 */
+	@Override
+	public void setTimeZoneMapping(final JavaScriptObject mapping) {
+		if (mapping == null) {
+			setTimeZoneMapping((TimeZoneMapping) null);
+			return;
+		}
+
+		final Dynamic dynamic = mapping.cast();
+		final JsArrayNumber nativeTransitions = dynamic.get("transitions");
+		final JsArrayNumber nativeOffsets = dynamic.get("offsets");
+		if (nativeTransitions == null || nativeOffsets == null)
+			throw new NullPointerException("Missing transitions or offsets");
+
+		final double[] transitions = new double[nativeTransitions.length()];
+		for (int i = 0; i < transitions.length; i++)
+			transitions[i] = nativeTransitions.get(i);
+
+		final int[] offsets = new int[nativeOffsets.length()];
+		for (int i = 0; i < offsets.length; i++)
+			offsets[i] = (int) Math.round(nativeOffsets.get(i));
+
+		setTimeZoneMapping(new TimeZoneMapping(transitions, offsets));
+	}
+
+	/**
+	 * A formatter that remembers the labels it has returned, since
+	 * the same ticks are labeled on every paint while panning
+	 */
+	private abstract class CachingLabelFormatter extends LabelFormatter {
+		private final Map<Double, String> labels =
+			new HashMap<Double, String>();
+
+		@Override
 		String format(double time) {
+			String label = labels.get(time);
+
+			if (label == null) {
+				if (labels.size() >= MAX_CACHED_LABELS)
+					labels.clear();
+
+				label = formatLabel(time);
+				labels.put(time, label);
+			}
+
+			return label;
+		}
+
+		void clearCache() {
+			labels.clear();
+		}
+
+		abstract String formatLabel(double time);
+	}
+
+	private class TimeLabelFormatter extends CachingLabelFormatter {
+		String formatLabel(double time) {
 			// Compute time, rounded to nearest microsecond, then truncated
 			// to second only
 			double whole = Math.floor(time + (.5/1000000.));
 			// Compute fractional second in microseconds, rounded to nearest
 			int microseconds = (int) Math.round(1000000 * (time - whole));
 
-			Date d = new Date((long) (whole*1000.));
-			
-			String ret = NumberFormat.getFormat("00").format(d.getHours())
-				+ ":" +	NumberFormat.getFormat("00").format(d.getMinutes());
-			
-			int seconds = d.getSeconds();
+			int secondOfDay = (int) getCalendar().getSecondOfDay(whole);
+			int hours = secondOfDay / secondsInHour;
+			int minutes = (secondOfDay / 60) % 60;
+			int seconds = secondOfDay % 60;
+
+			String ret = TWO_DIGITS.format(hours) + ":"
+				+ TWO_DIGITS.format(minutes);
+
 			if (seconds != 0 || microseconds != 0) {
-				ret += ":" + NumberFormat.getFormat("00").format(seconds);
+				ret += ":" + TWO_DIGITS.format(seconds);
 				if (microseconds != 0) {
-					ret += "."
-						+ NumberFormat.getFormat("000000").format(microseconds);
+					ret += "." + SIX_DIGITS.format(microseconds);
 					// Remove trailing zeros
 					ret = ret.replaceFirst("0+$", "");
 				}
@@ -104,30 +231,30 @@ public class TimeGraphAxis extends GraphAxis {
 		}
 	}
 
-	private class DayLabelFormatter extends LabelFormatter {
+	private class DayLabelFormatter extends CachingLabelFormatter {
 		final String[] days = {"Sun", "Mon", "Tue", "Wed", "Thu", "Fri", "Sat"};
-		String format(double time) {
-			Date d = new Date((long) Math.round(time*1000.));
-			String ret = days[d.getDay()] + " " + d.getDate();
-			return ret;
+		String formatLabel(double time) {
+			CalendarTable cal = getCalendar();
+			int day = cal.dayNumber(Math.round(time));
+			return days[CalendarTable.getWeekday(day)] + " " + cal.getDate(day);
 		}
-	}	
+	}
 
-	private class MonthLabelFormatter extends LabelFormatter {
+	private class MonthLabelFormatter extends CachingLabelFormatter {
 		final String[] months = {"Jan", "Feb", "Mar", "Apr", "May",
 				"Jun", "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"};
-		String format(double time) {
-			Date d = new Date((long) Math.round(time * 1000.0));
-			return months[d.getMonth()];
+		String formatLabel(double time) {
+			CalendarTable cal = getCalendar();
+			return months[cal.getMonth(cal.dayNumber(Math.round(time)))];
 		}
-	}	
+	}
 
-	private class YearLabelFormatter extends LabelFormatter {
-		String format(double time) {
-			Date d = new Date((long) Math.round(time * 1000.0));
-			return String.valueOf(d.getYear() + 1900);
+	private class YearLabelFormatter extends CachingLabelFormatter {
+		String formatLabel(double time) {
+			CalendarTable cal = getCalendar();
+			return String.valueOf(cal.getYear(cal.dayNumber(Math.round(time))));
 		}
-	}	
+	}
 
 	private TickGenerator createDateTickGenerator(double tickSize) {
 		int nHours = (int) Math.round(tickSize / secondsInHour);
@@ -145,25 +272,7 @@ public class TimeGraphAxis extends GraphAxis {
 	}
 
 	private double closestDay(double time) {
-		Date timeDate = new Date(((long)time) * 1000);
-		double hour = timeDate.getHours() + timeDate.getMinutes() / 30.0
-			+ timeDate.getSeconds() / 1800.;
-		if (hour >= 12) {
-			// Advance day by moving to one min before midnight
-			timeDate.setHours(23);
-			timeDate.setMinutes(59);
-			timeDate.setSeconds(59);
-			// Advance 12 hours
-			timeDate.setTime(timeDate.getTime() + secondsInHour * 12 * 1000);
-		}
-		// Truncate to beginning of day
-		timeDate.setHours(0);
-		timeDate.setMinutes(0);
-		timeDate.setSeconds(0);
-		double epsilon = 1e-10;
-		// Return time in seconds, truncating fractional second
-		double ret=Math.floor(timeDate.getTime() / 1000 + epsilon);
-		return ret;			
+		return getCalendar().getClosestDayStart(Math.floor(time));
 	}
 
 	private class YearTickGenerator extends MonthTickGenerator {
@@ -180,30 +289,21 @@ public class TimeGraphAxis extends GraphAxis {
 			this.tickSizeMonths = tickSizeMonths;
 		}
 
-		private int divideFloor(int numerator, int divisor) {
-			if (numerator < 0) {
-				return -(((Math.abs(divisor) - numerator - 1)) / divisor);
-			} else {
-				return numerator / divisor;
-			}
-		}
-
 		double closestTick(double time) {
-			Date timeDate = new Date((long) (time*1000));
+			CalendarTable cal = getCalendar();
+			int day = cal.dayNumber(time);
 
-			double monthsSince1970 = timeDate.getYear() * 12
-			+ timeDate.getMonth()
-			+ (timeDate.getDate() * secondsInDay / secondsInMonth);
+			// Months are counted from 1900, so that ticks several months
+			// apart always include January
+			double monthsSince1900 = (cal.getYear(day) - 1900) * 12
+				+ cal.getMonth(day)
+				+ ((double) cal.getDate(day) * secondsInDay / secondsInMonth);
 
-			int tickMonthsSince1970 =
-				(int) Math.round(monthsSince1970 / tickSizeMonths)
+			int tickMonthsSince1900 =
+				(int) Math.round(monthsSince1900 / tickSizeMonths)
 				* tickSizeMonths;
 
-			int tickYear = divideFloor(tickMonthsSince1970, 12);
-			int tickMonth = tickMonthsSince1970 - tickYear * 12; 
-			Date tickDate = new Date(tickYear, tickMonth, 1);
-
-			return Math.round(tickDate.getTime() / 1000);
+			return cal.getDateStart(1900, tickMonthsSince1900, 1);
 		}
 	}
 
@@ -213,22 +313,21 @@ public class TimeGraphAxis extends GraphAxis {
 		}
 
 		double closestTick(double time) {
-			Date timeDate = new Date((long) (time*1000));
-
-			double day = ((60 * (60 * timeDate.getSeconds()) + timeDate.getMinutes())
-					+ timeDate.getHours()) / 24.;
-			int daysSinceMonday = timeDate.getDay() - 1;
+			CalendarTable cal = getCalendar();
+			int day = cal.dayNumber(time);
+			int daysSinceMonday = CalendarTable.getWeekday(day) - 1;
 
 			if (daysSinceMonday < 0)
 				daysSinceMonday += 7;
 
-			day += daysSinceMonday;
+			double dayOfWeek = daysSinceMonday
+				+ cal.getSecondOfDay(time) / secondsInDay;
+			int monday = day - daysSinceMonday;
 
-			if (day >= 3.5) {
-				return closestDay(time + secondsInDay * (7 - day));
-			} else {
-				return closestDay(time - secondsInDay * day);
-			}
+			if (dayOfWeek >= 3.5)
+				return cal.getDayStart(monday + 7);
+			else
+				return cal.getDayStart(monday);
 		}
 	}
 
@@ -249,46 +348,22 @@ public class TimeGraphAxis extends GraphAxis {
 			this.tickSizeHours = tickSizeHours;
 		}
 		double closestTick(double time) {
-			Date timeDate = new Date((long) (time * 1000));
-			double hour = timeDate.getHours() + timeDate.getMinutes() / 30.0
-			+ timeDate.getSeconds() / 1800.0;
+			CalendarTable cal = getCalendar();
+			double hour = cal.getSecondOfDay(time) / secondsInHour;
 
 			int closestHour =
 				(int) Math.round(hour / tickSizeHours) * tickSizeHours;
-			if (closestHour == 24) {
-				// Midnight of next day.  Advance time and return closest
-				// beginning of day
-				return closestDay(time + (24-hour) * secondsInHour);
-			} else {
-				timeDate.setHours(closestHour);
-			}
 
-			// Remove minutes and seconds
-			timeDate.setMinutes(0);
-			timeDate.setSeconds(0);
-			double epsilon = 1e-10;
-			// Return time in seconds, truncating fractional second
-			return Math.floor(timeDate.getTime() / 1000 + epsilon);
+			// Work on the local clock, so that ticks stay on the same
+			// hours across changes to daylight saving time
+			int day = cal.dayNumber(time);
+			return Math.floor(cal.localToUtc((double) day * secondsInDay
+				+ closestHour * secondsInHour));
 		}
 	}
 
 	@Override
-	public void paint(final int newPaintEventId) {
-		// guard against redundant paints
-		if (previousPaintEventId != newPaintEventId) {
-			previousPaintEventId = newPaintEventId;
-
-			paint();
-		}
-	}
-
-	private void paint() {
-		Canvas canvas = getDrawingCanvas();
-		if (canvas == null)
-			return;
-
-		canvas.clear();
-
+	protected void paintAxis(final Canvas canvas) {
 		// Pick the color to use, based on highlighting status
 		if (isHighlighted())
 			canvas.setStrokeStyle(HIGHLIGHTED_COLOR);
@@ -321,7 +396,7 @@ public class TimeGraphAxis extends GraphAxis {
 			if (timeMajorTickSize <= 3600*12 + epsilon) {
 				renderTicks(pixelOffset, timeMajorTickSize,
 						createDateTickGenerator(timeMajorTickSize), canvas,
-						majorTickWidthPixels, new TimeLabelFormatter());
+						majorTickWidthPixels, timeLabels);
 				timeLabelHeight = 10;
 			} else {
 				timeMajorTickSize = 3600*12;
@@ -354,7 +429,7 @@ public class TimeGraphAxis extends GraphAxis {
 		if (dayMajorTickSize == secondsInDay) {
 			renderTicksRangeLabelInline(pixelOffset, dayMajorTickSize,
 					createDateTickGenerator(dayMajorTickSize), canvas,
-					inlineTickWidthPixels, new DayLabelFormatter());
+					inlineTickWidthPixels, dayLabels);
 			renderTicks(pixelOffset, dayMinorTickSize,
 					createDateTickGenerator(dayMinorTickSize), canvas,
 					minorTickWidthPixels, null);
@@ -363,7 +438,7 @@ public class TimeGraphAxis extends GraphAxis {
 			renderTicksRangeLabel(pixelOffset, dayMajorTickSize,
 					createDateTickGenerator(dayMajorTickSize),
 					createDateTickGenerator(secondsInDay), canvas,
-					majorTickWidthPixels, new DayLabelFormatter());
+					majorTickWidthPixels, dayLabels);
 			renderTicks(pixelOffset, dayMinorTickSize,
 					createDateTickGenerator(dayMinorTickSize), canvas,
 					minorTickWidthPixels, null);
@@ -377,13 +452,13 @@ public class TimeGraphAxis extends GraphAxis {
 		if (monthTickSize == secondsInMonth) {
 			renderTicksRangeLabelInline(pixelOffset, monthTickSize,
 					createDateTickGenerator(monthTickSize), canvas,
-					inlineTickWidthPixels, new MonthLabelFormatter());
+					inlineTickWidthPixels, monthLabels);
 			pixelOffset += inlineTickWidthPixels;
 		} else if (monthTickSize < secondsInYear - epsilon) {
 			renderTicksRangeLabel(pixelOffset, monthTickSize,
 					createDateTickGenerator(monthTickSize),
 					createDateTickGenerator(secondsInMonth), canvas,
-					majorTickWidthPixels, new MonthLabelFormatter());
+					majorTickWidthPixels, monthLabels);
 			pixelOffset += 22;			
 		}
 
@@ -393,20 +468,18 @@ public class TimeGraphAxis extends GraphAxis {
 		if (yearTickSize == secondsInYear) {
 			renderTicksRangeLabelInline(pixelOffset, yearTickSize,
 					createDateTickGenerator(yearTickSize), canvas,
-					inlineTickWidthPixels, new YearLabelFormatter());
+					inlineTickWidthPixels, yearLabels);
 			pixelOffset += inlineTickWidthPixels;
 		} else {
 			renderTicksRangeLabel(pixelOffset, yearTickSize,
 					createDateTickGenerator(yearTickSize),
 					createDateTickGenerator(secondsInYear), canvas,
-					majorTickWidthPixels, new YearLabelFormatter());
+					majorTickWidthPixels, yearLabels);
 			pixelOffset += 22;			
 		}
 
 		canvas.stroke();
 
-		renderHighlight(canvas, getHighlightedPoint());
-
 		// Clean up after ourselves
 		canvas.setStrokeStyle(Canvas.DEFAULT_COLOR);
 	}
@@ -0,0 +1,159 @@
+package org.bodytrack.client;
+
+import java.util.Date;
+
+/**
+ * A mapping from times to UTC offsets, stored as a sorted array of the
+ * times at which the offset changes and an array of the offsets in
+ * effect between those times.
+ *
+ * <p>Looking up an offset is a binary search over primitive arrays, so
+ * no <code>Date</code> objects are involved.  A mapping may come from a
+ * web page, for users who have spent time in several time zones, or from
+ * the browser's own time zone using {@link #fromBrowser(double, double)}.
+ * All times are in seconds since the epoch, and all offsets are in
+ * seconds east of UTC, so that an offset is added to a UTC time to get
+ * a local time.</p>
+ */
+@SuppressWarnings("deprecation")
+public final class TimeZoneMapping {
+	/**
+	 * The spacing between samples of the browser's UTC offset.  Offset
+	 * changes closer together than this may be missed, which is not a
+	 * problem for any real time zone.
+	 */
+	private static final int BROWSER_SAMPLE_SECONDS =
+		28 * CalendarTable.SECONDS_PER_DAY;
+
+	// offsets[i] applies from transitions[i - 1] (inclusive) up to
+	// transitions[i] (exclusive), so there is one more offset than
+	// there are transitions
+	private final double[] transitions;
+	private final int[] offsets;
+
+	/**
+	 * Creates a new mapping.
+	 *
+	 * @param transitions
+	 * 	The times at which the offset changes, in strictly increasing
+	 * 	order.  This is copied, so later changes to the array are
+	 * 	not seen by the new mapping
+	 * @param offsets
+	 * 	The offsets in effect before the first transition, between
+	 * 	each pair of transitions, and after the last transition, so
+	 * 	this must have exactly one more element than transitions.
+	 * 	This is copied as well
+	 * @throws NullPointerException
+	 * 	If either parameter is <code>null</code>
+	 * @throws IllegalArgumentException
+	 * 	If offsets is not one longer than transitions, or if
+	 * 	transitions is not strictly increasing
+	 */
+	public TimeZoneMapping(final double[] transitions, final int[] offsets) {
+		if (transitions == null || offsets == null)
+			throw new NullPointerException("Null transitions or offsets");
+		if (offsets.length != transitions.length + 1)
+			throw new IllegalArgumentException(
+				"Must have one more offset than transitions");
+
+		for (int i = 1; i < transitions.length; i++) {
+			if (!(transitions[i - 1] < transitions[i]))
+				throw new IllegalArgumentException(
+					"Transitions must be strictly increasing");
+		}
+
+		this.transitions = new double[transitions.length];
+		this.offsets = new int[offsets.length];
+		System.arraycopy(transitions, 0, this.transitions, 0,
+			transitions.length);
+		System.arraycopy(offsets, 0, this.offsets, 0, offsets.length);
+	}
+
+	/**
+	 * Returns a mapping with a single offset that never changes
+	 */
+	public static TimeZoneMapping fixedOffset(final int offset) {
+		return new TimeZoneMapping(new double[0], new int[] {offset});
+	}
+
+	/**
+	 * Returns a mapping that matches the browser's time zone between
+	 * min and max, and uses the offsets at min and max outside that
+	 * range.
+	 *
+	 * <p>This asks the browser for one offset every four weeks, plus a
+	 * few more to find the exact second of each change, so it should be
+	 * called once for a range rather than once per time.</p>
+	 */
+	public static TimeZoneMapping fromBrowser(final double min,
+			final double max) {
+		final int sampleCount =
+			(int) Math.ceil((max - min) / BROWSER_SAMPLE_SECONDS) + 1;
+		final double[] foundTransitions = new double[sampleCount];
+		final int[] foundOffsets = new int[sampleCount];
+		int nTransitions = 0;
+
+		double prevTime = Math.floor(min);
+		int prevOffset = browserOffset(prevTime);
+		foundOffsets[0] = prevOffset;
+		for (int i = 1; i < sampleCount; i++) {
+			final double time = Math.min(Math.floor(min)
+				+ (double) i * BROWSER_SAMPLE_SECONDS, Math.ceil(max));
+			final int offset = browserOffset(time);
+
+			if (offset != prevOffset) {
+				foundTransitions[nTransitions] =
+					findBrowserTransition(prevTime, time, prevOffset);
+				nTransitions++;
+				foundOffsets[nTransitions] = offset;
+			}
+
+			prevTime = time;
+			prevOffset = offset;
+		}
+
+		final double[] transitions = new double[nTransitions];
+		final int[] offsets = new int[nTransitions + 1];
+		System.arraycopy(foundTransitions, 0, transitions, 0, nTransitions);
+		System.arraycopy(foundOffsets, 0, offsets, 0, nTransitions + 1);
+		return new TimeZoneMapping(transitions, offsets);
+	}
+
+	/**
+	 * Returns the offset, in seconds east of UTC, in effect at time
+	 */
+	public int getOffset(final double time) {
+		// Find the number of transitions at or before time
+		int lo = 0;
+		int hi = transitions.length;
+		while (lo < hi) {
+			final int mid = (lo + hi) >>> 1;
+			if (transitions[mid] <= time)
+				lo = mid + 1;
+			else
+				hi = mid;
+		}
+
+		return offsets[lo];
+	}
+
+	// Returns the first whole second at which the offset differs from
+	// the offset at low, given that it differs by high
+	private static double findBrowserTransition(double low, double high,
+			final int lowOffset) {
+		while (high - low > 1) {
+			final double mid = Math.floor((low + high) / 2);
+			if (browserOffset(mid) == lowOffset)
+				low = mid;
+			else
+				high = mid;
+		}
+
+		return high;
+	}
+
+	// This is the only place that asks the browser about time zones
+	private static int browserOffset(final double time) {
+		return -new Date((long) (time * 1000)).getTimezoneOffset() * 60;
+	}
+}
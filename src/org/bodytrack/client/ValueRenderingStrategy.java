@@ -1,7 +1,6 @@
 package org.bodytrack.client;
 
 import com.google.gwt.i18n.client.NumberFormat;
-import gwt.g2d.client.graphics.canvas.Context;
 
 public class ValueRenderingStrategy extends BaseDataSeriesPlotRenderingStrategy implements DataPointRenderingStrategy {
    private static final String DEFAULT_FONT = "7pt Helvetica,Arial,Verdana,sans-serif";
@@ -40,7 +39,10 @@ public class ValueRenderingStrategy extends BaseDataSeriesPlotRenderingStrategy
                                     final double x,
                                     final double y,
                                     final PlottablePoint rawDataPoint) {
-      paintPoint(drawing, xAxis, yAxis, x, y, rawDataPoint);
+      // Value labels are too expensive to draw while the user is interacting with the view
+      if (!RenderQuality.isInteracting()) {
+         paintPoint(drawing, xAxis, yAxis, x, y, rawDataPoint);
+      }
    }
 
    @Override
@@ -54,7 +56,9 @@ public class ValueRenderingStrategy extends BaseDataSeriesPlotRenderingStrategy
                                     final double x,
                                     final double y,
                                     final PlottablePoint rawDataPoint) {
-      drawValue(drawing, prevX, x, y, rawDataPoint, true);
+      if (!RenderQuality.isInteracting()) {
+         drawValue(drawing, prevX, x, y, rawDataPoint, true);
+      }
    }
 
    @Override
@@ -73,24 +77,24 @@ public class ValueRenderingStrategy extends BaseDataSeriesPlotRenderingStrategy
                           final double y,
                           final PlottablePoint rawDataPoint,
                           final boolean shouldConsiderPrevXValue) {
-      final Context ctx = drawing.getCanvas().getSurface().getContext();
+      final Canvas canvas = drawing.getCanvas();
 
       // get the current font so we can revert to it later
-      final String originalFont = ctx.getFont();
+      final String originalFont = canvas.getFont();
 
       // set the font and then measure the text so we can compute the desired x position
-      ctx.setFont(font);
+      canvas.setFont(font);
       final String valueAsString = numberFormat.format(rawDataPoint.getValue());
-      final double widthInPixels = ctx.measureText(valueAsString);
+      final double widthInPixels = canvas.measureText(valueAsString);
       final double desiredX = x - (widthInPixels / 2);
 
       // if we should be considering the previous x value, then check for overlap
       if (!shouldConsiderPrevXValue || desiredX >= (prevX + marginWidth)) {
          final double desiredY = y - verticalOffset;
-         ctx.fillText(valueAsString, desiredX, desiredY);
+         canvas.fillText(valueAsString, desiredX, desiredY);
       }
 
       // clean up after ourselves
-      ctx.setFont(originalFont);
+      canvas.setFont(originalFont);
    }
 }
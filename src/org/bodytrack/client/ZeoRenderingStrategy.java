@@ -161,7 +161,7 @@ public class ZeoRenderingStrategy extends BaseDataSeriesPlotRenderingStrategy {
          // Draw a line
          canvas.beginPath()
             .moveTo(leftX, bottomY)
-            .drawLineTo(rightX, bottomY)
+            .lineTo(rightX, bottomY)
             .closePath();
 
          canvas.stroke();
@@ -0,0 +1,93 @@
+package org.bodytrack.client;
+
+import com.google.gwt.core.client.JavaScriptObject;
+
+/**
+ * The fast path for the bit-level double operations in {@link MathEx}.
+ *
+ * <p>This is the version used by the GWT compiler, through the
+ * super-source entry in Grapher2.gwt.xml.  It writes a value into a
+ * <code>Float64Array</code> and reads the two halves back out of an
+ * <code>Int32Array</code> over the same buffer, or the other way around.
+ * GWT does not allow long values to cross into JSNI, so the halves are
+ * passed as ints and put together in Java.  Browsers without typed
+ * arrays fall back on the reference implementation in {@link MathEx}.</p>
+ */
+final class DoubleBits {
+	private static final long NAN_BITS = 0x7ff8000000000000L;
+	private static final long LOW_BITS_MASK = 0xffffffffL;
+
+	// Set only by initialize, which must run after these are declared
+	private static JavaScriptObject doubles;
+	private static JavaScriptObject ints;
+	private static int highIndex;
+	private static int lowIndex;
+
+	private static final boolean SUPPORTED = initialize();
+
+	private DoubleBits() {
+		throw new UnsupportedOperationException();
+	}
+
+	static long doubleToLongBits(final double d) {
+		if (!SUPPORTED)
+			return MathEx.referenceDoubleToLongBits(d);
+
+		// Double.doubleToLongBits collapses all NaN values to one
+		if (Double.isNaN(d))
+			return NAN_BITS;
+
+		store(d);
+		return ((long) getHighBits() << 32) | (getLowBits() & LOW_BITS_MASK);
+	}
+
+	static double longBitsToDouble(final long bits) {
+		if (!SUPPORTED)
+			return MathEx.referenceLongBitsToDouble(bits);
+
+		return load((int) (bits >>> 32), (int) bits);
+	}
+
+	// Creates the shared views, and finds out which half of the double
+	// holds the sign and exponent.  Returns false if there are no
+	// typed arrays
+	private static native boolean initialize() /*-{
+		if (!$wnd.Float64Array || !$wnd.Int32Array)
+			return false;
+
+		var buffer = new $wnd.ArrayBuffer(8);
+		var doubles = new $wnd.Float64Array(buffer);
+		var ints = new $wnd.Int32Array(buffer);
+
+		// 1.0 has bits 0x3ff00000 00000000
+		doubles[0] = 1.0;
+		var high = ints[1] == 0x3ff00000 ? 1 : 0;
+
+		@org.bodytrack.client.DoubleBits::doubles = doubles;
+		@org.bodytrack.client.DoubleBits::ints = ints;
+		@org.bodytrack.client.DoubleBits::highIndex = high;
+		@org.bodytrack.client.DoubleBits::lowIndex = 1 - high;
+		return true;
+	}-*/;
+
+	private static native void store(double d) /*-{
+		@org.bodytrack.client.DoubleBits::doubles[0] = d;
+	}-*/;
+
+	private static native int getHighBits() /*-{
+		return @org.bodytrack.client.DoubleBits::ints[
+			@org.bodytrack.client.DoubleBits::highIndex];
+	}-*/;
+
+	private static native int getLowBits() /*-{
+		return @org.bodytrack.client.DoubleBits::ints[
+			@org.bodytrack.client.DoubleBits::lowIndex];
+	}-*/;
+
+	private static native double load(int high, int low) /*-{
+		var ints = @org.bodytrack.client.DoubleBits::ints;
+		ints[@org.bodytrack.client.DoubleBits::highIndex] = high;
+		ints[@org.bodytrack.client.DoubleBits::lowIndex] = low;
+		return @org.bodytrack.client.DoubleBits::doubles[0];
+	}-*/;
+}
@@ -1,12 +1,15 @@
 package org.bodytrack.server;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.URL;
 
 //import javax.naming.ConfigurationException;
 import javax.servlet.ServletException;
 
+import com.woonoz.proxy.servlet.DiskTileStore;
 import com.woonoz.proxy.servlet.ProxyServlet;
+import com.woonoz.proxy.servlet.TileResponseCache;
 
 public class BodyTrackProxyServlet extends ProxyServlet {
 	/**
@@ -14,16 +17,62 @@ public class BodyTrackProxyServlet extends ProxyServlet {
 	 */
 	private static final long serialVersionUID = 1L;
 
+	// Bytes of tile responses kept in memory
+	private static final long TILE_CACHE_BYTES = 64L * 1024 * 1024;
+
+	// Size of each tile cache segment file, and default bytes of tile
+	// responses kept on disk
+	private static final long TILE_SEGMENT_BYTES = 64L * 1024 * 1024;
+	private static final long DEFAULT_TILE_DISK_BYTES = 4L * 1024 * 1024 * 1024;
+
+	private static final long TILE_COMPACTION_PERIOD_MILLIS = 60 * 1000;
+
+	private DiskTileStore tileDiskTier;
+
 	@Override
     public void init() throws ServletException {
             try {
             	URL url = new URL("http://bodytrack.org/");
             	//URL url = new URL("http://localhost:3000/");
             init(url, 200);
+            getMetrics().addRoute("tiles", "/tiles/");
+            getMetrics().addRoute("users", "/users/");
+            getMetrics().addRoute("login", "/login.json", "/login_status.json", "/logout");
+            // As many upstream threads as upstream connections.  web.xml
+            // maps this servlet with async-supported, so on a Servlet 3.0
+            // container the container's threads are released while the
+            // upstream server works; elsewhere requests stay on them.
+            enableAsync(200);
+            // The tileCacheDirectory init parameter, if set, adds a disk
+            // tier that keeps tiles across restarts
+            final String directory = getInitParameter("tileCacheDirectory");
+            if (directory != null) {
+                final String diskBytes = getInitParameter("tileCacheDiskBytes");
+                tileDiskTier = new DiskTileStore(new File(directory), TILE_SEGMENT_BYTES,
+                        diskBytes != null ? Long.parseLong(diskBytes) : DEFAULT_TILE_DISK_BYTES);
+                tileDiskTier.startCompaction(TILE_COMPACTION_PERIOD_MILLIS);
+            }
+            // The sessionCookie init parameter names the cookie that
+            // identifies the user; without it, tiles are cached per
+            // distinct Cookie header
+            enableResponseCache("/tiles/", new TileResponseCache(
+                    TILE_CACHE_BYTES, getInitParameter("sessionCookie"), tileDiskTier));
             } catch (IOException e) {
                     throw new ServletException(e);
             }// catch (ConfigurationException e) {
              //       throw new ServletException(e);
              //}
     }       
+
+	@Override
+	public void destroy() {
+		if (tileDiskTier != null) {
+			try {
+				tileDiskTier.close();
+			} catch (IOException e) {
+				log("Cannot close tile cache", e);
+			}
+		}
+		super.destroy();
+	}
 }
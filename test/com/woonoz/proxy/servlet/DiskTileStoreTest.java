@@ -0,0 +1,268 @@
+package com.woonoz.proxy.servlet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public final class DiskTileStoreTest {
+
+	private static final long SEGMENT_BYTES = 4096;
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static CachedResponse response(final String body) {
+		final List<CachedResponse.HeaderField> headers = new ArrayList<CachedResponse.HeaderField>();
+		headers.add(new CachedResponse.HeaderField("Cache-Control", "max-age=60"));
+		headers.add(new CachedResponse.HeaderField("ETag", "\"" + body.hashCode() + "\""));
+		return new CachedResponse(CachedResponse.STATUS_OK, headers, body.getBytes(), 0);
+	}
+
+	private static String body(final CachedResponse response) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		response.writeBody(Channels.newChannel(out));
+		return out.toString();
+	}
+
+	private DiskTileStore open(final long maxBytes) throws IOException {
+		return new DiskTileStore(folder.getRoot(), SEGMENT_BYTES, maxBytes);
+	}
+
+	@Test
+	public void testPutAndGet() throws IOException {
+		final DiskTileStore store = open(1 << 20);
+		store.put("a", response("tile a"));
+
+		final CachedResponse read = store.get("a");
+		assertTrue(read.isOnDisk());
+		assertEquals("tile a", body(read));
+		assertArrayEquals("tile a".getBytes(), read.getBody());
+		assertEquals(6, read.getBodyLength());
+		assertEquals(response("tile a").getEtag(), read.getEtag());
+		assertTrue(read.isFresh(59 * 1000));
+		assertEquals(59, read.getAgeSeconds(59 * 1000));
+		assertNull(store.get("b"));
+		store.close();
+	}
+
+	@Test
+	public void testReopenRestoresIndex() throws IOException {
+		DiskTileStore store = open(1 << 20);
+		store.put("a", response("old a"));
+		store.put("a", response("new a"));
+		store.put("b", response("tile b"));
+		store.put("c", response("tile c"));
+		store.remove("b");
+		store.updateFreshness("c", 120 * 1000);
+		store.close();
+
+		store = open(1 << 20);
+		assertEquals(2, store.getEntryCount());
+		assertEquals("new a", body(store.get("a")));
+		assertNull(store.get("b"));
+		assertTrue(store.get("c").isFresh(119 * 1000));
+		store.close();
+	}
+
+	@Test
+	public void testIncompleteRecordIsCutOff() throws IOException {
+		DiskTileStore store = open(1 << 20);
+		store.put("a", response("tile a"));
+		store.put("b", response("tile b"));
+		final long size = store.getByteCount();
+		store.close();
+
+		// Lose the last few bytes, as if the process had died mid-write
+		final File segment = folder.getRoot().listFiles()[0];
+		final RandomAccessFile file = new RandomAccessFile(segment, "rw");
+		file.setLength(size - 3);
+		file.close();
+
+		store = open(1 << 20);
+		assertEquals(1, store.getEntryCount());
+		assertEquals("tile a", body(store.get("a")));
+		assertTrue(store.getByteCount() < size - 3);
+		store.close();
+	}
+
+	@Test
+	public void testCompactionKeepsLiveRecords() throws IOException {
+		DiskTileStore store = open(1 << 20);
+		final StringBuilder padding = new StringBuilder();
+		for (int i = 0; i < 500; i++) {
+			padding.append('x');
+		}
+		for (int i = 0; i < 40; i++) {
+			store.put("key" + (i % 4), response(i + padding.toString()));
+		}
+		store.remove("key3");
+		final CachedResponse beforeCompaction = store.get("key0");
+		final long before = store.getByteCount();
+
+		store.compact();
+
+		assertTrue(store.getByteCount() < before / 2);
+		assertEquals(3, store.getEntryCount());
+		assertEquals("36" + padding, body(store.get("key0")));
+		// A response read before compaction moved its body still works
+		assertEquals("36" + padding, body(beforeCompaction));
+		store.close();
+
+		store = open(1 << 20);
+		assertEquals(3, store.getEntryCount());
+		assertNull(store.get("key3"));
+		assertEquals("38" + padding, body(store.get("key2")));
+		store.close();
+	}
+
+	@Test
+	public void testOldestSegmentIsEvicted() throws IOException {
+		final DiskTileStore store = open(3 * SEGMENT_BYTES);
+		final StringBuilder padding = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			padding.append('x');
+		}
+		for (int i = 0; i < 20; i++) {
+			store.put("key" + i, response(padding.toString()));
+		}
+
+		assertTrue(store.getByteCount() <= 3 * SEGMENT_BYTES);
+		assertNull(store.get("key0"));
+		assertEquals(padding.toString(), body(store.get("key19")));
+		store.close();
+	}
+
+	@Test
+	public void testCacheServesFromDiskAfterRestart() throws IOException {
+		final List<CachedResponse.HeaderField> headers = new ArrayList<CachedResponse.HeaderField>();
+		headers.add(new CachedResponse.HeaderField("Cache-Control", "max-age=60"));
+		final int[] fetches = {0};
+		final TileResponseCache.Upstream upstream = new TileResponseCache.Upstream() {
+			public CachedResponse fetch(final String etag) {
+				fetches[0]++;
+				return new CachedResponse(CachedResponse.STATUS_OK, headers, "tile".getBytes(), System.currentTimeMillis());
+			}
+		};
+
+		DiskTileStore store = open(1 << 20);
+		new TileResponseCache(1 << 20, null, store).get("/tiles/1.json", null, upstream);
+		store.close();
+
+		store = open(1 << 20);
+		final TileResponseCache cache = new TileResponseCache(1 << 20, null, store);
+		final CachedResponse response = cache.get("/tiles/1.json", null, upstream);
+		assertEquals("tile", body(response));
+		assertEquals(1, fetches[0]);
+		assertEquals(1, cache.getDiskHitCount());
+		store.close();
+	}
+
+	@Test
+	public void testSegmentEvictedWhileSendingIsKeptUntilSent() throws Exception {
+		final DiskTileStore store = open(3 * SEGMENT_BYTES);
+		final StringBuilder large = new StringBuilder();
+		for (int i = 0; i < 64 * 1024; i++) {
+			large.append((char) ('a' + i % 26));
+		}
+		store.put("large", response(large.toString()));
+		final CachedResponse read = store.get("large");
+		final File segment = folder.getRoot().listFiles()[0];
+
+		// Evict the segment from another thread while the body is half
+		// sent, which must neither wait for the send nor cut it short
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final Thread evictor = new Thread() {
+			@Override
+			public void run() {
+				try {
+					store.put("small", response("tile"));
+				} catch (IOException e) {
+					throw new RuntimeException(e);
+				}
+			}
+		};
+		final boolean[] evictedDuringSend = {false};
+		read.writeBody(new WritableByteChannel() {
+			public int write(final ByteBuffer src) throws IOException {
+				if (!evictor.isAlive() && out.size() == 0) {
+					evictor.start();
+					try {
+						evictor.join(10 * 1000);
+					} catch (InterruptedException e) {
+						throw new IOException(e.toString());
+					}
+					evictedDuringSend[0] = !evictor.isAlive() && segment.exists();
+				}
+				final int length = src.remaining();
+				final byte[] bytes = new byte[length];
+				src.get(bytes);
+				out.write(bytes);
+				return length;
+			}
+
+			public boolean isOpen() {
+				return true;
+			}
+
+			public void close() {
+			}
+		});
+
+		assertTrue(evictedDuringSend[0]);
+		assertEquals(large.toString(), out.toString());
+		assertNull(store.get("large"));
+		assertFalse(segment.exists());
+		assertEquals("tile", body(store.get("small")));
+		store.close();
+	}
+
+	@Test
+	public void testReadsFromSealedAndActiveSegments() throws IOException {
+		DiskTileStore store = open(1 << 20);
+		final StringBuilder padding = new StringBuilder();
+		for (int i = 0; i < 1000; i++) {
+			padding.append('x');
+		}
+		for (int i = 0; i < 10; i++) {
+			store.put("key" + i, response(i + padding.toString()));
+			// Read every record as soon as it is written, while its
+			// segment is still growing
+			assertEquals(i + padding.toString(), body(store.get("key" + i)));
+		}
+
+		assertTrue(store.getSegmentCount() > 2);
+		for (int i = 0; i < 10; i++) {
+			assertArrayEquals((i + padding.toString()).getBytes(), store.get("key" + i).getBody());
+		}
+		store.close();
+	}
+
+	@Test
+	public void testPutFromAnotherStore() throws IOException {
+		final DiskTileStore first = open(1 << 20);
+		first.put("a", response("tile a"));
+		final DiskTileStore second = new DiskTileStore(folder.newFolder("second"), SEGMENT_BYTES, 1 << 20);
+		second.put("a", first.get("a"));
+
+		assertEquals("tile a", body(second.get("a")));
+		assertEquals(response("tile a").getEtag(), second.get("a").getEtag());
+		first.close();
+		second.close();
+	}
+}
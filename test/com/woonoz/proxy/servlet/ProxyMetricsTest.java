@@ -0,0 +1,111 @@
+package com.woonoz.proxy.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+public final class ProxyMetricsTest {
+
+	private static final long MILLISECOND = 1000 * 1000;
+
+	private static List<String> writeLines(final ProxyMetrics metrics) throws IOException {
+		final StringWriter out = new StringWriter();
+		metrics.writeText(out);
+		return Arrays.asList(out.toString().split("\n"));
+	}
+
+	@Test
+	public void testRoutesByPrefix() {
+		final ProxyMetrics metrics = new ProxyMetrics();
+		metrics.addRoute("tiles", "/tiles/");
+		metrics.addRoute("login", "/login.json", "/logout");
+
+		assertEquals("tiles", metrics.getRoute("/tiles/1/2.3.json").getName());
+		assertEquals("login", metrics.getRoute("/logout").getName());
+		assertSame(metrics.getRoute("/login.json"), metrics.getRoute("/logout"));
+		assertEquals(ProxyMetrics.OTHER_ROUTE, metrics.getRoute("/users/7").getName());
+	}
+
+	@Test
+	public void testHistogramBuckets() {
+		final LatencyHistogram histogram = new LatencyHistogram(new double[] {0.001, 0.01, 0.1});
+		histogram.record(MILLISECOND / 2);
+		histogram.record(MILLISECOND);
+		histogram.record(5 * MILLISECOND);
+		histogram.record(1000 * MILLISECOND);
+
+		assertEquals(2, histogram.getCumulativeCount(0));
+		assertEquals(3, histogram.getCumulativeCount(1));
+		assertEquals(3, histogram.getCumulativeCount(2));
+		assertEquals(4, histogram.getCount());
+		assertEquals(1.0065, histogram.getSumSeconds(), 1e-9);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testHistogramRejectsUnorderedBounds() {
+		new LatencyHistogram(new double[] {0.1, 0.01});
+	}
+
+	@Test
+	public void testTextFormat() throws IOException {
+		final ProxyMetrics metrics = new ProxyMetrics();
+		metrics.addRoute("tiles", "/tiles/");
+		final RouteMetrics tiles = metrics.getRoute("/tiles/1.json");
+		tiles.recordResponse(200, 100);
+		tiles.recordResponse(200, 50);
+		tiles.recordResponse(304, 0);
+		tiles.recordUpstreamLatency(3 * MILLISECOND);
+		tiles.recordUpstreamError();
+		tiles.recordBytesIn(7);
+		metrics.getConnectionLeaseWait().record(MILLISECOND / 10);
+
+		final List<String> lines = writeLines(metrics);
+
+		assertTrue(lines.contains("# TYPE proxy_requests_total counter"));
+		assertTrue(lines.contains("proxy_requests_total{route=\"tiles\"} 3"));
+		assertTrue(lines.contains("proxy_requests_total{route=\"other\"} 0"));
+		assertTrue(lines.contains("proxy_responses_total{route=\"tiles\",status=\"200\"} 2"));
+		assertTrue(lines.contains("proxy_responses_total{route=\"tiles\",status=\"304\"} 1"));
+		assertTrue(lines.contains("proxy_upstream_errors_total{route=\"tiles\"} 1"));
+		assertTrue(lines.contains("proxy_request_bytes_total{route=\"tiles\"} 7"));
+		assertTrue(lines.contains("proxy_response_bytes_total{route=\"tiles\"} 150"));
+		assertTrue(lines.contains("# TYPE proxy_upstream_latency_seconds histogram"));
+		assertTrue(lines.contains("proxy_upstream_latency_seconds_bucket{route=\"tiles\",le=\"0.0025\"} 0"));
+		assertTrue(lines.contains("proxy_upstream_latency_seconds_bucket{route=\"tiles\",le=\"0.005\"} 1"));
+		assertTrue(lines.contains("proxy_upstream_latency_seconds_bucket{route=\"tiles\",le=\"+Inf\"} 1"));
+		assertTrue(lines.contains("proxy_upstream_latency_seconds_count{route=\"tiles\"} 1"));
+		assertTrue(lines.contains("proxy_connection_lease_wait_seconds_bucket{le=\"0.001\"} 1"));
+		assertTrue(lines.contains("proxy_connection_lease_wait_seconds_count 1"));
+
+		for (final String line: lines) {
+			assertTrue(line, line.startsWith("# ") || line.matches("[a-z_]+(\\{[^}]*\\})? \\S+"));
+		}
+	}
+
+	@Test
+	public void testCacheAndDispatcherStats() throws IOException {
+		final ProxyMetrics metrics = new ProxyMetrics();
+		final TileResponseCache cache = new TileResponseCache(1 << 20, null);
+		final UpstreamDispatcher dispatcher = new UpstreamDispatcher(1);
+		metrics.setResponseCache(cache);
+		metrics.setDispatcher(dispatcher);
+
+		final List<String> lines = writeLines(metrics);
+		dispatcher.shutdown();
+
+		assertTrue(lines.contains("proxy_cache_hits_total 0"));
+		assertTrue(lines.contains("proxy_cache_coalesced_total 0"));
+		assertTrue(lines.contains("# TYPE proxy_cache_entries gauge"));
+		assertTrue(lines.contains("proxy_dispatcher_completed_total 0"));
+		for (final String line: lines) {
+			assertTrue(line, !line.startsWith("proxy_cache_disk_entries"));
+		}
+	}
+}
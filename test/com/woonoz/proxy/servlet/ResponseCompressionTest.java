@@ -0,0 +1,137 @@
+package com.woonoz.proxy.servlet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.Test;
+
+public final class ResponseCompressionTest {
+
+	private static final long NOW = 1000000L;
+
+	private static byte[] jsonTile() {
+		final StringBuilder tile = new StringBuilder("{\"data\":[");
+		for (int i = 0; i < 500; i++) {
+			tile.append("[").append(i).append(",1.5,0,1],");
+		}
+		return tile.append("[500,1.5,0,1]]}").toString().getBytes();
+	}
+
+	private static CachedResponse response(final String contentType, final String contentEncoding, final byte[] body) {
+		final List<CachedResponse.HeaderField> headers = new ArrayList<CachedResponse.HeaderField>();
+		headers.add(new CachedResponse.HeaderField("Content-Type", contentType));
+		headers.add(new CachedResponse.HeaderField("ETag", "\"t1\""));
+		headers.add(new CachedResponse.HeaderField("Cache-Control", "max-age=60"));
+		if (contentEncoding != null) {
+			headers.add(new CachedResponse.HeaderField("Content-Encoding", contentEncoding));
+		}
+		return new CachedResponse(CachedResponse.STATUS_OK, headers, body, NOW);
+	}
+
+	private static byte[] gunzip(final byte[] compressed) throws IOException {
+		final InputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed));
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[4096];
+		int count;
+		while ((count = in.read(buffer)) >= 0) {
+			out.write(buffer, 0, count);
+		}
+		return out.toByteArray();
+	}
+
+	@Test
+	public void testAcceptsGzip() {
+		assertTrue(ResponseCompression.acceptsGzip("gzip, deflate"));
+		assertTrue(ResponseCompression.acceptsGzip("deflate, GZIP;q=0.5"));
+		assertTrue(ResponseCompression.acceptsGzip("br;q=1.0, *;q=0.1"));
+		assertFalse(ResponseCompression.acceptsGzip(null));
+		assertFalse(ResponseCompression.acceptsGzip("identity"));
+		assertFalse(ResponseCompression.acceptsGzip("gzip;q=0"));
+		assertFalse(ResponseCompression.acceptsGzip("*, gzip; q=0.0"));
+	}
+
+	@Test
+	public void testCompressibleTypes() {
+		assertTrue(ResponseCompression.isCompressible("application/json; charset=utf-8"));
+		assertTrue(ResponseCompression.isCompressible("text/html"));
+		assertTrue(ResponseCompression.isCompressible("application/vnd.api+json"));
+		assertFalse(ResponseCompression.isCompressible("image/png"));
+		assertFalse(ResponseCompression.isCompressible(null));
+	}
+
+	@Test
+	public void testShouldCompress() {
+		assertTrue(ResponseCompression.shouldCompress("gzip", "application/json", null, -1));
+		assertTrue(ResponseCompression.shouldCompress("gzip", "application/json", "identity", 4096));
+		assertFalse(ResponseCompression.shouldCompress("gzip", "application/json", "gzip", 4096));
+		assertFalse(ResponseCompression.shouldCompress("gzip", "application/json", null, 10));
+		assertFalse(ResponseCompression.shouldCompress(null, "application/json", null, 4096));
+	}
+
+	@Test
+	public void testCompressKeepsEtagAndFreshness() throws IOException {
+		final byte[] body = jsonTile();
+		final CachedResponse original = response("application/json", null, body);
+		final CachedResponse compressed = ResponseCompression.compress(original);
+
+		assertTrue(ResponseCompression.isGzipped(compressed));
+		assertEquals("Accept-Encoding", compressed.getHeader("vary"));
+		assertTrue(compressed.getBodyLength() < body.length / 4);
+		assertArrayEquals(body, gunzip(compressed.getBody()));
+		assertEquals("\"t1\"", compressed.getEtag());
+		assertEquals("\"t1-gzip\"", compressed.getHeader("etag"));
+		assertEquals(original.getFreshUntil(), compressed.getFreshUntil());
+		assertTrue(compressed.isStorable());
+	}
+
+	@Test
+	public void testGzipEtagIsStrippedForUpstream() {
+		final List<CachedResponse.HeaderField> headers = new ArrayList<CachedResponse.HeaderField>();
+		headers.add(new CachedResponse.HeaderField("ETag", "\"t1-gzip\""));
+		headers.add(new CachedResponse.HeaderField("Content-Encoding", "gzip"));
+		// As read back from the disk tier
+		final CachedResponse stored = new CachedResponse(CachedResponse.STATUS_OK, headers, new byte[0], NOW);
+		assertEquals("\"t1\"", stored.getEtag());
+
+		assertEquals("W/\"t1-gzip\"", ResponseCompression.toGzipEtag("W/\"t1\""));
+		assertEquals("W/\"t1\"", ResponseCompression.toUpstreamEtag("W/\"t1-gzip\""));
+		assertEquals("\"t1\"", ResponseCompression.toUpstreamEtag("\"t1\""));
+		assertNull(ResponseCompression.toUpstreamEtag(null));
+	}
+
+	@Test
+	public void testIdentityEtagDiffersFromGzipEtag() {
+		// A body the proxy gzipped decompresses to exactly what the
+		// upstream server sent
+		assertEquals("\"t1\"", ResponseCompression.toIdentityEtag("\"t1-gzip\""));
+		// A body the upstream server gzipped can only get a weak ETag
+		assertEquals("W/\"u1\"", ResponseCompression.toIdentityEtag("\"u1\""));
+		assertEquals("W/\"u1\"", ResponseCompression.toIdentityEtag("W/\"u1\""));
+		assertNull(ResponseCompression.toIdentityEtag(null));
+	}
+
+	@Test
+	public void testCompressPassesEncodedBodiesThrough() throws IOException {
+		final CachedResponse gzipped = response("application/json", "gzip", jsonTile());
+		assertSame(gzipped, ResponseCompression.compress(gzipped));
+
+		final CachedResponse image = response("image/png", null, jsonTile());
+		assertSame(image, ResponseCompression.compress(image));
+
+		final CachedResponse small = response("application/json", null, "{}".getBytes());
+		assertSame(small, ResponseCompression.compress(small));
+		assertNull(small.getHeader("content-encoding"));
+	}
+}
@@ -0,0 +1,338 @@
+package com.woonoz.proxy.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.http.HttpEntity;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.entity.InputStreamEntity;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+public final class StreamingRequestBodyTest {
+
+	private static final int UPLOAD_MEGABYTES = 256;
+	private static final String CHILD_HEAP = "-Xmx16m";
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static byte[] read(final InputStream in) throws IOException {
+		final ByteArrayOutputStream out = new ByteArrayOutputStream();
+		final byte[] buffer = new byte[1024];
+		int count;
+		while ((count = in.read(buffer)) >= 0) {
+			out.write(buffer, 0, count);
+		}
+		return out.toByteArray();
+	}
+
+	@Test
+	public void testKnownLengthIsStreamed() throws IOException {
+		final InputStream in = new ByteArrayInputStream("body".getBytes());
+		final StreamingRequestBody body = StreamingRequestBody.open(in, 4, folder.getRoot());
+
+		assertFalse(body.isSpooled());
+		assertEquals(4, body.getLength());
+		assertTrue(body.getStream() == in);
+		assertEquals(0, folder.getRoot().list().length);
+	}
+
+	@Test
+	public void testUnknownLengthIsSpooled() throws IOException {
+		final StreamingRequestBody body = StreamingRequestBody.open(
+			new ByteArrayInputStream("chunked body".getBytes()), -1, folder.getRoot());
+
+		assertTrue(body.isSpooled());
+		assertEquals(12, body.getLength());
+		assertEquals(1, folder.getRoot().list().length);
+		assertEquals("chunked body", new String(read(body.getStream())));
+
+		body.release();
+		assertEquals(0, folder.getRoot().list().length);
+	}
+
+	@Test
+	public void testLargeUploadWithSmallHeap() throws Exception {
+		final String java = System.getProperty("java.home") + File.separator + "bin" + File.separator + "java";
+		// The handler spools to the default temporary directory
+		final ProcessBuilder builder = new ProcessBuilder(java, CHILD_HEAP,
+			"-Djava.io.tmpdir=" + folder.getRoot().getPath(),
+			"-cp", System.getProperty("java.class.path"),
+			LargeUpload.class.getName(),
+			Integer.toString(UPLOAD_MEGABYTES));
+		builder.redirectErrorStream(true);
+		final Process process = builder.start();
+		final String output = new String(read(process.getInputStream()));
+
+		assertEquals(output, 0, process.waitFor());
+		assertEquals(0, folder.getRoot().list().length);
+	}
+
+	/**
+	 * Posts a body of the given number of megabytes through an
+	 * {@link HttpPostRequestHandler} and a real {@link HttpClient} to a stub
+	 * upstream server twice, once with its length and once without.  Checks
+	 * that the server receives every byte with the client headers and a
+	 * <code>Content-Length</code>, that the body goes upstream as an
+	 * {@link InputStreamEntity}, which the client never buffers to replay
+	 * on a retry, and that the handler deletes any spool file.  Run in a
+	 * JVM whose heap is far smaller than the body, and whose temporary
+	 * directory is empty.
+	 */
+	public static final class LargeUpload {
+
+		private static final String UPLOAD_HEADER = "X-Upload-Name";
+
+		private static volatile String receivedLength;
+		private static volatile String receivedHeader;
+		private static volatile int spoolFilesDuringUpload;
+
+		public static void main(final String[] args) {
+			// The stub server thread would keep the JVM alive after an error
+			try {
+				System.exit(run(Long.parseLong(args[0]) * 1024 * 1024));
+			} catch (Throwable e) {
+				e.printStackTrace(System.out);
+				System.exit(-1);
+			}
+		}
+
+		// Returns the number of uploads that failed
+		private static int run(final long length) throws IOException {
+			final File spoolDirectory = new File(System.getProperty("java.io.tmpdir"));
+
+			final HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+			server.createContext("/upload", new HttpHandler() {
+				public void handle(final HttpExchange exchange) throws IOException {
+					receivedLength = exchange.getRequestHeaders().getFirst("Content-Length");
+					receivedHeader = exchange.getRequestHeaders().getFirst(UPLOAD_HEADER);
+					spoolFilesDuringUpload = spoolDirectory.list().length;
+					final CRC32 crc = new CRC32();
+					final InputStream in = exchange.getRequestBody();
+					final byte[] buffer = new byte[8192];
+					int count;
+					while ((count = in.read(buffer)) >= 0) {
+						crc.update(buffer, 0, count);
+					}
+					final byte[] response = Long.toString(crc.getValue()).getBytes();
+					exchange.sendResponseHeaders(200, response.length);
+					final OutputStream out = exchange.getResponseBody();
+					out.write(response);
+					out.close();
+				}
+			});
+			server.start();
+			final URL targetServer = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/");
+
+			final SchemeRegistry schemeRegistry = new SchemeRegistry();
+			schemeRegistry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+			final DefaultHttpClient client = new DefaultHttpClient(
+				new ThreadSafeClientConnManager(new BasicHttpParams(), schemeRegistry), new BasicHttpParams());
+
+			int failures = 0;
+			for (final boolean lengthKnown: new boolean[] {true, false}) {
+				final GeneratedInputStream generated = new GeneratedInputStream(length);
+				final ResponseRecorder recorder = new ResponseRecorder();
+				final HttpEntity[] sent = new HttpEntity[1];
+				new HttpPostRequestHandler(createRequest(generated, lengthKnown ? length : -1), recorder.createResponse(), targetServer, client) {
+					@Override
+					protected HttpRequestBase createHttpCommand(final URI targetUri, final ClientHeadersHandler clientHeadersHandler)
+							throws InvalidCookieException, URISyntaxException, IOException {
+						final HttpRequestBase command = super.createHttpCommand(targetUri, clientHeadersHandler);
+						sent[0] = ((HttpPost) command).getEntity();
+						return command;
+					}
+				}.execute();
+
+				final List<String> problems = new ArrayList<String>();
+				if (recorder.status != 200 || !recorder.body.toString().equals(Long.toString(generated.getCrc()))) {
+					problems.add("body corrupted, status " + recorder.status);
+				}
+				if (!Long.toString(length).equals(receivedLength)) {
+					problems.add("Content-Length " + receivedLength);
+				}
+				if (!"large".equals(receivedHeader)) {
+					problems.add(UPLOAD_HEADER + " " + receivedHeader);
+				}
+				if (!(sent[0] instanceof InputStreamEntity) || sent[0].isRepeatable()) {
+					problems.add("entity " + sent[0]);
+				}
+				if (spoolFilesDuringUpload != (lengthKnown ? 0 : 1)) {
+					problems.add(spoolFilesDuringUpload + " spool files during upload");
+				}
+				if (spoolDirectory.list().length != 0) {
+					problems.add("spool file left after cleanUp");
+				}
+				if (!problems.isEmpty()) {
+					System.out.println("Upload with length known " + lengthKnown + ": " + problems);
+					failures++;
+				}
+			}
+			client.getConnectionManager().shutdown();
+			server.stop(0);
+			return failures;
+		}
+
+		// Returns a POST of body to /upload on the proxy
+		private static HttpServletRequest createRequest(final InputStream body, final long length) {
+			final Map<String, String> headers = new LinkedHashMap<String, String>();
+			headers.put("Content-Type", "application/octet-stream");
+			headers.put(UPLOAD_HEADER, "large");
+			if (length >= 0) {
+				headers.put("Content-Length", Long.toString(length));
+			} else {
+				headers.put("Transfer-Encoding", "chunked");
+			}
+			final ServletInputStream in = new ServletInputStream() {
+				@Override
+				public int read() throws IOException {
+					return body.read();
+				}
+
+				@Override
+				public int read(final byte[] b, final int off, final int len) throws IOException {
+					return body.read(b, off, len);
+				}
+			};
+			return (HttpServletRequest) Proxy.newProxyInstance(LargeUpload.class.getClassLoader(),
+				new Class<?>[] {HttpServletRequest.class}, new InvocationHandler() {
+					public Object invoke(final Object proxy, final Method method, final Object[] args) {
+						final String name = method.getName();
+						if (name.equals("getRequestURL")) {
+							return new StringBuffer("http://localhost:8080/upload");
+						} else if (name.equals("getRequestURI")) {
+							return "/upload";
+						} else if (name.equals("getServerName")) {
+							return "localhost";
+						} else if (name.equals("getServerPort")) {
+							return 8080;
+						} else if (name.equals("getContextPath") || name.equals("getServletPath")) {
+							return "";
+						} else if (name.equals("getContentLength")) {
+							return (int) length;
+						} else if (name.equals("getInputStream")) {
+							return in;
+						} else if (name.equals("getHeaderNames")) {
+							return Collections.enumeration(headers.keySet());
+						} else if (name.equals("getHeaders")) {
+							final String value = headers.get(args[0]);
+							return Collections.enumeration(value == null
+								? Collections.<String>emptyList() : Collections.singletonList(value));
+						} else if (name.equals("getHeader")) {
+							return headers.get(args[0]);
+						}
+						return null;
+					}
+				});
+		}
+	}
+
+	/**
+	 * Keeps the status and body sent to a client
+	 */
+	private static final class ResponseRecorder {
+
+		private int status;
+		private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+
+		private HttpServletResponse createResponse() {
+			final ServletOutputStream out = new ServletOutputStream() {
+				@Override
+				public void write(final int b) {
+					body.write(b);
+				}
+			};
+			return (HttpServletResponse) Proxy.newProxyInstance(ResponseRecorder.class.getClassLoader(),
+				new Class<?>[] {HttpServletResponse.class}, new InvocationHandler() {
+					public Object invoke(final Object proxy, final Method method, final Object[] args) {
+						if (method.getName().equals("setStatus")) {
+							status = (Integer) args[0];
+						} else if (method.getName().equals("getOutputStream")) {
+							return out;
+						}
+						return null;
+					}
+				});
+		}
+	}
+
+	/**
+	 * A stream of pseudo-random bytes that keeps the checksum of what it
+	 * has produced
+	 */
+	private static final class GeneratedInputStream extends InputStream {
+
+		private final CRC32 crc = new CRC32();
+		private long remaining;
+		private int seed = 12345;
+
+		private GeneratedInputStream(final long length) {
+			this.remaining = length;
+		}
+
+		@Override
+		public int read() throws IOException {
+			final byte[] one = new byte[1];
+			return read(one, 0, 1) < 0 ? -1 : one[0] & 0xff;
+		}
+
+		@Override
+		public int read(final byte[] b, final int off, final int len) throws IOException {
+			if (remaining == 0) {
+				return -1;
+			}
+			final int count = (int) Math.min(len, remaining);
+			for (int i = 0; i < count; i++) {
+				seed = seed * 1103515245 + 12345;
+				b[off + i] = (byte) (seed >>> 16);
+			}
+			crc.update(b, off, count);
+			remaining -= count;
+			return count;
+		}
+
+		private long getCrc() {
+			return crc.getValue();
+		}
+	}
+}
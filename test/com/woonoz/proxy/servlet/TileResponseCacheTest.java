@@ -0,0 +1,352 @@
+package com.woonoz.proxy.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Runs a {@link TileResponseCache} against a stub upstream server on a
+ * local port
+ */
+public final class TileResponseCacheTest {
+
+	private static final String ETAG = "\"v1\"";
+
+	private HttpServer server;
+	private String baseUrl;
+
+	// The number of full and conditional requests the stub has answered
+	private final AtomicInteger fullRequests = new AtomicInteger();
+	private final AtomicInteger conditionalRequests = new AtomicInteger();
+
+	// The Cache-Control header the stub sends, or null for none
+	private volatile String cacheControl = "max-age=60";
+
+	private long now = 1000000;
+
+	// Whether the upstream used by getConcurrently fails, and the number
+	// of times it has been called
+	private volatile boolean upstreamFails = false;
+	private final AtomicInteger upstreamCalls = new AtomicInteger();
+
+	@Before
+	public void startServer() throws IOException {
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+		server.createContext("/tiles/", new HttpHandler() {
+			public void handle(final HttpExchange exchange) throws IOException {
+				if (ETAG.equals(exchange.getRequestHeaders().getFirst("If-None-Match"))) {
+					conditionalRequests.incrementAndGet();
+					exchange.sendResponseHeaders(CachedResponse.STATUS_NOT_MODIFIED, -1);
+					exchange.close();
+					return;
+				}
+				fullRequests.incrementAndGet();
+				final byte[] body = exchange.getRequestURI().getPath().getBytes("UTF-8");
+				if (cacheControl != null) {
+					exchange.getResponseHeaders().add("Cache-Control", cacheControl);
+				}
+				exchange.getResponseHeaders().add("ETag", ETAG);
+				exchange.sendResponseHeaders(CachedResponse.STATUS_OK, body.length);
+				final OutputStream out = exchange.getResponseBody();
+				out.write(body);
+				out.close();
+			}
+		});
+		server.start();
+		baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+	}
+
+	@After
+	public void stopServer() {
+		server.stop(0);
+	}
+
+	private TileResponseCache createCache(final long maxBytes, final String sessionCookieName) {
+		return new TileResponseCache(maxBytes, sessionCookieName) {
+			@Override
+			protected long now() {
+				return now;
+			}
+		};
+	}
+
+	private String get(final TileResponseCache cache, final String path, final String cookieHeader) throws IOException {
+		return new String(getResponse(cache, path, cookieHeader).getBody(), "UTF-8");
+	}
+
+	private CachedResponse getResponse(final TileResponseCache cache, final String path, final String cookieHeader) throws IOException {
+		final String uri = baseUrl + path;
+		return cache.get(uri, cookieHeader, new TileResponseCache.Upstream() {
+			public CachedResponse fetch(final String etag) throws IOException {
+				return fetchFromStub(uri, etag);
+			}
+		});
+	}
+
+	private CachedResponse fetchFromStub(final String uri, final String etag) throws IOException {
+		final HttpURLConnection connection = (HttpURLConnection) new URL(uri).openConnection();
+		if (etag != null) {
+			connection.setRequestProperty("If-None-Match", etag);
+		}
+		final int status = connection.getResponseCode();
+		final List<CachedResponse.HeaderField> headers = new ArrayList<CachedResponse.HeaderField>();
+		for (final Map.Entry<String, List<String>> header: connection.getHeaderFields().entrySet()) {
+			if (header.getKey() != null) {
+				for (final String value: header.getValue()) {
+					headers.add(new CachedResponse.HeaderField(header.getKey(), value));
+				}
+			}
+		}
+		final ByteArrayOutputStream body = new ByteArrayOutputStream();
+		if (status == CachedResponse.STATUS_OK) {
+			final InputStream in = connection.getInputStream();
+			final byte[] buffer = new byte[1024];
+			int count;
+			while ((count = in.read(buffer)) >= 0) {
+				body.write(buffer, 0, count);
+			}
+			in.close();
+		}
+		connection.disconnect();
+		return new CachedResponse(status, headers, body.toByteArray(), now);
+	}
+
+	@Test
+	public void testFreshResponseIsHit() throws IOException {
+		final TileResponseCache cache = createCache(1 << 20, null);
+
+		assertEquals("/tiles/1.json", get(cache, "/tiles/1.json", null));
+		assertEquals("/tiles/1.json", get(cache, "/tiles/1.json", null));
+
+		assertEquals(1, fullRequests.get());
+		assertEquals(1, cache.getMissCount());
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getEntryCount());
+	}
+
+	@Test
+	public void testStaleResponseIsRevalidated() throws IOException {
+		final TileResponseCache cache = createCache(1 << 20, null);
+
+		get(cache, "/tiles/1.json", null);
+		now += 61 * 1000;
+		assertEquals("/tiles/1.json", get(cache, "/tiles/1.json", null));
+
+		assertEquals(1, fullRequests.get());
+		assertEquals(1, conditionalRequests.get());
+		assertEquals(1, cache.getRevalidationCount());
+
+		// The 304 renewed the freshness of the response
+		get(cache, "/tiles/1.json", null);
+		assertEquals(1, conditionalRequests.get());
+		assertEquals(1, cache.getHitCount());
+	}
+
+	@Test
+	public void testAgeCountsFromLastRevalidation() throws IOException {
+		final TileResponseCache cache = createCache(1 << 20, null);
+
+		get(cache, "/tiles/1.json", null);
+		now += 30 * 1000 + 500;
+		assertEquals(30, getResponse(cache, "/tiles/1.json", null).getAgeSeconds(now));
+
+		// The 304 restarts the age
+		now += 31 * 1000;
+		assertEquals(0, getResponse(cache, "/tiles/1.json", null).getAgeSeconds(now));
+	}
+
+	@Test
+	public void testNoStoreIsNotCached() throws IOException {
+		cacheControl = "no-store";
+		final TileResponseCache cache = createCache(1 << 20, null);
+
+		get(cache, "/tiles/1.json", null);
+		get(cache, "/tiles/1.json", null);
+
+		assertEquals(2, fullRequests.get());
+		assertEquals(0, cache.getEntryCount());
+	}
+
+	@Test
+	public void testNoCacheIsRevalidatedEveryTime() throws IOException {
+		cacheControl = "no-cache";
+		final TileResponseCache cache = createCache(1 << 20, null);
+
+		get(cache, "/tiles/1.json", null);
+		get(cache, "/tiles/1.json", null);
+
+		assertEquals(1, fullRequests.get());
+		assertEquals(1, conditionalRequests.get());
+		assertEquals(0, cache.getHitCount());
+	}
+
+	@Test
+	public void testSessionsHaveSeparateEntries() throws IOException {
+		final TileResponseCache cache = createCache(1 << 20, "session");
+
+		get(cache, "/tiles/1.json", "session=alice; theme=dark");
+		get(cache, "/tiles/1.json", "theme=light; session=alice");
+		get(cache, "/tiles/1.json", "session=bob");
+
+		assertEquals(2, fullRequests.get());
+		assertEquals(1, cache.getHitCount());
+		assertEquals(2, cache.getEntryCount());
+		assertEquals(cache.buildKey("/a", "session=x"), cache.buildKey("/a", "other=y; session=x"));
+	}
+
+	@Test
+	public void testLeastRecentlyUsedIsEvicted() throws IOException {
+		final TileResponseCache probe = createCache(1 << 20, null);
+		get(probe, "/tiles/1.json", null);
+		final long entryBytes = probe.getByteCount();
+
+		// Room for eight entries but not nine
+		final TileResponseCache cache = createCache(8 * entryBytes + entryBytes / 2, null);
+		for (int i = 1; i <= 8; i++) {
+			get(cache, "/tiles/" + i + ".json", null);
+		}
+		get(cache, "/tiles/1.json", null);
+		get(cache, "/tiles/9.json", null);
+
+		assertEquals(1, cache.getEvictionCount());
+		assertEquals(8, cache.getEntryCount());
+		assertEquals(8 * entryBytes, cache.getByteCount());
+
+		// 2 was the least recently used, so it is fetched again
+		final int before = fullRequests.get();
+		get(cache, "/tiles/1.json", null);
+		get(cache, "/tiles/2.json", null);
+		assertEquals(before + 1, fullRequests.get());
+	}
+
+	@Test
+	public void testLargeResponseIsNotCached() throws IOException {
+		final TileResponseCache cache = createCache(64, null);
+
+		get(cache, "/tiles/1.json", null);
+
+		assertEquals(0, cache.getEntryCount());
+		assertEquals(0, cache.getByteCount());
+	}
+
+	@Test
+	public void testCacheControlParsing() {
+		final List<CachedResponse.HeaderField> headers = new ArrayList<CachedResponse.HeaderField>();
+		headers.add(new CachedResponse.HeaderField("Cache-Control", "public, max-age=10, s-maxage=100"));
+		final CachedResponse response = new CachedResponse(CachedResponse.STATUS_OK, headers, new byte[0], 0);
+
+		assertEquals(true, response.isFresh(99 * 1000));
+		assertEquals(false, response.isFresh(100 * 1000));
+		assertEquals(true, response.isStorable());
+		assertNull(response.getEtag());
+	}
+
+	// Makes requests threads requests for path at once, through an upstream
+	// that holds every request until release is counted down, and returns
+	// the bodies
+	private List<Future<String>> getConcurrently(final TileResponseCache cache, final String path, final int threads, final CountDownLatch release) throws InterruptedException {
+		final ExecutorService executor = Executors.newFixedThreadPool(threads);
+		final List<Future<String>> results = new ArrayList<Future<String>>();
+		for (int i = 0; i < threads; i++) {
+			results.add(executor.submit(new Callable<String>() {
+				public String call() throws Exception {
+					final String uri = baseUrl + path;
+					final CachedResponse response = cache.get(uri, null, new TileResponseCache.Upstream() {
+						public CachedResponse fetch(final String etag) throws IOException {
+							try {
+								release.await();
+							} catch (InterruptedException e) {
+								throw new IOException(e);
+							}
+							upstreamCalls.incrementAndGet();
+							if (upstreamFails) {
+								throw new IOException("Upstream unreachable");
+							}
+							return fetchFromStub(uri, etag);
+						}
+					});
+					return new String(response.getBody(), "UTF-8");
+				}
+			}));
+		}
+		// Give every thread time to reach the cache before releasing
+		Thread.sleep(200);
+		assertEquals(1, cache.getInFlightCount());
+		release.countDown();
+		executor.shutdown();
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+		return results;
+	}
+
+	@Test
+	public void testConcurrentRequestsShareUpstreamRequest() throws Exception {
+		final TileResponseCache cache = createCache(1 << 20, null);
+
+		final List<Future<String>> results = getConcurrently(cache, "/tiles/1.json", 8, new CountDownLatch(1));
+
+		for (final Future<String> result: results) {
+			assertEquals("/tiles/1.json", result.get());
+		}
+		assertEquals(1, fullRequests.get());
+		assertEquals(7, cache.getCoalescedCount());
+		assertEquals(0, cache.getInFlightCount());
+	}
+
+	@Test
+	public void testUncacheableResponsesAreShared() throws Exception {
+		cacheControl = "no-store";
+		final TileResponseCache cache = createCache(1 << 20, null);
+
+		getConcurrently(cache, "/tiles/1.json", 4, new CountDownLatch(1));
+
+		assertEquals(1, fullRequests.get());
+		assertEquals(3, cache.getCoalescedCount());
+		assertEquals(0, cache.getEntryCount());
+	}
+
+	@Test
+	public void testFailureIsShared() throws Exception {
+		final TileResponseCache cache = createCache(1 << 20, null);
+		upstreamFails = true;
+
+		final List<Future<String>> results = getConcurrently(cache, "/tiles/1.json", 4, new CountDownLatch(1));
+
+		for (final Future<String> result: results) {
+			try {
+				result.get();
+				assertTrue("Expected a failure", false);
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof IOException);
+			}
+		}
+		assertEquals(1, upstreamCalls.get());
+		assertEquals(0, cache.getInFlightCount());
+	}
+}
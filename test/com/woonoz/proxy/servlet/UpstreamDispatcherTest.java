@@ -0,0 +1,225 @@
+package com.woonoz.proxy.servlet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Runs requests against a stub upstream server that holds every request
+ * until the test releases it, with a small fixed pool standing in for the
+ * container's threads and a dispatcher no larger than that pool
+ */
+public final class UpstreamDispatcherTest {
+
+	private static final int CONTAINER_THREADS = 4;
+	private static final int DISPATCHER_THREADS = CONTAINER_THREADS;
+	private static final int REQUESTS = 3 * CONTAINER_THREADS;
+	private static final long WAIT_SECONDS = 10;
+
+	private HttpServer server;
+	private ExecutorService serverThreads;
+	private URL tileUrl;
+	private ThreadPoolExecutor container;
+
+	// The upstream requests being worked on now, and the most at once
+	private final AtomicInteger inFlight = new AtomicInteger();
+	private final AtomicInteger maxInFlight = new AtomicInteger();
+	private final CountDownLatch releaseUpstream = new CountDownLatch(1);
+
+	@Before
+	public void setUp() throws IOException {
+		serverThreads = Executors.newCachedThreadPool();
+		server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), REQUESTS);
+		server.setExecutor(serverThreads);
+		server.createContext("/tiles/", new HttpHandler() {
+			public void handle(final HttpExchange exchange) throws IOException {
+				final int now = inFlight.incrementAndGet();
+				int max;
+				do {
+					max = maxInFlight.get();
+				} while (now > max && !maxInFlight.compareAndSet(max, now));
+				try {
+					releaseUpstream.await();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				inFlight.decrementAndGet();
+				final byte[] body = "tile".getBytes();
+				exchange.sendResponseHeaders(200, body.length);
+				final OutputStream out = exchange.getResponseBody();
+				out.write(body);
+				out.close();
+			}
+		});
+		server.start();
+		tileUrl = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/tiles/1.json");
+		container = (ThreadPoolExecutor) Executors.newFixedThreadPool(CONTAINER_THREADS);
+	}
+
+	@After
+	public void tearDown() {
+		releaseUpstream.countDown();
+		container.shutdownNow();
+		server.stop(0);
+		serverThreads.shutdownNow();
+	}
+
+	private final Runnable fetchTile = new Runnable() {
+		public void run() {
+			try {
+				final InputStream in = tileUrl.openStream();
+				while (in.read() >= 0) {
+					// Read the whole body, as relaying it would
+				}
+				in.close();
+			} catch (IOException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	};
+
+	// Waits until the upstream server is working on count requests
+	private void awaitInFlight(final int count) throws InterruptedException {
+		final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(WAIT_SECONDS);
+		while (inFlight.get() < count) {
+			assertTrue("only " + inFlight.get() + " upstream requests in flight", System.nanoTime() < deadline);
+			Thread.sleep(10);
+		}
+	}
+
+	// Submits count requests that only count down done to the container
+	private CountDownLatch runLocalRequests(final int count) {
+		final CountDownLatch done = new CountDownLatch(count);
+		for (int i = 0; i < count; i++) {
+			container.execute(new Runnable() {
+				public void run() {
+					done.countDown();
+				}
+			});
+		}
+		return done;
+	}
+
+	@Test
+	public void testSynchronousRequestsHoldContainerThreads() throws InterruptedException {
+		final CountDownLatch done = new CountDownLatch(REQUESTS);
+		for (int i = 0; i < REQUESTS; i++) {
+			container.execute(new Runnable() {
+				public void run() {
+					fetchTile.run();
+					done.countDown();
+				}
+			});
+		}
+		awaitInFlight(CONTAINER_THREADS);
+
+		// Every container thread waits on the upstream server, so even a
+		// request that never goes upstream has to queue behind them
+		assertEquals(CONTAINER_THREADS, container.getActiveCount());
+		final CountDownLatch local = runLocalRequests(1);
+		assertEquals(REQUESTS - CONTAINER_THREADS + 1, container.getQueue().size());
+		assertEquals(1, local.getCount());
+
+		releaseUpstream.countDown();
+		assertTrue(done.await(WAIT_SECONDS, TimeUnit.SECONDS));
+		assertTrue(local.await(WAIT_SECONDS, TimeUnit.SECONDS));
+		assertEquals(CONTAINER_THREADS, maxInFlight.get());
+	}
+
+	@Test
+	public void testDispatchedRequestsFreeContainerThreads() throws InterruptedException {
+		final UpstreamDispatcher dispatcher = new UpstreamDispatcher(DISPATCHER_THREADS);
+		try {
+			final CountDownLatch done = new CountDownLatch(REQUESTS);
+			final UpstreamDispatcher.Completion completion = new UpstreamDispatcher.Completion() {
+				public void complete() {
+					done.countDown();
+				}
+			};
+			final CountDownLatch dispatched = new CountDownLatch(REQUESTS);
+			for (int i = 0; i < REQUESTS; i++) {
+				container.execute(new Runnable() {
+					public void run() {
+						dispatcher.dispatch(fetchTile, completion);
+						dispatched.countDown();
+					}
+				});
+			}
+			assertTrue(dispatched.await(WAIT_SECONDS, TimeUnit.SECONDS));
+			awaitInFlight(DISPATCHER_THREADS);
+
+			// The upstream requests wait in the dispatcher, and the
+			// container's threads serve other requests in the meantime
+			assertEquals(DISPATCHER_THREADS, dispatcher.getActiveCount());
+			assertEquals(REQUESTS - DISPATCHER_THREADS, dispatcher.getQueuedCount());
+			assertTrue(runLocalRequests(REQUESTS).await(WAIT_SECONDS, TimeUnit.SECONDS));
+			assertEquals(DISPATCHER_THREADS, inFlight.get());
+
+			releaseUpstream.countDown();
+			assertTrue(done.await(WAIT_SECONDS, TimeUnit.SECONDS));
+			assertEquals(DISPATCHER_THREADS, maxInFlight.get());
+			assertEquals(REQUESTS, dispatcher.getCompletedCount());
+		} finally {
+			dispatcher.shutdown();
+		}
+	}
+
+	@Test
+	public void testCompletionAfterFailure() throws InterruptedException {
+		final UpstreamDispatcher dispatcher = new UpstreamDispatcher(1);
+		final CountDownLatch done = new CountDownLatch(1);
+		dispatcher.dispatch(new Runnable() {
+			public void run() {
+				throw new IllegalStateException("upstream failed");
+			}
+		}, new UpstreamDispatcher.Completion() {
+			public void complete() {
+				done.countDown();
+			}
+		});
+
+		assertTrue(done.await(5, TimeUnit.SECONDS));
+		dispatcher.shutdown();
+	}
+
+	@Test
+	public void testRunsOnCallerAfterShutdown() {
+		final UpstreamDispatcher dispatcher = new UpstreamDispatcher(1);
+		dispatcher.shutdown();
+
+		final AtomicInteger runs = new AtomicInteger();
+		final Thread caller = Thread.currentThread();
+		dispatcher.dispatch(new Runnable() {
+			public void run() {
+				assertEquals(caller, Thread.currentThread());
+				runs.incrementAndGet();
+			}
+		}, new UpstreamDispatcher.Completion() {
+			public void complete() {
+				runs.incrementAndGet();
+			}
+		});
+
+		assertEquals(2, runs.get());
+		assertEquals(0, dispatcher.getActiveCount());
+	}
+}
@@ -0,0 +1,44 @@
+package org.bodytrack.client;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public final class AxisTransitionTest {
+	private static final double EPSILON = 1e-9;
+
+	@Test
+	public void testWidthChangesGeometrically() {
+		assertEquals(100, AxisTransition.interpolateWidth(100, 1, 0), EPSILON);
+		assertEquals(10, AxisTransition.interpolateWidth(100, 1, 0.5), EPSILON);
+		assertEquals(1, AxisTransition.interpolateWidth(100, 1, 1), EPSILON);
+		assertEquals(5, AxisTransition.interpolateWidth(5, 5, 0.3), EPSILON);
+	}
+
+	@Test
+	public void testZoomKeepsAnchorStill() {
+		// Zoom from [0, 100] to [79.2, 89.2], which keeps 88 at the same
+		// fraction of the way across the axis
+		final double startWidth = 100;
+		final double targetWidth = 10;
+		final double anchor = 88;
+
+		for (double progress = 0; progress <= 1; progress += 0.125) {
+			final double width = AxisTransition.interpolateWidth(startWidth,
+				targetWidth, progress);
+			final double center = AxisTransition.interpolateCenter(50, 84.2,
+				startWidth, targetWidth, width, progress);
+			final double min = center - width / 2;
+
+			assertEquals(0.88, (anchor - min) / width, EPSILON);
+		}
+	}
+
+	@Test
+	public void testPanIsLinear() {
+		assertEquals(25, AxisTransition.interpolateCenter(0, 100, 10, 10, 10,
+			0.25), EPSILON);
+		assertEquals(100, AxisTransition.interpolateCenter(0, 100, 10, 10, 10,
+			1), EPSILON);
+	}
+}
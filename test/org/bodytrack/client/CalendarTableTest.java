@@ -0,0 +1,144 @@
+package org.bodytrack.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public final class CalendarTableTest {
+	// 2012-01-01T00:00:00Z
+	private static final double START = 1325376000;
+	private static final double END = START + 366.0 * 24 * 60 * 60;
+
+	private TimeZone savedZone;
+
+	@Before
+	public void setUp() {
+		savedZone = TimeZone.getDefault();
+		TimeZone.setDefault(TimeZone.getTimeZone("America/New_York"));
+	}
+
+	@After
+	public void tearDown() {
+		TimeZone.setDefault(savedZone);
+	}
+
+	@Test
+	public void testCivilRoundTrip() {
+		assertEquals(0, CalendarTable.daysFromCivil(1970, 1, 1));
+		assertEquals(-1, CalendarTable.daysFromCivil(1969, 12, 31));
+		assertEquals(11016, CalendarTable.daysFromCivil(2000, 2, 29));
+		assertEquals(4, CalendarTable.getWeekday(0));
+		assertEquals(3, CalendarTable.getWeekday(-1));
+	}
+
+	@Test
+	public void testFloorDivide() {
+		assertEquals(-1, CalendarTable.floorDivide(-1, 12));
+		assertEquals(-1, CalendarTable.floorDivide(-12, 12));
+		assertEquals(-2, CalendarTable.floorDivide(-13, 12));
+		assertEquals(1, CalendarTable.floorDivide(12, 12));
+		assertEquals(11, CalendarTable.floorMod(-1, 12));
+	}
+
+	@Test
+	public void testDaysMatchCalendar() {
+		final CalendarTable table =
+			CalendarTable.forRange(null, null, START, END);
+		final Calendar cal = Calendar.getInstance();
+
+		// Step by 5 hours, so that every hour of the day is covered
+		for (double time = START; time < END; time += 5 * 60 * 60) {
+			cal.setTimeInMillis((long) time * 1000);
+			final int day = table.dayNumber(time);
+
+			assertEquals(cal.get(Calendar.YEAR), table.getYear(day));
+			assertEquals(cal.get(Calendar.MONTH), table.getMonth(day));
+			assertEquals(cal.get(Calendar.DAY_OF_MONTH), table.getDate(day));
+			assertEquals(cal.get(Calendar.DAY_OF_WEEK) - 1,
+				CalendarTable.getWeekday(day));
+			assertEquals(cal.get(Calendar.HOUR_OF_DAY) * 3600
+				+ cal.get(Calendar.MINUTE) * 60,
+				table.getSecondOfDay(time), 0);
+
+			cal.set(Calendar.HOUR_OF_DAY, 0);
+			cal.set(Calendar.MINUTE, 0);
+			cal.set(Calendar.SECOND, 0);
+			cal.set(Calendar.MILLISECOND, 0);
+			assertEquals(cal.getTimeInMillis() / 1000,
+				table.getDayStart(day), 0);
+		}
+	}
+
+	@Test
+	public void testOutsideTableMatchesTable() {
+		final CalendarTable table =
+			CalendarTable.forRange(null, null, START, START + 24 * 60 * 60);
+		final CalendarTable wide =
+			CalendarTable.forRange(null, null, START - 1e8, END + 1e8);
+
+		final int day = table.dayNumber(END);
+		assertEquals(wide.dayNumber(END), day);
+		assertEquals(wide.getDayStart(day), table.getDayStart(day), 0);
+		assertEquals(wide.getYear(day), table.getYear(day));
+	}
+
+	@Test
+	public void testDaylightSavingDays() {
+		final CalendarTable table =
+			CalendarTable.forRange(null, null, START, END);
+
+		// 2012-03-11 had 23 hours in New York, and 2012-11-04 had 25
+		final int spring = CalendarTable.daysFromCivil(2012, 3, 11);
+		final int fall = CalendarTable.daysFromCivil(2012, 11, 4);
+		assertEquals(23 * 3600, table.getDayStart(spring + 1)
+			- table.getDayStart(spring), 0);
+		assertEquals(25 * 3600, table.getDayStart(fall + 1)
+			- table.getDayStart(fall), 0);
+	}
+
+	@Test
+	public void testNextAndClosestDayStart() {
+		final CalendarTable table =
+			CalendarTable.forRange(null, null, START, END);
+		final int day = CalendarTable.daysFromCivil(2012, 6, 1);
+		final double midnight = table.getDayStart(day);
+
+		assertEquals(midnight, table.getNextDayStart(midnight), 0);
+		assertEquals(table.getDayStart(day + 1),
+			table.getNextDayStart(midnight + 1), 0);
+		assertEquals(midnight, table.getClosestDayStart(midnight + 3600), 0);
+		assertEquals(table.getDayStart(day + 1),
+			table.getClosestDayStart(midnight + 13 * 3600), 0);
+		assertEquals(table.getDayStart(CalendarTable.daysFromCivil(2013, 2, 1)),
+			table.getDateStart(2012, 13, 1), 0);
+	}
+
+	@Test
+	public void testMappingOverridesBrowserZone() {
+		// Spend the first half of 2012 in New York time, then fly to
+		// Tokyo on June 1
+		final double flight = 1338508800; // 2012-06-01T00:00:00Z
+		final TimeZoneMapping mapping = new TimeZoneMapping(
+			new double[] {flight}, new int[] {-5 * 3600, 9 * 3600});
+		final CalendarTable table =
+			CalendarTable.forRange(null, mapping, START, END);
+
+		assertEquals(START + 5 * 3600, table.getDayStart(
+			CalendarTable.daysFromCivil(2012, 1, 1)), 0);
+		assertEquals(flight + 15 * 3600, table.getDayStart(
+			CalendarTable.daysFromCivil(2012, 6, 2)), 0);
+		assertEquals(9 * 3600, table.getSecondOfDay(flight), 0);
+
+		// A different mapping needs a different table
+		assertSame(table, CalendarTable.forRange(table, mapping, START, END));
+		assertNotSame(table, CalendarTable.forRange(table,
+			TimeZoneMapping.fixedOffset(0), START, END));
+	}
+}
@@ -0,0 +1,62 @@
+package org.bodytrack.client;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public final class ClusterPyramidTest {
+	private static final double[] TIMES = {0.5, 1.5, 2.5, 3.5, 8.0, 9.0};
+	private static final int[] COUNTS = {1, 2, 0, 1, 3, 1};
+
+	@Test
+	public void testLevelFor() {
+		assertEquals(0, ClusterPyramid.levelFor(1));
+		assertEquals(2, ClusterPyramid.levelFor(3));
+		assertEquals(2, ClusterPyramid.levelFor(4));
+		assertEquals(-1, ClusterPyramid.levelFor(0.5));
+	}
+
+	@Test
+	public void testFinestLevelSkipsZeroCounts() {
+		final ClusterPyramid.Level level =
+			new ClusterPyramid(TIMES, COUNTS).getLevel(0);
+
+		// The photo at 2.5 has count 0, so it is in no cluster
+		assertEquals(5, level.size());
+		assertEquals(3, level.getRepresentative(2));
+		assertEquals(1, level.getCount(2));
+	}
+
+	@Test
+	public void testCoarseLevelSumsCounts() {
+		final ClusterPyramid.Level level =
+			new ClusterPyramid(TIMES, COUNTS).getLevel(2);
+
+		// Cells [0, 4) and [8, 12)
+		assertEquals(2, level.size());
+		assertEquals(0, level.getRepresentative(0));
+		assertEquals(4, level.getCount(0));
+		assertEquals(4, level.getRepresentative(1));
+		assertEquals(4, level.getCount(1));
+	}
+
+	@Test
+	public void testFirstIndexAtOrAfter() {
+		final ClusterPyramid.Level level =
+			new ClusterPyramid(TIMES, COUNTS).getLevel(0);
+
+		assertEquals(0, level.firstIndexAtOrAfter(-5));
+		assertEquals(2, level.firstIndexAtOrAfter(2.0));
+		assertEquals(3, level.firstIndexAtOrAfter(8.0));
+		assertEquals(5, level.firstIndexAtOrAfter(100));
+	}
+
+	@Test
+	public void testEmpty() {
+		final ClusterPyramid.Level level =
+			new ClusterPyramid(new double[0], new int[0]).getLevel(3);
+
+		assertEquals(0, level.size());
+		assertEquals(0, level.firstIndexAtOrAfter(1));
+	}
+}
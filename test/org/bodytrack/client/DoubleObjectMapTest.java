@@ -0,0 +1,70 @@
+package org.bodytrack.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+public final class DoubleObjectMapTest {
+	@Test
+	public void testKeysDifferingOnlyInHighBits() {
+		final DoubleObjectMap<String> map = new DoubleObjectMap<String>();
+		map.put(1, "low");
+		map.put(Math.pow(2, 40), "high");
+		map.put(Math.pow(2, 40) + 1, "both");
+
+		assertEquals("low", map.get(1));
+		assertEquals("high", map.get(Math.pow(2, 40)));
+		assertEquals("both", map.get(Math.pow(2, 40) + 1));
+		assertNull(map.get(0));
+	}
+
+	@Test
+	public void testNegativeAndLargeKeys() {
+		final DoubleObjectMap<Double> map = new DoubleObjectMap<Double>();
+		final double[] keys = {
+			-1, -256, -Math.pow(2, 52), Math.pow(2, 31), Math.pow(2, 32) - 1,
+			Math.pow(2, 52), 0.5
+		};
+		for (final double key: keys)
+			map.put(key, key);
+
+		for (final double key: keys)
+			assertEquals(Double.valueOf(key), map.get(key));
+		assertEquals(keys.length, map.size());
+		assertNull(map.get(-2));
+	}
+
+	@Test
+	public void testTileKeysAreUnique() {
+		final Set<Double> keys = new HashSet<Double>();
+		for (int level = -40; level <= 40; level++) {
+			for (long offset = -5; offset <= 5; offset++)
+				keys.add(new TileDescription(level, offset).getKey());
+			keys.add(TileDescription.getKey(level, 2800000000L));
+		}
+
+		assertEquals(81 * 12, keys.size());
+	}
+
+	@Test
+	public void testValuesIteration() {
+		final DoubleObjectMap<Long> map = new DoubleObjectMap<Long>();
+		long sum = 0;
+		for (long i = 0; i < 500; i++) {
+			map.put(TileDescription.getKey(-3, i), i);
+			sum += i;
+		}
+		map.remove(TileDescription.getKey(-3, 7));
+
+		long iterated = 0;
+		for (final Long value: map.values())
+			iterated += value;
+
+		assertEquals(sum - 7, iterated);
+		assertEquals(499, map.size());
+	}
+}
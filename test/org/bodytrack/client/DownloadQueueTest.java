@@ -0,0 +1,115 @@
+package org.bodytrack.client;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public final class DownloadQueueTest {
+	private static final Object OWNER = new Object();
+
+	private List<String> started;
+	private DownloadQueue<String> queue;
+
+	@Before
+	public void setUp() {
+		started = new ArrayList<String>();
+		queue = new DownloadQueue<String>(2,
+			new DownloadQueue.Downloader<String>() {
+				@Override
+				public void start(final String key) {
+					started.add(key);
+				}
+			});
+	}
+
+	@Test
+	public void testStartsNearestFirstUpToLimit() {
+		queue.beginRequests(OWNER);
+		queue.request("far", OWNER, 0, 300);
+		queue.request("near", OWNER, 0, 10);
+		queue.request("middle", OWNER, 0, 100);
+		queue.endRequests(OWNER);
+
+		assertEquals(Arrays.asList("near", "middle"), started);
+		assertEquals(2, queue.getActiveCount());
+		assertEquals(1, queue.getQueuedCount());
+
+		queue.finished("near");
+		assertEquals(Arrays.asList("near", "middle", "far"), started);
+	}
+
+	@Test
+	public void testLowerTierFirst() {
+		queue.beginRequests(OWNER);
+		queue.request("full", OWNER, 1, 0);
+		queue.request("thumb1", OWNER, 0, 500);
+		queue.request("thumb2", OWNER, 0, 600);
+		queue.endRequests(OWNER);
+
+		assertEquals(Arrays.asList("thumb1", "thumb2"), started);
+	}
+
+	@Test
+	public void testCancelsRequestsNotRepeated() {
+		queue.setMaxActive(1);
+
+		queue.beginRequests(OWNER);
+		queue.request("a", OWNER, 0, 0);
+		queue.request("b", OWNER, 0, 1);
+		queue.request("c", OWNER, 0, 2);
+		queue.endRequests(OWNER);
+		assertEquals(Arrays.asList("a"), started);
+
+		// Only c is still in view on the next paint
+		queue.beginRequests(OWNER);
+		queue.request("c", OWNER, 0, 2);
+		queue.endRequests(OWNER);
+		assertEquals(1, queue.getQueuedCount());
+
+		queue.finished("a");
+		assertEquals(Arrays.asList("a", "c"), started);
+	}
+
+	@Test
+	public void testOtherOwnersKeepTheirRequests() {
+		final Object other = new Object();
+		queue.setMaxActive(1);
+
+		queue.beginRequests(OWNER);
+		queue.request("a", OWNER, 0, 0);
+		queue.beginRequests(other);
+		queue.request("b", other, 0, 1);
+		queue.endRequests(other);
+		queue.endRequests(OWNER);
+
+		queue.beginRequests(OWNER);
+		queue.endRequests(OWNER);
+
+		queue.finished("a");
+		assertEquals(Arrays.asList("a", "b"), started);
+	}
+
+	@Test
+	public void testActiveDownloadNotRequeued() {
+		queue.beginRequests(OWNER);
+		queue.request("a", OWNER, 0, 0);
+		queue.endRequests(OWNER);
+
+		queue.beginRequests(OWNER);
+		queue.request("a", OWNER, 0, 0);
+		queue.endRequests(OWNER);
+
+		assertEquals(Arrays.asList("a"), started);
+		assertEquals(0, queue.getQueuedCount());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testRequestBeforeBeginRejected() {
+		queue.request("a", OWNER, 0, 0);
+	}
+}
@@ -0,0 +1,125 @@
+package org.bodytrack.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public final class ImageCacheTest {
+	private List<String> released;
+	private ImageCache<String> cache;
+
+	@Before
+	public void setUp() {
+		released = new ArrayList<String>();
+		cache = new ImageCache<String>(100,
+			new ImageCache.ReleaseHandler<String>() {
+				@Override
+				public void release(final String key) {
+					released.add(key);
+				}
+			});
+	}
+
+	@Test
+	public void testWithinBudgetReleasesNothing() {
+		cache.noteDrawn("a", 40);
+		cache.noteDrawn("b", 60);
+
+		assertTrue(released.isEmpty());
+		assertEquals(100, cache.getPixelCount());
+		assertEquals(2, cache.size());
+	}
+
+	@Test
+	public void testReleasesLeastRecentlyDrawn() {
+		cache.noteDrawn("a", 40);
+		cache.noteDrawn("b", 40);
+		cache.noteDrawn("a", 40);
+		cache.noteDrawn("c", 40);
+
+		assertEquals(Arrays.asList("b"), released);
+		assertFalse(cache.contains("b"));
+		assertEquals(80, cache.getPixelCount());
+	}
+
+	@Test
+	public void testRedrawUpdatesPixelCount() {
+		cache.noteDrawn("a", 10);
+		cache.noteDrawn("b", 10);
+		cache.noteDrawn("a", 95);
+
+		assertEquals(Arrays.asList("b"), released);
+		assertEquals(95, cache.getPixelCount());
+	}
+
+	@Test
+	public void testNeverReleasesImageJustDrawn() {
+		cache.noteDrawn("a", 50);
+		cache.noteDrawn("huge", 500);
+
+		assertEquals(Arrays.asList("a"), released);
+		assertTrue(cache.contains("huge"));
+		assertEquals(500, cache.getPixelCount());
+	}
+
+	@Test
+	public void testRemoveDoesNotRelease() {
+		cache.noteDrawn("a", 50);
+		cache.remove("a");
+		cache.remove("missing");
+
+		assertTrue(released.isEmpty());
+		assertEquals(0, cache.getPixelCount());
+	}
+
+	@Test
+	public void testKeepsImagesDrawnDuringPaint() {
+		cache.beginPaint();
+		cache.noteDrawn("a", 60);
+		cache.noteDrawn("b", 60);
+
+		// Both images may still be waiting in a buffer
+		assertTrue(released.isEmpty());
+		assertEquals(120, cache.getPixelCount());
+
+		cache.endPaint();
+		assertEquals(Arrays.asList("a"), released);
+		assertEquals(60, cache.getPixelCount());
+	}
+
+	@Test
+	public void testOverlappingPaints() {
+		cache.noteDrawn("old", 50);
+		cache.beginPaint();
+		cache.noteDrawn("a", 40);
+		cache.beginPaint();
+		cache.noteDrawn("b", 40);
+
+		// Images drawn before the paints can still go
+		assertEquals(Arrays.asList("old"), released);
+
+		cache.noteDrawn("c", 40);
+		cache.endPaint();
+		assertEquals(Arrays.asList("old"), released);
+
+		cache.endPaint();
+		assertEquals(Arrays.asList("old", "a"), released);
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testUnmatchedEndPaint() {
+		cache.endPaint();
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testNegativePixelsRejected() {
+		cache.noteDrawn("a", -1);
+	}
+}
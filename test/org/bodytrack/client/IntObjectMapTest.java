@@ -0,0 +1,74 @@
+package org.bodytrack.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Set;
+
+import org.junit.Test;
+
+public final class IntObjectMapTest {
+	@Test
+	public void testPutGetRemove() {
+		final IntObjectMap<String> map = new IntObjectMap<String>();
+
+		assertNull(map.put(5, "five"));
+		assertEquals("five", map.put(5, "FIVE"));
+		assertEquals("FIVE", map.get(5));
+		assertNull(map.get(6));
+		assertEquals(1, map.size());
+
+		assertEquals("FIVE", map.remove(5));
+		assertNull(map.remove(5));
+		assertFalse(map.containsKey(5));
+		assertTrue(map.isEmpty());
+	}
+
+	@Test
+	public void testManyKeysSurviveResizesAndRemovals() {
+		final IntObjectMap<Integer> map = new IntObjectMap<Integer>();
+		for (int i = -1000; i < 1000; i++)
+			map.put(i * 65536, i);
+		for (int i = -1000; i < 1000; i += 2)
+			map.remove(i * 65536);
+
+		assertEquals(1000, map.size());
+		for (int i = -1000; i < 1000; i++)
+			assertEquals(i % 2 != 0 ? Integer.valueOf(i) : null, map.get(i * 65536));
+
+		// Slots freed by removal are reused
+		for (int i = -1000; i < 1000; i += 2)
+			map.put(i * 65536, i);
+		assertEquals(2000, map.size());
+	}
+
+	@Test
+	public void testIteratorRemove() {
+		final IntObjectMap<Integer> map = new IntObjectMap<Integer>();
+		for (int i = 0; i < 100; i++)
+			map.put(i, i);
+
+		final Iterator<Integer> it = map.values().iterator();
+		final Set<Integer> seen = new HashSet<Integer>();
+		while (it.hasNext()) {
+			final Integer value = it.next();
+			seen.add(value);
+			if (value % 3 == 0)
+				it.remove();
+		}
+
+		assertEquals(100, seen.size());
+		assertEquals(66, map.size());
+		assertNull(map.get(33));
+		assertEquals(Integer.valueOf(34), map.get(34));
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testNullValueRejected() {
+		new IntObjectMap<String>().put(1, null);
+	}
+}
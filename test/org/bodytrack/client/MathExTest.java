@@ -89,6 +89,8 @@ public class MathExTest {
 	private void checkDoubleToLongBits(final double d) {
 		assertEquals(Double.doubleToLongBits(d),
 				MathEx.doubleToLongBits(d));
+		assertEquals(Double.doubleToLongBits(d),
+				MathEx.referenceDoubleToLongBits(d));
 	}
 
 	@Test
@@ -174,5 +176,54 @@ public class MathExTest {
 	private void checkLongBitsToDouble(final long l) {
 		assertTrue(Double.valueOf(Double.longBitsToDouble(l)).equals(
 				MathEx.longBitsToDouble(l)));
+		assertTrue(Double.valueOf(Double.longBitsToDouble(l)).equals(
+				MathEx.referenceLongBitsToDouble(l)));
+	}
+
+	// Every exponent, including the denormalized and infinite/NaN ones,
+	// with significands at and next to each end of the range and in the
+	// middle, and both signs.  This checks the fast path and the
+	// reference implementation against each other in both directions
+	@Test
+	public void testFastPathMatchesReferenceForAllExponents() {
+		final long[] significands = {
+			0L, 1L, 2L, 0x0008000000000000L, 0x0007ffffffffffffL,
+			0x000ffffffffffffeL, 0x000fffffffffffffL
+		};
+
+		for (long exponent = 0; exponent <= 0x7ff; exponent++) {
+			for (final long significand: significands) {
+				final long positive = (exponent << 52) | significand;
+				checkFastPathMatchesReference(positive);
+				checkFastPathMatchesReference(positive | SIGN_BIT);
+			}
+		}
+	}
+
+	private void checkFastPathMatchesReference(final long bits) {
+		final double fast = MathEx.longBitsToDouble(bits);
+		final double reference = MathEx.referenceLongBitsToDouble(bits);
+		assertTrue(Double.valueOf(reference).equals(fast));
+
+		assertEquals(MathEx.referenceDoubleToLongBits(fast),
+				MathEx.doubleToLongBits(fast));
+		if (!Double.isNaN(fast))
+			assertEquals(bits, MathEx.doubleToLongBits(fast));
+	}
+
+	@Test
+	public void testUlp() {
+		final double[] values = {
+			1.0, 0.1, 1e10, 1e-300, 1234567890.5, Double.MIN_NORMAL,
+			Double.MIN_VALUE, Double.MAX_VALUE, 0.0, -0.0,
+			Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY
+		};
+
+		for (final double d: values) {
+			assertEquals(Math.ulp(d), MathEx.ulp(d), 0);
+			assertEquals(Math.ulp(-d), MathEx.ulp(-d), 0);
+		}
+
+		assertTrue(Double.isNaN(MathEx.ulp(Double.NaN)));
 	}
 }
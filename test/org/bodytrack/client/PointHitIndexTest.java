@@ -0,0 +1,73 @@
+package org.bodytrack.client;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import org.junit.Test;
+
+public final class PointHitIndexTest {
+	private static final double EPSILON = 1e-10;
+
+	private final PointHitIndex index = PointHitIndex.build(
+		new double[] {1, 2, 2, 5, 9},
+		new double[] {10, 20, 21, 50, 90},
+		null);
+
+	@Test(expected=NullPointerException.class)
+	public void testNullTimes() {
+		PointHitIndex.build(null, new double[0], null);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testMismatchedLengths() {
+		PointHitIndex.build(new double[1], new double[2], null);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testMismatchedComments() {
+		PointHitIndex.build(new double[1], new double[1], new String[2]);
+	}
+
+	@Test
+	public void testFirstIndexAtOrAfter() {
+		assertEquals(0, index.firstIndexAtOrAfter(0));
+		assertEquals(0, index.firstIndexAtOrAfter(1));
+		assertEquals(1, index.firstIndexAtOrAfter(1.5));
+		assertEquals(1, index.firstIndexAtOrAfter(2));
+		assertEquals(3, index.firstIndexAtOrAfter(3));
+		assertEquals(4, index.firstIndexAtOrAfter(9));
+		assertEquals(5, index.firstIndexAtOrAfter(10));
+	}
+
+	@Test
+	public void testAccessors() {
+		assertEquals(5, index.size());
+		assertEquals(5, index.getTime(3), EPSILON);
+		assertEquals(21, index.getValue(2), EPSILON);
+		assertNull(index.getComment(0));
+	}
+
+	@Test
+	public void testSortsUnsortedColumnsTogether() {
+		final double[] times = {5, 1, 9, 2};
+		final double[] values = {50, 10, 90, 20};
+		final String[] comments = {"five", null, "nine", "two"};
+		final PointHitIndex sorted = PointHitIndex.build(times, values, comments);
+
+		assertArrayEquals(new double[] {1, 2, 5, 9}, times, EPSILON);
+		assertArrayEquals(new double[] {10, 20, 50, 90}, values, EPSILON);
+		assertNull(sorted.getComment(0));
+		assertEquals("two", sorted.getComment(1));
+		assertEquals("nine", sorted.getComment(3));
+		assertEquals(2, sorted.firstIndexAtOrAfter(3));
+	}
+
+	@Test
+	public void testEmpty() {
+		final PointHitIndex empty =
+			PointHitIndex.build(new double[0], new double[0], null);
+		assertEquals(0, empty.size());
+		assertEquals(0, empty.firstIndexAtOrAfter(0));
+	}
+}
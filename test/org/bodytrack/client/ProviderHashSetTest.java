@@ -0,0 +1,73 @@
+package org.bodytrack.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Iterator;
+
+import org.bodytrack.client.ProviderHashSet.EqualsHashcodeProvider;
+import org.junit.Test;
+
+public final class ProviderHashSetTest {
+	// Compares strings ignoring case
+	private static final EqualsHashcodeProvider<String> CASE_INSENSITIVE =
+		new EqualsHashcodeProvider<String>() {
+			@Override
+			public boolean equals(final String obj1, final String obj2) {
+				return obj1.equalsIgnoreCase(obj2);
+			}
+
+			@Override
+			public int hashCode(final String obj) {
+				return obj.toLowerCase().hashCode();
+			}
+		};
+
+	@Test
+	public void testUsesProvider() {
+		final ProviderHashSet<String> set =
+			new ProviderHashSet<String>(CASE_INSENSITIVE);
+
+		assertTrue(set.add("Photo"));
+		assertFalse(set.add("PHOTO"));
+		assertTrue(set.contains("photo"));
+		assertEquals(1, set.size());
+
+		assertTrue(set.remove("pHoTo"));
+		assertFalse(set.contains("Photo"));
+		assertTrue(set.isEmpty());
+	}
+
+	@Test
+	public void testIterationAndRemoval() {
+		final ProviderHashSet<String> set =
+			new ProviderHashSet<String>(CASE_INSENSITIVE);
+		for (int i = 0; i < 200; i++)
+			set.add("p" + i);
+
+		int count = 0;
+		final Iterator<String> it = set.iterator();
+		while (it.hasNext()) {
+			final String s = it.next();
+			count++;
+			if (s.endsWith("0"))
+				it.remove();
+		}
+
+		assertEquals(200, count);
+		assertEquals(180, set.size());
+		assertFalse(set.contains("P10"));
+		assertTrue(set.contains("P11"));
+
+		// Removed slots are reused
+		set.add("p10");
+		assertTrue(set.contains("P10"));
+		assertEquals(181, set.size());
+	}
+
+	@Test(expected = NullPointerException.class)
+	public void testNullRejected() {
+		new ProviderHashSet<String>(CASE_INSENSITIVE).add(null);
+	}
+}
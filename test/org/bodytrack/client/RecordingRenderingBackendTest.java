@@ -0,0 +1,117 @@
+package org.bodytrack.client;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public final class RecordingRenderingBackendTest {
+	private static final int WIDTH = 200;
+	private static final int HEIGHT = 100;
+
+	private RecordingRenderingBackend backend;
+	private Canvas canvas;
+	private BoundedDrawingBox drawing;
+
+	@Before
+	public void setUp() {
+		backend = new RecordingRenderingBackend(WIDTH, HEIGHT);
+		canvas = Canvas.buildCanvas(backend);
+		drawing = new BoundedDrawingBox(canvas, 0, 0, WIDTH, HEIGHT);
+	}
+
+	@Test(expected=NullPointerException.class)
+	public void testNullBackend() {
+		Canvas.buildCanvas((RenderingBackend) null);
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testNegativeSize() {
+		new RecordingRenderingBackend(-1, HEIGHT);
+	}
+
+	@Test
+	public void testSize() {
+		assertEquals(WIDTH, canvas.getWidth());
+		assertEquals(HEIGHT, canvas.getHeight());
+	}
+
+	@Test
+	public void testClippedPath() {
+		drawing.beginClippedPath();
+
+		// save and clip, then beginPath, rect, closePath, beginPath
+		assertEquals(2, backend.getStateChangeCount());
+		assertEquals(4, backend.getPathOperationCount());
+		assertEquals(1, backend.getSaveDepth());
+
+		drawing.drawLineSegment(0, 0, 10, 10);
+		drawing.drawCircle(50, 50, 3);
+		drawing.drawSquare(60, 60, 3);
+		assertEquals(10, backend.getPathOperationCount());
+
+		drawing.strokeClippedPath();
+		assertEquals(1, backend.getStrokeCount());
+		assertEquals(0, backend.getFillCount());
+		assertEquals(0, backend.getSaveDepth());
+	}
+
+	@Test
+	public void testOutOfBoundsShapesSkipped() {
+		drawing.drawCircle(-10, 50, 3);
+		drawing.drawSquare(50, HEIGHT + 10, 3);
+
+		assertEquals(0, backend.getPathOperationCount());
+	}
+
+	@Test
+	public void testDots() {
+		drawing.drawDot(10, 10);
+		drawing.drawDot(-10, 10);
+
+		// moveTo and lineTo for the dot in bounds only
+		assertEquals(2, backend.getPathOperationCount());
+	}
+
+	@Test
+	public void testRedundantStateChanges() {
+		canvas.setStrokeStyle(Canvas.DEFAULT_COLOR);
+		canvas.setLineWidth(1);
+		canvas.setGlobalAlpha(Canvas.DEFAULT_ALPHA);
+		assertEquals(3, backend.getStateChangeCount());
+		assertEquals(3, backend.getRedundantStateChangeCount());
+
+		canvas.setStrokeStyle(ColorUtils.RED);
+		canvas.setLineWidth(2);
+		assertEquals(5, backend.getStateChangeCount());
+		assertEquals(3, backend.getRedundantStateChangeCount());
+
+		backend.resetCounts();
+		assertEquals(0, backend.getStateChangeCount());
+		assertEquals(0, backend.getRedundantStateChangeCount());
+	}
+
+	@Test
+	public void testSaveRestore() {
+		canvas.save();
+		canvas.setLineWidth(3);
+		canvas.setFillStyle(ColorUtils.RED);
+		assertEquals(3, canvas.getLineWidth(), 0);
+		assertEquals(ColorUtils.RED, backend.getFillStyle());
+
+		canvas.restore();
+		assertEquals(1, canvas.getLineWidth(), 0);
+		assertEquals(Canvas.DEFAULT_COLOR, backend.getFillStyle());
+
+		// An unmatched restore is ignored, as in a real context
+		canvas.restore();
+		assertEquals(0, backend.getSaveDepth());
+	}
+
+	@Test
+	public void testMeasureText() {
+		assertEquals(3 * RecordingRenderingBackend.CHARACTER_WIDTH,
+				canvas.measureText("abc"), 0);
+		assertEquals(0, canvas.measureText(""), 0);
+	}
+}
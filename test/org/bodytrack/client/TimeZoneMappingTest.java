@@ -0,0 +1,51 @@
+package org.bodytrack.client;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+public final class TimeZoneMappingTest {
+	private static final int HOUR = 60 * 60;
+
+	@Test(expected=NullPointerException.class)
+	public void testNullTransitions() {
+		new TimeZoneMapping(null, new int[] {0});
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testWrongOffsetCount() {
+		new TimeZoneMapping(new double[] {100}, new int[] {0});
+	}
+
+	@Test(expected=IllegalArgumentException.class)
+	public void testUnsortedTransitions() {
+		new TimeZoneMapping(new double[] {200, 100}, new int[] {0, 1, 2});
+	}
+
+	@Test
+	public void testGetOffset() {
+		final double[] transitions = {100, 200, 300};
+		final int[] offsets = {-5 * HOUR, 9 * HOUR, -5 * HOUR, 0};
+		final TimeZoneMapping mapping =
+			new TimeZoneMapping(transitions, offsets);
+
+		// Changes to the arrays must not change the mapping
+		transitions[0] = 0;
+		offsets[0] = 0;
+
+		assertEquals(-5 * HOUR, mapping.getOffset(-1e9));
+		assertEquals(-5 * HOUR, mapping.getOffset(99.5));
+		assertEquals(9 * HOUR, mapping.getOffset(100));
+		assertEquals(9 * HOUR, mapping.getOffset(199));
+		assertEquals(-5 * HOUR, mapping.getOffset(200));
+		assertEquals(0, mapping.getOffset(300));
+		assertEquals(0, mapping.getOffset(1e9));
+	}
+
+	@Test
+	public void testFixedOffset() {
+		final TimeZoneMapping mapping = TimeZoneMapping.fixedOffset(HOUR);
+		assertEquals(HOUR, mapping.getOffset(0));
+		assertEquals(HOUR, mapping.getOffset(-1e9));
+	}
+}